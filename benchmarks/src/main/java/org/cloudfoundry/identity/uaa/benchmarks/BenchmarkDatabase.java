@@ -0,0 +1,38 @@
+package org.cloudfoundry.identity.uaa.benchmarks;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.cloudfoundry.identity.uaa.db.DataSourceAccessor;
+import org.flywaydb.core.Flyway;
+
+/**
+ * An in-memory HSQLDB with the UAA schema, migrated the same way as
+ * {@link org.cloudfoundry.identity.uaa.db.beans.FlywayConfiguration} does for the
+ * {@code hsqldb} profile.
+ */
+final class BenchmarkDatabase {
+
+    private BenchmarkDatabase() {
+    }
+
+    static DataSource create(String name) {
+        DataSource dataSource = new DataSource();
+        dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+        dataSource.setUrl("jdbc:hsqldb:mem:" + name);
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setMaxActive(100);
+        dataSource.setInitialSize(10);
+        new DataSourceAccessor().setDataSource(dataSource);
+
+        Flyway.configure()
+                .baselineOnMigrate(true)
+                .dataSource(dataSource)
+                .locations("classpath:org/cloudfoundry/identity/uaa/db/hsqldb/")
+                .baselineVersion("1.5.2")
+                .validateOnMigrate(false)
+                .table("schema_version")
+                .load()
+                .migrate();
+        return dataSource;
+    }
+}
@@ -0,0 +1,56 @@
+package org.cloudfoundry.identity.uaa.benchmarks;
+
+import org.cloudfoundry.identity.uaa.oauth.KeyInfo;
+import org.cloudfoundry.identity.uaa.oauth.KeyInfoBuilder;
+import org.cloudfoundry.identity.uaa.oauth.jwt.Jwt;
+import org.cloudfoundry.identity.uaa.oauth.jwt.JwtHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link JwtHelper#decode(String)} on its own and followed by signature
+ * verification, which is what every resource server request and /check_token pays.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtDecodeBenchmark {
+
+    @Param({"HS256", "RS256", "ES256"})
+    public String algorithm;
+
+    private KeyInfo keyInfo;
+    private String token;
+
+    @Setup
+    public void setup() throws Exception {
+        keyInfo = KeyInfoBuilder.build("key-" + algorithm, JwtEncodeBenchmark.signingKey(algorithm), "http://localhost:8080/uaa");
+        token = JwtHelper.encode(JwtEncodeBenchmark.accessTokenClaims(), keyInfo).getEncoded();
+    }
+
+    @Benchmark
+    public Jwt decode() {
+        return JwtHelper.decode(token);
+    }
+
+    @Benchmark
+    public Jwt decodeAndVerify() {
+        Jwt jwt = JwtHelper.decode(token);
+        jwt.verifySignature(keyInfo.getVerifier());
+        return jwt;
+    }
+}
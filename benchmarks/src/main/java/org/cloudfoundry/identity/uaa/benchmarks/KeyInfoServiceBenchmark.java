@@ -0,0 +1,74 @@
+package org.cloudfoundry.identity.uaa.benchmarks;
+
+import org.cloudfoundry.identity.uaa.oauth.KeyInfo;
+import org.cloudfoundry.identity.uaa.oauth.KeyInfoService;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneConfiguration;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.cloudfoundry.identity.uaa.zone.TokenPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures resolving the active signing key of a zone, which happens for every issued
+ * token, both when the built keys are cached and when they have to be rebuilt.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyInfoServiceBenchmark {
+
+    @Param({"HS256", "RS256"})
+    public String algorithm;
+
+    private KeyInfoService keyInfoService;
+
+    @Setup
+    public void setup() throws Exception {
+        Map<String, String> keys = new HashMap<>();
+        keys.put("key-1", JwtEncodeBenchmark.signingKey(algorithm));
+        keys.put("key-2", JwtEncodeBenchmark.signingKey(algorithm));
+        TokenPolicy tokenPolicy = new TokenPolicy(43200, 2592000);
+        tokenPolicy.setKeys(keys);
+        tokenPolicy.setActiveKeyId("key-1");
+        IdentityZoneConfiguration config = new IdentityZoneConfiguration();
+        config.setTokenPolicy(tokenPolicy);
+        IdentityZone zone = IdentityZone.getUaa();
+        zone.setConfig(config);
+        IdentityZoneHolder.set(zone);
+        keyInfoService = new KeyInfoService("http://localhost:8080/uaa");
+    }
+
+    @TearDown
+    public void tearDown() {
+        IdentityZoneHolder.clear();
+    }
+
+    @Benchmark
+    public KeyInfo getActiveKey() {
+        return keyInfoService.getActiveKey();
+    }
+
+    @Benchmark
+    public KeyInfo getActiveKeyUncached() {
+        keyInfoService.invalidateAll();
+        return keyInfoService.getActiveKey();
+    }
+}
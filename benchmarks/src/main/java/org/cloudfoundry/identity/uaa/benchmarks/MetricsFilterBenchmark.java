@@ -0,0 +1,64 @@
+package org.cloudfoundry.identity.uaa.benchmarks;
+
+import org.cloudfoundry.identity.uaa.metrics.UaaMetricsFilter;
+import org.cloudfoundry.identity.uaa.util.TimeServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead {@link UaaMetricsFilter} adds to every request by comparing it
+ * with the same filter disabled.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsFilterBenchmark {
+
+    @Param({"/oauth/token", "/Users", "/not/a/known/path"})
+    public String uri;
+
+    private final FilterChain chain = (request, response) -> {};
+
+    private UaaMetricsFilter enabled;
+    private UaaMetricsFilter disabled;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setup() throws Exception {
+        enabled = new UaaMetricsFilter(true, false, new TimeServiceImpl());
+        disabled = new UaaMetricsFilter(false, false, new TimeServiceImpl());
+        request = new MockHttpServletRequest("POST", uri);
+        request.setServletPath(uri);
+        response = new MockHttpServletResponse();
+    }
+
+    @Benchmark
+    public MockHttpServletResponse metricsEnabled() throws Exception {
+        enabled.doFilter(request, response, chain);
+        return response;
+    }
+
+    @Benchmark
+    public MockHttpServletResponse metricsDisabled() throws Exception {
+        disabled.doFilter(request, response, chain);
+        return response;
+    }
+}
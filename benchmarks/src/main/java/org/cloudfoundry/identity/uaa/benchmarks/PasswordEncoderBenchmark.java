@@ -0,0 +1,53 @@
+package org.cloudfoundry.identity.uaa.benchmarks;
+
+import org.cloudfoundry.identity.uaa.util.CachingPasswordEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link CachingPasswordEncoder#matches(CharSequence, String)} for a repeated
+ * client secret with the BCrypt check it saves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordEncoderBenchmark {
+
+    private static final String SECRET = "client-secret-with-some-length";
+
+    private BCryptPasswordEncoder bcrypt;
+    private CachingPasswordEncoder caching;
+    private String encoded;
+
+    @Setup
+    public void setup() throws Exception {
+        bcrypt = new BCryptPasswordEncoder();
+        caching = new CachingPasswordEncoder(bcrypt);
+        encoded = bcrypt.encode(SECRET);
+        caching.matches(SECRET, encoded);
+    }
+
+    @Benchmark
+    public boolean cachingMatches() {
+        return caching.matches(SECRET, encoded);
+    }
+
+    @Benchmark
+    public boolean bcryptMatches() {
+        return bcrypt.matches(SECRET, encoded);
+    }
+}
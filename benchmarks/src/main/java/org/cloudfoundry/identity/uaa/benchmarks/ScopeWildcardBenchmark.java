@@ -0,0 +1,81 @@
+package org.cloudfoundry.identity.uaa.benchmarks;
+
+import org.cloudfoundry.identity.uaa.util.ScopeMatcher;
+import org.cloudfoundry.identity.uaa.util.UaaStringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Measures {@link UaaStringUtils#constructWildcards(java.util.Collection)}, which compiles
+ * a client's scopes into patterns whenever requested scopes are checked against them, against
+ * the cached and uncached matchers of {@link ScopeMatcher}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScopeWildcardBenchmark {
+
+    private final List<String> clientScopes = Arrays.asList(
+            "openid", "profile", "email", "roles", "user_attributes", "uaa.user", "uaa.offline_token",
+            "cloud_controller.read", "cloud_controller.write", "cloud_controller.admin_read_only",
+            "cloud_controller_service_permissions.read", "scim.me", "password.write",
+            "routing.router_groups.read", "doppler.firehose", "space.*.developer", "org.*.manager",
+            "network.*", "credhub.*.read", "uaa.*"
+    );
+
+    private final List<String> requestedScopes = Arrays.asList(
+            "openid", "cloud_controller.read", "cloud_controller.write", "space.1234.developer",
+            "org.5678.manager", "network.admin", "uaa.user"
+    );
+
+    @Benchmark
+    public Set<Pattern> constructWildcards() {
+        return UaaStringUtils.constructWildcards(clientScopes);
+    }
+
+    @Benchmark
+    public boolean constructAndMatch() {
+        Set<Pattern> wildcards = UaaStringUtils.constructWildcards(clientScopes);
+        boolean allowed = true;
+        for (String scope : requestedScopes) {
+            allowed &= UaaStringUtils.matches(wildcards, scope);
+        }
+        return allowed;
+    }
+
+    @Benchmark
+    public boolean scopeMatcherAndMatch() {
+        ScopeMatcher matcher = ScopeMatcher.of(clientScopes);
+        boolean allowed = true;
+        for (String scope : requestedScopes) {
+            allowed &= matcher.matches(scope);
+        }
+        return allowed;
+    }
+
+    @Benchmark
+    public boolean uncachedScopeMatcherAndMatch() {
+        ScopeMatcher matcher = ScopeMatcher.ofRequested(clientScopes);
+        boolean allowed = true;
+        for (String scope : requestedScopes) {
+            allowed &= matcher.matches(scope);
+        }
+        return allowed;
+    }
+}
@@ -0,0 +1,57 @@
+package org.cloudfoundry.identity.uaa.benchmarks;
+
+import org.cloudfoundry.identity.uaa.resources.SimpleAttributeNameMapper;
+import org.cloudfoundry.identity.uaa.resources.jdbc.SearchQueryConverter.ProcessedFilter;
+import org.cloudfoundry.identity.uaa.resources.jdbc.SimpleSearchQueryConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures translating SCIM filters into SQL with the converter configured for
+ * {@code /Users} in scim-endpoints.xml.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchQueryConverterBenchmark {
+
+    @Param({
+            "username eq \"marissa\"",
+            "username eq \"marissa\" and origin eq \"uaa\"",
+            "(emails.value co \"@example.com\" or username sw \"test\") and active eq true and meta.lastModified gt \"2020-01-01T00:00:00.000Z\""
+    })
+    public String filter;
+
+    private SimpleSearchQueryConverter converter;
+
+    @Setup
+    public void setup() {
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("emails\\.value", "email");
+        attributes.put("groups\\.display", "authorities");
+        attributes.put("phoneNumbers\\.value", "phoneNumber");
+        converter = new SimpleSearchQueryConverter();
+        converter.setAttributeNameMapper(new SimpleAttributeNameMapper(attributes));
+    }
+
+    @Benchmark
+    public ProcessedFilter convert() {
+        return converter.convert(filter, "username", true, "uaa");
+    }
+}
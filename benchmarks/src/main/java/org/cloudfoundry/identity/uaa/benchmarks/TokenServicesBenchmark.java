@@ -0,0 +1,178 @@
+package org.cloudfoundry.identity.uaa.benchmarks;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.cloudfoundry.identity.uaa.approval.ApprovalService;
+import org.cloudfoundry.identity.uaa.approval.JdbcApprovalStore;
+import org.cloudfoundry.identity.uaa.authentication.UaaAuthentication;
+import org.cloudfoundry.identity.uaa.authentication.UaaPrincipal;
+import org.cloudfoundry.identity.uaa.constants.OriginKeys;
+import org.cloudfoundry.identity.uaa.db.DatabaseUrlModifier;
+import org.cloudfoundry.identity.uaa.db.Vendor;
+import org.cloudfoundry.identity.uaa.oauth.ClientAccessTokenValidity;
+import org.cloudfoundry.identity.uaa.oauth.ClientRefreshTokenValidity;
+import org.cloudfoundry.identity.uaa.oauth.KeyInfoService;
+import org.cloudfoundry.identity.uaa.oauth.TokenEndpointBuilder;
+import org.cloudfoundry.identity.uaa.oauth.TokenValidationService;
+import org.cloudfoundry.identity.uaa.oauth.TokenValidityResolver;
+import org.cloudfoundry.identity.uaa.oauth.UaaOauth2Authentication;
+import org.cloudfoundry.identity.uaa.oauth.UaaTokenServices;
+import org.cloudfoundry.identity.uaa.oauth.openid.IdTokenCreator;
+import org.cloudfoundry.identity.uaa.oauth.openid.IdTokenGranter;
+import org.cloudfoundry.identity.uaa.oauth.refresh.RefreshTokenCreator;
+import org.cloudfoundry.identity.uaa.oauth.token.JdbcRevocableTokenProvisioning;
+import org.cloudfoundry.identity.uaa.resources.jdbc.HsqlDbLimitSqlAdapter;
+import org.cloudfoundry.identity.uaa.user.JdbcUaaUserDatabase;
+import org.cloudfoundry.identity.uaa.user.UaaAuthority;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.cloudfoundry.identity.uaa.util.TimeServiceImpl;
+import org.cloudfoundry.identity.uaa.util.beans.DbUtils;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.cloudfoundry.identity.uaa.zone.JdbcIdentityZoneProvisioning;
+import org.cloudfoundry.identity.uaa.zone.MultitenantJdbcClientDetailsService;
+import org.cloudfoundry.identity.uaa.zone.TokenPolicy;
+import org.cloudfoundry.identity.uaa.zone.beans.IdentityZoneManager;
+import org.cloudfoundry.identity.uaa.zone.beans.IdentityZoneManagerImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.client.BaseClientDetails;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.cloudfoundry.identity.uaa.oauth.token.TokenConstants.GRANT_TYPE_CLIENT_CREDENTIALS;
+import static org.cloudfoundry.identity.uaa.oauth.token.TokenConstants.GRANT_TYPE_PASSWORD;
+
+/**
+ * Measures {@link UaaTokenServices#createAccessToken} for the client_credentials and
+ * password grants with the JDBC backed client, user, approval, zone and revocable token
+ * stores running against an in-memory HSQLDB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenServicesBenchmark {
+
+    private static final String ISSUER = "http://localhost:8080/uaa";
+    private static final String CLIENT_ID = "cf";
+    private static final String USER_ID = "2f8a6c4e-0b1d-4e3f-9a7c-5d2e8f1b3c6a";
+
+    @Param({GRANT_TYPE_CLIENT_CREDENTIALS, GRANT_TYPE_PASSWORD})
+    public String grantType;
+
+    @Param({"false", "true"})
+    public boolean revocable;
+
+    private DataSource dataSource;
+    private UaaTokenServices tokenServices;
+    private UaaOauth2Authentication authentication;
+
+    @Setup
+    public void setup() throws Exception {
+        dataSource = BenchmarkDatabase.create("token-services-benchmark");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        TimeService timeService = new TimeServiceImpl();
+        IdentityZoneManager identityZoneManager = new IdentityZoneManagerImpl();
+
+        TokenPolicy tokenPolicy = new TokenPolicy(43200, 2592000);
+        tokenPolicy.setKeys(Collections.singletonMap("key-1", JwtEncodeBenchmark.signingKey("RS256")));
+        tokenPolicy.setActiveKeyId("key-1");
+        tokenPolicy.setJwtRevocable(revocable);
+        JdbcIdentityZoneProvisioning zoneProvisioning = new JdbcIdentityZoneProvisioning(jdbcTemplate);
+        IdentityZone uaa = zoneProvisioning.retrieve(IdentityZone.getUaaZoneId());
+        uaa.getConfig().setTokenPolicy(tokenPolicy);
+        zoneProvisioning.update(uaa);
+        IdentityZoneHolder.setProvisioning(zoneProvisioning);
+        IdentityZoneHolder.clear();
+
+        MultitenantJdbcClientDetailsService clientDetailsService = new MultitenantJdbcClientDetailsService(jdbcTemplate, identityZoneManager, new BCryptPasswordEncoder());
+        BaseClientDetails client = new BaseClientDetails(CLIENT_ID, null,
+                "openid,uaa.user,cloud_controller.read,cloud_controller.write",
+                "password,client_credentials,refresh_token",
+                "uaa.resource,clients.read");
+        client.setClientSecret("secret");
+        client.setAutoApproveScopes(Collections.singleton("true"));
+        clientDetailsService.addClientDetails(client, IdentityZone.getUaaZoneId());
+        jdbcTemplate.update("INSERT INTO users (id,username,password,email,givenName,familyName,origin,identity_zone_id) VALUES (?,?,?,?,?,?,?,?)",
+                USER_ID, "marissa", "password", "marissa@test.org", "Marissa", "Bloggs", OriginKeys.UAA, IdentityZone.getUaaZoneId());
+
+        JdbcUaaUserDatabase userDatabase = new JdbcUaaUserDatabase(jdbcTemplate, timeService, false, identityZoneManager,
+                new DatabaseUrlModifier(Vendor.hsqldb, dataSource.getUrl()), new DbUtils(), new HsqlDbLimitSqlAdapter());
+        JdbcRevocableTokenProvisioning tokenProvisioning = new JdbcRevocableTokenProvisioning(jdbcTemplate, new HsqlDbLimitSqlAdapter(), timeService);
+        ApprovalService approvalService = new ApprovalService(timeService, new JdbcApprovalStore(jdbcTemplate));
+        KeyInfoService keyInfoService = new KeyInfoService(ISSUER);
+        TokenEndpointBuilder tokenEndpointBuilder = new TokenEndpointBuilder(ISSUER);
+        TokenValidityResolver accessTokenValidityResolver = new TokenValidityResolver(new ClientAccessTokenValidity(clientDetailsService, identityZoneManager), 43200, timeService);
+        TokenValidityResolver refreshTokenValidityResolver = new TokenValidityResolver(new ClientRefreshTokenValidity(clientDetailsService, identityZoneManager), 2592000, timeService);
+
+        tokenServices = new UaaTokenServices(
+                new IdTokenCreator(tokenEndpointBuilder, timeService, accessTokenValidityResolver, userDatabase, clientDetailsService, new HashSet<>(), identityZoneManager),
+                tokenEndpointBuilder,
+                clientDetailsService,
+                tokenProvisioning,
+                new TokenValidationService(tokenProvisioning, tokenEndpointBuilder, userDatabase, clientDetailsService, keyInfoService),
+                new RefreshTokenCreator(false, refreshTokenValidityResolver, tokenEndpointBuilder, timeService, keyInfoService),
+                timeService,
+                accessTokenValidityResolver,
+                userDatabase,
+                new HashSet<>(),
+                tokenPolicy,
+                keyInfoService,
+                new IdTokenGranter(approvalService),
+                approvalService);
+
+        authentication = authentication(grantType);
+    }
+
+    @TearDown
+    public void tearDown() {
+        IdentityZoneHolder.setProvisioning(null);
+        IdentityZoneHolder.clear();
+        dataSource.close();
+    }
+
+    @Benchmark
+    public OAuth2AccessToken createAccessToken() {
+        return tokenServices.createAccessToken(authentication);
+    }
+
+    private static UaaOauth2Authentication authentication(String grantType) {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("grant_type", grantType);
+        parameters.put("client_id", CLIENT_ID);
+        if (GRANT_TYPE_CLIENT_CREDENTIALS.equals(grantType)) {
+            OAuth2Request request = new OAuth2Request(parameters, CLIENT_ID, null, true,
+                    new HashSet<>(Arrays.asList("uaa.resource", "clients.read")), null, null, null, null);
+            return new UaaOauth2Authentication(null, IdentityZone.getUaaZoneId(), request, null);
+        }
+        Set<String> scopes = new HashSet<>(Arrays.asList("openid", "uaa.user", "cloud_controller.read", "cloud_controller.write"));
+        OAuth2Request request = new OAuth2Request(parameters, CLIENT_ID, null, true, scopes, null, null,
+                new HashSet<>(Arrays.asList("token", "id_token")), null);
+        UaaPrincipal principal = new UaaPrincipal(USER_ID, "marissa", "marissa@test.org", OriginKeys.UAA, null, IdentityZone.getUaaZoneId());
+        UaaAuthentication user = new UaaAuthentication(principal, null, UaaAuthority.USER_AUTHORITIES, null, true, System.currentTimeMillis());
+        user.setAuthenticationMethods(Collections.singleton("pwd"));
+        return new UaaOauth2Authentication(null, IdentityZone.getUaaZoneId(), request, user);
+    }
+}
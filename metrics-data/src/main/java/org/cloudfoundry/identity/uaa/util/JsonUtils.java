@@ -15,6 +15,8 @@
 
 package org.cloudfoundry.identity.uaa.util;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -22,6 +24,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Date;
 import java.util.Map;
 
@@ -44,6 +47,17 @@ public class JsonUtils {
         }
     }
 
+    /**
+     * Creates a UTF-8 generator that writes objects the same way as {@link #writeValueAsString(Object)}.
+     */
+    public static JsonGenerator createGenerator(OutputStream out) throws JsonUtilException {
+        try {
+            return objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        } catch (IOException e) {
+            throw new JsonUtilException(e);
+        }
+    }
+
     public static <T> T readValue(String s, Class<T> clazz) throws JsonUtilException {
         try {
             if (hasText(s)) {
@@ -20,6 +20,7 @@ import lombok.Getter;
 
 import java.lang.reflect.ParameterizedType;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -156,6 +157,13 @@ public abstract class AbstractExternalOAuthIdentityProviderDefinition<T extends
         return (Class) parameterizedType.getActualTypeArguments()[0];
     }
 
+    @Override
+    public T clone() {
+        T copy = (T) super.clone();
+        copy.setScopes(scopes != null ? new ArrayList<>(scopes) : null);
+        return copy;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
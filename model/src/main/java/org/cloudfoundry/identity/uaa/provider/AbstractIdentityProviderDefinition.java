@@ -16,12 +16,14 @@ package org.cloudfoundry.identity.uaa.provider;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
-public class AbstractIdentityProviderDefinition {
+public class AbstractIdentityProviderDefinition implements Cloneable {
     public static final String EMAIL_DOMAIN_ATTR = "emailDomain";
     public static final String PROVIDER_DESCRIPTION = "providerDescription";
 
@@ -55,6 +57,21 @@ public class AbstractIdentityProviderDefinition {
         this.providerDescription = description;
     }
 
+    /**
+     * @return a copy of this definition that shares no mutable collections with it
+     */
+    @Override
+    public AbstractIdentityProviderDefinition clone() {
+        try {
+            AbstractIdentityProviderDefinition copy = (AbstractIdentityProviderDefinition) super.clone();
+            copy.emailDomain = emailDomain != null ? new ArrayList<>(emailDomain) : null;
+            copy.additionalConfiguration = additionalConfiguration != null ? new HashMap<>(additionalConfiguration) : null;
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -81,6 +81,14 @@ public class ExternalIdentityProviderDefinition extends AbstractIdentityProvider
         this.addShadowUserOnLogin = addShadowUserOnLogin;
     }
 
+    @Override
+    public ExternalIdentityProviderDefinition clone() {
+        ExternalIdentityProviderDefinition copy = (ExternalIdentityProviderDefinition) super.clone();
+        copy.setExternalGroupsWhitelist(externalGroupsWhitelist);
+        copy.setAttributeMappings(attributeMappings);
+        return copy;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -17,6 +17,7 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import org.cloudfoundry.identity.uaa.login.Prompt;
 
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -26,8 +27,7 @@ import java.util.Objects;
 import static java.util.Collections.emptyMap;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
-public class OIDCIdentityProviderDefinition extends AbstractExternalOAuthIdentityProviderDefinition<OIDCIdentityProviderDefinition>
-implements Cloneable {
+public class OIDCIdentityProviderDefinition extends AbstractExternalOAuthIdentityProviderDefinition<OIDCIdentityProviderDefinition> {
     private URL discoveryUrl;
     private boolean passwordGrantEnabled = false;
     private boolean setForwardHeader = false;
@@ -89,8 +89,11 @@ implements Cloneable {
     }
 
     @Override
-    public Object clone() throws CloneNotSupportedException {
-        return super.clone();
+    public OIDCIdentityProviderDefinition clone() {
+        OIDCIdentityProviderDefinition copy = super.clone();
+        copy.prompts = prompts != null ? new ArrayList<>(prompts) : null;
+        copy.additionalAuthzParameters = additionalAuthzParameters != null ? new HashMap<>(additionalAuthzParameters) : null;
+        return copy;
     }
 
     @Override
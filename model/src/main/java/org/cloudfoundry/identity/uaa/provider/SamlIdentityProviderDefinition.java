@@ -78,7 +78,7 @@ public class SamlIdentityProviderDefinition extends ExternalIdentityProviderDefi
         def.setEmailDomain(emailDomain);
         def.setExternalGroupsWhitelist(externalGroupsWhitelist);
         def.setAttributeMappings(attributeMappings);
-        def.setAdditionalConfiguration(getAdditionalConfiguration());
+        def.setAdditionalConfiguration(getAdditionalConfiguration() != null ? new HashMap<>(getAdditionalConfiguration()) : null);
         def.setProviderDescription(getProviderDescription());
         def.setGroupMappingMode(getGroupMappingMode());
         def.setSocketFactoryClassName(getSocketFactoryClassName());
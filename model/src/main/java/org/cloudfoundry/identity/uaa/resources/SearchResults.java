@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.resources;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -22,11 +24,17 @@ import java.util.List;
  */
 public class SearchResults<T> {
 
+    /**
+     * The total number of results when it was not counted, it is left out of the JSON.
+     */
+    public static final int UNKNOWN_TOTAL = -1;
+
     private List<T> resources;
     private int startIndex;
     private int itemsPerPage;
     private int totalResults;
     private Collection<String> schemas;
+    private String nextCursor;
 
     public SearchResults() {}
     public SearchResults(Collection<String> schemas, Collection<T> resources, int startIndex, int itemsPerPage,
@@ -38,6 +46,12 @@ public class SearchResults<T> {
         this.totalResults = totalResults;
     }
 
+    public SearchResults(Collection<String> schemas, Collection<T> resources, int startIndex, int itemsPerPage,
+                    int totalResults, String nextCursor) {
+        this(schemas, resources, startIndex, itemsPerPage, totalResults);
+        this.nextCursor = nextCursor;
+    }
+
     public Collection<String> getSchemas() {
         return schemas;
     }
@@ -50,6 +64,7 @@ public class SearchResults<T> {
         return itemsPerPage;
     }
 
+    @JsonInclude(value = JsonInclude.Include.CUSTOM, valueFilter = UnknownTotalFilter.class)
     public int getTotalResults() {
         return totalResults;
     }
@@ -58,6 +73,15 @@ public class SearchResults<T> {
         return resources;
     }
 
+    /**
+     * The cursor to request the page after this one with, or null if this is the last page
+     * or the results were not requested with a cursor.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder("SearchResults[schemas:");
@@ -76,4 +100,15 @@ public class SearchResults<T> {
         return builder.toString();
     }
 
+    static final class UnknownTotalFilter {
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Integer && (Integer) obj == UNKNOWN_TOTAL;
+        }
+
+        @Override
+        public int hashCode() {
+            return UNKNOWN_TOTAL;
+        }
+    }
 }
@@ -0,0 +1,170 @@
+package org.cloudfoundry.identity.uaa.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Matches scopes, and other dot separated names such as email domains, against a set of
+ * scopes that may contain the {@code *} wildcard. It matches exactly what the patterns built by
+ * {@link UaaStringUtils#constructWildcards(Collection)} match, without regular expressions:
+ * scopes without a wildcard are looked up in a hash set, and wildcard scopes are indexed by
+ * their first segment when it is literal.
+ *
+ * Matchers are immutable. Matchers of configured scopes, such as those of a client, are cached
+ * by the set of scopes they were built from, so that checking the scopes of a token request
+ * against them does not have to compile them again. Matchers of scopes that come from a
+ * request or a token are built with {@link #ofRequested(Collection)} and are not cached, so
+ * that requests cannot evict the matchers of configured scopes.
+ */
+public final class ScopeMatcher {
+
+    private static final int MAX_CACHED_MATCHERS = 1000;
+    private static final Map<Set<String>, ScopeMatcher> matchers = new ConcurrentHashMap<>();
+    private static final Map<Set<String>, ScopeMatcher> anyCharMatchers = new ConcurrentHashMap<>();
+
+    private final boolean anyChar;
+    private final Set<String> literals = new HashSet<>();
+    private final Map<String, List<Wildcard>> wildcardsByFirstSegment = new HashMap<>();
+    private final List<Wildcard> wildcards = new ArrayList<>();
+
+    private ScopeMatcher(Collection<String> scopes, boolean anyChar) {
+        this.anyChar = anyChar;
+        for (String scope : scopes) {
+            if (scope == null) {
+                continue;
+            }
+            if (scope.indexOf('*') < 0) {
+                literals.add(scope);
+                continue;
+            }
+            Wildcard wildcard = new Wildcard(scope.split("\\*", -1));
+            String first = wildcard.pieces[0];
+            int dot = first.indexOf('.');
+            if (dot < 0) {
+                wildcards.add(wildcard);
+            } else {
+                wildcardsByFirstSegment.computeIfAbsent(first.substring(0, dot), k -> new ArrayList<>()).add(wildcard);
+            }
+        }
+    }
+
+    /**
+     * Returns a matcher in which {@code *} matches one or more characters other than a dot or a
+     * backslash.
+     */
+    public static ScopeMatcher of(Collection<String> scopes) {
+        return cached(matchers, scopes, false);
+    }
+
+    /**
+     * Returns an uncached matcher in which {@code *} matches one or more characters other than
+     * a dot or a backslash, for scopes that come from a request or a token.
+     */
+    public static ScopeMatcher ofRequested(Collection<String> scopes) {
+        return new ScopeMatcher(scopes == null ? Collections.emptySet() : scopes, false);
+    }
+
+    /**
+     * Returns a matcher in which {@code *} matches any characters but line terminators,
+     * including none, as the patterns built with {@link UaaStringUtils#constructSimpleWildcardPatternWithAnyCharDelimiter(String)}.
+     */
+    public static ScopeMatcher ofAnyChar(Collection<String> patterns) {
+        return cached(anyCharMatchers, patterns, true);
+    }
+
+    private static ScopeMatcher cached(Map<Set<String>, ScopeMatcher> cache, Collection<String> scopes, boolean anyChar) {
+        if (scopes == null || scopes.isEmpty()) {
+            return new ScopeMatcher(Collections.emptySet(), anyChar);
+        }
+        Set<String> key = scopes instanceof Set ? (Set<String>) scopes : new HashSet<>(scopes);
+        ScopeMatcher matcher = cache.get(key);
+        if (matcher == null) {
+            matcher = new ScopeMatcher(key, anyChar);
+            Iterator<Set<String>> cached = cache.keySet().iterator();
+            while (cache.size() >= MAX_CACHED_MATCHERS && cached.hasNext()) {
+                cached.next();
+                cached.remove();
+            }
+            cache.put(Collections.unmodifiableSet(new HashSet<>(key)), matcher);
+        }
+        return matcher;
+    }
+
+    public boolean matches(String scope) {
+        if (scope == null) {
+            return false;
+        }
+        if (literals.contains(scope)) {
+            return true;
+        }
+        if (!wildcardsByFirstSegment.isEmpty()) {
+            int dot = scope.indexOf('.');
+            if (dot >= 0 && matchesAny(wildcardsByFirstSegment.get(scope.substring(0, dot)), scope)) {
+                return true;
+            }
+        }
+        return matchesAny(wildcards, scope);
+    }
+
+    private boolean matchesAny(List<Wildcard> candidates, String scope) {
+        if (candidates != null) {
+            for (Wildcard wildcard : candidates) {
+                if (wildcard.matches(scope, 0, 0)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private final class Wildcard {
+        private final String[] pieces;
+
+        private Wildcard(String[] pieces) {
+            this.pieces = pieces;
+        }
+
+        /**
+         * Returns true if the scope matches the pieces from {@code piece} on, starting at
+         * {@code from}. Every piece but the first follows a wildcard.
+         */
+        private boolean matches(String scope, int piece, int from) {
+            String literal = pieces[piece];
+            if (!scope.startsWith(literal, from)) {
+                return false;
+            }
+            int end = from + literal.length();
+            if (piece == pieces.length - 1) {
+                return end == scope.length();
+            }
+            for (int next = anyChar ? end : end + 1; next <= scope.length(); next++) {
+                if (next > end && !matchedByWildcard(scope.charAt(next - 1))) {
+                    return false;
+                }
+                if (matches(scope, piece + 1, next)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns true if {@code *} matches the character, as {@code [^\\.]} and {@code .}
+         * without {@link java.util.regex.Pattern#DOTALL} do.
+         */
+        private boolean matchedByWildcard(char c) {
+            if (anyChar) {
+                return c != '\n' && c != '\r' && c != '\u0085' && c != '\u2028' && c != '\u2029';
+            }
+            return c != '.' && c != '\\';
+        }
+    }
+}
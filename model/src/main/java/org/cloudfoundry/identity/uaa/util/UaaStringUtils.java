@@ -137,8 +137,8 @@ public final class UaaStringUtils {
     }
 
     public static Set<String> retainAllMatches(Collection<String> values, Collection<String> whitelist) {
-        Set<Pattern> regExPatterns = UaaStringUtils.constructWildcards(new HashSet<>(whitelist), UaaStringUtils::constructSimpleWildcardPatternWithAnyCharDelimiter);
-        return values.stream().filter(s -> matches(regExPatterns, s)).collect(Collectors.toSet());
+        ScopeMatcher matcher = ScopeMatcher.ofAnyChar(whitelist);
+        return values.stream().filter(matcher::matches).collect(Collectors.toSet());
     }
 
     public static boolean containsWildcard(String s) {
@@ -0,0 +1,102 @@
+package org.cloudfoundry.identity.uaa.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScopeMatcherTest {
+
+    private static final List<String> SCOPES = Arrays.asList(
+            "openid",
+            "uaa.user",
+            "zones.*.admin",
+            "zones.*.*.read",
+            "space.*.deve.*loper",
+            "*.developer",
+            "*",
+            "a*b",
+            "x.*",
+            "**.double",
+            "[regex].(chars)+?",
+            "trailing.*"
+    );
+
+    private static final List<String> CANDIDATES = Arrays.asList(
+            "openid", "openid2", "uaa.user", "uaa.admin", "uaa",
+            "zones.z1.admin", "zones..admin", "zones.z1.z2.admin", "zones.*.admin", "zones.z1.admin.x",
+            "zones.z1.scim.read", "zones.z1.read", "space.1.deve.xloper", "space.1.developer",
+            "space.developer", "developer", ".developer", "x", "x.y", "x.y.z", "x.", "ab", "axb", "a.b",
+            "ab.double", "a.double", "[regex].(chars)+?", "[regex].(chars)", "trailing.", "trailing.x",
+            "", "anything", "any.thing", "zones.a\\b.admin", "x.\\", "a\\b", "a\nb", "a\rb", "a\u0085b",
+            "a\u2028b", "a\u2029b", "x.y\n"
+    );
+
+    @Test
+    void matchesExactlyWhatTheRegularExpressionsMatch() {
+        for (String scope : SCOPES) {
+            ScopeMatcher matcher = ScopeMatcher.of(Collections.singleton(scope));
+            ScopeMatcher anyCharMatcher = ScopeMatcher.ofAnyChar(Collections.singleton(scope));
+            Set<Pattern> patterns = UaaStringUtils.constructWildcards(Collections.singleton(scope));
+            Set<Pattern> anyCharPatterns = UaaStringUtils.constructWildcards(Collections.singleton(scope),
+                    UaaStringUtils::constructSimpleWildcardPatternWithAnyCharDelimiter);
+            for (String candidate : CANDIDATES) {
+                String message = "[" + candidate + "] against [" + scope + "]";
+                assertEquals(UaaStringUtils.matches(patterns, candidate), matcher.matches(candidate), message);
+                assertEquals(UaaStringUtils.matches(anyCharPatterns, candidate), anyCharMatcher.matches(candidate), message);
+            }
+        }
+    }
+
+    @Test
+    void matchesAnyOfTheScopes() {
+        ScopeMatcher matcher = ScopeMatcher.of(Arrays.asList("openid", "zones.*.admin", "*.read"));
+
+        assertTrue(matcher.matches("openid"));
+        assertTrue(matcher.matches("zones.z1.admin"));
+        assertTrue(matcher.matches("scim.read"));
+        assertFalse(matcher.matches("zones.z1.read"));
+        assertFalse(matcher.matches(null));
+        assertFalse(ScopeMatcher.of(Collections.emptySet()).matches("openid"));
+    }
+
+    @Test
+    void wildcardsDoNotMatchWhatTheRegularExpressionsExclude() {
+        assertFalse(ScopeMatcher.of(Collections.singleton("zones.*.admin")).matches("zones.a\\b.admin"));
+        assertTrue(ScopeMatcher.of(Collections.singleton("zones.*.admin")).matches("zones.a\nb.admin"));
+        assertTrue(ScopeMatcher.ofAnyChar(Collections.singleton("a*")).matches("a\\b"));
+        for (String lineTerminator : Arrays.asList("\n", "\r", "\u0085", "\u2028", "\u2029")) {
+            assertFalse(ScopeMatcher.ofAnyChar(Collections.singleton("a*")).matches("a" + lineTerminator + "b"));
+        }
+    }
+
+    @Test
+    void matchersAreCachedByScopes() {
+        ScopeMatcher matcher = ScopeMatcher.of(new HashSet<>(Arrays.asList("openid", "zones.*.admin")));
+
+        assertSame(matcher, ScopeMatcher.of(new HashSet<>(Arrays.asList("zones.*.admin", "openid"))));
+        assertSame(matcher, ScopeMatcher.of(Arrays.asList("openid", "zones.*.admin")));
+    }
+
+    @Test
+    void matchersOfRequestedScopesAreNotCached() {
+        List<String> requested = Arrays.asList("openid", "zones.z1.admin");
+
+        ScopeMatcher matcher = ScopeMatcher.ofRequested(requested);
+
+        assertNotSame(matcher, ScopeMatcher.ofRequested(requested));
+        assertNotSame(matcher, ScopeMatcher.of(requested));
+        assertTrue(matcher.matches("zones.z1.admin"));
+        assertFalse(ScopeMatcher.ofRequested(null).matches("openid"));
+    }
+}
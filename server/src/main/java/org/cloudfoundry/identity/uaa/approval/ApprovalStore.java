@@ -12,7 +12,9 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.approval;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface ApprovalStore {
 
@@ -30,5 +32,12 @@ public interface ApprovalStore {
 
     List<Approval> getApprovalsForUser(String userId, final String zoneId);
 
+    /**
+     * Retrieve the approvals of several users at once
+     *
+     * @return the approvals by user id, users without approvals have no entry
+     */
+    Map<String, List<Approval>> getApprovalsForUsers(Collection<String> userIds, final String zoneId);
+
     List<Approval> getApprovalsForClient(String clientId, final String zoneId);
 }
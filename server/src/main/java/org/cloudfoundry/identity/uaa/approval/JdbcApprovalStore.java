@@ -12,12 +12,14 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.approval;
 
+import org.apache.commons.lang3.ArrayUtils;
 import org.cloudfoundry.identity.uaa.util.UaaStringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.cloudfoundry.identity.uaa.approval.Approval.ApprovalStatus;
 import org.cloudfoundry.identity.uaa.audit.event.ApprovalModifiedEvent;
 import org.cloudfoundry.identity.uaa.audit.event.SystemDeletable;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEvent;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
@@ -33,8 +35,14 @@ import org.springframework.util.Assert;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.cloudfoundry.identity.uaa.approval.Approval.ApprovalStatus.APPROVED;
 
@@ -74,6 +82,9 @@ public class JdbcApprovalStore implements ApprovalStore, ApplicationEventPublish
     public static final String DELETE_OF_USER_APPROVALS_BY_PROVIDER = "delete from authz_approvals where user_id in (select id from users where origin = ? and identity_zone_id = ?)";
 
 
+    @Value("${database.maxParameters:-1}")
+    private int maxSqlParameters;
+
     private boolean handleRevocationsAsExpiry = false;
     private ApplicationEventPublisher applicationEventPublisher;
 
@@ -82,6 +93,14 @@ public class JdbcApprovalStore implements ApprovalStore, ApplicationEventPublish
         this.jdbcTemplate = jdbcTemplate;
     }
 
+    public int getMaxSqlParameters() {
+        return maxSqlParameters;
+    }
+
+    public void setMaxSqlParameters(int maxSqlParameters) {
+        this.maxSqlParameters = maxSqlParameters;
+    }
+
     public void setHandleRevocationsAsExpiry(boolean handleRevocationsAsExpiry) {
         this.handleRevocationsAsExpiry = handleRevocationsAsExpiry;
     }
@@ -206,6 +225,23 @@ public class JdbcApprovalStore implements ApprovalStore, ApplicationEventPublish
         );
     }
 
+    @Override
+    public Map<String, List<Approval>> getApprovalsForUsers(Collection<String> userIds, final String zoneId) {
+        Map<String, List<Approval>> approvals = new HashMap<>();
+        List<String> userList = new ArrayList<>(new LinkedHashSet<>(userIds));
+        while (!userList.isEmpty()) {
+            int size = maxSqlParameters > 1 ? Math.min(maxSqlParameters - 1, userList.size()) : userList.size();
+            String sql = GET_AUTHZ_SQL + " WHERE identity_zone_id = ? AND user_id in (" +
+                    userList.subList(0, size).stream().map(s -> "?").collect(Collectors.joining(", ")) + ")";
+            Object[] parameterList = ArrayUtils.addAll(new Object[] { zoneId }, userList.subList(0, size).toArray());
+            for (Approval approval : jdbcTemplate.query(sql, rowMapper, parameterList)) {
+                approvals.computeIfAbsent(approval.getUserId(), k -> new ArrayList<>()).add(approval);
+            }
+            userList = userList.subList(size, userList.size());
+        }
+        return approvals;
+    }
+
     @Override
     public List<Approval> getApprovalsForClient(String clientId, final String zoneId) {
         String sql = GET_AUTHZ_SQL + " WHERE client_id = ? AND identity_zone_id = ?";
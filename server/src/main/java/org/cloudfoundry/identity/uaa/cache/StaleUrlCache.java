@@ -4,49 +4,104 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.cloudfoundry.identity.uaa.util.TimeService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+/**
+ * Caches the content of remote URLs, such as the metadata and keys of external identity
+ * providers.
+ *
+ * Content is fresh for the cache expiration, or for the {@code max-age} of its
+ * {@code Cache-Control} header if that is longer. The first request after that still gets the
+ * cached content while a single background reload per URI fetches it again, using the
+ * response's {@code ETag} and {@code Last-Modified} headers for a conditional request. If
+ * reloading fails the cached content keeps being served until it is older than the expiration
+ * plus the maximum staleness, after which requests fetch it themselves and see the failure.
+ */
 @Component
-public class StaleUrlCache implements UrlContentCache {
+@ManagedResource(
+    objectName = "cloudfoundry.identity:name=UrlContentCache",
+    description = "URL Content Cache Metrics"
+)
+public class StaleUrlCache implements UrlContentCache, DisposableBean {
   private static final Logger logger = LoggerFactory.getLogger(StaleUrlCache.class);
   private static final int DEFAULT_MAX_ENTRIES = 10_000;
+  private static final Duration DEFAULT_CACHE_EXPIRATION = Duration.ofMinutes(10);
+  private static final Duration DEFAULT_MAX_STALENESS = Duration.ofHours(24);
+  private static final int REFRESH_THREADS = 4;
+  private static final int REFRESH_QUEUE_SIZE = 1000;
 
   private final Duration cacheExpiration;
+  private final TimeService timeService;
+  private final Ticker ticker;
+  private final Executor refreshExecutor;
   private final LoadingCache<UriRequest, CacheEntry> cache;
+  private final Cache<String, FetchStatistics> statistics;
 
   @Autowired
   public StaleUrlCache(final TimeService timeService) {
-    this(timeService, Ticker.systemTicker());
+    this(DEFAULT_CACHE_EXPIRATION, DEFAULT_MAX_STALENESS, timeService, DEFAULT_MAX_ENTRIES, Ticker.systemTicker(),
+        newRefreshExecutor());
   }
 
   public StaleUrlCache(final TimeService timeService, final Ticker ticker) {
-    this(Duration.ofMinutes(10), timeService, DEFAULT_MAX_ENTRIES, ticker);
+    this(DEFAULT_CACHE_EXPIRATION, timeService, DEFAULT_MAX_ENTRIES, ticker);
   }
 
+  /**
+   * Creates a cache that reloads stale content on the thread requesting it.
+   */
   public StaleUrlCache(final Duration cacheExpiration, final TimeService timeService, final int maxEntries,
       final Ticker ticker) {
+    this(cacheExpiration, DEFAULT_MAX_STALENESS, timeService, maxEntries, ticker, MoreExecutors.directExecutor());
+  }
+
+  public StaleUrlCache(final Duration cacheExpiration, final Duration maxStaleness, final TimeService timeService,
+      final int maxEntries, final Ticker ticker, final Executor refreshExecutor) {
     this.cacheExpiration = cacheExpiration;
+    this.timeService = timeService;
+    this.ticker = ticker;
+    this.refreshExecutor = refreshExecutor;
     this.cache = CacheBuilder.newBuilder().refreshAfterWrite(this.cacheExpiration.toMillis(), TimeUnit.MILLISECONDS)
-        .maximumSize(maxEntries).ticker(ticker).build(new UrlCacheLoader(timeService));
+        .expireAfterWrite(this.cacheExpiration.plus(maxStaleness).toMillis(), TimeUnit.MILLISECONDS)
+        .maximumSize(maxEntries).ticker(ticker).build(new UrlCacheLoader());
+    this.statistics = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
   }
 
   @Override
@@ -68,6 +123,11 @@ public class StaleUrlCache implements UrlContentCache {
     }
   }
 
+  @Override
+  public void evict(String uri) {
+    cache.invalidate(new UriRequest(uri, null, null, null));
+  }
+
   @Override
   public void clear() {
     cache.invalidateAll();
@@ -78,6 +138,28 @@ public class StaleUrlCache implements UrlContentCache {
     return cache.size();
   }
 
+  @ManagedMetric(displayName = "Fetches, Failures and Latency per URI")
+  public Map<String, String> getFetchSummary() {
+    Map<String, String> summary = new HashMap<>();
+    statistics.asMap().forEach((uri, fetches) -> summary.put(uri, JsonUtils.writeValueAsString(fetches.toMap())));
+    return summary;
+  }
+
+  @Override
+  public void destroy() {
+    if (refreshExecutor instanceof ExecutorService) {
+      ((ExecutorService) refreshExecutor).shutdownNow();
+    }
+  }
+
+  private static Executor newRefreshExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(REFRESH_QUEUE_SIZE),
+        new ThreadFactoryBuilder().setNameFormat("url-content-refresh-%d").setDaemon(true).build());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
   static class UriRequest {
     final String uri;
     final RestTemplate template;
@@ -125,48 +207,143 @@ public class StaleUrlCache implements UrlContentCache {
   static class CacheEntry {
     final Instant timeEntered;
     final byte[] data;
+    final String etag;
+    final String lastModified;
+    final long freshUntil;
 
-    CacheEntry(Instant timeEntered, byte[] data) {
+    CacheEntry(Instant timeEntered, byte[] data, String etag, String lastModified, long freshUntil) {
       this.timeEntered = timeEntered;
       this.data = data;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.freshUntil = freshUntil;
     }
 
   }
 
-  class UrlCacheLoader extends CacheLoader<UriRequest, CacheEntry> {
+  static class FetchStatistics {
+    final AtomicLong fetches = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+    final AtomicLong notModified = new AtomicLong();
+    final AtomicLong totalLatency = new AtomicLong();
+    final AtomicLong lastLatency = new AtomicLong();
 
-    private final TimeService timeService;
+    void record(long latencyNanos) {
+      fetches.incrementAndGet();
+      totalLatency.addAndGet(latencyNanos);
+      lastLatency.set(latencyNanos);
+    }
 
-    UrlCacheLoader(TimeService timeService) {
-      this.timeService = timeService;
+    Map<String, Object> toMap() {
+      long count = fetches.get();
+      Map<String, Object> map = new HashMap<>();
+      map.put("fetches", count);
+      map.put("failures", failures.get());
+      map.put("notModified", notModified.get());
+      map.put("averageLatencyMs", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalLatency.get() / count));
+      map.put("lastLatencyMs", TimeUnit.NANOSECONDS.toMillis(lastLatency.get()));
+      return map;
     }
+  }
+
+  class UrlCacheLoader extends CacheLoader<UriRequest, CacheEntry> {
 
     @Override
     public CacheEntry load(UriRequest request) throws RuntimeException {
+      return fetch(request, null);
+    }
+
+    @Override
+    public ListenableFuture<CacheEntry> reload(UriRequest request, CacheEntry oldValue) {
+      if (ticker.read() < oldValue.freshUntil) {
+        return Futures.immediateFuture(oldValue);
+      }
+      ListenableFutureTask<CacheEntry> task = ListenableFutureTask.create(() -> fetch(request, oldValue));
+      refreshExecutor.execute(task);
+      return task;
+    }
+
+    private CacheEntry fetch(UriRequest request, CacheEntry oldValue) {
+      FetchStatistics fetches = statistics(request.uri);
+      long start = ticker.read();
       try {
-        byte[] metadata;
         final URI netUri = new URI(request.uri);
-        if (request.requestEntity != null) {
-          ResponseEntity<byte[]> responseEntity = request.template.exchange(netUri, request.method,
-              request.requestEntity, byte[].class);
-          if (responseEntity.getStatusCode() == HttpStatus.OK) {
-            metadata = responseEntity.getBody();
-          } else {
-            throw new IllegalArgumentException(
-                "Unable to fetch content, status:" + responseEntity.getStatusCode().getReasonPhrase());
-          }
-        } else {
-          metadata = request.template.getForObject(netUri, byte[].class);
-        }
+        ResponseEntity<byte[]> responseEntity = request.template.exchange(netUri,
+            request.method == null ? HttpMethod.GET : request.method, conditional(request.requestEntity, oldValue),
+            byte[].class);
         Instant now = Instant.ofEpochMilli(timeService.getCurrentTimeMillis());
-        return new CacheEntry(now, metadata);
+        HttpHeaders headers = responseEntity.getHeaders() == null ? new HttpHeaders() : responseEntity.getHeaders();
+        long freshUntil = ticker.read() + maxAge(headers);
+        if (responseEntity.getStatusCode() == HttpStatus.NOT_MODIFIED && oldValue != null) {
+          fetches.notModified.incrementAndGet();
+          return new CacheEntry(now, oldValue.data, oldValue.etag, oldValue.lastModified, freshUntil);
+        } else if (responseEntity.getStatusCode() == HttpStatus.OK) {
+          return new CacheEntry(now, responseEntity.getBody(), headers.getETag(),
+              headers.getFirst(HttpHeaders.LAST_MODIFIED), freshUntil);
+        }
+        fetches.failures.incrementAndGet();
+        throw new IllegalArgumentException(
+            "Unable to fetch content, status:" + responseEntity.getStatusCode().getReasonPhrase());
       } catch (RestClientException x) {
+        fetches.failures.incrementAndGet();
         logger.warn("Unable to fetch metadata for {0}. {1}", request.uri, x.getMessage());
         throw x;
       } catch (URISyntaxException e) {
         throw new IllegalArgumentException(e);
+      } finally {
+        fetches.record(ticker.read() - start);
+      }
+    }
+
+    /**
+     * Adds the validators of the cached content to the request, so that the server can reply
+     * that it did not change instead of sending it again.
+     */
+    private HttpEntity<?> conditional(HttpEntity<?> requestEntity, CacheEntry oldValue) {
+      if (oldValue == null || (oldValue.etag == null && oldValue.lastModified == null)) {
+        return requestEntity == null ? HttpEntity.EMPTY : requestEntity;
+      }
+      HttpHeaders headers = new HttpHeaders();
+      if (requestEntity != null && requestEntity.getHeaders() != null) {
+        headers.putAll(requestEntity.getHeaders());
+      }
+      if (oldValue.etag != null) {
+        headers.setIfNoneMatch(oldValue.etag);
+      }
+      if (oldValue.lastModified != null) {
+        headers.set(HttpHeaders.IF_MODIFIED_SINCE, oldValue.lastModified);
       }
+      return new HttpEntity<>(requestEntity == null ? null : requestEntity.getBody(), headers);
     }
 
+    /**
+     * Returns the {@code max-age} of the response in nanoseconds, or 0 if it has none. A
+     * shorter max-age than the cache expiration does not make the content reload sooner.
+     */
+    private long maxAge(HttpHeaders headers) {
+      String cacheControl = headers.getCacheControl();
+      if (cacheControl == null) {
+        return 0;
+      }
+      for (String directive : cacheControl.split(",")) {
+        String[] nameAndValue = directive.trim().split("=", 2);
+        if (nameAndValue.length == 2 && "max-age".equalsIgnoreCase(nameAndValue[0].trim())) {
+          try {
+            return TimeUnit.SECONDS.toNanos(Long.parseLong(nameAndValue[1].trim().replace("\"", "")));
+          } catch (NumberFormatException e) {
+            return 0;
+          }
+        }
+      }
+      return 0;
+    }
+  }
+
+  private FetchStatistics statistics(String uri) {
+    try {
+      return statistics.get(uri, FetchStatistics::new);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
   }
 }
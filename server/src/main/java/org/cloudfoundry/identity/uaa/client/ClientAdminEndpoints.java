@@ -24,6 +24,7 @@ import org.cloudfoundry.identity.uaa.oauth.client.ClientJwtChangeRequest;
 import org.cloudfoundry.identity.uaa.oauth.client.SecretChangeRequest;
 import org.cloudfoundry.identity.uaa.resources.ActionResult;
 import org.cloudfoundry.identity.uaa.resources.AttributeNameMapper;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.QueryableResourceManager;
 import org.cloudfoundry.identity.uaa.resources.ResourceMonitor;
 import org.cloudfoundry.identity.uaa.resources.SearchResults;
@@ -479,15 +480,59 @@ public class ClientAdminEndpoints implements ApplicationEventPublisherAware {
             result.add(removeSecret(client));
         }
 
+        return toSearchResults(result, attributesCommaSeparated, startIndex, count, clients.size(), null);
+    }
+
+    /**
+     * Pages through the clients with a cursor instead of a start index. The first request
+     * passes an empty cursor and every following one the {@code nextCursor} of the previous
+     * response. The total is only counted if it is asked for.
+     */
+    @RequestMapping(value = "/oauth/clients", method = RequestMethod.GET, params = "cursor")
+    @ResponseBody
+    public SearchResults<?> listClientDetailsByCursor(
+                    @RequestParam(value = "attributes", required = false) String attributesCommaSeparated,
+                    @RequestParam(required = false, defaultValue = "client_id pr") String filter,
+                    @RequestParam(required = false, defaultValue = "client_id") String sortBy,
+                    @RequestParam(required = false, defaultValue = "ascending") String sortOrder,
+                    @RequestParam(required = false, defaultValue = "") String cursor,
+                    @RequestParam(required = false, defaultValue = "100") int count,
+                    @RequestParam(required = false, defaultValue = "false") boolean includeTotal) {
+
+        if (count > clientMaxCount) {
+            count = clientMaxCount;
+        }
+
+        KeysetPage<ClientDetails> page;
+        int total = SearchResults.UNKNOWN_TOTAL;
+        try {
+            String zoneId = IdentityZoneHolder.get().getId();
+            page = clientDetailsService.queryPage(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder), cursor, count, zoneId);
+            if (includeTotal) {
+                total = clientDetailsService.query(filter, zoneId).size();
+            }
+        } catch (IllegalArgumentException e) {
+            throw new UaaException(e.getMessage(), HttpStatus.BAD_REQUEST.value());
+        }
+        List<ClientDetails> result = new ArrayList<>();
+        for (ClientDetails client : page.getResources()) {
+            result.add(removeSecret(client));
+        }
+
+        return toSearchResults(result, attributesCommaSeparated, 1, result.size(), total, page.getNextCursor());
+    }
+
+    private SearchResults<?> toSearchResults(List<ClientDetails> result, String attributesCommaSeparated, int startIndex,
+                                             int count, int total, String nextCursor) {
         if (!StringUtils.hasLength(attributesCommaSeparated)) {
             return new SearchResults<>(Collections.singletonList(SCIM_CLIENTS_SCHEMA_URI), result, startIndex, count,
-                clients.size());
+                total, nextCursor);
         }
 
         String[] attributes = attributesCommaSeparated.split(",");
         try {
-            return SearchResultsFactory.buildSearchResultFrom(result, startIndex, count, clients.size(), attributes,
-                            attributeNameMapper, Collections.singletonList(SCIM_CLIENTS_SCHEMA_URI));
+            return SearchResultsFactory.buildSearchResultFrom(result, startIndex, count, total, attributes,
+                            attributeNameMapper, Collections.singletonList(SCIM_CLIENTS_SCHEMA_URI), nextCursor);
         } catch (SpelParseException e) {
             throw new UaaException("Invalid attributes: [" + attributesCommaSeparated + "]",
                             HttpStatus.BAD_REQUEST.value());
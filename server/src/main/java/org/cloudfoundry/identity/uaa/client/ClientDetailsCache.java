@@ -0,0 +1,220 @@
+package org.cloudfoundry.identity.uaa.client;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.cloudfoundry.identity.uaa.oauth.client.ClientConstants;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache of parsed client registrations by zone and client id, so that authenticating a
+ * client or issuing a token does not have to read the client and parse its additional
+ * information, scopes and authorities every time.
+ *
+ * An entry is served as is for {@code maxStaleness} milliseconds. After that only the
+ * client's {@code lastmodified} column is read again, and the client is only reloaded if it
+ * changed, so that changes made on other nodes are noticed within {@code maxStaleness}.
+ * Every change made through {@link org.cloudfoundry.identity.uaa.zone.MultitenantJdbcClientDetailsService}
+ * moves {@code lastmodified}. Because some databases keep it to the second, a client loaded
+ * less than {@link #SETTLE_TIME} after it was modified is reloaded rather than revalidated,
+ * so that a second change within the same second is not missed. Changes made on this node
+ * evict the client immediately, and again when the surrounding transaction completes. The
+ * cache is disabled unless explicitly enabled.
+ *
+ * Cached clients are never handed out; every lookup returns a deep copy the caller may modify.
+ */
+@ManagedResource(
+        objectName = "cloudfoundry.identity:name=ClientDetailsCache",
+        description = "Client Details Cache Metrics"
+)
+public class ClientDetailsCache {
+
+    static final long SETTLE_TIME = 2000;
+
+    private static final String VERSION_QUERY =
+            "select lastmodified from oauth_client_details where client_id = ? and identity_zone_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TimeService timeService;
+    private final boolean enabled;
+    private final long maxStaleness;
+    private final Cache<String, Entry> clients;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ClientDetailsCache(JdbcTemplate jdbcTemplate,
+                              TimeService timeService,
+                              boolean enabled,
+                              long maxStaleness,
+                              int maxEntries) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.timeService = timeService;
+        this.enabled = enabled && maxEntries > 0;
+        this.maxStaleness = Math.max(0, maxStaleness);
+        this.clients = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(maxEntries, 0))
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public ClientDetails get(String clientId, String zoneId, Supplier<ClientDetails> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        String key = key(zoneId, clientId);
+        long now = timeService.getCurrentTimeMillis();
+        Entry entry = clients.getIfPresent(key);
+        if (entry != null) {
+            if (now - entry.validatedAt <= maxStaleness) {
+                hits.incrementAndGet();
+                return copy(entry.client);
+            }
+            revalidations.incrementAndGet();
+            List<Timestamp> current = jdbcTemplate.queryForList(VERSION_QUERY, Timestamp.class, clientId, zoneId);
+            if (entry.loadedAt - entry.lastModified >= SETTLE_TIME
+                    && current.size() == 1 && current.get(0) != null && current.get(0).getTime() == entry.lastModified) {
+                entry.validatedAt = now;
+                return copy(entry.client);
+            }
+            clients.invalidate(key);
+        }
+        misses.incrementAndGet();
+        ClientDetails loaded = loader.get();
+        Object lastModified = loaded.getAdditionalInformation().get(ClientConstants.LAST_MODIFIED);
+        if (loaded instanceof UaaClientDetails && lastModified instanceof Date) {
+            clients.put(key, new Entry(copy((UaaClientDetails) loaded), ((Date) lastModified).getTime(), now));
+        }
+        return loaded;
+    }
+
+    /**
+     * Evicts the client now and, if a transaction is active, again when it completes, so
+     * that a client read inside the transaction is not kept after a rollback.
+     */
+    public void evict(String clientId, String zoneId) {
+        if (enabled) {
+            String key = key(zoneId, clientId);
+            afterTransaction(() -> clients.invalidate(key));
+        }
+    }
+
+    public void evictZone(String zoneId) {
+        if (enabled) {
+            afterTransaction(() -> clients.asMap().keySet().removeIf(k -> k.startsWith(zoneId + ":")));
+        }
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Clients Served From Cache")
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Clients Revalidated By Version")
+    public long getRevalidationCount() {
+        return revalidations.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Clients Loaded From Database")
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Client Lookups Not Loaded From Database")
+    public double getHitRatio() {
+        long served = hits.get() + revalidations.get();
+        long total = served + misses.get();
+        return total == 0 ? 0 : (double) served / total;
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Cached Clients")
+    public long getSize() {
+        return clients.size();
+    }
+
+    private static void afterTransaction(Runnable eviction) {
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    eviction.run();
+                }
+            });
+        }
+    }
+
+    private static UaaClientDetails copy(UaaClientDetails client) {
+        UaaClientDetails copy = new UaaClientDetails(client);
+        copy.setAdditionalInformation(deepCopy(client.getAdditionalInformation()));
+        copy.setClientJwtConfig(client.getClientJwtConfig());
+        copy.setAutoApproveScopes(client.getAutoApproveScopes());
+        return copy;
+    }
+
+    /**
+     * Copies the nested maps, collections and dates of additional information, which the
+     * copy constructor shares between copies.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T deepCopy(T value) {
+        if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> copy.put(k, deepCopy(v)));
+            return (T) copy;
+        }
+        if (value instanceof Set) {
+            Set<Object> copy = new LinkedHashSet<>();
+            ((Set<?>) value).forEach(v -> copy.add(deepCopy(v)));
+            return (T) copy;
+        }
+        if (value instanceof Collection) {
+            List<Object> copy = new ArrayList<>();
+            ((Collection<?>) value).forEach(v -> copy.add(deepCopy(v)));
+            return (T) copy;
+        }
+        if (value instanceof Date) {
+            return (T) ((Date) value).clone();
+        }
+        return value;
+    }
+
+    private static String key(String zoneId, String clientId) {
+        return zoneId + ":" + clientId;
+    }
+
+    private static final class Entry {
+        private final UaaClientDetails client;
+        private final long lastModified;
+        private final long loadedAt;
+        private volatile long validatedAt;
+
+        private Entry(UaaClientDetails client, long lastModified, long loadedAt) {
+            this.client = client;
+            this.lastModified = lastModified;
+            this.loadedAt = loadedAt;
+            this.validatedAt = loadedAt;
+        }
+    }
+}
@@ -58,6 +58,11 @@ public class JdbcQueryableClientDetailsService
         return CLIENT_DETAILS_TABLE;
     }
 
+    @Override
+    protected String getIdColumn() {
+        return "client_id";
+    }
+
     @Override
     public List<ClientDetails> retrieveAll(String zoneId) {
         return delegate.listClientDetails(zoneId);
@@ -15,22 +15,20 @@
 package org.cloudfoundry.identity.uaa.client;
 
 
+import org.cloudfoundry.identity.uaa.util.ScopeMatcher;
 import org.cloudfoundry.identity.uaa.util.UaaStringUtils;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
-import java.util.regex.Pattern;
 
 import static org.cloudfoundry.identity.uaa.zone.ZoneManagementScopes.UAA_SCOPES;
 
 public class UaaScopes {
 
 
-    private Set<Pattern> regExPatterns = UaaStringUtils.constructWildcards(new HashSet<>(UAA_SCOPES));
+    private ScopeMatcher uaaScopes = ScopeMatcher.of(UAA_SCOPES);
 
     public List<String> getUaaScopes() {
         return UAA_SCOPES;
@@ -54,7 +52,7 @@ public class UaaScopes {
     }
 
     public boolean isUaaScope(String scope) {
-        return UaaStringUtils.matches(regExPatterns, scope);
+        return uaaScopes.matches(scope);
     }
 
     public boolean isUaaScope(GrantedAuthority authority) {
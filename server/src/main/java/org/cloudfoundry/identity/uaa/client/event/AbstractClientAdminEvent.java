@@ -39,7 +39,7 @@ public abstract class AbstractClientAdminEvent extends AbstractUaaEvent {
         this.client = client;
     }
 
-    ClientDetails getClient() {
+    public ClientDetails getClient() {
         return client;
     }
 
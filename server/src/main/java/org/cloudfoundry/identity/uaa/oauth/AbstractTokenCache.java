@@ -0,0 +1,232 @@
+package org.cloudfoundry.identity.uaa.oauth;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.oauth.event.TokenRevocationEvent;
+import org.cloudfoundry.identity.uaa.oauth.token.RevocableTokenIndex;
+import org.cloudfoundry.identity.uaa.scim.ScimUser;
+import org.cloudfoundry.identity.uaa.user.UaaUser;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.security.oauth2.provider.ClientDetails;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Short-lived, bounded cache of what a token resolves to, for the caches of
+ * {@link TokenValidationService}. Subclasses decide the key and the cached value.
+ *
+ * An entry lives at most until the token expires or the configured time to live,
+ * whichever comes first. Entries are evicted as soon as a token revocation or a user,
+ * client or zone deletion is published on this node. Revocations made on other nodes
+ * arrive through the {@link RevocableTokenIndex}: once one is set, entries are evicted
+ * as it polls and are only served while its last poll is recent, so a revocation takes
+ * effect everywhere within the poll interval. The cache is disabled unless explicitly
+ * enabled.
+ */
+public abstract class AbstractTokenCache<T> implements ApplicationListener<AbstractUaaEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbstractTokenCache.class);
+
+    private final boolean enabled;
+    private final long timeToLiveMillis;
+    private final TimeService timeService;
+    private final Cache<String, Entry<T>> cache;
+    // zone id and token id to cache key, for the revocations of single tokens
+    private final ConcurrentMap<String, String> keysByTokenId = new ConcurrentHashMap<>();
+    private volatile RevocableTokenIndex revocationIndex;
+
+    protected AbstractTokenCache(boolean enabled, int timeToLive, int maxEntries, TimeService timeService) {
+        this.enabled = enabled && timeToLive > 0 && maxEntries > 0;
+        this.timeToLiveMillis = TimeUnit.SECONDS.toMillis(timeToLive);
+        this.timeService = timeService;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(maxEntries, 0))
+                .expireAfterWrite(Math.max(timeToLive, 0), TimeUnit.SECONDS)
+                .recordStats()
+                .<String, Entry<T>>removalListener(n -> {
+                    if (n.getCause() != RemovalCause.REPLACED && n.getValue().tokenId != null) {
+                        keysByTokenId.remove(tokenKey(n.getValue().zoneId, n.getValue().tokenId), n.getKey());
+                    }
+                })
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setRevocationIndex(RevocableTokenIndex revocationIndex) {
+        this.revocationIndex = revocationIndex;
+        if (revocationIndex == null) {
+            return;
+        }
+        revocationIndex.addRevocationListener(this::revoked);
+        if (enabled && !revocationIndex.isEnabled()) {
+            logger.warn(getClass().getSimpleName() + " is enabled but the revocable token index is not, nothing will be served from it.");
+        }
+    }
+
+    protected RevocableTokenIndex getRevocationIndex() {
+        return revocationIndex;
+    }
+
+    /**
+     * @return the unexpired value cached under the key, or null
+     */
+    protected T lookup(String key) {
+        RevocableTokenIndex index = revocationIndex;
+        if (!enabled || (index != null && !index.isCurrent())) {
+            return null;
+        }
+        Entry<T> entry = cache.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt <= timeService.getCurrentTimeMillis()) {
+            cache.invalidate(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Caches a value until the token expires at {@code tokenExpiresAt}, in milliseconds, or
+     * the time to live has passed. The zone, token, user and client ids select the entries to evict.
+     */
+    protected void store(String key, T value, String zoneId, String tokenId, String userId, String clientId, long tokenExpiresAt) {
+        if (!enabled) {
+            return;
+        }
+        long now = timeService.getCurrentTimeMillis();
+        long expiresAt = Math.min(tokenExpiresAt, now + timeToLiveMillis);
+        if (expiresAt <= now) {
+            return;
+        }
+        if (tokenId != null) {
+            keysByTokenId.put(tokenKey(zoneId, tokenId), key);
+        }
+        cache.put(key, new Entry<>(value, zoneId, tokenId, userId, clientId, expiresAt));
+    }
+
+    protected void invalidate(String key) {
+        cache.invalidate(key);
+    }
+
+    public void evictUser(String userId, String zoneId) {
+        evictIf(e -> Objects.equals(zoneId, e.zoneId) && Objects.equals(userId, e.userId));
+    }
+
+    public void evictClient(String clientId, String zoneId) {
+        evictIf(e -> Objects.equals(zoneId, e.zoneId) && Objects.equals(clientId, e.clientId));
+    }
+
+    public void evictUserAndClient(String userId, String clientId, String zoneId) {
+        evictIf(e -> Objects.equals(zoneId, e.zoneId) && Objects.equals(userId, e.userId) && Objects.equals(clientId, e.clientId));
+    }
+
+    public void evictZone(String zoneId) {
+        evictIf(e -> Objects.equals(zoneId, e.zoneId));
+    }
+
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void onApplicationEvent(AbstractUaaEvent event) {
+        if (!enabled) {
+            return;
+        }
+        if (event instanceof TokenRevocationEvent) {
+            TokenRevocationEvent revocation = (TokenRevocationEvent) event;
+            if (revocation.getUserId() != null && revocation.getClientId() != null) {
+                evictUserAndClient(revocation.getUserId(), revocation.getClientId(), revocation.getZoneId());
+            } else if (revocation.getUserId() != null) {
+                evictUser(revocation.getUserId(), revocation.getZoneId());
+            } else {
+                evictClient(revocation.getClientId(), revocation.getZoneId());
+            }
+        } else if (event instanceof EntityDeletedEvent) {
+            Object deleted = ((EntityDeletedEvent<?>) event).getDeleted();
+            if (deleted instanceof IdentityZone) {
+                evictZone(((IdentityZone) deleted).getId());
+            } else if (deleted instanceof ClientDetails) {
+                evictClient(((ClientDetails) deleted).getClientId(), event.getIdentityZoneId());
+            } else if (deleted instanceof UaaUser) {
+                evictUser(((UaaUser) deleted).getId(), ((UaaUser) deleted).getZoneId());
+            } else if (deleted instanceof ScimUser) {
+                evictUser(((ScimUser) deleted).getId(), ((ScimUser) deleted).getZoneId());
+            }
+        }
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Token Cache Hit Count")
+    public long getCacheHits() {
+        return cache.stats().hitCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Token Cache Miss Count")
+    public long getCacheMisses() {
+        return cache.stats().missCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Token Cache Size")
+    public long getCacheSize() {
+        return cache.size();
+    }
+
+    private void revoked(String zoneId, String tokenId, String userId, String clientId) {
+        if (!enabled) {
+            return;
+        }
+        if (tokenId != null) {
+            String key = keysByTokenId.get(tokenKey(zoneId, tokenId));
+            if (key != null) {
+                cache.invalidate(key);
+            }
+        } else {
+            evictIf(e -> Objects.equals(zoneId, e.zoneId)
+                    && (userId == null || userId.equals(e.userId))
+                    && (clientId == null || clientId.equals(e.clientId)));
+        }
+    }
+
+    private void evictIf(Predicate<Entry<T>> predicate) {
+        cache.asMap().values().removeIf(predicate);
+    }
+
+    private static String tokenKey(String zoneId, String tokenId) {
+        return zoneId + ":" + tokenId;
+    }
+
+    private static final class Entry<T> {
+        private final T value;
+        private final String zoneId;
+        private final String tokenId;
+        private final String userId;
+        private final String clientId;
+        private final long expiresAt;
+
+        private Entry(T value, String zoneId, String tokenId, String userId, String clientId, long expiresAt) {
+            this.value = value;
+            this.zoneId = zoneId;
+            this.tokenId = tokenId;
+            this.userId = userId;
+            this.clientId = clientId;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -25,7 +25,7 @@ public class ClientAccessTokenValidity implements ClientTokenValidity {
         ClientDetails clientDetails;
 
         try {
-            clientDetails = multitenantClientServices.loadClientByClientId(clientId, identityZoneManager.getCurrentIdentityZoneId());
+            clientDetails = TokenRequestLookupContext.loadClientByClientId(multitenantClientServices, clientId, identityZoneManager.getCurrentIdentityZoneId());
         } catch (ClientRegistrationException e) {
             logger.info("Could not load details for client " + clientId, e);
             return null;
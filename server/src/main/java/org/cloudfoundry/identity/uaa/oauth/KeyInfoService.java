@@ -14,21 +14,55 @@
  */
 package org.cloudfoundry.identity.uaa.oauth;
 
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
 import org.cloudfoundry.identity.uaa.impl.config.LegacyTokenKey;
 import org.cloudfoundry.identity.uaa.util.UaaTokenUtils;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneConfiguration;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
 import org.cloudfoundry.identity.uaa.zone.TokenPolicy;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityZoneModifiedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.security.crypto.codec.Hex;
 import org.springframework.util.StringUtils;
 
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.cloudfoundry.identity.uaa.util.UaaUrlUtils.addSubdomainToUrl;
 
-public class KeyInfoService {
-    private String uaaBaseURL;
+/**
+ * Resolves the signing and verification keys of the current identity zone.
+ *
+ * Building a {@link KeyInfo} parses the PEM encoded key and constructs the signer
+ * and verifier, so the built keys are cached per zone and reused for as long as the
+ * fingerprint of the zone's key material, signing algorithm and key URL is unchanged.
+ * Entries are evicted when a zone is modified or deleted.
+ */
+@ManagedResource(
+        objectName = "cloudfoundry.identity:name=KeyInfoCache",
+        description = "UAA Signing Key Cache Metrics"
+)
+public class KeyInfoService implements ApplicationListener<AbstractUaaEvent> {
+    private final String uaaBaseURL;
+    private final ConcurrentMap<CacheKey, CachedKeys> keyCache = new ConcurrentHashMap<>();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
 
     public KeyInfoService(String uaaBaseURL) {
         this.uaaBaseURL = uaaBaseURL;
@@ -47,24 +81,38 @@ public class KeyInfoService {
     }
 
     public Map<String, KeyInfo> getKeys(String sigAlg) {
-        IdentityZoneConfiguration config = IdentityZoneHolder.get().getConfig();
+        IdentityZone zone = IdentityZoneHolder.get();
+        IdentityZoneConfiguration config = zone.getConfig();
         if (config == null || config.getTokenPolicy().getKeys() == null || config.getTokenPolicy().getKeys().isEmpty()) {
             config = IdentityZoneHolder.getUaaZone().getConfig();
         }
 
+        Map<String, TokenPolicy.KeyInformation> keyInformation = config.getTokenPolicy().getKeys();
+        if (keyInformation == null || keyInformation.isEmpty()) {
+            return Collections.singletonMap(LegacyTokenKey.LEGACY_TOKEN_KEY_ID, LegacyTokenKey.getLegacyTokenKeyInfo());
+        }
+
+        String keyUrl = addSubdomainToUrl(uaaBaseURL, zone.getSubdomain());
+        String fingerprint = fingerprint(keyUrl, sigAlg, keyInformation);
+        CacheKey cacheKey = new CacheKey(zone.getId(), sigAlg);
+        CachedKeys cached = keyCache.get(cacheKey);
+        if (cached != null && cached.fingerprint.equals(fingerprint)) {
+            cacheHits.incrementAndGet();
+            return cached.keys;
+        }
+
+        cacheMisses.incrementAndGet();
         Map<String, KeyInfo> keys = new HashMap<>();
-        for (Map.Entry<String, TokenPolicy.KeyInformation> entry : config.getTokenPolicy().getKeys().entrySet()) {
-            KeyInfo keyInfo = KeyInfoBuilder.build(entry.getKey(), entry.getValue().getSigningKey(), addSubdomainToUrl(uaaBaseURL, IdentityZoneHolder.get().getSubdomain()),
+        for (Map.Entry<String, TokenPolicy.KeyInformation> entry : keyInformation.entrySet()) {
+            KeyInfo keyInfo = KeyInfoBuilder.build(entry.getKey(), entry.getValue().getSigningKey(), keyUrl,
                 sigAlg != null ? sigAlg : entry.getValue().getSigningAlg(),
                 entry.getValue().getSigningCert());
             keys.put(entry.getKey(), keyInfo);
         }
 
-        if (keys.isEmpty()) {
-            keys.put(LegacyTokenKey.LEGACY_TOKEN_KEY_ID, LegacyTokenKey.getLegacyTokenKeyInfo());
-        }
-
-        return keys;
+        cached = new CachedKeys(fingerprint, Collections.unmodifiableMap(keys));
+        keyCache.put(cacheKey, cached);
+        return cached.keys;
     }
 
     public KeyInfo getActiveKey() {
@@ -95,4 +143,95 @@ public class KeyInfoService {
     public String getTokenEndpointUrl() throws URISyntaxException {
         return UaaTokenUtils.constructTokenEndpointUrl(uaaBaseURL, IdentityZoneHolder.get());
     }
+
+    @Override
+    public void onApplicationEvent(AbstractUaaEvent event) {
+        if (event instanceof IdentityZoneModifiedEvent) {
+            invalidate(((IdentityZone) event.getSource()).getId());
+        } else if (event instanceof EntityDeletedEvent && ((EntityDeletedEvent<?>) event).getDeleted() instanceof IdentityZone) {
+            invalidate(((IdentityZone) ((EntityDeletedEvent<?>) event).getDeleted()).getId());
+        }
+    }
+
+    public void invalidate(String zoneId) {
+        keyCache.keySet().removeIf(key -> Objects.equals(key.zoneId, zoneId));
+    }
+
+    @ManagedOperation(description = "Evict all cached signing keys")
+    public void invalidateAll() {
+        keyCache.clear();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Key Cache Hit Count")
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Key Cache Miss Count")
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Key Cache Size")
+    public int getCacheSize() {
+        return keyCache.size();
+    }
+
+    private static String fingerprint(String keyUrl, String sigAlg, Map<String, TokenPolicy.KeyInformation> keyInformation) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        update(digest, keyUrl);
+        update(digest, sigAlg);
+        for (Map.Entry<String, TokenPolicy.KeyInformation> entry : new TreeMap<>(keyInformation).entrySet()) {
+            update(digest, entry.getKey());
+            update(digest, entry.getValue().getSigningKey());
+            update(digest, entry.getValue().getSigningAlg());
+            update(digest, entry.getValue().getSigningCert());
+        }
+        return new String(Hex.encode(digest.digest()));
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+    }
+
+    private static final class CacheKey {
+        private final String zoneId;
+        private final String sigAlg;
+
+        private CacheKey(String zoneId, String sigAlg) {
+            this.zoneId = zoneId;
+            this.sigAlg = sigAlg;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+            CacheKey that = (CacheKey) o;
+            return Objects.equals(zoneId, that.zoneId) && Objects.equals(sigAlg, that.sigAlg);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(zoneId, sigAlg);
+        }
+    }
+
+    private static final class CachedKeys {
+        private final String fingerprint;
+        private final Map<String, KeyInfo> keys;
+
+        private CachedKeys(String fingerprint, Map<String, KeyInfo> keys) {
+            this.fingerprint = fingerprint;
+            this.keys = keys;
+        }
+    }
 }
@@ -0,0 +1,43 @@
+package org.cloudfoundry.identity.uaa.oauth;
+
+import org.cloudfoundry.identity.uaa.oauth.token.RevocableToken;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.cloudfoundry.identity.uaa.util.TimeServiceImpl;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Short-lived, bounded cache of the revocable token rows that opaque access tokens
+ * resolve to, keyed by zone id and token id.
+ *
+ * @see AbstractTokenCache
+ */
+@ManagedResource(
+        objectName = "cloudfoundry.identity:name=OpaqueTokenCache",
+        description = "UAA Opaque Token Cache Metrics"
+)
+public class OpaqueTokenCache extends AbstractTokenCache<RevocableToken> {
+
+    public OpaqueTokenCache() {
+        this(false, 0, 0, new TimeServiceImpl());
+    }
+
+    public OpaqueTokenCache(boolean enabled, int timeToLive, int maxEntries, TimeService timeService) {
+        super(enabled, timeToLive, maxEntries, timeService);
+    }
+
+    public RevocableToken get(String tokenId, String zoneId) {
+        return lookup(cacheKey(tokenId, zoneId));
+    }
+
+    public void put(String tokenId, String zoneId, RevocableToken token) {
+        store(cacheKey(tokenId, zoneId), token, zoneId, tokenId, token.getUserId(), token.getClientId(), token.getExpiresAt());
+    }
+
+    public void evict(String tokenId, String zoneId) {
+        invalidate(cacheKey(tokenId, zoneId));
+    }
+
+    private static String cacheKey(String tokenId, String zoneId) {
+        return zoneId + ":" + tokenId;
+    }
+}
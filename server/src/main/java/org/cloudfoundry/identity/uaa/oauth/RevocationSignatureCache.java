@@ -0,0 +1,144 @@
+package org.cloudfoundry.identity.uaa.oauth;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.cloudfoundry.identity.uaa.oauth.client.ClientConstants;
+import org.cloudfoundry.identity.uaa.user.UaaUser;
+import org.cloudfoundry.identity.uaa.util.UaaTokenUtils;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.security.oauth2.provider.ClientDetails;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the revocation signatures accepted for a client and user pair. Entries are keyed
+ * by the ids of the client and user and the times they were last modified, so no credential
+ * ends up in the key, and a changed secret, token salt, password, email or username, which
+ * all move one of those times, never matches a stale entry. Clients and users without
+ * modification times are not cached. The cache is disabled unless explicitly enabled.
+ */
+@ManagedResource(
+        objectName = "cloudfoundry.identity:name=RevocationSignatureCache",
+        description = "UAA Revocation Signature Cache Metrics"
+)
+public class RevocationSignatureCache {
+
+    private final boolean enabled;
+    private final Cache<Key, List<String>> signatures;
+
+    public RevocationSignatureCache() {
+        this(false, 0, 0);
+    }
+
+    public RevocationSignatureCache(boolean enabled, int timeToLive, int maxEntries) {
+        this.enabled = enabled && timeToLive > 0 && maxEntries > 0;
+        this.signatures = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(maxEntries, 0))
+                .expireAfterWrite(Math.max(timeToLive, 0), TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the signature for each of the client's secrets, or for no secret if it has none
+     */
+    public List<String> getRevocationSignatures(ClientDetails client, UaaUser user) {
+        Key key = enabled ? key(client, user) : null;
+        if (key == null) {
+            return compute(client, user);
+        }
+        List<String> result = signatures.getIfPresent(key);
+        if (result == null) {
+            result = compute(client, user);
+            signatures.put(key, result);
+        }
+        return result;
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Revocation Signature Cache Hit Count")
+    public long getCacheHits() {
+        return signatures.stats().hitCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Revocation Signature Cache Miss Count")
+    public long getCacheMisses() {
+        return signatures.stats().missCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Revocation Signature Cache Size")
+    public long getCacheSize() {
+        return signatures.size();
+    }
+
+    private static Key key(ClientDetails client, UaaUser user) {
+        Object clientModified = client.getAdditionalInformation() == null ? null :
+                client.getAdditionalInformation().get(ClientConstants.LAST_MODIFIED);
+        if (!(clientModified instanceof Date) || (user != null && user.getModified() == null)) {
+            return null;
+        }
+        return user == null ?
+                new Key(client.getClientId(), ((Date) clientModified).getTime(), null, 0, 0) :
+                new Key(client.getClientId(), ((Date) clientModified).getTime(), user.getId(),
+                        user.getModified().getTime(),
+                        user.getPasswordLastModified() == null ? 0 : user.getPasswordLastModified().getTime());
+    }
+
+    private static List<String> compute(ClientDetails client, UaaUser user) {
+        if (client.getClientSecret() == null) {
+            return Collections.singletonList(UaaTokenUtils.getRevocableTokenSignature(client, null, user));
+        }
+        List<String> result = new ArrayList<>();
+        for (String clientSecret : client.getClientSecret().split(" ")) {
+            result.add(UaaTokenUtils.getRevocableTokenSignature(client, clientSecret, user));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static final class Key {
+        private final String clientId;
+        private final long clientModified;
+        private final String userId;
+        private final long userModified;
+        private final long passwordModified;
+
+        private Key(String clientId, long clientModified, String userId, long userModified, long passwordModified) {
+            this.clientId = clientId;
+            this.clientModified = clientModified;
+            this.userId = userId;
+            this.userModified = userModified;
+            this.passwordModified = passwordModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return clientModified == key.clientModified
+                    && userModified == key.userModified
+                    && passwordModified == key.passwordModified
+                    && Objects.equals(clientId, key.clientId)
+                    && Objects.equals(userId, key.userId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(clientId, clientModified, userId, userModified, passwordModified);
+        }
+    }
+}
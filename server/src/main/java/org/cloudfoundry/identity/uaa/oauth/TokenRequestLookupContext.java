@@ -0,0 +1,113 @@
+package org.cloudfoundry.identity.uaa.oauth;
+
+import org.cloudfoundry.identity.uaa.user.UaaUser;
+import org.cloudfoundry.identity.uaa.user.UaaUserDatabase;
+import org.cloudfoundry.identity.uaa.user.UaaUserPrototype;
+import org.cloudfoundry.identity.uaa.user.UserInfo;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.cloudfoundry.identity.uaa.zone.MultitenantClientServices;
+import org.springframework.security.oauth2.provider.ClientDetails;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Memoizes client and user lookups for the duration of a single token request, so that
+ * the token granters, {@link UaaTokenServices}, the id token creator and
+ * {@link TokenValidationService} share one database round trip per client and user.
+ *
+ * The context is bound to the current thread between {@link #open()} and {@link #close()}.
+ * When no context is open every lookup goes straight to the underlying service.
+ * Failed lookups are never memoized.
+ */
+public final class TokenRequestLookupContext {
+
+    private static final ThreadLocal<TokenRequestLookupContext> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, ClientDetails> clients = new HashMap<>();
+    private final Map<String, UaaUser> users = new HashMap<>();
+    private final Map<String, UaaUserPrototype> userPrototypes = new HashMap<>();
+    private final Map<String, Optional<UserInfo>> userInfos = new HashMap<>();
+
+    private TokenRequestLookupContext() {
+    }
+
+    /**
+     * Binds a new context to the current thread.
+     *
+     * @return true if a context was opened, false if one was already open, in which case
+     * the caller must not close it
+     */
+    public static boolean open() {
+        if (CURRENT.get() != null) {
+            return false;
+        }
+        CURRENT.set(new TokenRequestLookupContext());
+        return true;
+    }
+
+    public static void close() {
+        CURRENT.remove();
+    }
+
+    public static boolean isOpen() {
+        return CURRENT.get() != null;
+    }
+
+    public static ClientDetails loadClientByClientId(MultitenantClientServices clientDetailsService, String clientId, String zoneId) {
+        TokenRequestLookupContext context = CURRENT.get();
+        if (context == null) {
+            return clientDetailsService.loadClientByClientId(clientId, zoneId);
+        }
+        return memoize(context.clients, key(zoneId, clientId), () -> clientDetailsService.loadClientByClientId(clientId, zoneId));
+    }
+
+    public static ClientDetails loadClientByClientId(MultitenantClientServices clientDetailsService, String clientId) {
+        TokenRequestLookupContext context = CURRENT.get();
+        if (context == null) {
+            return clientDetailsService.loadClientByClientId(clientId);
+        }
+        return memoize(context.clients, key(IdentityZoneHolder.get().getId(), clientId), () -> clientDetailsService.loadClientByClientId(clientId));
+    }
+
+    public static UaaUser retrieveUserById(UaaUserDatabase userDatabase, String userId) {
+        TokenRequestLookupContext context = CURRENT.get();
+        if (context == null) {
+            return userDatabase.retrieveUserById(userId);
+        }
+        return memoize(context.users, key(IdentityZoneHolder.get().getId(), userId), () -> userDatabase.retrieveUserById(userId));
+    }
+
+    public static UaaUserPrototype retrieveUserPrototypeById(UaaUserDatabase userDatabase, String userId) {
+        TokenRequestLookupContext context = CURRENT.get();
+        if (context == null) {
+            return userDatabase.retrieveUserPrototypeById(userId);
+        }
+        return memoize(context.userPrototypes, key(IdentityZoneHolder.get().getId(), userId), () -> userDatabase.retrieveUserPrototypeById(userId));
+    }
+
+    public static UserInfo getUserInfo(UaaUserDatabase userDatabase, String userId) {
+        TokenRequestLookupContext context = CURRENT.get();
+        if (context == null) {
+            return userDatabase.getUserInfo(userId);
+        }
+        return memoize(context.userInfos, key(IdentityZoneHolder.get().getId(), userId), () -> Optional.ofNullable(userDatabase.getUserInfo(userId))).orElse(null);
+    }
+
+    private static <T> T memoize(Map<String, T> values, String key, Supplier<T> lookup) {
+        T value = values.get(key);
+        if (value == null) {
+            value = lookup.get();
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    private static String key(String zoneId, String id) {
+        return zoneId + ":" + id;
+    }
+}
@@ -11,10 +11,6 @@ import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.security.oauth2.provider.ClientDetails;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-
 import static org.cloudfoundry.identity.uaa.util.JwtTokenSignedByThisUAA.buildAccessTokenValidator;
 import static org.cloudfoundry.identity.uaa.util.JwtTokenSignedByThisUAA.buildRefreshTokenValidator;
 
@@ -24,26 +20,63 @@ public class TokenValidationService {
     private UaaUserDatabase userDatabase;
     private MultitenantClientServices multitenantClientServices;
     private KeyInfoService keyInfoService;
+    private VerifiedTokenCache verifiedTokenCache;
+    private RevocationSignatureCache revocationSignatureCache = new RevocationSignatureCache();
+    private OpaqueTokenCache opaqueTokenCache = new OpaqueTokenCache();
 
     public TokenValidationService(RevocableTokenProvisioning revocableTokenProvisioning,
                                   TokenEndpointBuilder tokenEndpointBuilder,
                                   UaaUserDatabase userDatabase,
                                   MultitenantClientServices multitenantClientServices,
                                   KeyInfoService keyInfoService) {
+        this(revocableTokenProvisioning, tokenEndpointBuilder, userDatabase, multitenantClientServices, keyInfoService, new VerifiedTokenCache());
+    }
+
+    public TokenValidationService(RevocableTokenProvisioning revocableTokenProvisioning,
+                                  TokenEndpointBuilder tokenEndpointBuilder,
+                                  UaaUserDatabase userDatabase,
+                                  MultitenantClientServices multitenantClientServices,
+                                  KeyInfoService keyInfoService,
+                                  VerifiedTokenCache verifiedTokenCache) {
         this.revocableTokenProvisioning = revocableTokenProvisioning;
         this.tokenEndpointBuilder = tokenEndpointBuilder;
         this.userDatabase = userDatabase;
         this.multitenantClientServices = multitenantClientServices;
         this.keyInfoService = keyInfoService;
+        this.verifiedTokenCache = verifiedTokenCache;
+    }
+
+    public void setOpaqueTokenCache(OpaqueTokenCache opaqueTokenCache) {
+        this.opaqueTokenCache = opaqueTokenCache;
+    }
+
+    public void setRevocationSignatureCache(RevocationSignatureCache revocationSignatureCache) {
+        this.revocationSignatureCache = revocationSignatureCache;
     }
 
     public JwtTokenSignedByThisUAA validateToken(String token, boolean isAccessToken) {
+        String zoneId = IdentityZoneHolder.get().getId();
+        // refresh tokens are never cached, rotation deletes them without a revocation event
+        if (isAccessToken) {
+            JwtTokenSignedByThisUAA verified = verifiedTokenCache.get(token, zoneId);
+            if (verified != null) {
+                return verified;
+            }
+        }
+
+        String tokenValue = token;
+        RevocableToken revocableToken = null;
         if (!UaaTokenUtils.isJwtToken(token)) {
-            RevocableToken revocableToken;
-            try {
-                revocableToken = revocableTokenProvisioning.retrieve(token, IdentityZoneHolder.get().getId());
-            } catch (EmptyResultDataAccessException ex) {
-                throw new TokenRevokedException("The token expired, was revoked, or the token ID is incorrect.");
+            revocableToken = isAccessToken ? opaqueTokenCache.get(token, zoneId) : null;
+            if (revocableToken == null) {
+                try {
+                    revocableToken = revocableTokenProvisioning.retrieve(token, zoneId);
+                } catch (EmptyResultDataAccessException ex) {
+                    throw new TokenRevokedException("The token expired, was revoked, or the token ID is incorrect.");
+                }
+                if (isAccessToken) {
+                    opaqueTokenCache.put(token, zoneId, revocableToken);
+                }
             }
             token = revocableToken.getValue();
         }
@@ -51,7 +84,7 @@ public class TokenValidationService {
         JwtTokenSignedByThisUAA jwtToken = isAccessToken ?
                 buildAccessTokenValidator(token, keyInfoService) : buildRefreshTokenValidator(token, keyInfoService);
         jwtToken
-                .checkRevocableTokenStore(revocableTokenProvisioning)
+                .checkRevocableTokenStore(revocableTokenProvisioning, revocableToken)
                 .checkIssuer(tokenEndpointBuilder.getTokenEndpoint(IdentityZoneHolder.get()));
 
         ClientDetails client = jwtToken.getClientDetails(multitenantClientServices);
@@ -59,20 +92,11 @@ public class TokenValidationService {
         jwtToken
                 .checkClientAndUser(client, user);
 
-        List<String> clientSecrets = new ArrayList<>();
-        List<String> revocationSignatureList = new ArrayList<>();
-        if (client.getClientSecret() != null) {
-            clientSecrets.addAll(Arrays.asList(client.getClientSecret().split(" ")));
-        } else {
-            revocationSignatureList.add(UaaTokenUtils.getRevocableTokenSignature(client, null, user));
-        }
+        jwtToken = jwtToken.checkRevocationSignature(revocationSignatureCache.getRevocationSignatures(client, user));
 
-        for (String clientSecret : clientSecrets) {
-            revocationSignatureList.add(UaaTokenUtils.getRevocableTokenSignature(client, clientSecret, user));
+        if (isAccessToken) {
+            verifiedTokenCache.put(tokenValue, zoneId, jwtToken);
         }
-
-        jwtToken = jwtToken.checkRevocationSignature(revocationSignatureList);
-
         return jwtToken;
     }
 }
@@ -12,7 +12,7 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.oauth;
 
-import org.cloudfoundry.identity.uaa.util.UaaStringUtils;
+import org.cloudfoundry.identity.uaa.util.ScopeMatcher;
 import org.cloudfoundry.identity.uaa.zone.MultitenantClientServices;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
 import org.springframework.security.core.GrantedAuthority;
@@ -26,7 +26,6 @@ import org.springframework.security.oauth2.provider.TokenRequest;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 import static org.cloudfoundry.identity.uaa.oauth.token.TokenConstants.GRANT_TYPE_CLIENT_CREDENTIALS;
 import static org.cloudfoundry.identity.uaa.oauth.token.TokenConstants.GRANT_TYPE_USER_TOKEN;
@@ -66,9 +65,9 @@ public class UaaOauth2RequestValidator implements OAuth2RequestValidator {
         }
 
         if (wildCardsAllowed) {
-            Set<Pattern> wildcards = UaaStringUtils.constructWildcards(clientScopes);
+            ScopeMatcher wildcards = ScopeMatcher.of(clientScopes);
             for (String scope : requestScopes) {
-                if (!UaaStringUtils.matches(wildcards, scope)) {
+                if (!wildcards.matches(scope)) {
                     throw new InvalidScopeException("Invalid scope: " + scope, clientScopes);
                 }
             }
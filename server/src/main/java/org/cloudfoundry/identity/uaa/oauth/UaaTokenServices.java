@@ -19,7 +19,7 @@ import org.cloudfoundry.identity.uaa.audit.event.TokenIssuedEvent;
 import org.cloudfoundry.identity.uaa.authentication.Origin;
 import org.cloudfoundry.identity.uaa.authentication.UaaAuthentication;
 import org.cloudfoundry.identity.uaa.authentication.UaaPrincipal;
-import org.cloudfoundry.identity.uaa.oauth.jwt.JwtHelper;
+import org.cloudfoundry.identity.uaa.oauth.jwt.JwtTokenEncoder;
 import org.cloudfoundry.identity.uaa.oauth.openid.IdToken;
 import org.cloudfoundry.identity.uaa.oauth.openid.IdTokenCreationException;
 import org.cloudfoundry.identity.uaa.oauth.openid.IdTokenCreator;
@@ -245,8 +245,8 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
         boolean isOpaque = OPAQUE.getStringValue().equals(requestedTokenFormat);
         boolean isRevocable = isRevocable(claims, isOpaque);
 
-        UaaUser user = new UaaUser(userDatabase.retrieveUserPrototypeById(claims.getUserId()));
-        BaseClientDetails client = (BaseClientDetails) clientDetailsService.loadClientByClientId(claims.getCid());
+        UaaUser user = new UaaUser(TokenRequestLookupContext.retrieveUserPrototypeById(userDatabase, claims.getUserId()));
+        BaseClientDetails client = (BaseClientDetails) TokenRequestLookupContext.loadClientByClientId(clientDetailsService, claims.getCid());
 
         long refreshTokenExpireMillis = claims.getExp().longValue() * MILLIS_PER_SECOND;
         if (new Date(refreshTokenExpireMillis).before(timeService.getCurrentDate())) {
@@ -389,7 +389,7 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
     }
 
     private MultiValueMap<String, String> getUserAttributes(String userId) {
-        UserInfo userInfo = userDatabase.getUserInfo(userId);
+        UserInfo userInfo = TokenRequestLookupContext.getUserInfo(userDatabase, userId);
         if (userInfo != null) {
             return userInfo.getUserAttributes();
         } else {
@@ -399,7 +399,7 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
 
 
     private HashSet<String> rolesAsSet(String userId) {
-        UserInfo userInfo = userDatabase.getUserInfo(userId);
+        UserInfo userInfo = TokenRequestLookupContext.getUserInfo(userDatabase, userId);
         if (userInfo != null) {
             ArrayList<String> roles = (ArrayList<String>) userInfo.getRoles();
             return roles == null ? Sets.newHashSet() : Sets.newHashSet(roles);
@@ -464,9 +464,9 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
                 revocableHashSignature,
                 isRevocable,
                 additionalRootClaims);
-        String token = JwtHelper.encode(jwtAccessToken, getActiveKeyInfo()).getEncoded();
+        String token = JwtTokenEncoder.encode(jwtAccessToken, getActiveKeyInfo());
         compositeToken.setValue(token);
-        BaseClientDetails clientDetails = (BaseClientDetails) clientDetailsService.loadClientByClientId(clientId);
+        BaseClientDetails clientDetails = (BaseClientDetails) TokenRequestLookupContext.loadClientByClientId(clientDetailsService, clientId);
 
         if (idTokenGranter.shouldSendIdToken(user, clientDetails, requestedScopes, grantType)) {
             IdToken idTokenContent;
@@ -475,7 +475,7 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
             } catch (RuntimeException | IdTokenCreationException ignored) {
                 throw new IllegalStateException("Cannot convert id token to JSON");
             }
-            String encodedIdTokenContent = JwtHelper.encode(idTokenContent.getClaimMap(), keyInfoService.getActiveKey()).getEncoded();
+            String encodedIdTokenContent = JwtTokenEncoder.encode(idTokenContent.getClaimMap(), keyInfoService.getActiveKey());
             compositeToken.setIdTokenValue(encodedIdTokenContent);
         }
 
@@ -590,7 +590,7 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
         Set<String> authNContextClassRef = null;
 
         OAuth2Request oAuth2Request = authentication.getOAuth2Request();
-        BaseClientDetails client = (BaseClientDetails) clientDetailsService.loadClientByClientId(oAuth2Request.getClientId(), IdentityZoneHolder.get().getId());
+        BaseClientDetails client = (BaseClientDetails) TokenRequestLookupContext.loadClientByClientId(clientDetailsService, oAuth2Request.getClientId(), IdentityZoneHolder.get().getId());
         Collection<GrantedAuthority> clientScopes = null;
 
         // Clients should really by different kinds of users
@@ -599,7 +599,7 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
         } else {
             clientScopes = getClientPermissions(client);
             userId = getUserId(authentication);
-            user = userDatabase.retrieveUserById(userId);
+            user = TokenRequestLookupContext.retrieveUserById(userDatabase, userId);
             if (authentication.getUserAuthentication() instanceof UaaAuthentication) {
                 userAuthenticationTime = new Date(((UaaAuthentication)authentication.getUserAuthentication()).getAuthenticatedTime());
                 authenticationMethods = ((UaaAuthentication) authentication.getUserAuthentication()).getAuthenticationMethods();
@@ -0,0 +1,134 @@
+package org.cloudfoundry.identity.uaa.oauth;
+
+import org.cloudfoundry.identity.uaa.account.event.PasswordChangeEvent;
+import org.cloudfoundry.identity.uaa.audit.AuditEventType;
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.client.event.AbstractClientAdminEvent;
+import org.cloudfoundry.identity.uaa.client.event.ClientDeleteEvent;
+import org.cloudfoundry.identity.uaa.client.event.ClientJwtChangeEvent;
+import org.cloudfoundry.identity.uaa.client.event.ClientUpdateEvent;
+import org.cloudfoundry.identity.uaa.client.event.SecretChangeEvent;
+import org.cloudfoundry.identity.uaa.oauth.event.TokenRevocationEvent;
+import org.cloudfoundry.identity.uaa.oauth.token.RevocableTokenIndex;
+import org.cloudfoundry.identity.uaa.scim.event.UserModifiedEvent;
+import org.cloudfoundry.identity.uaa.user.UaaUser;
+import org.cloudfoundry.identity.uaa.util.JwtTokenSignedByThisUAA;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.cloudfoundry.identity.uaa.util.TimeServiceImpl;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.security.crypto.codec.Hex;
+import org.springframework.security.oauth2.provider.ClientDetails;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.CID;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.EXPIRY_IN_SECONDS;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.JTI;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.USER_ID;
+
+/**
+ * Short-lived, bounded cache of successfully validated access tokens, keyed by
+ * zone id and a SHA-256 hash of the token value.
+ *
+ * Besides the evictions of {@link AbstractTokenCache}, entries are evicted when the
+ * user's or client's credentials change. Not every token that these changes and the token
+ * revocation endpoints invalidate is a revocable one, so they are published through the
+ * revocable token index, when there is one, to evict the other nodes' entries as well.
+ */
+@ManagedResource(
+        objectName = "cloudfoundry.identity:name=VerifiedTokenCache",
+        description = "UAA Verified Token Cache Metrics"
+)
+public class VerifiedTokenCache extends AbstractTokenCache<JwtTokenSignedByThisUAA> {
+
+    public VerifiedTokenCache() {
+        this(false, 0, 0, new TimeServiceImpl());
+    }
+
+    public VerifiedTokenCache(boolean enabled, int timeToLive, int maxEntries, TimeService timeService) {
+        super(enabled, timeToLive, maxEntries, timeService);
+    }
+
+    public JwtTokenSignedByThisUAA get(String token, String zoneId) {
+        return isEnabled() ? lookup(cacheKey(token, zoneId)) : null;
+    }
+
+    public void put(String token, String zoneId, JwtTokenSignedByThisUAA verifiedToken) {
+        if (!isEnabled()) {
+            return;
+        }
+        Map<String, Object> claims = verifiedToken.getClaims();
+        Object exp = claims.get(EXPIRY_IN_SECONDS);
+        if (exp == null) {
+            return;
+        }
+        store(cacheKey(token, zoneId), verifiedToken, zoneId,
+                (String) claims.get(JTI),
+                (String) claims.get(USER_ID),
+                (String) claims.get(CID),
+                TimeUnit.SECONDS.toMillis(Long.parseLong(exp.toString())));
+    }
+
+    @Override
+    public void onApplicationEvent(AbstractUaaEvent event) {
+        super.onApplicationEvent(event);
+        if (!isEnabled()) {
+            return;
+        }
+        if (event instanceof TokenRevocationEvent) {
+            TokenRevocationEvent revocation = (TokenRevocationEvent) event;
+            publish(revocation.getZoneId(), revocation.getUserId(), revocation.getClientId());
+        } else if (event instanceof UserModifiedEvent) {
+            UserModifiedEvent modified = (UserModifiedEvent) event;
+            if (modified.getEventType() == AuditEventType.UserCreatedEvent) {
+                evictUser(modified.getUserId(), event.getIdentityZoneId());
+            } else {
+                publish(event.getIdentityZoneId(), modified.getUserId(), null);
+            }
+        } else if (event instanceof PasswordChangeEvent) {
+            UaaUser user = ((PasswordChangeEvent) event).getUser();
+            publish(user.getZoneId(), user.getId(), null);
+        } else if (event instanceof AbstractClientAdminEvent) {
+            ClientDetails client = ((AbstractClientAdminEvent) event).getClient();
+            if (client == null) {
+                return;
+            }
+            if (event instanceof ClientUpdateEvent || event instanceof SecretChangeEvent
+                    || event instanceof ClientJwtChangeEvent || event instanceof ClientDeleteEvent) {
+                publish(event.getIdentityZoneId(), null, client.getClientId());
+            } else {
+                evictClient(client.getClientId(), event.getIdentityZoneId());
+            }
+        }
+    }
+
+    private void publish(String zoneId, String userId, String clientId) {
+        if (userId == null && clientId == null) {
+            return;
+        }
+        RevocableTokenIndex index = getRevocationIndex();
+        if (index != null && index.isEnabled()) {
+            // evicts this node's entries too, through the listener
+            index.revoked(zoneId, null, userId, clientId);
+        } else if (userId == null) {
+            evictClient(clientId, zoneId);
+        } else if (clientId == null) {
+            evictUser(userId, zoneId);
+        } else {
+            evictUserAndClient(userId, clientId, zoneId);
+        }
+    }
+
+    private static String cacheKey(String token, String zoneId) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return zoneId + ":" + new String(Hex.encode(digest.digest(token.getBytes(StandardCharsets.UTF_8))));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -9,6 +9,7 @@ import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
 import org.springframework.security.oauth2.common.exceptions.RedirectMismatchException;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.util.AntPathMatcher;
+import org.springframework.util.Assert;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.util.UriComponents;
@@ -16,10 +17,15 @@ import org.springframework.web.util.UriComponentsBuilder;
 
 import java.net.URI;
 import java.util.AbstractMap.SimpleEntry;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -40,37 +46,44 @@ public class LegacyRedirectResolver extends org.cloudfoundry.identity.uaa.oauth.
             "configured uri %s. Please consider configuring your requested redirect uri to exactly match the " +
             "redirect_uri for this client.";
 
+    private static final int MAX_CACHED_MATCHERS = 1000;
+
     private final SpecCompliantRedirectMatcher specCompliantRedirectMatcher = new SpecCompliantRedirectMatcher();
+    private final Map<Set<String>, RedirectUriMatcher> redirectUriMatchers = new ConcurrentHashMap<>();
 
     @Override
     protected boolean redirectMatches(String requestedRedirect, String clientRedirect) {
-        try {
-            String normalizedRequestedRedirect = normalizeUri(requestedRedirect);
-            String normalizedClientRedirect = normalizeWildcardUri(clientRedirect);
+        return getRedirectUriMatcher(Collections.singleton(clientRedirect)).matches(new RequestedRedirect(requestedRedirect));
+    }
 
-            URI requestedRedirectURI = URI.create(normalizedRequestedRedirect);
-            ClientRedirectUriPattern clientRedirectUri = new ClientRedirectUriPattern(normalizedClientRedirect);
+    @Override
+    protected String obtainMatchingRedirect(Set<String> redirectUris, String requestedRedirect) {
+        Assert.notEmpty(redirectUris, "Redirect URIs cannot be empty");
 
-            if (!clientRedirectUri.isValidRedirect()) {
-                logger.error(String.format("Invalid redirect uri: %s", normalizedClientRedirect));
-                return false;
-            }
+        if (redirectUris.size() == 1 && requestedRedirect == null) {
+            return redirectUris.iterator().next();
+        }
+        if (requestedRedirect != null && getRedirectUriMatcher(redirectUris).matches(new RequestedRedirect(requestedRedirect))) {
+            return requestedRedirect;
+        }
+        throw new RedirectMismatchException("Invalid redirect: " + requestedRedirect
+                + " does not match one of the registered values: " + redirectUris.toString());
+    }
 
-            if (clientRedirectUri.isWildcard(normalizedClientRedirect) &&
-                    clientRedirectUri.isSafeRedirect(requestedRedirectURI) &&
-                    clientRedirectUri.match(requestedRedirectURI)) {
-                return true;
+    /**
+     * Returns the compiled matcher for a set of registered redirect URIs. Matchers are cached
+     * by the content of the set, so a client whose redirect URIs are updated gets a new matcher.
+     */
+    private RedirectUriMatcher getRedirectUriMatcher(Set<String> redirectUris) {
+        RedirectUriMatcher matcher = redirectUriMatchers.get(redirectUris);
+        if (matcher == null) {
+            matcher = new RedirectUriMatcher(redirectUris);
+            if (redirectUriMatchers.size() >= MAX_CACHED_MATCHERS) {
+                redirectUriMatchers.clear();
             }
-
-            return super.redirectMatches(normalizedRequestedRedirect, normalizedClientRedirect);
-        } catch (IllegalArgumentException e) {
-            logger.error(
-                    String.format("Could not validate whether requestedRedirect (%s) matches clientRedirectUri (%s)",
-                            requestedRedirect,
-                            clientRedirect),
-                    e);
-            return false;
+            redirectUriMatchers.put(Collections.unmodifiableSet(new LinkedHashSet<>(redirectUris)), matcher);
         }
+        return matcher;
     }
 
     @Override
@@ -94,19 +107,20 @@ public class LegacyRedirectResolver extends org.cloudfoundry.identity.uaa.oauth.
         // This legacy resolver decided that the requested redirect URI was a match for one
         // of the configured redirect uris (i.e. super.resolveRedirect() did not throw), so
         // check to see if we need to log some warnings before returning.
-        logConfiguredRedirectUrisWhichOnlyMatchFuzzily(client.getClientId(), registeredRedirectUris, requestedRedirect);
+        logConfiguredRedirectUrisWhichOnlyMatchFuzzily(client.getClientId(), getRedirectUriMatcher(registeredRedirectUris), requestedRedirect);
 
         return resolveRedirect;
     }
 
-    private void logConfiguredRedirectUrisWhichOnlyMatchFuzzily(String clientId, Set<String> registeredRedirectUris, String requestedRedirect) {
+    private void logConfiguredRedirectUrisWhichOnlyMatchFuzzily(String clientId, RedirectUriMatcher registeredRedirectUris, String requestedRedirect) {
         // For each registered redirect uri considered to be a match by this class, log a warning
         // when the standard Spring library class disagrees (i.e. when it acts more strictly).
-        registeredRedirectUris.stream()
+        RequestedRedirect requested = requestedRedirect == null ? null : new RequestedRedirect(requestedRedirect);
+        registeredRedirectUris.getRedirectUris().stream()
                 .filter(registeredRedirectUri ->
                                 registeredRedirectUri.contains(LEGACY_PORT_WILDCAR) ||
-                                (requestedRedirect != null &&
-                                this.redirectMatches(requestedRedirect, registeredRedirectUri) &&
+                                (requested != null &&
+                                registeredRedirectUris.matches(requested, registeredRedirectUri) &&
                                 !specCompliantRedirectMatcher.redirectMatches(requestedRedirect, registeredRedirectUri))
                 )
                 .forEach(registeredRedirectUri ->
@@ -190,6 +204,127 @@ public class LegacyRedirectResolver extends org.cloudfoundry.identity.uaa.oauth.
         }
     }
 
+    /**
+     * A requested redirect URI, normalized once for all the registered redirect URIs it is
+     * compared with.
+     */
+    private static class RequestedRedirect {
+        private final String redirectUri;
+        private String normalizedRedirectUri;
+        private URI uri;
+        private IllegalArgumentException invalid;
+
+        RequestedRedirect(String redirectUri) {
+            this.redirectUri = redirectUri;
+            try {
+                normalizedRedirectUri = normalizeUri(redirectUri);
+                uri = URI.create(normalizedRedirectUri);
+            } catch (IllegalArgumentException e) {
+                invalid = e;
+            }
+        }
+    }
+
+    /**
+     * The registered redirect URIs of a client, each normalized and compiled once. Registered
+     * URIs without wildcards are also kept in a hash set, as a requested URI that normalizes to
+     * one of them always matches it.
+     */
+    private class RedirectUriMatcher {
+        private final Map<String, CompiledRedirectUri> redirectUris = new LinkedHashMap<>();
+        private final Set<String> exactRedirectUris = new HashSet<>();
+
+        RedirectUriMatcher(Set<String> clientRedirects) {
+            for (String clientRedirect : clientRedirects) {
+                CompiledRedirectUri compiled = new CompiledRedirectUri(clientRedirect);
+                redirectUris.put(clientRedirect, compiled);
+                if (compiled.isExact()) {
+                    exactRedirectUris.add(compiled.normalizedRedirectUri);
+                }
+            }
+        }
+
+        Set<String> getRedirectUris() {
+            return redirectUris.keySet();
+        }
+
+        boolean matches(RequestedRedirect requested) {
+            if (requested.invalid == null && exactRedirectUris.contains(requested.normalizedRedirectUri)) {
+                return true;
+            }
+            for (CompiledRedirectUri redirectUri : redirectUris.values()) {
+                if (redirectUri.matches(requested)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean matches(RequestedRedirect requested, String clientRedirect) {
+            return redirectUris.get(clientRedirect).matches(requested);
+        }
+    }
+
+    private class CompiledRedirectUri {
+        private final String redirectUri;
+        private String normalizedRedirectUri;
+        private ClientRedirectUriPattern pattern;
+        private IllegalArgumentException invalid;
+
+        CompiledRedirectUri(String redirectUri) {
+            this.redirectUri = redirectUri;
+            try {
+                normalizedRedirectUri = normalizeWildcardUri(redirectUri);
+                pattern = new ClientRedirectUriPattern(normalizedRedirectUri);
+            } catch (IllegalArgumentException e) {
+                invalid = e;
+            }
+        }
+
+        boolean isExact() {
+            if (invalid != null || !pattern.isValidRedirect() || pattern.isWildcard(normalizedRedirectUri)) {
+                return false;
+            }
+            try {
+                URI.create(normalizedRedirectUri);
+                return true;
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+
+        boolean matches(RequestedRedirect requested) {
+            try {
+                if (requested.invalid != null) {
+                    throw requested.invalid;
+                }
+                if (invalid != null) {
+                    throw invalid;
+                }
+
+                if (!pattern.isValidRedirect()) {
+                    logger.error(String.format("Invalid redirect uri: %s", normalizedRedirectUri));
+                    return false;
+                }
+
+                if (pattern.isWildcard(normalizedRedirectUri) &&
+                        pattern.isSafeRedirect(requested.uri) &&
+                        pattern.match(requested.uri)) {
+                    return true;
+                }
+
+                return LegacyRedirectResolver.super.redirectMatches(requested.normalizedRedirectUri, normalizedRedirectUri);
+            } catch (IllegalArgumentException e) {
+                logger.error(
+                        String.format("Could not validate whether requestedRedirect (%s) matches clientRedirectUri (%s)",
+                                requested.redirectUri,
+                                redirectUri),
+                        e);
+                return false;
+            }
+        }
+    }
+
     private static class ClientRedirectUriPattern {
         // The URI spec provides a regex for matching URI parts
         // https://tools.ietf.org/html/rfc3986#appendix-B
@@ -200,11 +335,15 @@ public class LegacyRedirectResolver extends org.cloudfoundry.identity.uaa.oauth.
         private static final String WILDCARD_PORT = "99999";
         private static final String WILDCARD_PORT_PATTERN = ":" + WILDCARD_PORT;
 
-        private Matcher redirectMatcher;
-        private boolean isValidRedirect = true;
-        private boolean hasWildcardPort = false;
-        private AntPathMatcher matcher;
-        private String redirectUri;
+        // AntPathMatcher is thread safe and caches the patterns it has tokenized
+        private static final AntPathMatcher matcher = new AntPathMatcher();
+
+        private final String authority;
+        private final boolean isValidRedirect;
+        private final boolean hasWildcardPort;
+        private final String redirectUri;
+        private final String redirectUriWithoutWildcardPort;
+        private volatile String[] configuredRedirectHost;
 
         ClientRedirectUriPattern(String redirectUri) {
             if (redirectUri == null) {
@@ -212,17 +351,16 @@ public class LegacyRedirectResolver extends org.cloudfoundry.identity.uaa.oauth.
             }
 
             this.redirectUri = redirectUri;
-            matcher = new AntPathMatcher();
-            this.redirectMatcher = URI_EXTRACTOR.matcher(redirectUri);
-            if (!redirectMatcher.matches()) {
-                isValidRedirect = false;
-            }
+            Matcher redirectMatcher = URI_EXTRACTOR.matcher(redirectUri);
+            this.isValidRedirect = redirectMatcher.matches();
+            this.authority = isValidRedirect ? redirectMatcher.group(URI_EXTRACTOR_AUTHORITY_GROUP) : null;
             this.hasWildcardPort = isWildcardPort(redirectUri);
+            this.redirectUriWithoutWildcardPort = redirectUri.replace(WILDCARD_PORT_PATTERN, StringUtils.EMPTY);
         }
 
         boolean isSafeRedirect(URI requestedRedirect) {
             // We iterate backwards through the hosts to make sure the TLD and domain match
-            String[] configuredRedirectHost = splitAndReverseHost(getHost());
+            String[] configuredRedirectHost = getConfiguredRedirectHost();
             String[] requestedRedirectHost = splitAndReverseHost((Optional.ofNullable(requestedRedirect.getHost()).orElse("")));
 
             if (requestedRedirectHost.length < configuredRedirectHost.length) {
@@ -246,7 +384,7 @@ public class LegacyRedirectResolver extends org.cloudfoundry.identity.uaa.oauth.
                  if(requestedRedirect.getPort() > 0) {
                      return matcher.match(redirectUri, requestedRedirect.toString().replace(String.valueOf(requestedRedirect.getPort()), WILDCARD_PORT));
                  } else {
-                     return matcher.match(redirectUri.replace(WILDCARD_PORT_PATTERN, StringUtils.EMPTY), requestedRedirect.toString());
+                     return matcher.match(redirectUriWithoutWildcardPort, requestedRedirect.toString());
                  }
             }
             return matcher.match(redirectUri, requestedRedirect.toString());
@@ -260,8 +398,16 @@ public class LegacyRedirectResolver extends org.cloudfoundry.identity.uaa.oauth.
             return configuredRedirectPattern.contains(WILDCARD_PORT_PATTERN);
         }
 
+        private String[] getConfiguredRedirectHost() {
+            String[] host = configuredRedirectHost;
+            if (host == null) {
+                host = splitAndReverseHost(getHost());
+                configuredRedirectHost = host;
+            }
+            return host;
+        }
+
         private String getHost() {
-            String authority = redirectMatcher.group(URI_EXTRACTOR_AUTHORITY_GROUP);
             return stripPort(stripAuthority(authority));
         }
 
@@ -19,10 +19,13 @@ import org.cloudfoundry.identity.uaa.oauth.jwk.JsonWebKeySet;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ChainedSignatureVerifier implements Verifier {
     private final List<SignatureVerifier> delegates;
+    private final Map<String, SignatureVerifier> delegatesByKeyId = new HashMap<>();
 
     public ChainedSignatureVerifier(JsonWebKeySet<? extends JsonWebKey> keys) {
         if(keys == null || keys.getKeys() == null || keys.getKeys().isEmpty()) {
@@ -30,7 +33,11 @@ public class ChainedSignatureVerifier implements Verifier {
         }
         List<SignatureVerifier> ds = new ArrayList<>(keys.getKeys().size());
         for (JsonWebKey key : keys.getKeys()) {
-            ds.add(new SignatureVerifier(key));
+            SignatureVerifier verifier = new SignatureVerifier(key);
+            ds.add(verifier);
+            if (key.getKid() != null) {
+                delegatesByKeyId.putIfAbsent(key.getKid(), verifier);
+            }
         }
         delegates = Collections.unmodifiableList(ds);
     }
@@ -46,4 +53,12 @@ public class ChainedSignatureVerifier implements Verifier {
     public List<SignatureVerifier> getDelegates() {
         return delegates;
     }
+
+    /**
+     * @return the delegate for the key with this key id, or null if the keys were not given
+     * as a key set or none of them has this key id
+     */
+    public SignatureVerifier getDelegate(String keyId) {
+        return keyId == null ? null : delegatesByKeyId.get(keyId);
+    }
 }
@@ -3,6 +3,7 @@ package org.cloudfoundry.identity.uaa.oauth.jwt;
 import com.nimbusds.jose.Algorithm;
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
 import com.nimbusds.jose.jwk.JWKSet;
 import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
 import com.nimbusds.jose.jwk.source.JWKSource;
@@ -112,8 +113,9 @@ public class JwtClientAuthentication {
         if (!clientId.equals(getClientId(clientAssertion))) {
           throw new BadCredentialsException("Wrong client_assertion");
         }
-        return clientId.equals(validateClientJWToken(JWTParser.parse(clientAssertion), oidcMetadataFetcher == null ? new JWKSet() :
-            JWKSet.parse(oidcMetadataFetcher.fetchWebKeySet(clientJwtConfiguration).getKeySetMap()),
+        JWT jwtAssertion = JWTParser.parse(clientAssertion);
+        return clientId.equals(validateClientJWToken(jwtAssertion, oidcMetadataFetcher == null ? new JWKSet() :
+            oidcMetadataFetcher.fetchJWKSet(clientJwtConfiguration, getKeyId(jwtAssertion)),
             clientId, keyInfoService.getTokenEndpointUrl()).getSubject());
       } catch (ParseException | URISyntaxException | OidcMetadataFetchingException e) {
         throw new BadCredentialsException("Bad client_assertion", e);
@@ -137,6 +139,10 @@ public class JwtClientAuthentication {
     }
   }
 
+  private static String getKeyId(JWT jwtAssertion) {
+    return jwtAssertion.getHeader() instanceof JWSHeader ? ((JWSHeader) jwtAssertion.getHeader()).getKeyID() : null;
+  }
+
   private JWTClaimsSet validateClientJWToken(JWT jwtAssertion, JWKSet jwkSet, String expectedClientId, String expectedAud) {
     Algorithm algorithm = jwtAssertion.getHeader().getAlgorithm();
     if (algorithm == null || NOT_SUPPORTED_ALGORITHMS.contains(algorithm) || !(algorithm instanceof JWSAlgorithm)) {
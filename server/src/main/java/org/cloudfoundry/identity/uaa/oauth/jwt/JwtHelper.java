@@ -205,9 +205,23 @@ class JwtImpl implements Jwt {
             return;
         } else if (signedJwtObject != null && verifier instanceof ChainedSignatureVerifier chainedSignatureVerifier) {
             Exception last = new InvalidSignatureException("No matching keys found.");
+            String keyId = ((JWSHeader) signedJwtObject.getHeader()).getKeyID();
+            // try the key the token names first, then any other key
+            SignatureVerifier match = chainedSignatureVerifier.getDelegate(keyId);
+            if (match != null) {
+                try {
+                    validateClientJWToken(signedJwtObject, match.getJwkSet(keyId));
+                    return;
+                } catch (Exception e) {
+                    last = e;
+                }
+            }
             for (SignatureVerifier delegate : chainedSignatureVerifier.getDelegates()) {
+                if (delegate == match) {
+                    continue;
+                }
                 try {
-                    validateClientJWToken(signedJwtObject, delegate.getJwkSet(((JWSHeader) signedJwtObject.getHeader()).getKeyID()));
+                    validateClientJWToken(signedJwtObject, delegate.getJwkSet(keyId));
                     //success
                     return;
                 } catch (Exception e) {
@@ -0,0 +1,297 @@
+package org.cloudfoundry.identity.uaa.oauth.jwt;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSHeader;
+import org.cloudfoundry.identity.uaa.oauth.KeyInfo;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static com.nimbusds.jwt.JWTClaimNames.NOT_BEFORE;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.AUD;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.EXPIRY_IN_SECONDS;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.IAT;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.ISS;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.JTI;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.SUB;
+
+/**
+ * Encodes and signs tokens without building the intermediate Nimbus header and claims
+ * objects that {@link JwtHelper#encode(Map, KeyInfo)} goes through.
+ *
+ * The header segment is serialized once per {@link KeyInfo}. The claims are written with
+ * Jackson's streaming generator into a per-thread buffer and base64url encoded straight
+ * into the signing input. The resulting header and payload segments are identical to the
+ * ones produced by {@link JwtHelper#encode(Map, KeyInfo)}; claims that cannot be written
+ * identically, such as non-numeric dates or arbitrary objects, are handed to
+ * {@link JwtHelper#encode(Map, KeyInfo)} instead.
+ */
+public final class JwtTokenEncoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final byte[] BASE64URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private static final Cache<KeyInfo, EncodedHeader> HEADERS = CacheBuilder.newBuilder().weakKeys().build();
+    private static final ThreadLocal<ClaimsBuffer> BUFFERS = ThreadLocal.withInitial(ClaimsBuffer::new);
+
+    private JwtTokenEncoder() {
+    }
+
+    public static String encode(Map<String, Object> claims, KeyInfo keyInfo) {
+        if (claims == null) {
+            return JwtHelper.encode(null, keyInfo).getEncoded();
+        }
+        EncodedHeader header = header(keyInfo);
+        ClaimsBuffer buffer = BUFFERS.get();
+        try {
+            if (!writeClaims(claims, buffer)) {
+                return JwtHelper.encode(claims, keyInfo).getEncoded();
+            }
+            byte[] signingInput = buffer.signingInput(header.encoded);
+            String signature = keyInfo.getSigner().sign(header.jwsHeader, signingInput).toString();
+            return new StringBuilder(signingInput.length + 1 + signature.length())
+                    .append(new String(signingInput, StandardCharsets.US_ASCII))
+                    .append('.')
+                    .append(signature)
+                    .toString();
+        } catch (IOException | JOSEException e) {
+            throw new InvalidTokenException("Invalid token", e);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private static EncodedHeader header(KeyInfo keyInfo) {
+        try {
+            return HEADERS.get(keyInfo, () -> {
+                HeaderParameters parameters = new HeaderParameters(keyInfo.algorithm(), keyInfo.keyId(), keyInfo.keyURL());
+                JWSHeader jwsHeader = JWSHeader.parse(JsonUtils.convertValue(parameters, HashMap.class));
+                return new EncodedHeader(jwsHeader, jwsHeader.toBase64URL().toString().getBytes(StandardCharsets.US_ASCII));
+            });
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ParseException) {
+                throw new InvalidTokenException("Invalid token", e.getCause());
+            }
+            throw new IllegalArgumentException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes the claims the way Nimbus serializes a parsed claims set: top level claims in
+     * {@link HashMap} order with nulls and an empty audience omitted, registered date claims
+     * as whole seconds and a single audience as a plain string.
+     *
+     * @return false if a claim cannot be written identically
+     */
+    private static boolean writeClaims(Map<String, Object> claims, ClaimsBuffer out) throws IOException {
+        Map<String, Object> ordered = new HashMap<>();
+        for (Map.Entry<String, Object> claim : claims.entrySet()) {
+            Object value = claim.getValue();
+            if (value != null && !(AUD.equals(claim.getKey()) && value instanceof List && ((List<?>) value).isEmpty())) {
+                ordered.put(claim.getKey(), value);
+            }
+        }
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            for (Map.Entry<String, Object> claim : ordered.entrySet()) {
+                String name = claim.getKey();
+                Object value = claim.getValue();
+                switch (name) {
+                    case EXPIRY_IN_SECONDS:
+                    case IAT:
+                    case NOT_BEFORE:
+                        if (!(value instanceof Number)) {
+                            return false;
+                        }
+                        generator.writeNumberField(name, ((Number) value).longValue());
+                        break;
+                    case ISS:
+                    case SUB:
+                    case JTI:
+                        if (!(value instanceof String) || !isSafeString((String) value)) {
+                            return false;
+                        }
+                        generator.writeStringField(name, (String) value);
+                        break;
+                    case AUD:
+                        if (!writeAudience(generator, value)) {
+                            return false;
+                        }
+                        break;
+                    default:
+                        if (!isSafeString(name)) {
+                            return false;
+                        }
+                        generator.writeFieldName(name);
+                        if (!writeValue(generator, value)) {
+                            return false;
+                        }
+                }
+            }
+            generator.writeEndObject();
+        }
+        return true;
+    }
+
+    private static boolean writeAudience(JsonGenerator generator, Object value) throws IOException {
+        if (value instanceof String) {
+            if (!isSafeString((String) value)) {
+                return false;
+            }
+            generator.writeStringField(AUD, (String) value);
+            return true;
+        }
+        if (!(value instanceof List)) {
+            return false;
+        }
+        List<?> audience = (List<?>) value;
+        for (Object aud : audience) {
+            if (!(aud instanceof String) || !isSafeString((String) aud)) {
+                return false;
+            }
+        }
+        if (audience.size() == 1) {
+            generator.writeStringField(AUD, (String) audience.get(0));
+            return true;
+        }
+        generator.writeArrayFieldStart(AUD);
+        for (Object aud : audience) {
+            generator.writeString((String) aud);
+        }
+        generator.writeEndArray();
+        return true;
+    }
+
+    private static boolean writeValue(JsonGenerator generator, Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String) {
+            if (!isSafeString((String) value)) {
+                return false;
+            }
+            generator.writeString((String) value);
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            generator.writeNumber(((Number) value).longValue());
+        } else if (value instanceof Map) {
+            generator.writeStartObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!(entry.getKey() instanceof String) || !isSafeString((String) entry.getKey())) {
+                    return false;
+                }
+                generator.writeFieldName((String) entry.getKey());
+                if (!writeValue(generator, entry.getValue())) {
+                    return false;
+                }
+            }
+            generator.writeEndObject();
+        } else if (value instanceof Collection) {
+            generator.writeStartArray();
+            for (Object element : (Collection<?>) value) {
+                if (!writeValue(generator, element)) {
+                    return false;
+                }
+            }
+            generator.writeEndArray();
+        } else if (value instanceof String[]) {
+            generator.writeStartArray();
+            for (String element : (String[]) value) {
+                if (!writeValue(generator, element)) {
+                    return false;
+                }
+            }
+            generator.writeEndArray();
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Jackson and Gson agree on how to escape quotes, backslashes and the common control
+     * characters, but not on the remaining control characters, the line and paragraph
+     * separators or characters outside the basic multilingual plane.
+     */
+    private static boolean isSafeString(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x20) {
+                if (c != '\t' && c != '\n' && c != '\r' && c != '\b' && c != '\f') {
+                    return false;
+                }
+            } else if (c == 0x2028 || c == 0x2029 || Character.isSurrogate(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class EncodedHeader {
+        private final JWSHeader jwsHeader;
+        private final byte[] encoded;
+
+        private EncodedHeader(JWSHeader jwsHeader, byte[] encoded) {
+            this.jwsHeader = jwsHeader;
+            this.encoded = encoded;
+        }
+    }
+
+    /**
+     * Reusable buffer for the serialized claims, base64url encoded straight into the signing
+     * input without an intermediate copy.
+     */
+    private static final class ClaimsBuffer extends ByteArrayOutputStream {
+
+        private ClaimsBuffer() {
+            super(1024);
+        }
+
+        private byte[] signingInput(byte[] header) {
+            byte[] signingInput = new byte[header.length + 1 + (count * 4 + 2) / 3];
+            System.arraycopy(header, 0, signingInput, 0, header.length);
+            signingInput[header.length] = '.';
+            int out = header.length + 1;
+            int in = 0;
+            for (; in + 2 < count; in += 3) {
+                int bits = (buf[in] & 0xff) << 16 | (buf[in + 1] & 0xff) << 8 | (buf[in + 2] & 0xff);
+                signingInput[out++] = BASE64URL[bits >>> 18];
+                signingInput[out++] = BASE64URL[bits >>> 12 & 0x3f];
+                signingInput[out++] = BASE64URL[bits >>> 6 & 0x3f];
+                signingInput[out++] = BASE64URL[bits & 0x3f];
+            }
+            if (in < count) {
+                int bits = (buf[in] & 0xff) << 16 | (in + 1 < count ? (buf[in + 1] & 0xff) << 8 : 0);
+                signingInput[out++] = BASE64URL[bits >>> 18];
+                signingInput[out++] = BASE64URL[bits >>> 12 & 0x3f];
+                if (in + 1 < count) {
+                    signingInput[out] = BASE64URL[bits >>> 6 & 0x3f];
+                }
+            }
+            return signingInput;
+        }
+
+        private void release() {
+            if (buf.length > MAX_RETAINED_BUFFER) {
+                BUFFERS.remove();
+            } else {
+                reset();
+            }
+        }
+    }
+}
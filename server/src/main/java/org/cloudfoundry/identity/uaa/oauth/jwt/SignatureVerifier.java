@@ -86,6 +86,9 @@ public class SignatureVerifier implements Verifier {
     }
 
     public JWKSet getJwkSet(String keyId) {
+        if (jwk != null && keyId != null && keyId.equals(delegate.getKid())) {
+            return jwk;
+        }
         try {
             Map<String, Object> keyMap = new HashMap<>(delegate.getKeyProperties());
             keyMap.put(HeaderParameterNames.KEY_ID, keyId);
@@ -2,7 +2,7 @@ package org.cloudfoundry.identity.uaa.oauth.refresh;
 
 import com.google.common.collect.Maps;
 import org.cloudfoundry.identity.uaa.oauth.*;
-import org.cloudfoundry.identity.uaa.oauth.jwt.JwtHelper;
+import org.cloudfoundry.identity.uaa.oauth.jwt.JwtTokenEncoder;
 import org.cloudfoundry.identity.uaa.oauth.token.Claims;
 import org.cloudfoundry.identity.uaa.user.UaaUser;
 import org.cloudfoundry.identity.uaa.util.TimeService;
@@ -122,7 +122,7 @@ public class RefreshTokenCreator {
             claims.put(REVOCATION_SIGNATURE, revocableHashSignature);
         }
 
-        return JwtHelper.encode(claims, getActiveKeyInfo()).getEncoded();
+        return JwtTokenEncoder.encode(claims, getActiveKeyInfo());
     }
 
     private KeyInfo getActiveKeyInfo() {
@@ -177,7 +177,7 @@ public class RefreshTokenCreator {
     public String createRefreshTokenValue(JwtTokenSignedByThisUAA jwtToken, Claims claims) {
         String refreshTokenValue;
         if (shouldRotateRefreshTokens()) {
-            refreshTokenValue = JwtHelper.encode(getRefreshedTokenMap(claims), getActiveKeyInfo()).getEncoded();
+            refreshTokenValue = JwtTokenEncoder.encode(getRefreshedTokenMap(claims), getActiveKeyInfo());
         } else {
             refreshTokenValue = jwtToken.getJwt().getEncoded();
         }
@@ -8,11 +8,16 @@ import org.cloudfoundry.identity.uaa.util.TimeService;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.util.StringUtils;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
@@ -24,17 +29,18 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
 
     private final static String REFRESH_TOKEN_RESPONSE_TYPE = REFRESH_TOKEN.toString();
     private final static String FIELDS = "token_id,client_id,user_id,format,response_type,issued_at,expires_at,scope,data,identity_zone_id";
+    private final static List<String> COLUMNS = Arrays.asList(FIELDS.split(","));
+    private final static List<String> UPDATE_COLUMNS = COLUMNS.subList(1, COLUMNS.size() - 1);
     private final static String UPDATE_FIELDS = FIELDS.substring(FIELDS.indexOf(',') + 1, FIELDS.lastIndexOf(',')).replace(",", "=?,") + "=?";
     private final static String TABLE = "revocable_tokens";
     private static final String SELECT = "SELECT ";
     private static final String FROM = " FROM ";
     private final static String GET_QUERY = "SELECT " + FIELDS + " FROM " + TABLE + " WHERE token_id=? AND identity_zone_id=?";
-    private final static String GET_COUNT_QUERY = "SELECT COUNT(*) FROM " + TABLE + " WHERE token_id=? AND identity_zone_id=?";
     private final static String GET_BY_USER_QUERY = "SELECT " + FIELDS + " FROM " + TABLE + " WHERE user_id=? AND identity_zone_id=?";
     private final static String GET_BY_CLIENT_QUERY = "SELECT " + FIELDS + " FROM " + TABLE + " WHERE client_id=? AND identity_zone_id=?";
     private final static String UPDATE_QUERY = "UPDATE " + TABLE + " SET " + UPDATE_FIELDS + " WHERE token_id=? and identity_zone_id=?";
     private final static String INSERT_QUERY = "INSERT INTO " + TABLE + " (" + FIELDS + ") VALUES (?,?,?,?,?,?,?,?,?,?)";
-    private final static String DELETE_QUERY = "DELETE FROM " + TABLE + " WHERE token_id=? and identity_zone_id=?";
+    private final static String DELETE_QUERY = "DELETE FROM " + TABLE + " WHERE token_id=:token_id and identity_zone_id=:identity_zone_id";
     private final static String DELETE_REFRESH_TOKEN_QUERY = "DELETE FROM " + TABLE + " WHERE user_id=? AND client_id=? AND response_type='" + REFRESH_TOKEN_RESPONSE_TYPE + "' AND identity_zone_id=?";
     private final static String DELETE_BY_CLIENT_QUERY = "DELETE FROM " + TABLE + " WHERE client_id = ? AND identity_zone_id=?";
     private final static String DELETE_BY_USER_QUERY = "DELETE FROM " + TABLE + " WHERE user_id = ? AND identity_zone_id=?";
@@ -44,7 +50,12 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
     private final RowMapper<RevocableToken> rowMapper;
     private final JdbcTemplate template;
     private final LimitSqlAdapter limitSqlAdapter;
+    private final NamedParameterJdbcTemplate namedParameterTemplate;
+    private final String upsertQuery;
+    private final String insertIfAbsentQuery;
     private TimeService timeService;
+    private RevocableTokenWriteBehind writeBehind;
+    private RevocableTokenIndex revocationIndex;
 
     private AtomicLong lastExpiredCheck = new AtomicLong(0);
     private Duration maxExpirationRuntime = Duration.ofMillis(2500L);
@@ -56,6 +67,10 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
         this.rowMapper = new RevocableTokenRowMapper();
         this.template = jdbcTemplate;
         this.limitSqlAdapter = limitSqlAdapter;
+        this.namedParameterTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        // token ids are unique across zones, a token of another zone must not be overwritten
+        this.upsertQuery = limitSqlAdapter.getUpsertQuery(TABLE, "token_id", COLUMNS, UPDATE_COLUMNS, "identity_zone_id");
+        this.insertIfAbsentQuery = limitSqlAdapter.getUpsertQuery(TABLE, "token_id", COLUMNS, Collections.emptyList());
         this.timeService = timeService;
     }
 
@@ -64,14 +79,6 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
         return null;
     }
 
-    private boolean exists(String id, boolean checkExpired, String zoneId) {
-        if (checkExpired) {
-            checkExpired();
-        }
-        Integer idResults = template.queryForObject(GET_COUNT_QUERY, Integer.class, id, zoneId);
-        return idResults != null && idResults == 1;
-    }
-
     public RevocableToken retrieve(String id, boolean checkExpired, String zoneId) {
         if (checkExpired) {
             checkExpired();
@@ -81,6 +88,9 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
             delete(id, 0, zoneId);
             throw new EmptyResultDataAccessException("Token expired.", 1);
         }
+        if (checkExpired && result != null && revocationIndex != null) {
+            revocationIndex.add(result, zoneId);
+        }
         return result;
     }
 
@@ -91,24 +101,21 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
 
     @Override
     public int deleteRefreshTokensForClientAndUserId(String clientId, String userId, String zoneId) {
-        return template.update(DELETE_REFRESH_TOKEN_QUERY, userId, clientId, zoneId);
+        int deleted = template.update(DELETE_REFRESH_TOKEN_QUERY, userId, clientId, zoneId);
+        if (deleted > 0) {
+            revoked(zoneId, null, userId, clientId);
+        }
+        return deleted;
+    }
+
+    @Override
+    public boolean isKnownActive(String tokenId, String zoneId) {
+        return revocationIndex != null && revocationIndex.isKnownLive(tokenId, zoneId);
     }
 
     public void createIfNotExists(RevocableToken t, String zoneId) {
-        if (exists(t.getTokenId(), true, zoneId)) {
-            return;
-        }
-        template.update(INSERT_QUERY,
-                t.getTokenId(),
-                t.getClientId(),
-                t.getUserId(),
-                t.getFormat(),
-                t.getResponseType().toString(),
-                t.getIssuedAt(),
-                t.getExpiresAt(),
-                t.getScope(),
-                t.getValue(),
-                zoneId);
+        checkExpired();
+        write(insertIfAbsentQuery, parameters(t.getTokenId(), t, zoneId));
     }
 
     @Override
@@ -145,53 +152,73 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
     }
 
     public void upsert(String id, RevocableToken t, String zoneId) {
-        if (exists(t.getTokenId(), true, zoneId)) {
-            template.update(UPDATE_QUERY, // NOSONAR
-                    t.getClientId(),
-                    t.getUserId(),
-                    t.getFormat(),
-                    t.getResponseType().toString(),
-                    t.getIssuedAt(),
-                    t.getExpiresAt(),
-                    t.getScope(),
-                    t.getValue(),
-                    id,
-                    zoneId);
+        checkExpired();
+        write(upsertQuery, parameters(id, t, zoneId));
+    }
+
+    private void write(String sql, SqlParameterSource parameters) {
+        if (writeBehind != null && writeBehind.isEnabled()) {
+            writeBehind.update(sql, parameters);
         } else {
-            template.update(INSERT_QUERY,
-                    t.getTokenId(),
-                    t.getClientId(),
-                    t.getUserId(),
-                    t.getFormat(),
-                    t.getResponseType().toString(),
-                    t.getIssuedAt(),
-                    t.getExpiresAt(),
-                    t.getScope(),
-                    t.getValue(),
-                    zoneId);
+            namedParameterTemplate.update(sql, parameters);
         }
     }
 
+    private static MapSqlParameterSource parameters(String id, RevocableToken t, String zoneId) {
+        return new MapSqlParameterSource()
+                .addValue("token_id", id)
+                .addValue("client_id", t.getClientId())
+                .addValue("user_id", t.getUserId())
+                .addValue("format", t.getFormat())
+                .addValue("response_type", t.getResponseType().toString())
+                .addValue("issued_at", t.getIssuedAt())
+                .addValue("expires_at", t.getExpiresAt())
+                .addValue("scope", t.getScope())
+                .addValue("data", t.getValue())
+                .addValue("identity_zone_id", zoneId);
+    }
+
     @Override
     public RevocableToken delete(String id, int version, String zoneId) {
         RevocableToken previous = retrieve(id, false, zoneId);
-        template.update(DELETE_QUERY, id, zoneId);
+        write(DELETE_QUERY, new MapSqlParameterSource()
+                .addValue("token_id", id)
+                .addValue("identity_zone_id", zoneId));
+        revoked(zoneId, id, null, null);
         return previous;
     }
 
     @Override
     public int deleteByIdentityZone(String zoneId) {
-        return template.update(DELETE_BY_ZONE_QUERY, zoneId);
+        int deleted = template.update(DELETE_BY_ZONE_QUERY, zoneId);
+        if (deleted > 0) {
+            revoked(zoneId, null, null, null);
+        }
+        return deleted;
     }
 
     @Override
     public int deleteByClient(String clientId, String zoneId) {
-        return template.update(DELETE_BY_CLIENT_QUERY, clientId, zoneId);
+        int deleted = template.update(DELETE_BY_CLIENT_QUERY, clientId, zoneId);
+        if (deleted > 0) {
+            revoked(zoneId, null, null, clientId);
+        }
+        return deleted;
     }
 
     @Override
     public int deleteByUser(String userId, String zoneId) {
-        return template.update(DELETE_BY_USER_QUERY, userId, zoneId);
+        int deleted = template.update(DELETE_BY_USER_QUERY, userId, zoneId);
+        if (deleted > 0) {
+            revoked(zoneId, null, userId, null);
+        }
+        return deleted;
+    }
+
+    private void revoked(String zoneId, String tokenId, String userId, String clientId) {
+        if (revocationIndex != null) {
+            revocationIndex.revoked(zoneId, tokenId, userId, clientId);
+        }
     }
 
     @Override
@@ -252,6 +279,18 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
         this.maxExpirationRuntime = Duration.ofMillis(maxExpirationRuntime);
     }
 
+    /**
+     * Routes token inserts, upserts and deletes through a group commit queue when the
+     * given write-behind is enabled.
+     */
+    public void setWriteBehind(RevocableTokenWriteBehind writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    public void setRevocationIndex(RevocableTokenIndex revocationIndex) {
+        this.revocationIndex = revocationIndex;
+    }
+
     protected static final class RevocableTokenRowMapper implements RowMapper<RevocableToken> {
 
         @Override
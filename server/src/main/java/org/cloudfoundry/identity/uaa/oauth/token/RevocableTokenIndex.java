@@ -0,0 +1,277 @@
+package org.cloudfoundry.identity.uaa.oauth.token;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.cloudfoundry.identity.uaa.resources.jdbc.LimitSqlAdapter;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per node index of revocable tokens known to be live, so that validating a revocable JWT
+ * does not have to query {@code revocable_tokens} every time.
+ *
+ * Tokens enter the index when they are preloaded at startup or found by a database lookup.
+ * Revocations are appended to {@code revocable_token_revocations} and every node polls that
+ * table. Revocations are stamped and polled with the clock of the database, so the clocks of
+ * the nodes do not have to agree. Each poll re-reads the last {@link #LOOK_BACK} of
+ * revocations, because a row only becomes visible when its transaction commits, which can be
+ * after rows stamped later. A revocation whose transaction commits more than
+ * {@link #LOOK_BACK} after it was stamped is missed by nodes that polled in between, so
+ * transactions that revoke tokens must be shorter than that. A token that is not in the
+ * index, has expired, or is checked while the last successful poll is too old is looked up
+ * in the database as before.
+ *
+ * The index holds at most {@code maxEntries} tokens, at roughly 200 bytes each.
+ */
+@ManagedResource(
+        objectName = "cloudfoundry.identity:name=RevocableTokenIndex",
+        description = "Revocable Token Index"
+)
+public class RevocableTokenIndex implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(RevocableTokenIndex.class);
+
+    static final long LOOK_BACK = TimeUnit.SECONDS.toMillis(30);
+    static final long RETENTION = TimeUnit.HOURS.toMillis(1);
+    private static final long PRUNE_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
+    private static final String INSERT_REVOCATION_QUERY = "INSERT INTO revocable_token_revocations (token_id,user_id,client_id,identity_zone_id,revoked_at) VALUES (?,?,?,?,%s)";
+    private static final String GET_REVOCATIONS_QUERY = "SELECT token_id,user_id,client_id,identity_zone_id FROM revocable_token_revocations WHERE revoked_at >= ?";
+    private static final String PRUNE_REVOCATIONS_QUERY = "DELETE FROM revocable_token_revocations WHERE revoked_at < ?";
+    private static final String COUNT_LIVE_QUERY = "SELECT COUNT(*) FROM revocable_tokens WHERE expires_at > ?";
+    private static final String GET_LIVE_QUERY = "SELECT token_id,user_id,client_id,identity_zone_id,expires_at FROM revocable_tokens WHERE expires_at > ?";
+
+    private final JdbcTemplate template;
+    private final LimitSqlAdapter limitSqlAdapter;
+    private final TimeService timeService;
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long pollInterval;
+    private final ScheduledExecutorService poller;
+    private final String insertRevocationQuery;
+
+    private volatile Cache<String, Entry> live;
+    // database time
+    private volatile long watermark;
+    // local time
+    private volatile long lastSync;
+    private long lastPrune;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final List<RevocationListener> listeners = new CopyOnWriteArrayList<>();
+
+    public RevocableTokenIndex(JdbcTemplate jdbcTemplate,
+                               LimitSqlAdapter limitSqlAdapter,
+                               TimeService timeService,
+                               boolean enabled,
+                               int maxEntries,
+                               long pollInterval) {
+        this.template = jdbcTemplate;
+        this.limitSqlAdapter = limitSqlAdapter;
+        this.timeService = timeService;
+        this.enabled = enabled;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.pollInterval = Math.max(1, pollInterval);
+        this.live = newCache(0);
+        this.insertRevocationQuery = enabled ?
+                String.format(INSERT_REVOCATION_QUERY, limitSqlAdapter.getCurrentTimeMillisExpression()) : null;
+        if (enabled) {
+            poller = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "revocable-token-index");
+                thread.setDaemon(true);
+                return thread;
+            });
+            poller.scheduleWithFixedDelay(this::poll, 0, this.pollInterval, TimeUnit.MILLISECONDS);
+        } else {
+            poller = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true if the token is known to be stored and unexpired, false if it has to be
+     * looked up in the database
+     */
+    public boolean isKnownLive(String tokenId, String zoneId) {
+        if (!enabled) {
+            return false;
+        }
+        long now = timeService.getCurrentTimeMillis();
+        Entry entry = live.getIfPresent(key(zoneId, tokenId));
+        if (entry != null && entry.expiresAt > now && isCurrent(now)) {
+            hits.incrementAndGet();
+            return true;
+        }
+        misses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Records a token that was just read from the database.
+     */
+    public void add(RevocableToken token, String zoneId) {
+        if (enabled) {
+            live.put(key(zoneId, token.getTokenId()), new Entry(token.getUserId(), token.getClientId(), zoneId, token.getExpiresAt()));
+        }
+    }
+
+    /**
+     * Publishes a revocation to all nodes and applies it locally. A null token id revokes
+     * every token of the zone that matches the non null user and client ids.
+     */
+    public void revoked(String zoneId, String tokenId, String userId, String clientId) {
+        if (!enabled) {
+            return;
+        }
+        apply(zoneId, tokenId, userId, clientId);
+        template.update(insertRevocationQuery, tokenId, userId, clientId, zoneId);
+    }
+
+    /**
+     * @return true if the index is enabled and polled recently enough that revocations made on
+     * any node more than a poll interval ago have been applied here
+     */
+    public boolean isCurrent() {
+        return enabled && isCurrent(timeService.getCurrentTimeMillis());
+    }
+
+    /**
+     * Registers a listener that is told about every revocation applied on this node, whether
+     * made locally or polled. Polled revocations are applied again by every poll within
+     * {@link #LOOK_BACK}, so listeners must tolerate repeats.
+     */
+    public void addRevocationListener(RevocationListener listener) {
+        listeners.add(listener);
+    }
+
+    boolean isSynchronized() {
+        return lastSync != 0;
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Indexed Tokens")
+    public long getSize() {
+        return live.size();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Lookups Answered")
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Lookups Sent To Database")
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public void destroy() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+
+    void poll() {
+        try {
+            long now = timeService.getCurrentTimeMillis();
+            // read before the revocations, so that rows committed meanwhile are read by the next poll
+            long databaseNow = template.queryForObject(limitSqlAdapter.getCurrentTimeMillisQuery(), Long.class);
+            if (lastSync == 0 || databaseNow - watermark > RETENTION / 2) {
+                reload(now, databaseNow);
+            }
+            applyRevocations(watermark);
+            if (now - lastPrune > PRUNE_INTERVAL) {
+                template.update(PRUNE_REVOCATIONS_QUERY, databaseNow - RETENTION);
+                lastPrune = now;
+            }
+            watermark = databaseNow - LOOK_BACK;
+            lastSync = now;
+        } catch (RuntimeException e) {
+            logger.warn("Unable to synchronize the revocable token index", e);
+        }
+    }
+
+    private void reload(long now, long databaseNow) {
+        Integer count = template.queryForObject(COUNT_LIVE_QUERY, Integer.class, now);
+        Cache<String, Entry> loaded = newCache(count == null ? 0 : Math.min(count, maxEntries));
+        template.query(limitSqlAdapter.getLimitSql(GET_LIVE_QUERY, 0, maxEntries), rs -> {
+            String zoneId = rs.getString(4);
+            loaded.put(key(zoneId, rs.getString(1)), new Entry(rs.getString(2), rs.getString(3), zoneId, rs.getLong(5)));
+        }, now);
+        live = loaded;
+        watermark = databaseNow - LOOK_BACK;
+        logger.info("Loaded " + loaded.size() + " live revocable tokens into the revocation index.");
+    }
+
+    private void applyRevocations(long since) {
+        template.query(GET_REVOCATIONS_QUERY, rs -> {
+            apply(rs.getString(4), rs.getString(1), rs.getString(2), rs.getString(3));
+        }, since);
+    }
+
+    private void apply(String zoneId, String tokenId, String userId, String clientId) {
+        if (tokenId != null) {
+            live.invalidate(key(zoneId, tokenId));
+        } else {
+            live.asMap().values().removeIf(e -> e.zoneId.equals(zoneId)
+                    && (userId == null || userId.equals(e.userId))
+                    && (clientId == null || clientId.equals(e.clientId)));
+        }
+        for (RevocationListener listener : listeners) {
+            listener.revoked(zoneId, tokenId, userId, clientId);
+        }
+    }
+
+    private boolean isCurrent(long now) {
+        return lastSync != 0 && now - lastSync <= 2 * pollInterval + 1000;
+    }
+
+    private Cache<String, Entry> newCache(int initialCapacity) {
+        return CacheBuilder.newBuilder()
+                .initialCapacity(initialCapacity)
+                .maximumSize(maxEntries)
+                .build();
+    }
+
+    private static String key(String zoneId, String tokenId) {
+        return zoneId + ":" + tokenId;
+    }
+
+    /**
+     * Told about a revocation. A null token id stands for every token of the zone that
+     * matches the non null user and client ids.
+     */
+    public interface RevocationListener {
+        void revoked(String zoneId, String tokenId, String userId, String clientId);
+    }
+
+    private static final class Entry {
+        private final String userId;
+        private final String clientId;
+        private final String zoneId;
+        private final long expiresAt;
+
+        private Entry(String userId, String clientId, String zoneId, long expiresAt) {
+            this.userId = userId;
+            this.clientId = clientId;
+            this.zoneId = Objects.requireNonNull(zoneId);
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -29,4 +29,12 @@ public interface RevocableTokenProvisioning extends ResourceManager<RevocableTok
     void upsert(String id, RevocableToken t, String zoneId);
 
     void createIfNotExists(RevocableToken t, String zoneId);
+
+    /**
+     * @return true if the token is known to be stored and unexpired without a database
+     * lookup, false if that is unknown
+     */
+    default boolean isKnownActive(String tokenId, String zoneId) {
+        return false;
+    }
 }
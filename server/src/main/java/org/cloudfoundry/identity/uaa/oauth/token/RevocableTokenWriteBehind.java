@@ -0,0 +1,209 @@
+package org.cloudfoundry.identity.uaa.oauth.token;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Group commit for revocable token writes. Statements queued by concurrent requests are
+ * collected for up to {@code flushInterval} milliseconds or {@code maxBatchSize} rows and
+ * executed as JDBC batches in a single transaction. Each caller blocks until the batch
+ * holding its statement has been committed, so a token is durable before the request that
+ * issued it returns.
+ *
+ * If a batch fails its statements are retried one by one, so that only the callers whose
+ * own statement fails see an exception. Writes issued inside a caller's transaction bypass
+ * the queue, as they must commit or roll back with that transaction.
+ */
+@ManagedResource(
+        objectName = "cloudfoundry.identity:name=RevocableTokenWriteBehind",
+        description = "Revocable Token Write Behind"
+)
+public class RevocableTokenWriteBehind implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(RevocableTokenWriteBehind.class);
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final NamedParameterJdbcTemplate template;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final long flushIntervalNanos;
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final Thread flusher;
+    private volatile boolean running;
+
+    public RevocableTokenWriteBehind(JdbcTemplate jdbcTemplate,
+                                     PlatformTransactionManager transactionManager,
+                                     boolean enabled,
+                                     int maxBatchSize,
+                                     long flushInterval) {
+        this.template = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, flushInterval));
+        if (enabled) {
+            running = true;
+            flusher = new Thread(this::run, "revocable-token-write-behind");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Executes the statement as part of the next batch and waits for that batch to commit.
+     */
+    public void update(String sql, SqlParameterSource parameters) {
+        if (!running || TransactionSynchronizationManager.isActualTransactionActive()) {
+            template.update(sql, parameters);
+            return;
+        }
+        PendingWrite write = new PendingWrite(sql, parameters);
+        queue.add(write);
+        if (!running && queue.remove(write)) {
+            template.update(sql, parameters);
+            return;
+        }
+        try {
+            write.result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for revocable token write", e);
+        }
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Batches Committed")
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Statements Written")
+    public long getWriteCount() {
+        return writes.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Queued Statements")
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (flusher != null) {
+            running = false;
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    private void run() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingWrite next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+                queue.drainTo(batch);
+                flush(batch);
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Map<String, List<PendingWrite>> statements = new LinkedHashMap<>();
+        for (PendingWrite write : batch) {
+            statements.computeIfAbsent(write.sql, k -> new ArrayList<>()).add(write);
+        }
+        try {
+            transactionTemplate.execute(status -> {
+                statements.forEach((sql, pending) -> template.batchUpdate(
+                        sql,
+                        pending.stream().map(w -> w.parameters).toArray(SqlParameterSource[]::new)
+                ));
+                return null;
+            });
+            batches.incrementAndGet();
+            writes.addAndGet(batch.size());
+            batch.forEach(w -> w.result.complete(null));
+        } catch (RuntimeException e) {
+            logger.debug("Batch of {} revocable token writes failed, retrying individually", batch.size(), e);
+            for (PendingWrite write : batch) {
+                try {
+                    template.update(write.sql, write.parameters);
+                    writes.incrementAndGet();
+                    write.result.complete(null);
+                } catch (RuntimeException x) {
+                    write.result.completeExceptionally(x);
+                }
+            }
+        } catch (Error e) {
+            batch.forEach(w -> w.result.completeExceptionally(e));
+            throw e;
+        }
+    }
+
+    private static final class PendingWrite {
+        private final String sql;
+        private final SqlParameterSource parameters;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private PendingWrite(String sql, SqlParameterSource parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package org.cloudfoundry.identity.uaa.oauth.token;
 
+import org.cloudfoundry.identity.uaa.oauth.TokenRequestLookupContext;
 import org.cloudfoundry.identity.uaa.oauth.advice.HttpMethodNotSupportedAdvice;
+import org.cloudfoundry.identity.uaa.zone.MultitenantClientServices;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
@@ -59,10 +61,26 @@ public class UaaTokenEndpoint extends TokenEndpoint {
         }
     }
 
+    @Override
+    protected ClientDetailsService getClientDetailsService() {
+        ClientDetailsService clientDetailsService = super.getClientDetailsService();
+        if (clientDetailsService instanceof MultitenantClientServices) {
+            return clientId -> TokenRequestLookupContext.loadClientByClientId((MultitenantClientServices) clientDetailsService, clientId);
+        }
+        return clientDetailsService;
+    }
+
     @RequestMapping(value = "**", method = GET)
     public ResponseEntity<OAuth2AccessToken> doDelegateGet(Principal principal,
                                                            @RequestParam Map<String, String> parameters) throws HttpRequestMethodNotSupportedException {
-        return getAccessToken(principal, parameters);
+        boolean opened = TokenRequestLookupContext.open();
+        try {
+            return getAccessToken(principal, parameters);
+        } finally {
+            if (opened) {
+                TokenRequestLookupContext.close();
+            }
+        }
     }
 
     @RequestMapping(value = "**", method = POST)
@@ -73,7 +91,14 @@ public class UaaTokenEndpoint extends TokenEndpoint {
             logger.debug("Call to /oauth/token contains a query string. Aborting.");
             throw new HttpRequestMethodNotSupportedException("POST");
         }
-        return postAccessToken(principal, parameters);
+        boolean opened = TokenRequestLookupContext.open();
+        try {
+            return postAccessToken(principal, parameters);
+        } finally {
+            if (opened) {
+                TokenRequestLookupContext.close();
+            }
+        }
     }
 
     @RequestMapping(value = "**")
@@ -14,6 +14,7 @@
 
 package org.cloudfoundry.identity.uaa.oauth.token;
 
+import org.cloudfoundry.identity.uaa.oauth.TokenRequestLookupContext;
 import org.cloudfoundry.identity.uaa.oauth.UaaOauth2Authentication;
 import org.cloudfoundry.identity.uaa.zone.MultitenantClientServices;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
@@ -90,11 +91,11 @@ public class UserTokenGranter  extends AbstractTokenGranter {
         }
 
         //5. requesting client must have user_token grant type
-        ClientDetails requesting = clientDetailsService.loadClientByClientId(request.getRequestParameters().get(USER_TOKEN_REQUESTING_CLIENT_ID), IdentityZoneHolder.get().getId());
+        ClientDetails requesting = TokenRequestLookupContext.loadClientByClientId(clientDetailsService, request.getRequestParameters().get(USER_TOKEN_REQUESTING_CLIENT_ID), IdentityZoneHolder.get().getId());
         super.validateGrantType(GRANT_TYPE_USER_TOKEN, requesting);
 
         //6. receiving client must have refresh_token grant type
-        ClientDetails receiving = clientDetailsService.loadClientByClientId(request.getRequestParameters().get(CLIENT_ID), IdentityZoneHolder.get().getId());
+        ClientDetails receiving = TokenRequestLookupContext.loadClientByClientId(clientDetailsService, request.getRequestParameters().get(CLIENT_ID), IdentityZoneHolder.get().getId());
         super.validateGrantType(GRANT_TYPE_REFRESH_TOKEN, receiving);
 
         return oauth2Authentication.getUserAuthentication();
@@ -121,7 +122,7 @@ public class UserTokenGranter  extends AbstractTokenGranter {
 
     @Override
     protected OAuth2AccessToken getAccessToken(ClientDetails client, TokenRequest tokenRequest) {
-        ClientDetails receivingClient = clientDetailsService.loadClientByClientId(tokenRequest.getRequestParameters().get(CLIENT_ID), IdentityZoneHolder.get().getId());
+        ClientDetails receivingClient = TokenRequestLookupContext.loadClientByClientId(clientDetailsService, tokenRequest.getRequestParameters().get(CLIENT_ID), IdentityZoneHolder.get().getId());
         return prepareForSerialization((DefaultOAuth2AccessToken) super.getAccessToken(receivingClient, tokenRequest));
     }
 }
\ No newline at end of file
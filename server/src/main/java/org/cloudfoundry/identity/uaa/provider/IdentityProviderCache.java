@@ -0,0 +1,220 @@
+package org.cloudfoundry.identity.uaa.provider;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the parsed identity providers of each zone, indexed by id and by origin key, so
+ * that rendering the login page or authenticating a user does not have to read the zone's
+ * providers and parse their configuration every time.
+ *
+ * A zone's providers are loaded together and served as is for {@code maxStaleness}
+ * milliseconds. After that the {@code version} and {@code lastmodified} of every provider in
+ * the zone are read again, and the zone is only reloaded if a provider was added, removed or
+ * changed. Changes made through {@link JdbcIdentityProviderProvisioning} evict the zone
+ * immediately, and again when the surrounding transaction completes. The cache is disabled
+ * unless explicitly enabled.
+ *
+ * Callers overlay, redact and validate the providers they are given in place, so cached
+ * providers are never handed out. Every lookup returns a copy whose definition is cloned
+ * from the cached one, which skips the query and the parsing of the stored JSON.
+ */
+@ManagedResource(
+        objectName = "cloudfoundry.identity:name=IdentityProviderCache",
+        description = "Identity Provider Cache Metrics"
+)
+public class IdentityProviderCache {
+
+    private static final String VERSION_QUERY = "select id,version,lastmodified from identity_provider where identity_zone_id=?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TimeService timeService;
+    private final boolean enabled;
+    private final long maxStaleness;
+    private final Cache<String, Zone> zones;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public IdentityProviderCache(JdbcTemplate jdbcTemplate,
+                                 TimeService timeService,
+                                 boolean enabled,
+                                 long maxStaleness,
+                                 int maxZones) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.timeService = timeService;
+        this.enabled = enabled && maxZones > 0;
+        this.maxStaleness = Math.max(0, maxStaleness);
+        this.zones = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(maxZones, 0))
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @throws EmptyResultDataAccessException if the zone has no provider with this id
+     */
+    IdentityProvider retrieve(String id, String zoneId, Supplier<List<IdentityProvider>> loader) {
+        return copy(found(zone(zoneId, loader).byId.get(id)));
+    }
+
+    /**
+     * @throws EmptyResultDataAccessException if the zone has no provider with this origin
+     * key, or it is inactive and {@code activeOnly} is set
+     */
+    IdentityProvider retrieveByOrigin(String origin, String zoneId, boolean activeOnly, Supplier<List<IdentityProvider>> loader) {
+        IdentityProvider provider = zone(zoneId, loader).byOrigin.get(origin);
+        return copy(found(provider != null && (provider.isActive() || !activeOnly) ? provider : null));
+    }
+
+    List<IdentityProvider> retrieveAll(boolean activeOnly, String zoneId, Supplier<List<IdentityProvider>> loader) {
+        List<IdentityProvider> result = new ArrayList<>();
+        for (IdentityProvider provider : zone(zoneId, loader).providers) {
+            if (!activeOnly || provider.isActive()) {
+                result.add(copy(provider));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Evicts the zone now and, if a transaction is active, again when it completes, so that
+     * providers read inside the transaction are not kept after a rollback.
+     */
+    void evict(String zoneId) {
+        if (enabled) {
+            afterTransaction(() -> zones.invalidate(zoneId));
+        }
+    }
+
+    void evictAll() {
+        if (enabled) {
+            afterTransaction(zones::invalidateAll);
+        }
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Zones Served From Cache")
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Zones Revalidated By Version")
+    public long getRevalidationCount() {
+        return revalidations.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Zones Loaded From Database")
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Cached Zones")
+    public long getSize() {
+        return zones.size();
+    }
+
+    private Zone zone(String zoneId, Supplier<List<IdentityProvider>> loader) {
+        long now = timeService.getCurrentTimeMillis();
+        Zone zone = zones.getIfPresent(zoneId);
+        if (zone != null) {
+            if (now - zone.validatedAt <= maxStaleness) {
+                hits.incrementAndGet();
+                return zone;
+            }
+            revalidations.incrementAndGet();
+            Map<String, String> current = new HashMap<>();
+            jdbcTemplate.query(VERSION_QUERY, rs -> {
+                current.put(rs.getString(1).trim(), version(rs.getInt(2), rs.getTimestamp(3)));
+            }, zoneId);
+            if (current.equals(zone.versions)) {
+                zone.validatedAt = now;
+                return zone;
+            }
+            zones.invalidate(zoneId);
+        }
+        misses.incrementAndGet();
+        zone = new Zone(loader.get(), now);
+        zones.put(zoneId, zone);
+        return zone;
+    }
+
+    private static IdentityProvider found(IdentityProvider provider) {
+        if (provider == null) {
+            throw new EmptyResultDataAccessException(1);
+        }
+        return provider;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static IdentityProvider copy(IdentityProvider provider) {
+        IdentityProvider copy = new IdentityProvider();
+        copy.setId(provider.getId());
+        copy.setVersion(provider.getVersion());
+        copy.setCreated(provider.getCreated());
+        copy.setLastModified(provider.getLastModified());
+        copy.setName(provider.getName());
+        copy.setOriginKey(provider.getOriginKey());
+        if (provider.getConfig() != null) {
+            copy.setConfig(provider.getConfig().clone());
+        }
+        copy.setType(provider.getType());
+        copy.setIdentityZoneId(provider.getIdentityZoneId());
+        copy.setActive(provider.isActive());
+        copy.setAliasId(provider.getAliasId());
+        copy.setAliasZid(provider.getAliasZid());
+        return copy;
+    }
+
+    private static String version(int version, Date lastModified) {
+        return version + "@" + (lastModified == null ? 0 : lastModified.getTime());
+    }
+
+    private static void afterTransaction(Runnable eviction) {
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    eviction.run();
+                }
+            });
+        }
+    }
+
+    private static final class Zone {
+        private final List<IdentityProvider> providers;
+        private final Map<String, IdentityProvider> byId = new HashMap<>();
+        private final Map<String, IdentityProvider> byOrigin = new HashMap<>();
+        private final Map<String, String> versions = new HashMap<>();
+        private volatile long validatedAt;
+
+        private Zone(List<IdentityProvider> providers, long validatedAt) {
+            this.providers = providers;
+            this.validatedAt = validatedAt;
+            for (IdentityProvider provider : providers) {
+                byId.put(provider.getId(), provider);
+                byOrigin.put(provider.getOriginKey(), provider);
+                versions.put(provider.getId(), version(provider.getVersion(), provider.getLastModified()));
+            }
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.cloudfoundry.identity.uaa.util.ObjectUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -52,17 +53,31 @@ public class JdbcIdentityProviderProvisioning implements IdentityProviderProvisi
 
     private final RowMapper<IdentityProvider> mapper = new IdentityProviderRowMapper();
 
+    private IdentityProviderCache cache;
+
     public JdbcIdentityProviderProvisioning(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        this.cache = new IdentityProviderCache(jdbcTemplate, null, false, 0, 0);
+    }
+
+    @Autowired(required = false)
+    public void setCache(IdentityProviderCache cache) {
+        this.cache = cache;
     }
 
     @Override
     public IdentityProvider retrieve(String id, String zoneId) {
+        if (cache.isEnabled()) {
+            return cache.retrieve(id, zoneId, () -> loadAll(zoneId));
+        }
         return jdbcTemplate.queryForObject(IDENTITY_PROVIDER_BY_ID_QUERY, mapper, id, zoneId);
     }
 
     @Override
     public List<IdentityProvider> retrieveActive(String zoneId) {
+        if (cache.isEnabled()) {
+            return cache.retrieveAll(true, zoneId, () -> loadAll(zoneId));
+        }
         return jdbcTemplate.query(IDENTITY_ACTIVE_PROVIDERS_QUERY, mapper, zoneId, true);
     }
 
@@ -70,21 +85,33 @@ public class JdbcIdentityProviderProvisioning implements IdentityProviderProvisi
     public List<IdentityProvider> retrieveAll(boolean activeOnly, String zoneId) {
         if (activeOnly) {
             return retrieveActive(zoneId);
+        } else if (cache.isEnabled()) {
+            return cache.retrieveAll(false, zoneId, () -> loadAll(zoneId));
         } else {
-            return jdbcTemplate.query(IDENTITY_PROVIDERS_QUERY, mapper, zoneId);
+            return loadAll(zoneId);
         }
     }
 
     @Override
     public IdentityProvider retrieveByOrigin(String origin, String zoneId) {
+        if (cache.isEnabled()) {
+            return cache.retrieveByOrigin(origin, zoneId, true, () -> loadAll(zoneId));
+        }
         return jdbcTemplate.queryForObject(IDENTITY_PROVIDER_BY_ORIGIN_QUERY_ACTIVE, mapper, origin, zoneId, true);
     }
 
     @Override
     public IdentityProvider retrieveByOriginIgnoreActiveFlag(String origin, String zoneId) {
+        if (cache.isEnabled()) {
+            return cache.retrieveByOrigin(origin, zoneId, false, () -> loadAll(zoneId));
+        }
         return jdbcTemplate.queryForObject(IDENTITY_PROVIDER_BY_ORIGIN_QUERY, mapper, origin, zoneId);
     }
 
+    private List<IdentityProvider> loadAll(String zoneId) {
+        return jdbcTemplate.query(IDENTITY_PROVIDERS_QUERY, mapper, zoneId);
+    }
+
     @Override
     public IdentityProvider create(final IdentityProvider identityProvider, String zoneId) {
         validate(identityProvider);
@@ -108,6 +135,7 @@ public class JdbcIdentityProviderProvisioning implements IdentityProviderProvisi
         } catch (DuplicateKeyException e) {
             throw new IdpAlreadyExistsException(e.getMostSpecificCause().getMessage());
         }
+        cache.evict(zoneId);
         return retrieve(id, zoneId);
     }
 
@@ -131,6 +159,7 @@ public class JdbcIdentityProviderProvisioning implements IdentityProviderProvisi
             ps.setString(pos++, identityProvider.getId().trim());
             ps.setString(pos, zoneId);
         });
+        cache.evict(zoneId);
         return retrieve(identityProvider.getId(), zoneId);
     }
 
@@ -155,12 +184,17 @@ public class JdbcIdentityProviderProvisioning implements IdentityProviderProvisi
      */
     @Override
     public int deleteByIdentityZone(String zoneId) {
-        return jdbcTemplate.update(DELETE_IDENTITY_PROVIDER_BY_ZONE_SQL, zoneId, zoneId);
+        int deleted = jdbcTemplate.update(DELETE_IDENTITY_PROVIDER_BY_ZONE_SQL, zoneId, zoneId);
+        // alias providers of the zone's providers live in other zones
+        cache.evictAll();
+        return deleted;
     }
 
     @Override
     public int deleteByOrigin(String origin, String zoneId) {
-        return jdbcTemplate.update(DELETE_IDENTITY_PROVIDER_BY_ORIGIN_SQL, zoneId, origin);
+        int deleted = jdbcTemplate.update(DELETE_IDENTITY_PROVIDER_BY_ORIGIN_SQL, zoneId, origin);
+        cache.evict(zoneId);
+        return deleted;
     }
 
     @Override
@@ -14,9 +14,11 @@
 package org.cloudfoundry.identity.uaa.provider.oauth;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.nimbusds.jose.Header;
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jwt.JWTParser;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang3.ObjectUtils;
 import org.cloudfoundry.identity.uaa.authentication.UaaAuthentication;
@@ -26,9 +28,6 @@ import org.cloudfoundry.identity.uaa.authentication.manager.InvitedUserAuthentic
 import org.cloudfoundry.identity.uaa.oauth.KeyInfo;
 import org.cloudfoundry.identity.uaa.oauth.KeyInfoService;
 import org.cloudfoundry.identity.uaa.oauth.TokenEndpointBuilder;
-import org.cloudfoundry.identity.uaa.oauth.jwk.JsonWebKey;
-import org.cloudfoundry.identity.uaa.oauth.jwk.JsonWebKeyHelper;
-import org.cloudfoundry.identity.uaa.oauth.jwk.JsonWebKeySet;
 import org.cloudfoundry.identity.uaa.oauth.jwt.ChainedSignatureVerifier;
 import org.cloudfoundry.identity.uaa.oauth.jwt.SignatureVerifier;
 import org.cloudfoundry.identity.uaa.oauth.jwt.Jwt;
@@ -77,6 +76,7 @@ import org.springframework.web.context.request.ServletRequestAttributes;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -647,8 +647,7 @@ public class ExternalOAuthAuthenticationManager extends ExternalLoginAuthenticat
             List<SignatureVerifier> signatureVerifiers = getTokenKeyForUaaOrigin();
             jwtToken = buildIdTokenValidator(idToken, new ChainedSignatureVerifier(signatureVerifiers), keyInfoService);
         } else {
-            JsonWebKeySet<JsonWebKey> tokenKeyFromOAuth = getTokenKeyFromOAuth(config);
-            jwtToken = buildIdTokenValidator(idToken, new ChainedSignatureVerifier(tokenKeyFromOAuth), keyInfoService)
+            jwtToken = buildIdTokenValidatorWithProviderKeys(idToken, config)
                 .checkIssuer((isEmpty(config.getIssuer()) ? config.getTokenUrl().toString() : config.getIssuer()))
                 .checkAudience(config.getRelyingPartyId());
         }
@@ -663,19 +662,46 @@ public class ExternalOAuthAuthenticationManager extends ExternalLoginAuthenticat
 
     }
 
-    private JsonWebKeySet<JsonWebKey> getTokenKeyFromOAuth(AbstractExternalOAuthIdentityProviderDefinition config) {
-
-        String tokenKey = config.getTokenKey();
-        if (StringUtils.hasText(tokenKey)) {
-            return JsonWebKeyHelper.parseConfiguration(tokenKey);
+    private JwtTokenSignedByThisUAA buildIdTokenValidatorWithProviderKeys(String idToken, AbstractExternalOAuthIdentityProviderDefinition config) {
+        try {
+            return buildIdTokenValidator(idToken, getTokenKeyFromOAuth(config, null), keyInfoService);
+        } catch (InvalidTokenException e) {
+            // the provider may have rotated its keys since they were fetched
+            ChainedSignatureVerifier rotated = getTokenKeyFromOAuth(config, getKeyId(idToken));
+            if (rotated == null) {
+                throw e;
+            }
+            return buildIdTokenValidator(idToken, rotated, keyInfoService);
         }
+    }
+
+    /**
+     * @param unknownKeyId if set, only returns the keys of the provider if they were fetched
+     *                     again because none of the cached keys has this key id
+     */
+    private ChainedSignatureVerifier getTokenKeyFromOAuth(AbstractExternalOAuthIdentityProviderDefinition config, String unknownKeyId) {
         try {
-            return oidcMetadataFetcher.fetchWebKeySet(config);
+            return unknownKeyId == null
+                ? oidcMetadataFetcher.fetchSignatureVerifier(config)
+                : oidcMetadataFetcher.refetchSignatureVerifier(config, unknownKeyId);
         } catch (OidcMetadataFetchingException e) {
             throw new InvalidTokenException(e.getMessage(), e);
         }
     }
 
+    private static String getKeyId(String idToken) {
+        if (!hasText(idToken)) {
+            return null;
+        }
+        try {
+            Header header = JWTParser.parse(idToken).getHeader();
+            return header instanceof JWSHeader ? ((JWSHeader) header).getKeyID() : null;
+        } catch (ParseException e) {
+            // reported when the token is validated
+            return null;
+        }
+    }
+
     private String getTokenFromCode(ExternalOAuthCodeToken codeToken, AbstractExternalOAuthIdentityProviderDefinition config) {
         if (StringUtils.hasText(codeToken.getIdToken()) && "id_token".equals(getResponseType(config))) {
             logger.debug("ExternalOAuthCodeToken contains id_token, not exchanging code.");
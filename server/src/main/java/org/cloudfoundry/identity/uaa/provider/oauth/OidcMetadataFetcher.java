@@ -1,6 +1,9 @@
 package org.cloudfoundry.identity.uaa.provider.oauth;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.nimbusds.jose.jwk.JWKSet;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang3.StringUtils;
 import org.cloudfoundry.identity.uaa.cache.UrlContentCache;
@@ -8,9 +11,13 @@ import org.cloudfoundry.identity.uaa.client.ClientJwtConfiguration;
 import org.cloudfoundry.identity.uaa.oauth.jwk.JsonWebKey;
 import org.cloudfoundry.identity.uaa.oauth.jwk.JsonWebKeyHelper;
 import org.cloudfoundry.identity.uaa.oauth.jwk.JsonWebKeySet;
+import org.cloudfoundry.identity.uaa.oauth.jwt.ChainedSignatureVerifier;
 import org.cloudfoundry.identity.uaa.provider.AbstractExternalOAuthIdentityProviderDefinition;
 import org.cloudfoundry.identity.uaa.provider.OIDCIdentityProviderDefinition;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.cloudfoundry.identity.uaa.util.TimeServiceImpl;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.util.LinkedMultiValueMap;
@@ -20,14 +27,35 @@ import org.springframework.web.client.RestTemplate;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 import static java.util.Optional.ofNullable;
 
+/**
+ * Fetches the discovery documents and verification keys of external OAuth/OIDC providers and
+ * of clients authenticating with {@code private_key_jwt}.
+ *
+ * Verification keys are parsed once per key set, and the parsed keys and the verifiers built
+ * from them are kept until the configured or fetched key set changes. When a token is signed
+ * with a key id that is not in a fetched key set, the key set is fetched again, in case the keys
+ * were rotated, unless it changed or was fetched again within the last
+ * {@link #MIN_REFETCH_INTERVAL} milliseconds.
+ */
 public class OidcMetadataFetcher {
+    static final long MIN_REFETCH_INTERVAL = 30_000;
+    private static final int MAX_KEY_SETS = 1000;
+
     private final UrlContentCache contentCache;
     private final RestTemplate trustingRestTemplate;
     private final RestTemplate nonTrustingRestTemplate;
+    private final Cache<Object, KeySet> keySets = CacheBuilder.newBuilder().maximumSize(MAX_KEY_SETS).build();
+    private final Cache<String, Long> refetches = CacheBuilder.newBuilder().maximumSize(MAX_KEY_SETS).build();
+    private TimeService timeService = new TimeServiceImpl();
 
     public OidcMetadataFetcher(UrlContentCache contentCache,
                                RestTemplate trustingRestTemplate,
@@ -38,6 +66,11 @@ public class OidcMetadataFetcher {
         this.nonTrustingRestTemplate = nonTrustingRestTemplate;
     }
 
+    @Autowired(required = false)
+    public void setTimeService(TimeService timeService) {
+        this.timeService = timeService;
+    }
+
     public void fetchMetadataAndUpdateDefinition(OIDCIdentityProviderDefinition definition) throws OidcMetadataFetchingException {
         if (shouldFetchMetadata(definition)) {
             OidcMetadata oidcMetadata =
@@ -49,36 +82,140 @@ public class OidcMetadataFetcher {
 
     public JsonWebKeySet<JsonWebKey> fetchWebKeySet(AbstractExternalOAuthIdentityProviderDefinition config)
         throws OidcMetadataFetchingException {
+        return fetchKeySet(config).keys;
+    }
+
+    /**
+     * Returns a verifier for the configured token key of the provider or, if there is none, for
+     * the keys published at its token key URL.
+     */
+    public ChainedSignatureVerifier fetchSignatureVerifier(AbstractExternalOAuthIdentityProviderDefinition config)
+        throws OidcMetadataFetchingException {
+        String tokenKey = config.getTokenKey();
+        if (StringUtils.isNotBlank(tokenKey)) {
+            KeySet keySet = keySets.getIfPresent(tokenKey);
+            if (keySet == null) {
+                keySet = new KeySet(tokenKey, JsonWebKeyHelper.parseConfiguration(tokenKey));
+                keySets.put(tokenKey, keySet);
+            }
+            return keySet.getVerifier();
+        }
+        return fetchKeySet(config).getVerifier();
+    }
+
+    /**
+     * Fetches the keys published at the token key URL of the provider again, if a token could
+     * not be verified with them and none of them has the key id the token was signed with.
+     *
+     * @param keyId the key id the token was signed with, may be null
+     * @return a verifier for the fetched keys, or null if they were not fetched again or did
+     * not change
+     */
+    public ChainedSignatureVerifier refetchSignatureVerifier(AbstractExternalOAuthIdentityProviderDefinition config, String keyId)
+        throws OidcMetadataFetchingException {
+        if (StringUtils.isNotBlank(config.getTokenKey())) {
+            return null;
+        }
+        KeySet keySet = fetchKeySet(config);
+        if (keySet.source == null || !isRotated(keySet, config.getTokenKeyUrl().toString(), keyId)) {
+            return null;
+        }
+        KeySet refetched = fetchKeySet(config);
+        return refetched == keySet ? null : refetched.getVerifier();
+    }
+
+    public JsonWebKeySet<JsonWebKey> fetchWebKeySet(ClientJwtConfiguration clientJwtConfiguration) throws OidcMetadataFetchingException {
+        return fetchKeySet(clientJwtConfiguration, null).keys;
+    }
+
+    /**
+     * Returns the keys of a client as a {@link JWKSet} to verify its client assertions with.
+     *
+     * @param keyId the key id the client assertion was signed with, may be null
+     */
+    public JWKSet fetchJWKSet(ClientJwtConfiguration clientJwtConfiguration, String keyId) throws OidcMetadataFetchingException, ParseException {
+        return fetchKeySet(clientJwtConfiguration, keyId).getJwkSet();
+    }
+
+    private KeySet fetchKeySet(AbstractExternalOAuthIdentityProviderDefinition config) throws OidcMetadataFetchingException {
         URL tokenKeyUrl = config.getTokenKeyUrl();
         if (tokenKeyUrl == null || !org.springframework.util.StringUtils.hasText(tokenKeyUrl.toString())) {
-            return new JsonWebKeySet<>(Collections.emptyList());
+            return new KeySet(null, new JsonWebKeySet<>(Collections.emptyList()));
         }
-        byte[] rawContents = getJsonBody(tokenKeyUrl.toString(), config.isSkipSslValidation(), getClientAuthHeader(config));
+        String uri = tokenKeyUrl.toString();
+        return parseKeySet(uri, getJsonBody(uri, config.isSkipSslValidation(), getClientAuthHeader(config)), this::parseProviderKeys);
+    }
+
+    private KeySet fetchKeySet(ClientJwtConfiguration clientJwtConfiguration, String keyId) throws OidcMetadataFetchingException {
+        if (clientJwtConfiguration.getJwkSet() != null) {
+            Map<String, Object> keySetMap = clientJwtConfiguration.getJwkSet().getKeySetMap();
+            KeySet keySet = keySets.getIfPresent(keySetMap);
+            if (keySet == null) {
+                keySet = new KeySet(keySetMap, clientJwtConfiguration.getJwkSet());
+                keySets.put(keySetMap, keySet);
+            }
+            return keySet;
+        } else if (clientJwtConfiguration.getJwksUri() != null) {
+            String uri = clientJwtConfiguration.getJwksUri();
+            KeySet keySet = parseKeySet(uri, getJsonBody(uri, false, null), this::parseClientKeys);
+            if (isRotated(keySet, uri, keyId)) {
+                keySet = parseKeySet(uri, getJsonBody(uri, false, null), this::parseClientKeys);
+            }
+            return keySet;
+        }
+        throw new OidcMetadataFetchingException("Unable to fetch verification keys");
+    }
+
+    private KeySet parseKeySet(String uri, byte[] rawContents, KeyParser parser) throws OidcMetadataFetchingException {
         if (rawContents == null || rawContents.length == 0) {
             throw new OidcMetadataFetchingException("Unable to fetch verification keys");
         }
+        KeySet keySet = keySets.getIfPresent(uri);
+        if (keySet == null || !keySet.isParsedFrom(rawContents)) {
+            keySet = new KeySet(rawContents, parser.parse(new String(rawContents, StandardCharsets.UTF_8)));
+            keySets.put(uri, keySet);
+            // keys that just changed are current, fetching them again right away would not help
+            refetches.put(uri, timeService.getCurrentTimeMillis());
+        }
+        return keySet;
+    }
+
+    private JsonWebKeySet<JsonWebKey> parseProviderKeys(String json) throws OidcMetadataFetchingException {
         try {
-            return JsonWebKeyHelper.deserialize(new String(rawContents, StandardCharsets.UTF_8));
+            return JsonWebKeyHelper.deserialize(json);
         } catch (JsonUtils.JsonUtilException e) {
             throw new OidcMetadataFetchingException(e);
         }
     }
 
-    public JsonWebKeySet<JsonWebKey> fetchWebKeySet(ClientJwtConfiguration clientJwtConfiguration) throws OidcMetadataFetchingException {
-        if (clientJwtConfiguration.getJwkSet() != null) {
-            return clientJwtConfiguration.getJwkSet();
-        } else if (clientJwtConfiguration.getJwksUri() != null) {
-            byte[] rawContents = getJsonBody(clientJwtConfiguration.getJwksUri(), false, null);
-            if (rawContents != null && rawContents.length > 0) {
-                ClientJwtConfiguration clientKeys = ClientJwtConfiguration.parse(null, new String(rawContents, StandardCharsets.UTF_8));
-                if (clientKeys != null && clientKeys.getJwkSet() != null) {
-                    return clientKeys.getJwkSet();
-                }
-            }
+    private JsonWebKeySet<JsonWebKey> parseClientKeys(String json) throws OidcMetadataFetchingException {
+        ClientJwtConfiguration clientKeys = ClientJwtConfiguration.parse(null, json);
+        if (clientKeys != null && clientKeys.getJwkSet() != null) {
+            return clientKeys.getJwkSet();
         }
         throw new OidcMetadataFetchingException("Unable to fetch verification keys");
     }
 
+    /**
+     * Returns true, and drops the fetched content, if a token is signed with a key the key set
+     * does not contain and the keys at the URI did not change or were not fetched again recently.
+     */
+    private boolean isRotated(KeySet keySet, String uri, String keyId) {
+        if (keyId == null || keySet.keyIds.contains(keyId)) {
+            return false;
+        }
+        long now = timeService.getCurrentTimeMillis();
+        boolean[] refetch = new boolean[1];
+        refetches.asMap().compute(uri, (key, lastRefetch) -> {
+            refetch[0] = lastRefetch == null || now - lastRefetch >= MIN_REFETCH_INTERVAL;
+            return refetch[0] ? now : lastRefetch;
+        });
+        if (refetch[0]) {
+            contentCache.evict(uri);
+        }
+        return refetch[0];
+    }
+
     private byte[] getJsonBody(String uri, boolean isSkipSslValidation, String authorizationValue) {
         MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
         if (authorizationValue != null) {
@@ -127,4 +264,53 @@ public class OidcMetadataFetcher {
     private boolean shouldFetchMetadata(OIDCIdentityProviderDefinition definition) {
         return definition.getDiscoveryUrl() != null && !StringUtils.isBlank(definition.getDiscoveryUrl().toString());
     }
+
+    @FunctionalInterface
+    private interface KeyParser {
+        JsonWebKeySet<JsonWebKey> parse(String json) throws OidcMetadataFetchingException;
+    }
+
+    /**
+     * A parsed key set, along with the content it was parsed from and the verifiers built from
+     * its keys. The verifiers are built on first use and shared by all callers.
+     */
+    private static final class KeySet {
+        private final Object source;
+        private final JsonWebKeySet<JsonWebKey> keys;
+        private final Set<String> keyIds = new HashSet<>();
+        private volatile ChainedSignatureVerifier verifier;
+        private volatile JWKSet jwkSet;
+
+        private KeySet(Object source, JsonWebKeySet<JsonWebKey> keys) {
+            this.source = source;
+            this.keys = keys;
+            if (keys.getKeys() != null) {
+                for (JsonWebKey key : keys.getKeys()) {
+                    keyIds.add(key.getKid());
+                }
+            }
+        }
+
+        private boolean isParsedFrom(byte[] rawContents) {
+            return source == rawContents || Objects.deepEquals(source, rawContents);
+        }
+
+        private ChainedSignatureVerifier getVerifier() {
+            ChainedSignatureVerifier result = verifier;
+            if (result == null) {
+                result = new ChainedSignatureVerifier(keys);
+                verifier = result;
+            }
+            return result;
+        }
+
+        private JWKSet getJwkSet() throws ParseException {
+            JWKSet result = jwkSet;
+            if (result == null) {
+                result = JWKSet.parse(keys.getKeySetMap());
+                jwkSet = result;
+            }
+            return result;
+        }
+    }
 }
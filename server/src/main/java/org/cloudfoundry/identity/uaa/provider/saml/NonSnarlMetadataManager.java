@@ -15,9 +15,15 @@
 
 package org.cloudfoundry.identity.uaa.provider.saml;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.provider.IdentityProvider;
 import org.cloudfoundry.identity.uaa.provider.SamlIdentityProviderDefinition;
 import org.cloudfoundry.identity.uaa.zone.IdentityZone;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityProviderModifiedEvent;
 import org.joda.time.DateTime;
 import org.opensaml.common.xml.SAMLConstants;
 import org.opensaml.saml2.common.Extensions;
@@ -55,6 +61,7 @@ import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
 import org.springframework.security.saml.key.KeyManager;
 import org.springframework.security.saml.metadata.ExtendedMetadata;
 import org.springframework.security.saml.metadata.ExtendedMetadataDelegate;
@@ -69,17 +76,27 @@ import org.springframework.web.client.RestClientException;
 import org.w3c.dom.Element;
 
 import javax.xml.namespace.QName;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 
-public class NonSnarlMetadataManager extends MetadataManager implements ExtendedMetadataProvider, InitializingBean, DisposableBean {
+public class NonSnarlMetadataManager extends MetadataManager implements ExtendedMetadataProvider, InitializingBean, DisposableBean,
+        ApplicationListener<AbstractUaaEvent> {
+
+    private static final int MAX_INDEXED_ZONES = 1000;
 
     // Class logger
     protected final Logger log = LoggerFactory.getLogger(NonSnarlMetadataManager.class);
@@ -91,6 +108,12 @@ public class NonSnarlMetadataManager extends MetadataManager implements Extended
 
     private final SamlIdentityProviderConfigurator configurator;
     private ZoneAwareMetadataGenerator generator;
+    private long refreshCheckInterval;
+
+    // Metadata of each zone, indexed by entity ID, alias and entity ID hash
+    private final Cache<String, MetadataIndex> indexes = CacheBuilder.newBuilder()
+            .maximumSize(MAX_INDEXED_ZONES)
+            .build();
 
     public NonSnarlMetadataManager(SamlIdentityProviderConfigurator configurator) throws MetadataProviderException {
         super(Collections.EMPTY_LIST);
@@ -135,27 +158,156 @@ public class NonSnarlMetadataManager extends MetadataManager implements Extended
         return new ArrayList<>(getAvailableProviders());
     }
 
+    /**
+     * @return an unmodifiable view of the local service provider and the SAML identity
+     * providers of the current zone
+     */
     public List<ExtendedMetadataDelegate> getAvailableProviders() {
+        return getIndex().providers;
+    }
+
+    /**
+     * Returns the metadata index of the current zone, rebuilding it if the local service
+     * provider or any of the zone's SAML identity providers has changed since it was built.
+     *
+     * The settings of the local service provider are compared on every lookup. The identity
+     * providers are only read again once {@code refreshCheckInterval} milliseconds have
+     * passed, and are compared by id, version and last modification, plus a digest of the
+     * metadata of providers configured by URL. Identity providers changed on this node
+     * invalidate the index of their zone immediately.
+     */
+    private MetadataIndex getIndex() {
         IdentityZone zone = IdentityZoneHolder.get();
-        List<ExtendedMetadataDelegate> result = new ArrayList<>();
+        List<Object> serviceProvider = Arrays.asList(
+                generator.getEntityId(),
+                generator.getEntityBaseURL(),
+                generator.isRequestSigned(),
+                generator.isWantAssertionSigned(),
+                IdentityZoneHolder.getSamlSPKeyManager());
+        long now = System.currentTimeMillis();
+        MetadataIndex index = indexes.getIfPresent(zone.getId());
+        if (index != null && index.serviceProvider.equals(serviceProvider) && now - index.checkedAt < refreshCheckInterval) {
+            return index;
+        }
+
+        List<Object> identityProviders = new ArrayList<>();
+        List<SamlIdentityProviderDefinition> definitions = new ArrayList<>();
+        for (IdentityProvider<SamlIdentityProviderDefinition> provider : configurator.getIdentityProvidersForZone(zone)) {
+            SamlIdentityProviderDefinition definition = provider.getConfig();
+            try {
+                List<Object> version = new ArrayList<>(Arrays.asList(
+                        provider.getId(),
+                        provider.getVersion(),
+                        provider.getLastModified() == null ? null : provider.getLastModified().getTime()));
+                String metadata = configurator.getMetadata(definition);
+                if (!metadata.equals(definition.getMetaDataLocation())) {
+                    version.add(digest(metadata));
+                    definition = definition.clone();
+                    definition.setMetaDataLocation(metadata);
+                }
+                identityProviders.add(version);
+                definitions.add(definition);
+            } catch (RestClientException | MetadataProviderException e) {
+                log.error("Invalid SAML IDP zone[" + zone.getId() + "] alias[" + definition.getIdpEntityAlias() + "]", e);
+            }
+        }
+
+        if (index == null || !index.serviceProvider.equals(serviceProvider) || !index.identityProviders.equals(identityProviders)) {
+            index = buildIndex(zone, serviceProvider, identityProviders, definitions);
+            indexes.put(zone.getId(), index);
+        }
+        index.checkedAt = now;
+        return index;
+    }
+
+    /**
+     * Drops the index of a zone whose SAML identity providers were changed on this node.
+     */
+    @Override
+    public void onApplicationEvent(AbstractUaaEvent event) {
+        if (event instanceof IdentityProviderModifiedEvent) {
+            indexes.invalidate(((IdentityProvider<?>) event.getSource()).getIdentityZoneId());
+        } else if (event instanceof EntityDeletedEvent && ((EntityDeletedEvent<?>) event).getDeleted() instanceof IdentityProvider) {
+            indexes.invalidate(((IdentityProvider<?>) ((EntityDeletedEvent<?>) event).getDeleted()).getIdentityZoneId());
+        }
+    }
+
+    private MetadataIndex buildIndex(IdentityZone zone, List<Object> serviceProvider, List<Object> identityProviders, List<SamlIdentityProviderDefinition> definitions) {
+        List<ExtendedMetadataDelegate> providers = new ArrayList<>();
         try {
-            result.add(getLocalServiceProvider());
+            providers.add(getLocalServiceProvider());
         } catch (MetadataProviderException e) {
             throw new IllegalStateException(e);
         }
-        for (SamlIdentityProviderDefinition definition : configurator.getIdentityProviderDefinitions()) {
+        for (SamlIdentityProviderDefinition definition : definitions) {
             log.info("Adding SAML IDP zone[" + zone.getId() + "] alias[" + definition.getIdpEntityAlias() + "]");
             try {
                 ExtendedMetadataDelegate delegate = configurator.getExtendedMetadataDelegate(definition);
                 initializeProvider(delegate);
                 initializeProviderData(delegate);
                 initializeProviderFilters(delegate);
-                result.add(delegate);
+                providers.add(delegate);
             } catch (RestClientException | MetadataProviderException e) {
                 log.error("Invalid SAML IDP zone[" + zone.getId() + "] alias[" + definition.getIdpEntityAlias() + "]", e);
             }
         }
-        return result;
+
+        MetadataIndex index = new MetadataIndex(serviceProvider, identityProviders, providers);
+        for (ExtendedMetadataDelegate delegate : providers) {
+            try {
+                for (String entityID : parseProvider(delegate)) {
+                    index.delegates.putIfAbsent(entityID, delegate);
+                    ExtendedMetadata extendedMetadata = getExtendedMetadata(entityID, delegate);
+                    if (extendedMetadata != null) {
+                        index.extendedMetadata.putIfAbsent(entityID, extendedMetadata);
+                    }
+                }
+                String idp = getProviderIdpAlias(delegate);
+                if (StringUtils.hasText(idp)) {
+                    index.idpEntityNames.add(idp);
+                }
+                String sp = getHostedSpName(delegate);
+                if (StringUtils.hasText(sp)) {
+                    index.spEntityNames.add(sp);
+                    if (index.hostedSpName == null) {
+                        index.hostedSpName = sp;
+                    }
+                }
+            } catch (MetadataProviderException e) {
+                log.error("Unable to index metadata of:" + delegate, e);
+            }
+        }
+
+        List<String> entityNames = new ArrayList<>(index.idpEntityNames);
+        entityNames.addAll(index.spEntityNames);
+        for (String entityID : entityNames) {
+            index.entityIdsByHash.putIfAbsent(hash(entityID), entityID);
+            ExtendedMetadata extendedMetadata = index.extendedMetadata.get(entityID);
+            if (extendedMetadata != null && extendedMetadata.isLocal() && extendedMetadata.getAlias() != null) {
+                String alias = extendedMetadata.getAlias();
+                String existing = index.entityIdsByAlias.putIfAbsent(alias, entityID);
+                if (existing != null && !existing.equals(entityID)) {
+                    index.aliasConflicts.putIfAbsent(alias, "Alias " + alias + " is used both for entity " + existing + " and " + entityID);
+                }
+            }
+        }
+        return index;
+    }
+
+    private static String hash(String entityID) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-1").digest(entityID.getBytes()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String digest(String metadata) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(metadata.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     @Override
@@ -385,59 +537,27 @@ public class NonSnarlMetadataManager extends MetadataManager implements Extended
 
     @Override
     public Set<String> getIDPEntityNames() {
-        Set<String> result = new HashSet<>();
-        for (ExtendedMetadataDelegate delegate : getAvailableProviders()) {
-            try {
-                String idp = getProviderIdpAlias(delegate);
-                if (StringUtils.hasText(idp)) {
-                    result.add(idp);
-                }
-            } catch (MetadataProviderException e) {
-                log.error("Unable to get IDP alias for:"+delegate, e);
-            }
-        }
-        return result;
+        return new HashSet<>(getIndex().idpEntityNames);
     }
 
     @Override
     public Set<String> getSPEntityNames() {
-        Set<String> result = new HashSet<>();
-        for (ExtendedMetadataDelegate delegate : getAvailableProviders()) {
-            try {
-                String sp = getHostedSpName(delegate);
-                if (StringUtils.hasText(sp)) {
-                    result.add(sp);
-                }
-            } catch (MetadataProviderException e) {
-                log.error("Unable to get IDP alias for:"+delegate, e);
-            }
-        }
-        return result;
+        return new HashSet<>(getIndex().spEntityNames);
     }
 
     @Override
     public boolean isIDPValid(String idpID) {
-        return getIDPEntityNames().contains(idpID);
+        return getIndex().idpEntityNames.contains(idpID);
     }
 
     @Override
     public boolean isSPValid(String spID) {
-        return getIDPEntityNames().contains(spID);
+        return getIndex().idpEntityNames.contains(spID);
     }
 
     @Override
     public String getHostedSPName() {
-        for (ExtendedMetadataDelegate delegate : getAvailableProviders()) {
-            try {
-                String spName = getHostedSpName(delegate);
-                if (StringUtils.hasText(spName)) {
-                    return spName;
-                }
-            } catch (MetadataProviderException e) {
-                log.error("Unable to find hosted SP name:"+delegate, e);
-            }
-        }
-        return null;
+        return getIndex().hostedSpName;
     }
 
     @Override
@@ -462,11 +582,9 @@ public class NonSnarlMetadataManager extends MetadataManager implements Extended
 
     @Override
     public ExtendedMetadata getExtendedMetadata(String entityID) throws MetadataProviderException {
-        for (MetadataProvider provider : getProviders()) {
-            ExtendedMetadata extendedMetadata = getExtendedMetadata(entityID, provider);
-            if (extendedMetadata != null) {
-                return extendedMetadata;
-            }
+        ExtendedMetadata extendedMetadata = getIndex().extendedMetadata.get(entityID);
+        if (extendedMetadata != null) {
+            return extendedMetadata.clone();
         }
         return getDefaultExtendedMetadata().clone();
     }
@@ -484,19 +602,12 @@ public class NonSnarlMetadataManager extends MetadataManager implements Extended
 
     @Override
     public EntityDescriptor getEntityDescriptor(byte[] hash) throws MetadataProviderException {
-        for (String idp : getIDPEntityNames()) {
-            if (SAMLUtil.compare(hash, idp)) {
-                return getEntityDescriptor(idp);
-            }
-        }
-
-        for (String sp : getSPEntityNames()) {
-            if (SAMLUtil.compare(hash, sp)) {
-                return getEntityDescriptor(sp);
-            }
+        if (hash.length != 20) {
+            log.debug("Ignoring entity ID hash of {} bytes, SHA-1 hashes have 20", hash.length);
+            return null;
         }
-
-        return null;
+        String entityID = getIndex().entityIdsByHash.get(Base64.getEncoder().encodeToString(hash));
+        return entityID == null ? null : getEntityDescriptor(entityID);
     }
 
     @Override
@@ -505,31 +616,12 @@ public class NonSnarlMetadataManager extends MetadataManager implements Extended
             return null;
         }
 
-        String entityId = null;
-
-        for (String idp : getIDPEntityNames()) {
-            ExtendedMetadata extendedMetadata = getExtendedMetadata(idp);
-            if (extendedMetadata.isLocal() && entityAlias.equals(extendedMetadata.getAlias())) {
-                if (entityId != null && !entityId.equals(idp)) {
-                    throw new MetadataProviderException("Alias " + entityAlias + " is used both for entity " + entityId + " and " + idp);
-                } else {
-                    entityId = idp;
-                }
-            }
-        }
-
-        for (String sp : getSPEntityNames()) {
-            ExtendedMetadata extendedMetadata = getExtendedMetadata(sp);
-            if (extendedMetadata.isLocal() && entityAlias.equals(extendedMetadata.getAlias())) {
-                if (entityId != null && !entityId.equals(sp)) {
-                    throw new MetadataProviderException("Alias " + entityAlias + " is used both for entity " + entityId + " and " + sp);
-                } else {
-                    entityId = sp;
-                }
-            }
+        MetadataIndex index = getIndex();
+        String conflict = index.aliasConflicts.get(entityAlias);
+        if (conflict != null) {
+            throw new MetadataProviderException(conflict);
         }
-
-        return entityId;
+        return index.entityIdsByAlias.get(entityAlias);
     }
 
     @Override
@@ -555,6 +647,7 @@ public class NonSnarlMetadataManager extends MetadataManager implements Extended
 
     @Override
     public void setRefreshCheckInterval(long refreshCheckInterval) {
+        this.refreshCheckInterval = refreshCheckInterval;
         super.setRefreshCheckInterval(0);
     }
 
@@ -588,59 +681,44 @@ public class NonSnarlMetadataManager extends MetadataManager implements Extended
 
     /** {@inheritDoc} */
     public EntityDescriptor getEntityDescriptor(String entityID) {
-        EntityDescriptor descriptor = null;
-        for (MetadataProvider provider : getProviders()) {
-            log.debug("Checking child metadata provider for entity descriptor with entity ID: {}", entityID);
-            try {
-                descriptor = provider.getEntityDescriptor(entityID);
-                if (descriptor != null) {
-                    break;
-                }
-            } catch (MetadataProviderException e) {
-                log.warn("Error retrieving metadata from provider of type {}, proceeding to next provider",
-                         provider.getClass().getName(), e);
-                continue;
-            }
+        MetadataProvider provider = getIndex().delegates.get(entityID);
+        if (provider == null) {
+            return null;
+        }
+        try {
+            return provider.getEntityDescriptor(entityID);
+        } catch (MetadataProviderException e) {
+            log.warn("Error retrieving metadata from provider of type {}", provider.getClass().getName(), e);
+            return null;
         }
-        return descriptor;
     }
 
     /** {@inheritDoc} */
     public List<RoleDescriptor> getRole(String entityID, QName roleName) {
-        List<RoleDescriptor> roleDescriptors = null;
-        for (MetadataProvider provider : getProviders()) {
-            log.debug("Checking child metadata provider for entity descriptor with entity ID: {}", entityID);
-            try {
-                roleDescriptors = provider.getRole(entityID, roleName);
-                if (roleDescriptors != null && !roleDescriptors.isEmpty()) {
-                    break;
-                }
-            } catch (MetadataProviderException e) {
-                log.warn("Error retrieving metadata from provider of type {}, proceeding to next provider",
-                         provider.getClass().getName(), e);
-                continue;
-            }
+        MetadataProvider provider = getIndex().delegates.get(entityID);
+        if (provider == null) {
+            return null;
+        }
+        try {
+            return provider.getRole(entityID, roleName);
+        } catch (MetadataProviderException e) {
+            log.warn("Error retrieving metadata from provider of type {}", provider.getClass().getName(), e);
+            return null;
         }
-        return roleDescriptors;
     }
 
     /** {@inheritDoc} */
     public RoleDescriptor getRole(String entityID, QName roleName, String supportedProtocol) {
-        RoleDescriptor roleDescriptor = null;
-        for (MetadataProvider provider : getProviders()) {
-            log.debug("Checking child metadata provider for entity descriptor with entity ID: {}", entityID);
-            try {
-                roleDescriptor = provider.getRole(entityID, roleName, supportedProtocol);
-                if (roleDescriptor != null) {
-                    break;
-                }
-            } catch (MetadataProviderException e) {
-                log.warn("Error retrieving metadata from provider of type {}, proceeding to next provider",
-                         provider.getClass().getName(), e);
-                continue;
-            }
+        MetadataProvider provider = getIndex().delegates.get(entityID);
+        if (provider == null) {
+            return null;
+        }
+        try {
+            return provider.getRole(entityID, roleName, supportedProtocol);
+        } catch (MetadataProviderException e) {
+            log.warn("Error retrieving metadata from provider of type {}", provider.getClass().getName(), e);
+            return null;
         }
-        return roleDescriptor;
     }
 
     @Override
@@ -652,6 +730,30 @@ public class NonSnarlMetadataManager extends MetadataManager implements Extended
         this.generator = generator;
     }
 
+    /**
+     * Immutable once built. A zone's index is replaced as a whole when its metadata changes.
+     */
+    private static final class MetadataIndex {
+        private final List<Object> serviceProvider;
+        private final List<Object> identityProviders;
+        private final List<ExtendedMetadataDelegate> providers;
+        private final Map<String, ExtendedMetadataDelegate> delegates = new HashMap<>();
+        private final Map<String, ExtendedMetadata> extendedMetadata = new HashMap<>();
+        private final Set<String> idpEntityNames = new HashSet<>();
+        private final Set<String> spEntityNames = new HashSet<>();
+        private final Map<String, String> entityIdsByHash = new HashMap<>();
+        private final Map<String, String> entityIdsByAlias = new HashMap<>();
+        private final Map<String, String> aliasConflicts = new HashMap<>();
+        private String hostedSpName;
+        private volatile long checkedAt;
+
+        private MetadataIndex(List<Object> serviceProvider, List<Object> identityProviders, List<ExtendedMetadataDelegate> providers) {
+            this.serviceProvider = serviceProvider;
+            this.identityProviders = identityProviders;
+            this.providers = Collections.unmodifiableList(providers);
+        }
+    }
+
     public class ChainingEntitiesDescriptor implements EntitiesDescriptor {
 
         /** Metadata from the child metadata providers. */
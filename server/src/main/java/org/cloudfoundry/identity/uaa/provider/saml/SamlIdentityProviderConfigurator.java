@@ -45,9 +45,18 @@ public class SamlIdentityProviderConfigurator {
 
     public List<SamlIdentityProviderDefinition> getIdentityProviderDefinitionsForZone(IdentityZone zone) {
         List<SamlIdentityProviderDefinition> result = new LinkedList<>();
+        for (IdentityProvider<SamlIdentityProviderDefinition> provider : getIdentityProvidersForZone(zone)) {
+            result.add(provider.getConfig());
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<IdentityProvider<SamlIdentityProviderDefinition>> getIdentityProvidersForZone(IdentityZone zone) {
+        List<IdentityProvider<SamlIdentityProviderDefinition>> result = new LinkedList<>();
         for (IdentityProvider provider : providerProvisioning.retrieveActive(zone.getId())) {
             if (OriginKeys.SAML.equals(provider.getType())) {
-                result.add((SamlIdentityProviderDefinition) provider.getConfig());
+                result.add((IdentityProvider<SamlIdentityProviderDefinition>) provider);
             }
         }
         return result;
@@ -158,14 +167,30 @@ public class SamlIdentityProviderConfigurator {
     }
 
     protected ExtendedMetadataDelegate configureURLMetadata(SamlIdentityProviderDefinition def) throws MetadataProviderException {
+        def = def.clone();
+        def.setMetaDataLocation(fetchMetadata(def));
+        return configureXMLMetadata(def);
+    }
+
+    /**
+     * Returns the metadata of a provider as configured or, if it is configured by URL, as
+     * fetched from that URL. The metadata is not parsed, which makes this cheap enough to
+     * tell whether the metadata of a provider has changed.
+     */
+    public String getMetadata(SamlIdentityProviderDefinition def) throws MetadataProviderException {
+        if (def.getMetaDataLocation().trim().startsWith("http")) {
+            return fetchMetadata(def);
+        }
+        return def.getMetaDataLocation();
+    }
+
+    private String fetchMetadata(SamlIdentityProviderDefinition def) throws MetadataProviderException {
         try {
-            def = def.clone();
             String adjustedMetatadataURIForPort = adjustURIForPort(def.getMetaDataLocation());
 
             byte[] metadata = fixedHttpMetaDataProvider.fetchMetadata(adjustedMetatadataURIForPort, def.isSkipSslValidation());
 
-            def.setMetaDataLocation(new String(metadata, StandardCharsets.UTF_8));
-            return configureXMLMetadata(def);
+            return new String(metadata, StandardCharsets.UTF_8);
         } catch (URISyntaxException e) {
             throw new MetadataProviderException("Invalid socket factory(invalid URI):" + def.getMetaDataLocation(), e);
         }
@@ -12,6 +12,10 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.provider.saml;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.cloudfoundry.identity.uaa.saml.SamlKey;
 import org.cloudfoundry.identity.uaa.util.KeyWithCert;
 import org.cloudfoundry.identity.uaa.zone.SamlConfig;
@@ -20,20 +24,39 @@ import org.slf4j.LoggerFactory;
 import org.springframework.security.saml.key.JKSKeyManager;
 import org.springframework.security.saml.key.KeyManager;
 
+import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 import static java.util.Optional.ofNullable;
 
+/**
+ * Builds the key manager of a zone's SAML service provider keys. Building one parses every
+ * key and certificate, so built key managers are kept, keyed by a fingerprint of the keys
+ * and the active key id, and shared by every request and thread of zones with the same keys.
+ * Rotating a zone's keys changes the fingerprint, and key managers that are no longer used
+ * expire.
+ */
 public final class SamlKeyManagerFactory {
 
     protected final static Logger logger = LoggerFactory.getLogger(SamlKeyManagerFactory.class);
 
+    private final Cache<String, KeyManager> keyManagers = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+
     public SamlKeyManagerFactory() {
     }
 
@@ -48,6 +71,37 @@ public final class SamlKeyManagerFactory {
             return null;
         }
 
+        try {
+            return keyManagers.get(fingerprint(keys, activeKeyId), () -> buildKeyManager(keys, activeKeyId));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static String fingerprint(Map<String, SamlKey> keys, String activeKeyId) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        update(digest, activeKeyId);
+        for (Map.Entry<String, SamlKey> entry : new TreeMap<>(keys).entrySet()) {
+            update(digest, entry.getKey());
+            update(digest, entry.getValue().getKey());
+            update(digest, entry.getValue().getPassphrase());
+            update(digest, entry.getValue().getCertificate());
+        }
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        String field = value == null ? "-" : value.length() + ":" + value;
+        digest.update(field.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static KeyManager buildKeyManager(Map<String, SamlKey> keys, String activeKeyId) {
         try {
             KeyStore keystore = KeyStore.getInstance("JKS");
             keystore.load(null);
@@ -0,0 +1,26 @@
+package org.cloudfoundry.identity.uaa.resources;
+
+import java.util.List;
+
+/**
+ * One page of a {@link Queryable#queryPage keyset query}: the resources and the cursor
+ * that continues after the last of them, or null if there are no more resources.
+ */
+public class KeysetPage<T> {
+
+    private final List<T> resources;
+    private final String nextCursor;
+
+    public KeysetPage(List<T> resources, String nextCursor) {
+        this.resources = resources;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getResources() {
+        return resources;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
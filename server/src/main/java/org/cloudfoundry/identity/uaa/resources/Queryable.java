@@ -13,6 +13,7 @@
 package org.cloudfoundry.identity.uaa.resources;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface Queryable<T> {
 
@@ -20,4 +21,21 @@ public interface Queryable<T> {
 
     List<T> query(String filter, String sortBy, boolean ascending, String zoneId);
 
+    /**
+     * Returns at most {@code count} resources that follow the position encoded in
+     * {@code cursor}, which is either empty to start from the beginning or the
+     * {@link KeysetPage#getNextCursor() next cursor} of the previous page. Unlike
+     * {@link #query(String, String, boolean, String)}, the cost of a page does not grow
+     * with its position, because rows are located by their sort key instead of an offset.
+     *
+     * @throws IllegalArgumentException if the filter, sort field or cursor is invalid
+     */
+    KeysetPage<T> queryPage(String filter, String sortBy, boolean ascending, String cursor, int count, String zoneId);
+
+    /**
+     * Passes every resource of a zone, in no particular order, to the consumer as it is read
+     * from a single forward-only query, fetching {@code fetchSize} rows at a time.
+     */
+    void streamAll(String zoneId, int fetchSize, Consumer<T> consumer);
+
 }
@@ -90,6 +90,19 @@ public class SearchResultsFactory {
         AttributeNameMapper mapper,
         List<String> schemas) {
 
+        return buildSearchResultFrom(input, startIndex, count, total, attributes, mapper, schemas, null);
+    }
+
+    public static <T> SearchResults<Map<String, Object>> buildSearchResultFrom(
+        List<T> input,
+        int startIndex,
+        int count,
+        int total,
+        String[] attributes,
+        AttributeNameMapper mapper,
+        List<String> schemas,
+        String nextCursor) {
+
         Assert.state(input.size() <= count,
                         "Cannot build search results from parent list. Use subList before you call this method.");
 
@@ -114,7 +127,7 @@ public class SearchResultsFactory {
             results.add(map);
         }
 
-        return new SearchResults<>(schemas, results, startIndex, count, total);
+        return new SearchResults<>(schemas, results, startIndex, count, total, nextCursor);
     }
 
 }
@@ -1,5 +1,6 @@
 package org.cloudfoundry.identity.uaa.resources.jdbc;
 
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.Queryable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,8 +10,16 @@ import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.util.StringUtils;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static com.google.common.primitives.Ints.tryParse;
@@ -85,6 +94,107 @@ public abstract class AbstractQueryable<T> implements Queryable<T> {
         }
     }
 
+    /**
+     * Seeks to the cursor position with {@code (sort > :value or (sort = :value and id > :id))}
+     * rather than a row value comparison, which not all supported databases can use with an
+     * index. Rows without a sort value are returned last, in a second query ordered by id.
+     * One more row than requested is fetched to find out whether there is a next page.
+     */
+    @Override
+    public KeysetPage<T> queryPage(String filter, String sortBy, boolean ascending, String cursor, int count, String zoneId) {
+        String idColumn = getIdColumn();
+        String sortColumn = StringUtils.hasText(sortBy) ? queryConverter.map(sortBy).trim() : idColumn;
+        validateOrderBy(sortColumn);
+        if (sortColumn.contains(",") || null != tryParse(sortColumn)) {
+            throw new IllegalArgumentException("Invalid sort field for a cursor: " + sortBy);
+        }
+        KeysetCursor after = KeysetCursor.decode(cursor, sortColumn, ascending);
+        int limit = Math.max(count, 1) + 1;
+        boolean byId = sortColumn.equalsIgnoreCase(idColumn);
+
+        SearchQueryConverter.ProcessedFilter where = queryConverter.convert(filter, null, ascending, zoneId);
+        Map<String, Object> params = new HashMap<>(where.getParams());
+        String valueParam = where.getParamPrefix() + "cursor_value";
+        String idParam = where.getParamPrefix() + "cursor_id";
+        String comparison = ascending ? " > " : " < ";
+        String direction = ascending ? " ASC" : " DESC";
+        RowMapper<KeyedRow<T>> keyedRowMapper = (rs, rowNum) ->
+                new KeyedRow<>(rowMapper.mapRow(rs, rowNum), byId ? null : getSortValue(rs, sortColumn), rs.getString(idColumn));
+
+        List<KeyedRow<T>> rows = new ArrayList<>();
+        try {
+            if (!byId && (after == null || !after.isNullValue())) {
+                StringBuilder sql = new StringBuilder(getBaseSqlQuery())
+                        .append(" where (").append(where.getSql()).append(") and ").append(sortColumn).append(" is not null");
+                if (after != null) {
+                    sql.append(" and (").append(sortColumn).append(comparison).append(":").append(valueParam)
+                            .append(" or (").append(sortColumn).append(" = :").append(valueParam)
+                            .append(" and ").append(idColumn).append(comparison).append(":").append(idParam).append("))");
+                    params.put(valueParam, after.getValue());
+                    params.put(idParam, after.getId());
+                }
+                sql.append(where.ORDER_BY).append(sortColumn).append(direction).append(", ").append(idColumn).append(direction);
+                logger.debug("keyset sql: " + sql + ", params: " + params);
+                rows.addAll(pagingListFactory.queryFirst(sql.toString(), params, keyedRowMapper, limit));
+            }
+            if (rows.size() < limit) {
+                StringBuilder sql = new StringBuilder(getBaseSqlQuery()).append(" where (").append(where.getSql()).append(")");
+                if (!byId) {
+                    sql.append(" and ").append(sortColumn).append(" is null");
+                }
+                if (after != null && (byId || after.isNullValue())) {
+                    sql.append(" and ").append(idColumn).append(comparison).append(":").append(idParam);
+                    params.put(idParam, after.getId());
+                }
+                sql.append(where.ORDER_BY).append(idColumn).append(direction);
+                logger.debug("keyset sql: " + sql + ", params: " + params);
+                rows.addAll(pagingListFactory.queryFirst(sql.toString(), params, keyedRowMapper, limit - rows.size()));
+            }
+        } catch (DataAccessException e) {
+            logger.debug("Filter '" + filter + "' generated invalid SQL", e);
+            throw new IllegalArgumentException("Invalid filter: " + filter);
+        }
+
+        String nextCursor = null;
+        if (rows.size() == limit) {
+            rows = rows.subList(0, limit - 1);
+            KeyedRow<T> last = rows.get(rows.size() - 1);
+            nextCursor = new KeysetCursor(sortColumn, ascending, last.sortValue, last.id).encode();
+        }
+        List<T> resources = new ArrayList<>(rows.size());
+        rows.forEach(row -> resources.add(row.resource));
+        return new KeysetPage<>(resources, nextCursor);
+    }
+
+    @Override
+    public void streamAll(String zoneId, int fetchSize, Consumer<T> consumer) {
+        StreamingQuery.forEach(namedParameterJdbcTemplate.getJdbcOperations(),
+                getBaseSqlQuery() + " where identity_zone_id = ?", fetchSize, rowMapper, consumer, zoneId);
+    }
+
+    private static Object getSortValue(ResultSet rs, String sortColumn) throws SQLException {
+        Object value = rs.getObject(sortColumn);
+        if (value instanceof Date || value instanceof Temporal) {
+            return rs.getTimestamp(sortColumn);
+        }
+        if (value == null || value instanceof Number || value instanceof Boolean) {
+            return value;
+        }
+        return rs.getString(sortColumn);
+    }
+
+    private static final class KeyedRow<T> {
+        private final T resource;
+        private final Object sortValue;
+        private final String id;
+
+        private KeyedRow(T resource, Object sortValue, String id) {
+            this.resource = resource;
+            this.sortValue = sortValue;
+            this.id = id;
+        }
+    }
+
     private String getQuerySQL(SearchQueryConverter.ProcessedFilter where) {
         if (where.hasOrderBy()) {
             return getBaseSqlQuery() + " where (" + where.getSql().replace(where.ORDER_BY, ")" + where.ORDER_BY);
@@ -97,6 +207,14 @@ public abstract class AbstractQueryable<T> implements Queryable<T> {
 
     protected abstract String getTableName();
 
+    /**
+     * The column that identifies a row, used to order rows with the same sort value in
+     * {@link #queryPage(String, String, boolean, String, int, String)}.
+     */
+    protected String getIdColumn() {
+        return "id";
+    }
+
     protected abstract void validateOrderBy(String orderBy) throws IllegalArgumentException;
 
     protected void validateOrderBy(final String csvRequestedOrderBy, final String csvAllowedFields) throws IllegalArgumentException {
@@ -15,6 +15,9 @@
 
 package org.cloudfoundry.identity.uaa.resources.jdbc;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 public class HsqlDbLimitSqlAdapter implements LimitSqlAdapter {
 
     @Override
@@ -29,4 +32,31 @@ public class HsqlDbLimitSqlAdapter implements LimitSqlAdapter {
             " ORDER BY "+ expiresColumn +
             " LIMIT " + maxRows + " OFFSET 0)";
     }
+
+    @Override
+    public String getUpsertQuery(String tablename, String primaryKeyColumn, List<String> columns, List<String> updateColumns, String matchColumn) {
+        // parameters are referenced against the target columns rather than selected from a
+        // VALUES source, which would type them as short strings and truncate large values
+        String sql = "MERGE INTO " + tablename +
+            " USING (VALUES(0)) AS s(n)" +
+            " ON " + primaryKeyColumn + " = :" + primaryKeyColumn;
+        if (!updateColumns.isEmpty()) {
+            sql += " WHEN MATCHED" + (matchColumn == null ? "" : " AND " + matchColumn + " = :" + matchColumn) + " THEN UPDATE SET " +
+                updateColumns.stream().map(c -> c + " = :" + c).collect(Collectors.joining(","));
+        }
+        return sql +
+            " WHEN NOT MATCHED THEN INSERT (" + String.join(",", columns) + ")" +
+            " VALUES (" + columns.stream().map(c -> ":" + c).collect(Collectors.joining(",")) + ")";
+    }
+
+    @Override
+    public String getCurrentTimeMillisExpression() {
+        return "UNIX_MILLIS()";
+    }
+
+    @Override
+    public String getCurrentTimeMillisQuery() {
+        // HSQLDB has no SELECT without FROM
+        return "VALUES(" + getCurrentTimeMillisExpression() + ")";
+    }
 }
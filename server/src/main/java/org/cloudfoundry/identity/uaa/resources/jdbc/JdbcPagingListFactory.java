@@ -38,4 +38,11 @@ public class JdbcPagingListFactory {
     public <T> List<T> createJdbcPagingList(String sql, Map<String, ?> args, RowMapper<T> mapper, int pageSize) {
         return new JdbcPagingList<T>(jdbcTemplate, limitSqlAdapter, sql, args, mapper, pageSize);
     }
+
+    /**
+     * Returns the first {@code limit} rows of the query, without counting the rows first.
+     */
+    public <T> List<T> queryFirst(String sql, Map<String, ?> args, RowMapper<T> mapper, int limit) {
+        return jdbcTemplate.query(limitSqlAdapter.getLimitSql(sql, 0, limit), args, mapper);
+    }
 }
@@ -0,0 +1,123 @@
+package org.cloudfoundry.identity.uaa.resources.jdbc;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.springframework.util.StringUtils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The position of a keyset query: the sort field and order it was issued with, and the sort
+ * value and id of the last row returned. It is handed to clients as an opaque URL safe token.
+ *
+ * A null sort value means that the last row had no value for the sort field. Such rows are
+ * returned after all rows that have one, ordered by id.
+ */
+final class KeysetCursor {
+
+    private static final String TIMESTAMP = "t";
+    private static final String NUMBER = "n";
+    private static final String BOOLEAN = "b";
+    private static final String STRING = "s";
+
+    private final String sortBy;
+    private final boolean ascending;
+    private final Object value;
+    private final String id;
+
+    KeysetCursor(String sortBy, boolean ascending, Object value, String id) {
+        this.sortBy = sortBy;
+        this.ascending = ascending;
+        this.value = value;
+        this.id = id;
+    }
+
+    Object getValue() {
+        return value;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    boolean isNullValue() {
+        return value == null;
+    }
+
+    String encode() {
+        Map<String, Object> token = new LinkedHashMap<>();
+        token.put("sortBy", sortBy);
+        token.put("ascending", ascending);
+        token.put("id", id);
+        if (value instanceof Timestamp) {
+            Timestamp timestamp = (Timestamp) value;
+            token.put("type", TIMESTAMP);
+            token.put("value", timestamp.getTime() + ":" + timestamp.getNanos());
+        } else if (value instanceof Number) {
+            token.put("type", NUMBER);
+            token.put("value", value.toString());
+        } else if (value instanceof Boolean) {
+            token.put("type", BOOLEAN);
+            token.put("value", value.toString());
+        } else if (value != null) {
+            token.put("type", STRING);
+            token.put("value", value.toString());
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(JsonUtils.writeValueAsString(token).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the position a cursor encodes, or null to start from the beginning if the
+     * cursor is empty.
+     *
+     * @throws IllegalArgumentException if the cursor is invalid or was issued for another sort field or order
+     */
+    static KeysetCursor decode(String cursor, String sortBy, boolean ascending) {
+        if (!StringUtils.hasText(cursor)) {
+            return null;
+        }
+        Map<String, Object> token;
+        Object value;
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            token = JsonUtils.readValue(json, new TypeReference<Map<String, Object>>() {});
+            value = decodeValue((String) token.get("type"), (String) token.get("value"));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        if (token == null || !(token.get("id") instanceof String)) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        if (!sortBy.equalsIgnoreCase(String.valueOf(token.get("sortBy"))) || !Boolean.valueOf(ascending).equals(token.get("ascending"))) {
+            throw new IllegalArgumentException("The cursor was issued for another sort field or order: " + cursor);
+        }
+        return new KeysetCursor(sortBy, ascending, value, (String) token.get("id"));
+    }
+
+    private static Object decodeValue(String type, String value) {
+        if (type == null || value == null) {
+            return null;
+        }
+        switch (type) {
+            case TIMESTAMP:
+                String[] parts = value.split(":");
+                Timestamp timestamp = new Timestamp(Long.parseLong(parts[0]));
+                timestamp.setNanos(Integer.parseInt(parts[1]));
+                return timestamp;
+            case NUMBER:
+                return new BigDecimal(value);
+            case BOOLEAN:
+                return Boolean.valueOf(value);
+            case STRING:
+                return value;
+            default:
+                throw new IllegalArgumentException("Unknown cursor value type: " + type);
+        }
+    }
+}
@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.resources.jdbc;
 
+import java.util.List;
+
 public interface LimitSqlAdapter {
 
     default String getLimitSql(String sql, int index, int size) {
@@ -19,4 +21,35 @@ public interface LimitSqlAdapter {
     }
 
     String getDeleteExpiredQuery(String tablename, String primaryKeyColumn, String expiresColumn, int maxRows);
+
+    /**
+     * Single statement that inserts a row or, if a row with the same primary key exists,
+     * overwrites its {@code updateColumns}. An existing row is left untouched when there are
+     * no update columns. Every column is bound as a named parameter of the same name, to be
+     * executed with a {@link org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate}.
+     */
+    default String getUpsertQuery(String tablename, String primaryKeyColumn, List<String> columns, List<String> updateColumns) {
+        return getUpsertQuery(tablename, primaryKeyColumn, columns, updateColumns, null);
+    }
+
+    /**
+     * Like {@link #getUpsertQuery(String, String, List, List)}, but an existing row is only
+     * overwritten if it has the same value in {@code matchColumn}, e.g. the identity zone of
+     * a table whose primary key is not scoped by zone. Otherwise the existing row is left
+     * untouched. The match column must not be one of the update columns.
+     */
+    String getUpsertQuery(String tablename, String primaryKeyColumn, List<String> columns, List<String> updateColumns, String matchColumn);
+
+    /**
+     * Expression for the current time of the database in milliseconds since the epoch, for
+     * times that are written and compared by different nodes, whose clocks may differ.
+     */
+    String getCurrentTimeMillisExpression();
+
+    /**
+     * Query for the single value of {@link #getCurrentTimeMillisExpression()}.
+     */
+    default String getCurrentTimeMillisQuery() {
+        return "SELECT " + getCurrentTimeMillisExpression();
+    }
 }
@@ -15,6 +15,9 @@
 
 package org.cloudfoundry.identity.uaa.resources.jdbc;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 public class MySqlLimitSqlAdapter implements LimitSqlAdapter {
     public String getDeleteExpiredQuery(String tablename, String primaryKeyColumn, String expiresColumn, int maxRows) {
         return "delete from " +
@@ -25,4 +28,24 @@ public class MySqlLimitSqlAdapter implements LimitSqlAdapter {
             expiresColumn +
             " limit " + maxRows;
     }
+
+    @Override
+    public String getUpsertQuery(String tablename, String primaryKeyColumn, List<String> columns, List<String> updateColumns, String matchColumn) {
+        // an existing row is kept by assigning the primary key to itself, INSERT IGNORE would also swallow other errors;
+        // ON DUPLICATE KEY UPDATE has no WHERE clause, so a non-matching row keeps its values through IF
+        return "insert into " +
+            tablename +
+            " (" + String.join(",", columns) + ")" +
+            " values (" + columns.stream().map(c -> ":" + c).collect(Collectors.joining(",")) + ")" +
+            " on duplicate key update " +
+            (updateColumns.isEmpty() ? primaryKeyColumn + " = " + primaryKeyColumn :
+                updateColumns.stream().map(c -> c + " = " + (matchColumn == null ? "values(" + c + ")" :
+                    "if(" + matchColumn + " = values(" + matchColumn + "), values(" + c + "), " + c + ")"))
+                    .collect(Collectors.joining(",")));
+    }
+
+    @Override
+    public String getCurrentTimeMillisExpression() {
+        return "CAST(UNIX_TIMESTAMP(CURRENT_TIMESTAMP(3)) * 1000 AS SIGNED)";
+    }
 }
@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.resources.jdbc;
 
+import java.util.List;
+
 public class OracleLimitSqlAdapter implements LimitSqlAdapter {
 
     @Override
@@ -25,4 +27,14 @@ public class OracleLimitSqlAdapter implements LimitSqlAdapter {
     public String getDeleteExpiredQuery(String tablename, String primaryKeyColumn, String expiresColumn, int maxRows) {
         throw new UnsupportedOperationException();
     }
+
+    @Override
+    public String getUpsertQuery(String tablename, String primaryKeyColumn, List<String> columns, List<String> updateColumns, String matchColumn) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getCurrentTimeMillisExpression() {
+        throw new UnsupportedOperationException();
+    }
 }
@@ -15,6 +15,9 @@
 
 package org.cloudfoundry.identity.uaa.resources.jdbc;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 public class PostgresLimitSqlAdapter implements LimitSqlAdapter {
     @Override
     public String getDeleteExpiredQuery(String tablename, String primaryKeyColumn, String expiresColumn, int maxRows) {
@@ -33,4 +36,22 @@ public class PostgresLimitSqlAdapter implements LimitSqlAdapter {
             expiresColumn +
             " LIMIT "+maxRows+" FOR UPDATE SKIP LOCKED))";
     }
+
+    @Override
+    public String getUpsertQuery(String tablename, String primaryKeyColumn, List<String> columns, List<String> updateColumns, String matchColumn) {
+        return "INSERT INTO " +
+            tablename +
+            " (" + String.join(",", columns) + ")" +
+            " VALUES (" + columns.stream().map(c -> ":" + c).collect(Collectors.joining(",")) + ")" +
+            " ON CONFLICT (" + primaryKeyColumn + ") DO " +
+            (updateColumns.isEmpty() ? "NOTHING" :
+                "UPDATE SET " + updateColumns.stream().map(c -> c + " = EXCLUDED." + c).collect(Collectors.joining(",")) +
+                (matchColumn == null ? "" : " WHERE " + tablename + "." + matchColumn + " = EXCLUDED." + matchColumn));
+    }
+
+    @Override
+    public String getCurrentTimeMillisExpression() {
+        // CLOCK_TIMESTAMP rather than NOW, which is the start of the transaction
+        return "CAST(EXTRACT(EPOCH FROM CLOCK_TIMESTAMP()) * 1000 AS BIGINT)";
+    }
 }
@@ -0,0 +1,46 @@
+package org.cloudfoundry.identity.uaa.resources.jdbc;
+
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * Runs a query on a forward-only, read-only cursor and hands each row to a consumer as soon
+ * as it is read, so that memory use does not depend on the number of rows.
+ *
+ * Rows are fetched from the database in batches of the fetch size. Some drivers only do so
+ * under conditions of their own: PostgreSQL only inside a transaction, and MySQL only with
+ * {@code useCursorFetch=true} in the connection URL.
+ */
+public final class StreamingQuery {
+
+    private StreamingQuery() {
+    }
+
+    public static <T> void forEach(JdbcOperations jdbcOperations,
+                                   String sql,
+                                   int fetchSize,
+                                   RowMapper<T> rowMapper,
+                                   Consumer<? super T> consumer,
+                                   Object... args) {
+        jdbcOperations.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            new ArgumentPreparedStatementSetter(args).setValues(statement);
+            return statement;
+        }, new RowCallbackHandler() {
+            private int rowNum;
+
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                consumer.accept(rowMapper.mapRow(rs, rowNum++));
+            }
+        });
+    }
+}
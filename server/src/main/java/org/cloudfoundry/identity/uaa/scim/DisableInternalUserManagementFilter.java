@@ -21,7 +21,7 @@ public class DisableInternalUserManagementFilter extends OncePerRequestFilter {
     private final IdentityProviderProvisioning identityProviderProvisioning;
     private final IdentityZoneManager identityZoneManager;
 
-    private static final String regex = "^/login|^/Users.*";
+    private static final String regex = "^/login|^/Users.*|^/Bulk|^/UserImports";
 
     private final Pattern pattern = Pattern.compile(regex);
 
@@ -4,8 +4,11 @@ import org.cloudfoundry.identity.uaa.scim.exception.MemberAlreadyExistsException
 import org.cloudfoundry.identity.uaa.scim.exception.MemberNotFoundException;
 import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceNotFoundException;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 public interface ScimGroupMembershipManager {
 
@@ -22,6 +25,19 @@ public interface ScimGroupMembershipManager {
             final String zoneId)
             throws ScimResourceNotFoundException, MemberAlreadyExistsException;
 
+    /**
+     * Add members to a group in one batch
+     *
+     * @param groupId id of a valid group that already exists.
+     * @param members membership info for enrolling existing scim objects (users
+     *                or groups) in the group
+     */
+    List<ScimGroupMember> addMembers(
+            final String groupId,
+            final List<ScimGroupMember> members,
+            final String zoneId)
+            throws ScimResourceNotFoundException, MemberAlreadyExistsException;
+
     /**
      * Retrieve all members of a group
      */
@@ -31,6 +47,15 @@ public interface ScimGroupMembershipManager {
             final String zoneId)
             throws ScimResourceNotFoundException;
 
+    /**
+     * Pass every membership of a zone, as the group id and the member, to the
+     * consumer as it is read from a single forward-only query
+     */
+    void streamAll(
+            final String zoneId,
+            final int fetchSize,
+            final BiConsumer<String, ScimGroupMember> consumer);
+
     /**
      * Retrieve all groups that the given member belongs to
      *
@@ -42,6 +67,20 @@ public interface ScimGroupMembershipManager {
             final boolean transitive,
             final String zoneId) throws ScimResourceNotFoundException;
 
+    /**
+     * Retrieve the groups of several users at once, including the default
+     * groups of the zone, with a number of queries that does not depend on the
+     * number of users
+     *
+     * @param transitive true means indirect/transitive membership is also
+     *                   processed (nested groups)
+     * @return the groups by user id
+     */
+    Map<String, Set<ScimGroup>> getGroupsWithMembers(
+            final Collection<String> userIds,
+            final boolean transitive,
+            final String zoneId) throws ScimResourceNotFoundException;
+
     /**
      * Retrieve a particular member's membership details
      */
@@ -25,6 +25,21 @@ public interface ScimUserProvisioning extends ResourceManager<ScimUser>, Queryab
 
     ScimUser createUser(ScimUser user, String password, String zoneId) throws InvalidPasswordException, InvalidScimResourceException;
 
+    /**
+     * Creates the users, each with the password it carries, in one batch.
+     *
+     * @return the created users, in the same order
+     */
+    List<ScimUser> createUsers(List<ScimUser> users, String zoneId) throws InvalidScimResourceException;
+
+    /**
+     * Creates the users in one batch, with passwords that are already encoded. The users are
+     * not read back, only their ids are set.
+     *
+     * @return the same users, with their new ids
+     */
+    List<ScimUser> importUsers(List<ScimUser> users, String zoneId) throws InvalidScimResourceException;
+
     List<ScimUser> retrieveByEmailAndZone(String email, String origin, String zoneId);
 
     List<ScimUser> retrieveByUsernameAndZone(String username, String zoneId);
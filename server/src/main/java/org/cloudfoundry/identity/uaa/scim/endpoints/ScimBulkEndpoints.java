@@ -0,0 +1,530 @@
+package org.cloudfoundry.identity.uaa.scim.endpoints;
+
+import org.cloudfoundry.identity.uaa.error.UaaException;
+import org.cloudfoundry.identity.uaa.scim.ScimBulkOperation;
+import org.cloudfoundry.identity.uaa.scim.ScimBulkRequest;
+import org.cloudfoundry.identity.uaa.scim.ScimBulkResponse;
+import org.cloudfoundry.identity.uaa.scim.ScimGroup;
+import org.cloudfoundry.identity.uaa.scim.ScimGroupMember;
+import org.cloudfoundry.identity.uaa.scim.ScimGroupMembershipManager;
+import org.cloudfoundry.identity.uaa.scim.ScimUser;
+import org.cloudfoundry.identity.uaa.scim.exception.InvalidScimResourceException;
+import org.cloudfoundry.identity.uaa.scim.exception.ScimException;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.cloudfoundry.identity.uaa.util.UaaUrlUtils;
+import org.cloudfoundry.identity.uaa.web.ConvertingExceptionView;
+import org.cloudfoundry.identity.uaa.web.ExceptionReport;
+import org.cloudfoundry.identity.uaa.web.ExceptionReportHttpMessageConverter;
+import org.cloudfoundry.identity.uaa.zone.beans.IdentityZoneManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.stereotype.Controller;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.View;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The SCIM bulk endpoint, which executes many user, group and membership operations in one
+ * request.
+ *
+ * Each operation is executed the way the corresponding request to {@link ScimUserEndpoints}
+ * or {@link ScimGroupEndpoints} would be. Consecutive user creations and consecutive member
+ * additions are collected into batches that are stored with JDBC batch statements, each in
+ * its own transaction. The results of a batch, and the ids its bulkIds refer to, are only
+ * recorded once it commits. If a batch fails, it is rolled back and its operations are
+ * executed one by one, so that every operation gets its own status. Errors are counted in
+ * the order of the operations, so a batch is always stored before a later operation fails
+ * the request, and the operations after the one that reaches failOnErrors are not executed.
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc7644#section-3.7">RFC 7644 section 3.7</a>
+ */
+@Controller
+public class ScimBulkEndpoints {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScimBulkEndpoints.class);
+
+    static final String BULK_ID_PREFIX = "bulkId:";
+    static final String ERROR_SCHEMA = "urn:ietf:params:scim:api:messages:2.0:Error";
+
+    private static final Pattern USER_PATH = Pattern.compile("^/Users/([^/]+)$");
+    private static final Pattern GROUP_PATH = Pattern.compile("^/Groups/([^/]+)$");
+    private static final Pattern MEMBERS_PATH = Pattern.compile("^/Groups/([^/]+)/members$");
+    private static final Pattern MEMBER_PATH = Pattern.compile("^/Groups/([^/]+)/members/([^/]+)$");
+
+    private final ScimUserEndpoints scimUserEndpoints;
+    private final ScimGroupEndpoints scimGroupEndpoints;
+    private final ScimGroupMembershipManager membershipManager;
+    private final IdentityZoneManager identityZoneManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<Class<? extends Exception>, HttpStatus> statuses;
+    private final int maxOperations;
+    private final int maxPayloadSize;
+    private final int batchSize;
+    private final HttpMessageConverter<?>[] messageConverters;
+
+    public ScimBulkEndpoints(
+            final ScimUserEndpoints scimUserEndpoints,
+            final ScimGroupEndpoints scimGroupEndpoints,
+            final ScimGroupMembershipManager membershipManager,
+            final IdentityZoneManager identityZoneManager,
+            final @Qualifier("transactionManager") PlatformTransactionManager transactionManager,
+            final @Qualifier("exceptionToStatusMap") Map<Class<? extends Exception>, HttpStatus> statuses,
+            final @Value("${bulk.maxOperations:1000}") int maxOperations,
+            final @Value("${bulk.maxPayloadSize:1048576}") int maxPayloadSize,
+            final @Value("${bulk.batchSize:100}") int batchSize) {
+        if (maxOperations <= 0 || maxPayloadSize <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid bulk limits (got maxOperations=%d, maxPayloadSize=%d, batchSize=%d). Should be positive numbers.",
+                            maxOperations, maxPayloadSize, batchSize)
+            );
+        }
+        this.scimUserEndpoints = scimUserEndpoints;
+        this.scimGroupEndpoints = scimGroupEndpoints;
+        this.membershipManager = membershipManager;
+        this.identityZoneManager = identityZoneManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.statuses = statuses;
+        this.maxOperations = maxOperations;
+        this.maxPayloadSize = maxPayloadSize;
+        this.batchSize = batchSize;
+        this.messageConverters = new HttpMessageConverter<?>[]{
+                new ExceptionReportHttpMessageConverter()
+        };
+    }
+
+    @RequestMapping(value = "/Bulk", method = RequestMethod.POST)
+    @ResponseBody
+    public ScimBulkResponse bulk(HttpServletRequest request,
+                                 HttpServletResponse response,
+                                 OAuth2Authentication authentication) throws IOException {
+        ScimBulkRequest bulkRequest = readBulkRequest(request);
+        List<ScimBulkOperation> operations = bulkRequest.getOperations() == null ?
+                Collections.emptyList() : bulkRequest.getOperations();
+        if (operations.size() > maxOperations) {
+            throw new ScimException("The number of operations exceeds the maximum of " + maxOperations,
+                    HttpStatus.PAYLOAD_TOO_LARGE);
+        }
+        Integer failOnErrors = bulkRequest.getFailOnErrors();
+        BulkExecution execution = new BulkExecution(request, new IgnoringHeadersResponse(response), authentication,
+                failOnErrors == null || failOnErrors <= 0 ? Integer.MAX_VALUE : failOnErrors);
+        return execution.execute(operations);
+    }
+
+    @ExceptionHandler
+    public View handleException(Exception t, HttpServletRequest request) {
+        ScimException e = t instanceof ScimException ? (ScimException) t :
+                new ScimException(t.getMessage(), t, getStatus(t));
+        boolean trace = request.getParameter("trace") != null && !request.getParameter("trace").equals("false");
+        return new ConvertingExceptionView(new ResponseEntity<>(new ExceptionReport(e, trace),
+                e.getStatus()), messageConverters);
+    }
+
+    private ScimBulkRequest readBulkRequest(HttpServletRequest request) throws IOException {
+        if (request.getContentLengthLong() > maxPayloadSize) {
+            throw payloadTooLarge();
+        }
+        byte[] body = request.getInputStream().readNBytes(maxPayloadSize + 1);
+        if (body.length > maxPayloadSize) {
+            throw payloadTooLarge();
+        }
+        try {
+            ScimBulkRequest bulkRequest = JsonUtils.readValue(body, ScimBulkRequest.class);
+            if (bulkRequest == null) {
+                throw new ScimException("Missing bulk request", HttpStatus.BAD_REQUEST);
+            }
+            return bulkRequest;
+        } catch (JsonUtils.JsonUtilException e) {
+            throw new ScimException("Invalid bulk request: " + e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    private ScimException payloadTooLarge() {
+        return new ScimException("The size of the bulk request exceeds the maximum of " + maxPayloadSize + " bytes",
+                HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    private HttpStatus getStatus(Exception e) {
+        if (e instanceof ScimException) {
+            return ((ScimException) e).getStatus();
+        }
+        if (e instanceof UaaException) {
+            return HttpStatus.valueOf(((UaaException) e).getHttpStatus());
+        }
+        for (Map.Entry<Class<? extends Exception>, HttpStatus> status : statuses.entrySet()) {
+            if (status.getKey().isInstance(e)) {
+                return status.getValue();
+            }
+        }
+        return HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    private enum BatchType {
+        CREATE_USERS, ADD_MEMBERS
+    }
+
+    /**
+     * An operation with its bulkId references resolved. Operations that wait in the current
+     * batch also hold the resource that was converted and validated from the data.
+     */
+    private static final class PendingOperation {
+        private final ScimBulkOperation operation;
+        private final ScimBulkOperation result;
+        private final String path;
+        private final Object data;
+        private final Object resource;
+
+        private PendingOperation(ScimBulkOperation operation, ScimBulkOperation result, String path, Object data, Object resource) {
+            this.operation = operation;
+            this.result = result;
+            this.path = path;
+            this.data = data;
+            this.resource = resource;
+        }
+    }
+
+    /**
+     * The state of one bulk request: the ids of the resources created for each bulkId, the
+     * operations of the current batch and the number of errors so far.
+     */
+    private final class BulkExecution {
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final OAuth2Authentication authentication;
+        private final int failOnErrors;
+        private final String baseUrl;
+        private final String zoneId;
+        private final Map<String, String> createdIds = new HashMap<>();
+        private final Set<String> pendingBulkIds = new HashSet<>();
+        private final List<PendingOperation> batch = new ArrayList<>();
+        private final ScimBulkResponse bulkResponse = new ScimBulkResponse();
+        private BatchType batchType;
+        private int errors;
+
+        private BulkExecution(HttpServletRequest request, HttpServletResponse response,
+                              OAuth2Authentication authentication, int failOnErrors) {
+            this.request = request;
+            this.response = response;
+            this.authentication = authentication;
+            this.failOnErrors = failOnErrors;
+            this.baseUrl = UaaUrlUtils.getBaseURL(request);
+            this.zoneId = identityZoneManager.getCurrentIdentityZoneId();
+        }
+
+        private ScimBulkResponse execute(List<ScimBulkOperation> operations) {
+            for (ScimBulkOperation operation : operations) {
+                if (errors >= failOnErrors) {
+                    break;
+                }
+                ScimBulkOperation result = new ScimBulkOperation();
+                result.setMethod(operation.getMethod());
+                result.setBulkId(operation.getBulkId());
+                bulkResponse.getOperations().add(result);
+                try {
+                    queueOrExecute(operation, result);
+                } catch (Exception e) {
+                    // the queued operations come first, and may reach failOnErrors themselves
+                    flush();
+                    if (errors >= failOnErrors) {
+                        bulkResponse.getOperations().remove(result);
+                        break;
+                    }
+                    fail(result, e);
+                }
+            }
+            flush();
+            return bulkResponse;
+        }
+
+        private void queueOrExecute(ScimBulkOperation operation, ScimBulkOperation result) {
+            String method = operation.getMethod() == null ? "" : operation.getMethod().toUpperCase();
+            if (operation.getPath() == null) {
+                throw new InvalidScimResourceException("Missing path in bulk operation");
+            }
+            if ("POST".equals(method) && operation.getBulkId() == null) {
+                throw new InvalidScimResourceException("Missing bulkId in POST bulk operation");
+            }
+            if (operation.getBulkId() != null
+                    && (createdIds.containsKey(operation.getBulkId()) || pendingBulkIds.contains(operation.getBulkId()))) {
+                throw new InvalidScimResourceException("Duplicate bulkId: " + operation.getBulkId());
+            }
+            String path = resolvePath(operation.getPath());
+            Object data = resolveData(operation.getData());
+
+            if ("POST".equals(method) && "/Users".equals(path)) {
+                ScimUser user = convert(data, ScimUser.class);
+                scimUserEndpoints.validateNewUser(user, request);
+                queue(BatchType.CREATE_USERS, new PendingOperation(operation, result, path, data, user));
+            } else if ("POST".equals(method) && MEMBERS_PATH.matcher(path).matches()) {
+                ScimGroupMember member = convert(data, ScimGroupMember.class);
+                queue(BatchType.ADD_MEMBERS, new PendingOperation(operation, result, path, data, member));
+            } else {
+                flush();
+                executeOne(new PendingOperation(operation, result, path, data, null));
+            }
+        }
+
+        private void queue(BatchType type, PendingOperation pending) {
+            if (batchType != type || batch.size() >= batchSize) {
+                flush();
+            }
+            batchType = type;
+            batch.add(pending);
+            if (pending.operation.getBulkId() != null) {
+                pendingBulkIds.add(pending.operation.getBulkId());
+            }
+        }
+
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<PendingOperation> operations = new ArrayList<>(batch);
+            BatchType type = batchType;
+            batch.clear();
+            pendingBulkIds.clear();
+            List<Runnable> successes;
+            try {
+                successes = transactionTemplate.execute(status ->
+                        type == BatchType.CREATE_USERS ? createUsers(operations) : addMembers(operations));
+            } catch (Exception e) {
+                logger.debug("Batch of " + operations.size() + " bulk operations failed, executing them one by one", e);
+                for (PendingOperation pending : operations) {
+                    if (errors >= failOnErrors) {
+                        bulkResponse.getOperations().remove(pending.result);
+                        continue;
+                    }
+                    executeOne(pending);
+                }
+                return;
+            }
+            successes.forEach(Runnable::run);
+        }
+
+        /**
+         * Stores a batch of users and returns the updates of their results, which are only
+         * applied once the batch is committed.
+         */
+        private List<Runnable> createUsers(List<PendingOperation> operations) {
+            List<ScimUser> users = new ArrayList<>(operations.size());
+            for (PendingOperation pending : operations) {
+                users.add((ScimUser) pending.resource);
+            }
+            List<ScimUser> created = scimUserEndpoints.createValidatedUsers(users);
+            List<Runnable> successes = new ArrayList<>(operations.size());
+            for (int i = 0; i < operations.size(); i++) {
+                PendingOperation pending = operations.get(i);
+                ScimUser user = created.get(i);
+                successes.add(() -> succeed(pending, "/Users/" + user.getId(), user.getVersion(), HttpStatus.CREATED));
+            }
+            return successes;
+        }
+
+        private List<Runnable> addMembers(List<PendingOperation> operations) {
+            Map<String, List<PendingOperation>> byGroup = new LinkedHashMap<>();
+            for (PendingOperation pending : operations) {
+                Matcher matcher = MEMBERS_PATH.matcher(pending.path);
+                matcher.matches();
+                byGroup.computeIfAbsent(matcher.group(1), k -> new ArrayList<>()).add(pending);
+            }
+            List<Runnable> successes = new ArrayList<>(operations.size());
+            for (Map.Entry<String, List<PendingOperation>> group : byGroup.entrySet()) {
+                List<ScimGroupMember> members = new ArrayList<>();
+                for (PendingOperation pending : group.getValue()) {
+                    members.add((ScimGroupMember) pending.resource);
+                }
+                List<ScimGroupMember> added = membershipManager.addMembers(group.getKey(), members, zoneId);
+                for (int i = 0; i < added.size(); i++) {
+                    PendingOperation pending = group.getValue().get(i);
+                    String memberId = added.get(i).getMemberId();
+                    successes.add(() -> succeed(pending, pending.path + "/" + memberId, null, HttpStatus.CREATED));
+                }
+            }
+            return successes;
+        }
+
+        /**
+         * Executes an operation through the single resource endpoints. The resource is converted
+         * from the data again, since a failed batch may have changed it, e.g. encoded a password.
+         */
+        private void executeOne(PendingOperation pending) {
+            try {
+                execute(pending);
+            } catch (Exception e) {
+                fail(pending.result, e);
+            }
+        }
+
+        private void execute(PendingOperation pending) {
+            String method = pending.operation.getMethod() == null ? "" : pending.operation.getMethod().toUpperCase();
+            String version = pending.operation.getVersion();
+            String path = pending.path;
+            Matcher user = USER_PATH.matcher(path);
+            Matcher group = GROUP_PATH.matcher(path);
+            Matcher members = MEMBERS_PATH.matcher(path);
+            Matcher member = MEMBER_PATH.matcher(path);
+            if ("POST".equals(method) && "/Users".equals(path)) {
+                ScimUser created = scimUserEndpoints.createUser(convert(pending.data, ScimUser.class), request, response);
+                succeed(pending, "/Users/" + created.getId(), created.getVersion(), HttpStatus.CREATED);
+            } else if ("PUT".equals(method) && user.matches()) {
+                ScimUser updated = scimUserEndpoints.updateUser(convert(pending.data, ScimUser.class), user.group(1),
+                        version == null ? "*" : version, request, response, authentication);
+                succeed(pending, path, updated.getVersion(), HttpStatus.OK);
+            } else if ("PATCH".equals(method) && user.matches()) {
+                ScimUser patched = scimUserEndpoints.patchUser(convert(pending.data, ScimUser.class), user.group(1),
+                        version == null ? "*" : version, request, response, authentication);
+                succeed(pending, path, patched.getVersion(), HttpStatus.OK);
+            } else if ("DELETE".equals(method) && user.matches()) {
+                scimUserEndpoints.deleteUser(user.group(1), version, request, response);
+                succeed(pending, path, null, HttpStatus.OK);
+            } else if ("POST".equals(method) && "/Groups".equals(path)) {
+                ScimGroup created = scimGroupEndpoints.createGroup(convert(pending.data, ScimGroup.class), response);
+                succeed(pending, "/Groups/" + created.getId(), created.getVersion(), HttpStatus.CREATED);
+            } else if ("PUT".equals(method) && group.matches()) {
+                ScimGroup updated = scimGroupEndpoints.updateGroup(convert(pending.data, ScimGroup.class), group.group(1),
+                        version == null ? "*" : version, response);
+                succeed(pending, path, updated.getVersion(), HttpStatus.OK);
+            } else if ("PATCH".equals(method) && group.matches()) {
+                ScimGroup patched = scimGroupEndpoints.patchGroup(convert(pending.data, ScimGroup.class), group.group(1),
+                        version == null ? "*" : version, response);
+                succeed(pending, path, patched.getVersion(), HttpStatus.OK);
+            } else if ("DELETE".equals(method) && group.matches()) {
+                scimGroupEndpoints.deleteGroup(group.group(1), version == null ? "*" : version, response);
+                succeed(pending, path, null, HttpStatus.OK);
+            } else if ("POST".equals(method) && members.matches()) {
+                ScimGroupMember added = scimGroupEndpoints.addMemberToGroup(members.group(1), convert(pending.data, ScimGroupMember.class));
+                succeed(pending, path + "/" + added.getMemberId(), null, HttpStatus.CREATED);
+            } else if ("DELETE".equals(method) && member.matches()) {
+                scimGroupEndpoints.deleteGroupMembership(member.group(1), member.group(2));
+                succeed(pending, path, null, HttpStatus.OK);
+            } else {
+                throw new ScimException("Unsupported bulk operation: " + method + " " + path, HttpStatus.BAD_REQUEST);
+            }
+        }
+
+        private void succeed(PendingOperation pending, String path, Integer version, HttpStatus status) {
+            ScimBulkOperation result = pending.result;
+            result.setLocation(baseUrl + path);
+            result.setVersion(version == null ? null : "\"" + version + "\"");
+            result.setStatus(String.valueOf(status.value()));
+            result.setResponse(null);
+            String bulkId = pending.operation.getBulkId();
+            if (bulkId != null && status == HttpStatus.CREATED) {
+                createdIds.put(bulkId, path.substring(path.lastIndexOf('/') + 1));
+            }
+        }
+
+        private void fail(ScimBulkOperation result, Exception e) {
+            HttpStatus status = getStatus(e);
+            logger.debug("Bulk operation failed with status " + status.value(), e);
+            Map<String, Object> error = new LinkedHashMap<>();
+            error.put("schemas", Collections.singletonList(ERROR_SCHEMA));
+            error.put("status", String.valueOf(status.value()));
+            error.put("detail", e.getMessage());
+            result.setLocation(null);
+            result.setVersion(null);
+            result.setStatus(String.valueOf(status.value()));
+            result.setResponse(error);
+            errors++;
+        }
+
+        private String resolvePath(String path) {
+            String[] segments = path.split("/", -1);
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = resolve(segments[i]);
+            }
+            return String.join("/", segments);
+        }
+
+        /**
+         * Replaces every {@code bulkId:<id>} string in the data by the id of the resource
+         * created for that bulkId.
+         */
+        private Object resolveData(Object data) {
+            if (data instanceof String) {
+                return resolve((String) data);
+            }
+            if (data instanceof Map) {
+                Map<Object, Object> resolved = new LinkedHashMap<>();
+                ((Map<?, ?>) data).forEach((key, value) -> resolved.put(key, resolveData(value)));
+                return resolved;
+            }
+            if (data instanceof List) {
+                List<Object> resolved = new ArrayList<>();
+                ((List<?>) data).forEach(value -> resolved.add(resolveData(value)));
+                return resolved;
+            }
+            return data;
+        }
+
+        private String resolve(String value) {
+            if (!value.startsWith(BULK_ID_PREFIX)) {
+                return value;
+            }
+            String bulkId = value.substring(BULK_ID_PREFIX.length());
+            if (pendingBulkIds.contains(bulkId)) {
+                flush();
+            }
+            String id = createdIds.get(bulkId);
+            if (id == null) {
+                throw new ScimException("Unresolved bulkId reference: " + bulkId, HttpStatus.CONFLICT);
+            }
+            return id;
+        }
+
+        private <T> T convert(Object data, Class<T> type) {
+            if (data == null) {
+                throw new InvalidScimResourceException("Missing data in bulk operation");
+            }
+            try {
+                return JsonUtils.convertValue(data, type);
+            } catch (JsonUtils.JsonUtilException | IllegalArgumentException e) {
+                throw new InvalidScimResourceException("Invalid data in bulk operation: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Keeps the single resource endpoints from setting the ETag of each resource on the bulk
+     * response.
+     */
+    private static final class IgnoringHeadersResponse extends HttpServletResponseWrapper {
+        private IgnoringHeadersResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            // the versions are returned per operation
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            // the versions are returned per operation
+        }
+    }
+}
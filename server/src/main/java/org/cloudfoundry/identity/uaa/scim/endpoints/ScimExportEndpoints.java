@@ -0,0 +1,107 @@
+package org.cloudfoundry.identity.uaa.scim.endpoints;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.cloudfoundry.identity.uaa.scim.ScimGroupMembershipManager;
+import org.cloudfoundry.identity.uaa.scim.ScimGroupProvisioning;
+import org.cloudfoundry.identity.uaa.scim.ScimUserProvisioning;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.cloudfoundry.identity.uaa.zone.beans.IdentityZoneManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Controller;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Exports the users, groups and memberships of the current zone as newline delimited JSON,
+ * one resource per line:
+ *
+ * <pre>
+ * {"type":"User","resource":{...}}
+ * {"type":"Group","resource":{...}}
+ * {"type":"GroupMember","groupId":"...","resource":{...}}
+ * </pre>
+ *
+ * Each resource type is read with a single forward-only query, and each resource is written
+ * to the response as soon as it is read, so that memory use does not depend on the size of
+ * the zone. Passwords are not exported.
+ */
+@Controller
+public class ScimExportEndpoints {
+
+    public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+    private static final Logger logger = LoggerFactory.getLogger(ScimExportEndpoints.class);
+
+    private final ScimUserProvisioning scimUserProvisioning;
+    private final ScimGroupProvisioning scimGroupProvisioning;
+    private final ScimGroupMembershipManager membershipManager;
+    private final IdentityZoneManager identityZoneManager;
+    private final TransactionTemplate transactionTemplate;
+    private final int fetchSize;
+
+    public ScimExportEndpoints(
+            final ScimUserProvisioning scimUserProvisioning,
+            final ScimGroupProvisioning scimGroupProvisioning,
+            final ScimGroupMembershipManager membershipManager,
+            final IdentityZoneManager identityZoneManager,
+            final @Qualifier("transactionManager") PlatformTransactionManager transactionManager,
+            final @Value("${export.fetchSize:500}") int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid \"export.fetchSize\" value (got %d). Should be positive number.", fetchSize)
+            );
+        }
+        this.scimUserProvisioning = scimUserProvisioning;
+        this.scimGroupProvisioning = scimGroupProvisioning;
+        this.membershipManager = membershipManager;
+        this.identityZoneManager = identityZoneManager;
+        // some drivers, e.g. PostgreSQL, only fetch rows in batches inside a transaction
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.fetchSize = fetchSize;
+    }
+
+    @RequestMapping(value = "/Export", method = RequestMethod.GET)
+    public void export(HttpServletResponse response) throws IOException {
+        String zoneId = identityZoneManager.getCurrentIdentityZoneId();
+        response.setContentType(NDJSON_MEDIA_TYPE);
+        response.setCharacterEncoding("UTF-8");
+        try (JsonGenerator generator = JsonUtils.createGenerator(response.getOutputStream())) {
+            // lines are separated by writeLine, instead of the default space between values
+            generator.setRootValueSeparator(null);
+            transactionTemplate.execute(status -> {
+                scimUserProvisioning.streamAll(zoneId, fetchSize, user -> writeLine(generator, "User", null, user));
+                scimGroupProvisioning.streamAll(zoneId, fetchSize, group -> writeLine(generator, "Group", null, group));
+                membershipManager.streamAll(zoneId, fetchSize, (groupId, member) -> writeLine(generator, "GroupMember", groupId, member));
+                return null;
+            });
+        } catch (UncheckedIOException e) {
+            logger.debug("Export of zone " + zoneId + " was aborted", e);
+            throw e.getCause();
+        }
+    }
+
+    private static void writeLine(JsonGenerator generator, String type, String groupId, Object resource) {
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("type", type);
+            if (groupId != null) {
+                generator.writeStringField("groupId", groupId);
+            }
+            generator.writeObjectField("resource", resource);
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.cloudfoundry.identity.uaa.scim.endpoints;
 
 import com.jayway.jsonpath.JsonPathException;
 import org.cloudfoundry.identity.uaa.resources.AttributeNameMapper;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.SearchResults;
 import org.cloudfoundry.identity.uaa.resources.SearchResultsFactory;
 import org.cloudfoundry.identity.uaa.resources.SimpleAttributeNameMapper;
@@ -158,11 +159,51 @@ public class ScimGroupEndpoints {
                     HttpStatus.BAD_REQUEST);
         }
 
+        return toSearchResults(result, attributesCommaSeparated, startIndex, count, result.size(), null);
+    }
+
+    /**
+     * Pages through the groups with a cursor instead of a start index, see
+     * {@link ScimUserEndpoints#findUsersByCursor}.
+     */
+    @RequestMapping(value = {"/Groups"}, method = RequestMethod.GET, params = "cursor")
+    @ResponseBody
+    public SearchResults<?> listGroupsByCursor(
+            @RequestParam(value = "attributes", required = false) String attributesCommaSeparated,
+            @RequestParam(required = false, defaultValue = "id pr") String filter,
+            @RequestParam(required = false, defaultValue = "created") String sortBy,
+            @RequestParam(required = false, defaultValue = "ascending") String sortOrder,
+            @RequestParam(required = false, defaultValue = "") String cursor,
+            @RequestParam(required = false, defaultValue = "100") int count,
+            @RequestParam(required = false, defaultValue = "false") boolean includeTotal) {
+
+        if (count > groupMaxCount) {
+            count = groupMaxCount;
+        }
+
+        KeysetPage<ScimGroup> page;
+        int total = SearchResults.UNKNOWN_TOTAL;
+        try {
+            String zoneId = identityZoneManager.getCurrentIdentityZoneId();
+            page = dao.queryPage(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder), cursor, count, zoneId);
+            if (includeTotal) {
+                total = dao.query(filter, zoneId).size();
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ScimException(HtmlUtils.htmlEscape(e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+
+        List<ScimGroup> groups = page.getResources();
+        return toSearchResults(groups, attributesCommaSeparated, 1, groups.size(), total, page.getNextCursor());
+    }
+
+    private SearchResults<?> toSearchResults(List<ScimGroup> result, String attributesCommaSeparated, int startIndex,
+                                             int count, int total, String nextCursor) {
         List<ScimGroup> input;
         if (!StringUtils.hasLength(attributesCommaSeparated)) {
             input = filterForCurrentUser(result, startIndex, count, true);
             return new SearchResults<>(Arrays.asList(ScimCore.SCHEMAS), input, startIndex, count,
-                    result.size());
+                    total, nextCursor);
         }
 
         AttributeNameMapper mapper = new SimpleAttributeNameMapper(Collections.emptyMap());
@@ -171,8 +212,8 @@ public class ScimGroupEndpoints {
         input = filterForCurrentUser(result, startIndex, count, Arrays.asList(attributes).contains("members"));
 
         try {
-            return SearchResultsFactory.buildSearchResultFrom(input, startIndex, count, result.size(), attributes,
-                    mapper, Arrays.asList(ScimCore.SCHEMAS));
+            return SearchResultsFactory.buildSearchResultFrom(input, startIndex, count, total, attributes,
+                    mapper, Arrays.asList(ScimCore.SCHEMAS), nextCursor);
         } catch (JsonPathException e) {
             throw new ScimException("Invalid attributes: [" + attributesCommaSeparated + "]", HttpStatus.BAD_REQUEST);
         }
@@ -13,6 +13,7 @@ import org.cloudfoundry.identity.uaa.error.UaaException;
 import org.cloudfoundry.identity.uaa.provider.IdentityProvider;
 import org.cloudfoundry.identity.uaa.provider.IdentityProviderProvisioning;
 import org.cloudfoundry.identity.uaa.resources.AttributeNameMapper;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.ResourceMonitor;
 import org.cloudfoundry.identity.uaa.resources.SearchResults;
 import org.cloudfoundry.identity.uaa.resources.SearchResultsFactory;
@@ -79,6 +80,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -200,6 +203,20 @@ public class ScimUserEndpoints implements InitializingBean, ApplicationEventPubl
     @ResponseStatus(HttpStatus.CREATED)
     @ResponseBody
     public ScimUser createUser(@RequestBody ScimUser user, HttpServletRequest request, HttpServletResponse response) {
+        validateNewUser(user, request);
+
+        ScimUser scimUser = scimUserProvisioning.createUser(user, user.getPassword(), identityZoneManager.getCurrentIdentityZoneId());
+        addApprovals(scimUser.getId(), user.getApprovals());
+        scimUser = syncApprovals(syncGroups(scimUser));
+        addETagHeader(response, scimUser);
+        return scimUser;
+    }
+
+    /**
+     * Checks a user before it is created and fills in the defaults, the same way for users
+     * created one by one and in bulk.
+     */
+    public void validateNewUser(ScimUser user, HttpServletRequest request) {
         //default to UAA origin
         if (isEmpty(user.getOrigin())) {
             user.setOrigin(OriginKeys.UAA);
@@ -220,17 +237,29 @@ public class ScimUserEndpoints implements InitializingBean, ApplicationEventPubl
             }
             passwordValidator.validate(user.getPassword());
         }
+    }
 
-        ScimUser scimUser = scimUserProvisioning.createUser(user, user.getPassword(), identityZoneManager.getCurrentIdentityZoneId());
-        if (user.getApprovals() != null) {
-            for (Approval approval : user.getApprovals()) {
-                approval.setUserId(scimUser.getId());
+    /**
+     * Creates users that passed {@link #validateNewUser(ScimUser, HttpServletRequest)} with
+     * one batch insert, and stores their approvals.
+     *
+     * @return the created users, in the same order
+     */
+    public List<ScimUser> createValidatedUsers(List<ScimUser> users) {
+        List<ScimUser> created = scimUserProvisioning.createUsers(users, identityZoneManager.getCurrentIdentityZoneId());
+        for (int i = 0; i < created.size(); i++) {
+            addApprovals(created.get(i).getId(), users.get(i).getApprovals());
+        }
+        return created;
+    }
+
+    private void addApprovals(String userId, Collection<Approval> approvals) {
+        if (approvals != null) {
+            for (Approval approval : approvals) {
+                approval.setUserId(userId);
                 approvalStore.addApproval(approval, identityZoneManager.getCurrentIdentityZoneId());
             }
         }
-        scimUser = syncApprovals(syncGroups(scimUser));
-        addETagHeader(response, scimUser);
-        return scimUser;
     }
 
     private boolean isUaaUser(@RequestBody ScimUser user) {
@@ -399,14 +428,12 @@ public class ScimUserEndpoints implements InitializingBean, ApplicationEventPubl
         Set<String> attributes = StringUtils.commaDelimitedListToSet(attributesCommaSeparated);
         try {
             result = scimUserProvisioning.query(filter, sortBy, sortOrder.equals("ascending"), identityZoneManager.getCurrentIdentityZoneId());
-            for (ScimUser user : UaaPagingUtils.subList(result, startIndex, count)) {
-                if (attributes.isEmpty() || attributes.stream().anyMatch("groups"::equalsIgnoreCase)) {
-                    syncGroups(user);
-                }
-                if (attributes.isEmpty() || attributes.stream().anyMatch("approvals"::equalsIgnoreCase)) {
-                    syncApprovals(user);
-                }
-                input.add(user);
+            input.addAll(UaaPagingUtils.subList(result, startIndex, count));
+            if (attributes.isEmpty() || attributes.stream().anyMatch("groups"::equalsIgnoreCase)) {
+                syncGroups(input);
+            }
+            if (attributes.isEmpty() || attributes.stream().anyMatch("approvals"::equalsIgnoreCase)) {
+                syncApprovals(input);
             }
         } catch (IllegalArgumentException e) {
             String msg = "Invalid filter expression: [" + filter + "]";
@@ -416,9 +443,59 @@ public class ScimUserEndpoints implements InitializingBean, ApplicationEventPubl
             throw new ScimException(HtmlUtils.htmlEscape(msg), HttpStatus.BAD_REQUEST);
         }
 
+        return toSearchResults(input, attributesCommaSeparated, startIndex, count, result.size(), null);
+    }
+
+    /**
+     * Pages through the users with a cursor instead of a start index, for crawling large
+     * zones: every page costs the same, however far into the results it is. The first
+     * request passes an empty cursor and every following one the {@code nextCursor} of
+     * the previous response. The total is only counted if it is asked for.
+     */
+    @RequestMapping(value = "/Users", method = RequestMethod.GET, params = "cursor")
+    @ResponseBody
+    public SearchResults<?> findUsersByCursor(
+            @RequestParam(value = "attributes", required = false) String attributesCommaSeparated,
+            @RequestParam(required = false, defaultValue = "id pr") String filter,
+            @RequestParam(required = false, defaultValue = "created") String sortBy,
+            @RequestParam(required = false, defaultValue = "ascending") String sortOrder,
+            @RequestParam(required = false, defaultValue = "") String cursor,
+            @RequestParam(required = false, defaultValue = "100") int count,
+            @RequestParam(required = false, defaultValue = "false") boolean includeTotal) {
+
+        if (count > userMaxCount) {
+            count = userMaxCount;
+        }
+
+        List<ScimUser> input = new ArrayList<>();
+        KeysetPage<ScimUser> page;
+        int total = SearchResults.UNKNOWN_TOTAL;
+        Set<String> attributes = StringUtils.commaDelimitedListToSet(attributesCommaSeparated);
+        try {
+            String zoneId = identityZoneManager.getCurrentIdentityZoneId();
+            page = scimUserProvisioning.queryPage(filter, sortBy, sortOrder.equals("ascending"), cursor, count, zoneId);
+            if (includeTotal) {
+                total = scimUserProvisioning.query(filter, zoneId).size();
+            }
+            input.addAll(page.getResources());
+            if (attributes.isEmpty() || attributes.stream().anyMatch("groups"::equalsIgnoreCase)) {
+                syncGroups(input);
+            }
+            if (attributes.isEmpty() || attributes.stream().anyMatch("approvals"::equalsIgnoreCase)) {
+                syncApprovals(input);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ScimException(HtmlUtils.htmlEscape(e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+
+        return toSearchResults(input, attributesCommaSeparated, 1, input.size(), total, page.getNextCursor());
+    }
+
+    private SearchResults<?> toSearchResults(List<ScimUser> input, String attributesCommaSeparated, int startIndex,
+                                             int count, int total, String nextCursor) {
         if (!StringUtils.hasLength(attributesCommaSeparated)) {
             // Return all user data
-            return new SearchResults<>(Arrays.asList(ScimCore.SCHEMAS), input, startIndex, count, result.size());
+            return new SearchResults<>(Arrays.asList(ScimCore.SCHEMAS), input, startIndex, count, total, nextCursor);
         }
 
         Map<String, String> attributeMap = new HashMap<>();
@@ -431,10 +508,11 @@ public class ScimUserEndpoints implements InitializingBean, ApplicationEventPubl
             return SearchResultsFactory.buildSearchResultFrom(input,
                     startIndex,
                     count,
-                    result.size(),
-                    attributes.toArray(new String[0]),
+                    total,
+                    StringUtils.commaDelimitedListToSet(attributesCommaSeparated).toArray(new String[0]),
                     mapper,
-                    Arrays.asList(ScimCore.SCHEMAS)
+                    Arrays.asList(ScimCore.SCHEMAS),
+                    nextCursor
             );
         } catch (JsonPathException e) {
             throw new ScimException("Invalid attributes: [" + attributesCommaSeparated + "]", HttpStatus.BAD_REQUEST);
@@ -473,6 +551,25 @@ public class ScimUserEndpoints implements InitializingBean, ApplicationEventPubl
 
         Set<ScimGroup> directGroups = membershipManager.getGroupsWithMember(user.getId(), false, identityZoneManager.getCurrentIdentityZoneId());
         Set<ScimGroup> indirectGroups = membershipManager.getGroupsWithMember(user.getId(), true, identityZoneManager.getCurrentIdentityZoneId());
+        setGroups(user, directGroups, indirectGroups);
+        return user;
+    }
+
+    private void syncGroups(List<ScimUser> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        List<String> userIds = users.stream().map(ScimUser::getId).collect(Collectors.toList());
+        Map<String, Set<ScimGroup>> directGroups = membershipManager.getGroupsWithMembers(userIds, false, identityZoneManager.getCurrentIdentityZoneId());
+        Map<String, Set<ScimGroup>> indirectGroups = membershipManager.getGroupsWithMembers(userIds, true, identityZoneManager.getCurrentIdentityZoneId());
+        for (ScimUser user : users) {
+            setGroups(user,
+                    directGroups.getOrDefault(user.getId(), Collections.emptySet()),
+                    new HashSet<>(indirectGroups.getOrDefault(user.getId(), Collections.emptySet())));
+        }
+    }
+
+    private static void setGroups(ScimUser user, Set<ScimGroup> directGroups, Set<ScimGroup> indirectGroups) {
         indirectGroups.removeAll(directGroups);
         Set<ScimUser.Group> groups = new HashSet<>();
         for (ScimGroup group : directGroups) {
@@ -483,14 +580,29 @@ public class ScimUserEndpoints implements InitializingBean, ApplicationEventPubl
         }
 
         user.setGroups(groups);
-        return user;
     }
 
     private ScimUser syncApprovals(ScimUser user) {
         if (user == null || approvalStore == null) {
             return user;
         }
-        Set<Approval> approvals = new HashSet<>(approvalStore.getApprovalsForUser(user.getId(), identityZoneManager.getCurrentIdentityZoneId()));
+        setApprovals(user, approvalStore.getApprovalsForUser(user.getId(), identityZoneManager.getCurrentIdentityZoneId()));
+        return user;
+    }
+
+    private void syncApprovals(List<ScimUser> users) {
+        if (users.isEmpty() || approvalStore == null) {
+            return;
+        }
+        List<String> userIds = users.stream().map(ScimUser::getId).collect(Collectors.toList());
+        Map<String, List<Approval>> approvals = approvalStore.getApprovalsForUsers(userIds, identityZoneManager.getCurrentIdentityZoneId());
+        for (ScimUser user : users) {
+            setApprovals(user, approvals.getOrDefault(user.getId(), Collections.emptyList()));
+        }
+    }
+
+    private static void setApprovals(ScimUser user, List<Approval> userApprovals) {
+        Set<Approval> approvals = new HashSet<>(userApprovals);
         Set<Approval> active = new HashSet<>(approvals);
         for (Approval approval : approvals) {
             if (!approval.isActiveAsOf(new Date())) {
@@ -498,7 +610,6 @@ public class ScimUserEndpoints implements InitializingBean, ApplicationEventPubl
             }
         }
         user.setApprovals(active);
-        return user;
     }
 
     @ExceptionHandler(UaaException.class)
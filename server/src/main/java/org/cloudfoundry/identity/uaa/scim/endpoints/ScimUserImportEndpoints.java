@@ -0,0 +1,163 @@
+package org.cloudfoundry.identity.uaa.scim.endpoints;
+
+import org.cloudfoundry.identity.uaa.error.UaaException;
+import org.cloudfoundry.identity.uaa.scim.DisableInternalUserManagementFilter;
+import org.cloudfoundry.identity.uaa.scim.exception.ScimException;
+import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceNotFoundException;
+import org.cloudfoundry.identity.uaa.scim.imports.ScimUserImporter;
+import org.cloudfoundry.identity.uaa.scim.imports.UserImportJob;
+import org.cloudfoundry.identity.uaa.util.UaaUrlUtils;
+import org.cloudfoundry.identity.uaa.web.ConvertingExceptionView;
+import org.cloudfoundry.identity.uaa.web.ExceptionReport;
+import org.cloudfoundry.identity.uaa.web.ExceptionReportHttpMessageConverter;
+import org.cloudfoundry.identity.uaa.zone.beans.IdentityZoneManager;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.View;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Imports users from a file in the background, see {@link ScimUserImporter}. The file is
+ * either CSV ({@code text/csv}) or one SCIM user per line ({@code application/x-ndjson}).
+ * Posting a file returns the import job, which is then polled for progress and the errors
+ * of single rows.
+ *
+ * With {@code hashedPasswords=true} the passwords of UAA users must be bcrypt hashes, which
+ * are stored as they are, e.g. when users are migrated from another UAA.
+ */
+@Controller
+public class ScimUserImportEndpoints {
+
+    private final ScimUserImporter importer;
+    private final IdentityZoneManager identityZoneManager;
+    private final Map<Class<? extends Exception>, HttpStatus> statuses;
+    private final long maxPayloadSize;
+    private final HttpMessageConverter<?>[] messageConverters;
+
+    public ScimUserImportEndpoints(
+            final ScimUserImporter importer,
+            final IdentityZoneManager identityZoneManager,
+            final @Qualifier("exceptionToStatusMap") Map<Class<? extends Exception>, HttpStatus> statuses,
+            final @Value("${import.maxPayloadSize:1073741824}") long maxPayloadSize) {
+        if (maxPayloadSize <= 0) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid \"import.maxPayloadSize\" value (got %d). Should be positive number.", maxPayloadSize)
+            );
+        }
+        this.importer = importer;
+        this.identityZoneManager = identityZoneManager;
+        this.statuses = statuses;
+        this.maxPayloadSize = maxPayloadSize;
+        this.messageConverters = new HttpMessageConverter<?>[]{
+                new ExceptionReportHttpMessageConverter()
+        };
+    }
+
+    @RequestMapping(value = "/UserImports", method = RequestMethod.POST)
+    public ResponseEntity<UserImportJob> importUsers(
+            @RequestParam(required = false, defaultValue = "false") boolean hashedPasswords,
+            HttpServletRequest request) throws IOException {
+        ScimUserImporter.Format format = getFormat(request.getContentType());
+        if (request.getContentLengthLong() > maxPayloadSize) {
+            throw payloadTooLarge();
+        }
+        boolean internalUserManagementDisabled =
+                Boolean.TRUE.equals(request.getAttribute(DisableInternalUserManagementFilter.DISABLE_INTERNAL_USER_MANAGEMENT));
+        Path file = Files.createTempFile("uaa-user-import-", ".tmp");
+        UserImportJob job;
+        try {
+            copy(request.getInputStream(), file);
+            job = importer.submit(file, format, hashedPasswords, internalUserManagementDisabled);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .header("Location", UaaUrlUtils.getBaseURL(request) + "/UserImports/" + job.getId())
+                .body(job);
+    }
+
+    @RequestMapping(value = "/UserImports/{jobId}", method = RequestMethod.GET)
+    @ResponseBody
+    public UserImportJob getImport(@PathVariable String jobId) {
+        UserImportJob job = importer.getJob(jobId, identityZoneManager.getCurrentIdentityZoneId());
+        if (job == null) {
+            throw new ScimResourceNotFoundException("User import " + jobId + " does not exist");
+        }
+        return job;
+    }
+
+    @ExceptionHandler
+    public View handleException(Exception t, HttpServletRequest request) {
+        ScimException e = t instanceof ScimException ? (ScimException) t :
+                new ScimException(t.getMessage(), t, getStatus(t));
+        boolean trace = request.getParameter("trace") != null && !request.getParameter("trace").equals("false");
+        return new ConvertingExceptionView(new ResponseEntity<>(new ExceptionReport(e, trace),
+                e.getStatus()), messageConverters);
+    }
+
+    private static ScimUserImporter.Format getFormat(String contentType) {
+        String type = contentType == null ? "" : contentType.toLowerCase(Locale.ROOT);
+        if (type.startsWith("text/csv")) {
+            return ScimUserImporter.Format.CSV;
+        }
+        if (type.startsWith(ScimExportEndpoints.NDJSON_MEDIA_TYPE) || type.startsWith("application/json")) {
+            return ScimUserImporter.Format.NDJSON;
+        }
+        throw new ScimException("User imports must be text/csv or " + ScimExportEndpoints.NDJSON_MEDIA_TYPE,
+                HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+    }
+
+    /**
+     * Spools the request to a file, so that the request completes before the import starts.
+     */
+    private void copy(InputStream in, Path file) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long size = 0;
+        try (OutputStream out = Files.newOutputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                size += read;
+                if (size > maxPayloadSize) {
+                    throw payloadTooLarge();
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private ScimException payloadTooLarge() {
+        return new ScimException("The size of the user import exceeds the maximum of " + maxPayloadSize + " bytes",
+                HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    private HttpStatus getStatus(Exception e) {
+        if (e instanceof UaaException) {
+            return HttpStatus.valueOf(((UaaException) e).getHttpStatus());
+        }
+        for (Map.Entry<Class<? extends Exception>, HttpStatus> status : statuses.entrySet()) {
+            if (status.getKey().isInstance(e)) {
+                return status.getValue();
+            }
+        }
+        return HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+}
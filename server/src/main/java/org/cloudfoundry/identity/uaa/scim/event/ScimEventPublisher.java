@@ -7,8 +7,12 @@ import org.cloudfoundry.identity.uaa.zone.beans.IdentityZoneManager;
 import org.springframework.context.ApplicationEvent;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import static java.util.Optional.ofNullable;
 
@@ -31,6 +35,28 @@ public class ScimEventPublisher implements ApplicationEventPublisherAware {
         publish(UserModifiedEvent.userCreated(user, identityZoneManager.getCurrentIdentityZoneId()));
     }
 
+    /**
+     * Publishes the creation of users stored in batches. Inside a transaction the events are
+     * only published once it commits, so that a batch that is rolled back, and then stored
+     * one user at a time, does not leave events for users that were never created.
+     */
+    public void usersCreated(final List<ScimUser> users) {
+        String zoneId = identityZoneManager.getCurrentIdentityZoneId();
+        List<ApplicationEvent> events = users.stream()
+                .map(user -> UserModifiedEvent.userCreated(user, zoneId))
+                .collect(Collectors.toList());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    events.forEach(ScimEventPublisher.this::publish);
+                }
+            });
+        } else {
+            events.forEach(this::publish);
+        }
+    }
+
     public void userVerified(final ScimUser user) {
         publish(UserModifiedEvent.userVerified(user, identityZoneManager.getCurrentIdentityZoneId()));
     }
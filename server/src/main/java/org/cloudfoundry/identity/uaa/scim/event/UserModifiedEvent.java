@@ -58,6 +58,10 @@ public class UserModifiedEvent extends AbstractUaaEvent {
         };
     }
 
+    public AuditEventType getEventType() {
+        return eventType;
+    }
+
     public String getUserId() {
         return scimUser.getId();
     }
@@ -0,0 +1,413 @@
+package org.cloudfoundry.identity.uaa.scim.imports;
+
+import org.cloudfoundry.identity.uaa.constants.OriginKeys;
+import org.cloudfoundry.identity.uaa.provider.IdentityProvider;
+import org.cloudfoundry.identity.uaa.provider.IdentityProviderProvisioning;
+import org.cloudfoundry.identity.uaa.scim.DisableUserManagementSecurityFilter;
+import org.cloudfoundry.identity.uaa.scim.InternalUserManagementDisabledException;
+import org.cloudfoundry.identity.uaa.scim.ScimGroupMember;
+import org.cloudfoundry.identity.uaa.scim.ScimGroupMembershipManager;
+import org.cloudfoundry.identity.uaa.scim.ScimGroupProvisioning;
+import org.cloudfoundry.identity.uaa.scim.ScimUser;
+import org.cloudfoundry.identity.uaa.scim.ScimUserProvisioning;
+import org.cloudfoundry.identity.uaa.scim.exception.InvalidPasswordException;
+import org.cloudfoundry.identity.uaa.scim.exception.InvalidScimResourceException;
+import org.cloudfoundry.identity.uaa.scim.exception.ScimException;
+import org.cloudfoundry.identity.uaa.scim.util.ScimUtils;
+import org.cloudfoundry.identity.uaa.scim.validate.PasswordValidator;
+import org.cloudfoundry.identity.uaa.util.DomainFilter;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * Imports users and their group memberships in the background, reporting progress and the
+ * errors of single rows through a {@link UserImportJob}.
+ *
+ * Rows are imported in batches. The passwords of a batch are hashed in parallel on a pool
+ * with one thread per core, unless they are already bcrypt hashes. The users and
+ * memberships of a batch are then inserted with JDBC batch statements in one transaction.
+ * If that fails, e.g. because one of the user names is taken, the batch is rolled back and
+ * its rows are imported one by one, so that only the failing rows are reported.
+ *
+ * Jobs are kept in memory, so a job can only be polled on the server that runs it. The
+ * last {@code maxRetainedJobs} finished jobs are kept.
+ */
+@Component("scimUserImporter")
+public class ScimUserImporter implements DisposableBean {
+
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(ScimUserImporter.class);
+    private static final Pattern BCRYPT_HASH = Pattern.compile("^(\\{bcrypt})?\\$2[aby]?\\$\\d{2}\\$[./A-Za-z0-9]{53}$");
+    private static final int MAX_QUEUED_JOBS = 10;
+
+    private final ScimUserProvisioning scimUserProvisioning;
+    private final ScimGroupProvisioning scimGroupProvisioning;
+    private final ScimGroupMembershipManager membershipManager;
+    private final IdentityProviderProvisioning identityProviderProvisioning;
+    private final PasswordValidator passwordValidator;
+    private final PasswordEncoder passwordEncoder;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxRetainedJobs;
+    private final int maxErrorsPerJob;
+    private final ExecutorService jobExecutor;
+    private final ExecutorService hashExecutor;
+    private final Map<String, UserImportJob> jobs = new ConcurrentHashMap<>();
+
+    public ScimUserImporter(
+            final ScimUserProvisioning scimUserProvisioning,
+            final ScimGroupProvisioning scimGroupProvisioning,
+            final ScimGroupMembershipManager membershipManager,
+            final IdentityProviderProvisioning identityProviderProvisioning,
+            final PasswordValidator passwordValidator,
+            final @Qualifier("nonCachingPasswordEncoder") PasswordEncoder passwordEncoder,
+            final @Qualifier("transactionManager") PlatformTransactionManager transactionManager,
+            final @Value("${import.batchSize:1000}") int batchSize,
+            final @Value("${import.hashThreads:0}") int hashThreads,
+            final @Value("${import.maxConcurrentJobs:1}") int maxConcurrentJobs,
+            final @Value("${import.maxRetainedJobs:100}") int maxRetainedJobs,
+            final @Value("${import.maxErrorsPerJob:1000}") int maxErrorsPerJob) {
+        if (batchSize <= 0 || hashThreads < 0 || maxConcurrentJobs <= 0 || maxRetainedJobs < 0 || maxErrorsPerJob < 0) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid import settings (got batchSize=%d, hashThreads=%d, maxConcurrentJobs=%d, maxRetainedJobs=%d, maxErrorsPerJob=%d).",
+                            batchSize, hashThreads, maxConcurrentJobs, maxRetainedJobs, maxErrorsPerJob)
+            );
+        }
+        this.scimUserProvisioning = scimUserProvisioning;
+        this.scimGroupProvisioning = scimGroupProvisioning;
+        this.membershipManager = membershipManager;
+        this.identityProviderProvisioning = identityProviderProvisioning;
+        this.passwordValidator = passwordValidator;
+        this.passwordEncoder = passwordEncoder;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxRetainedJobs = maxRetainedJobs;
+        this.maxErrorsPerJob = maxErrorsPerJob;
+        this.jobExecutor = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(MAX_QUEUED_JOBS), daemonThreads("user-import"));
+        this.hashExecutor = Executors.newFixedThreadPool(
+                hashThreads > 0 ? hashThreads : Runtime.getRuntime().availableProcessors(), daemonThreads("user-import-hash"));
+    }
+
+    /**
+     * Starts importing the users in a file, which is deleted when the import is finished.
+     * The import runs in the current identity zone and on behalf of the current user.
+     *
+     * @param passwordsHashed                true if the passwords of UAA users are bcrypt hashes
+     * @param internalUserManagementDisabled true to reject UAA users, see {@link DisableUserManagementSecurityFilter}
+     * @throws ScimException if too many imports are in progress
+     */
+    public UserImportJob submit(Path file, Format format, boolean passwordsHashed, boolean internalUserManagementDisabled) {
+        IdentityZone zone = IdentityZoneHolder.get();
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        UserImportJob job = new UserImportJob(UUID.randomUUID().toString(), zone.getId(), maxErrorsPerJob);
+        jobs.put(job.getId(), job);
+        try {
+            jobExecutor.execute(() -> {
+                IdentityZoneHolder.set(zone);
+                SecurityContextHolder.setContext(securityContext);
+                try {
+                    new ImportRun(job, passwordsHashed, internalUserManagementDisabled).run(file, format);
+                } finally {
+                    SecurityContextHolder.clearContext();
+                    IdentityZoneHolder.clear();
+                    deleteQuietly(file);
+                    evictFinishedJobs();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            deleteQuietly(file);
+            throw new ScimException("Too many user imports in progress, try again later", HttpStatus.TOO_MANY_REQUESTS);
+        }
+        return job;
+    }
+
+    /**
+     * @return the job, or null if there is no such job in the zone
+     */
+    public UserImportJob getJob(String id, String zoneId) {
+        UserImportJob job = jobs.get(id);
+        return job != null && job.getZoneId().equals(zoneId) ? job : null;
+    }
+
+    @Override
+    public void destroy() {
+        jobExecutor.shutdownNow();
+        hashExecutor.shutdownNow();
+    }
+
+    private void evictFinishedJobs() {
+        List<UserImportJob> finished = jobs.values().stream()
+                .filter(UserImportJob::isFinished)
+                .sorted(Comparator.comparing(UserImportJob::getFinished))
+                .collect(Collectors.toList());
+        for (int i = 0; i < finished.size() - maxRetainedJobs; i++) {
+            jobs.remove(finished.get(i).getId());
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Unable to delete user import file " + file, e);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger threads = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * A user that passed validation, with the ids of the groups it is to be added to.
+     */
+    private static final class ValidUser {
+        private final long line;
+        private final ScimUser user;
+        private final List<String> groupIds;
+
+        private ValidUser(long line, ScimUser user, List<String> groupIds) {
+            this.line = line;
+            this.user = user;
+            this.groupIds = groupIds;
+        }
+    }
+
+    /**
+     * The state of one import, only used by the thread that runs it.
+     */
+    private final class ImportRun {
+        private final UserImportJob job;
+        private final boolean passwordsHashed;
+        private final boolean internalUserManagementDisabled;
+        private final String zoneId;
+        private final List<IdentityProvider> externalProviders;
+        private final Map<String, String> groupIdsByName = new HashMap<>();
+        private String emptyPasswordHash;
+
+        private ImportRun(UserImportJob job, boolean passwordsHashed, boolean internalUserManagementDisabled) {
+            this.job = job;
+            this.passwordsHashed = passwordsHashed;
+            this.internalUserManagementDisabled = internalUserManagementDisabled;
+            this.zoneId = job.getZoneId();
+            this.externalProviders = identityProviderProvisioning.retrieveActive(zoneId).stream()
+                    .filter(idp -> !OriginKeys.UAA.equals(idp.getOriginKey()))
+                    .collect(Collectors.toList());
+        }
+
+        private void run(Path file, Format format) {
+            job.start();
+            try (UserImportReader reader = new UserImportReader(Files.newBufferedReader(file, StandardCharsets.UTF_8), format)) {
+                List<UserImportReader.Row> batch = new ArrayList<>(batchSize);
+                UserImportReader.Row row;
+                while ((row = reader.next()) != null) {
+                    batch.add(row);
+                    if (batch.size() == batchSize) {
+                        importBatch(batch);
+                        batch.clear();
+                    }
+                }
+                importBatch(batch);
+                job.complete();
+                logger.info(String.format("User import %s imported %d users, %d rows failed", job.getId(), job.getImported(), job.getFailed()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                job.fail("The import was interrupted");
+            } catch (Exception e) {
+                logger.warn("User import " + job.getId() + " failed", e);
+                job.fail(e.getMessage());
+            }
+        }
+
+        private void importBatch(List<UserImportReader.Row> rows) throws InterruptedException, ExecutionException {
+            List<ValidUser> users = new ArrayList<>(rows.size());
+            for (UserImportReader.Row row : rows) {
+                if (row.error != null) {
+                    job.rowFailed(row.line, row.error);
+                    continue;
+                }
+                try {
+                    users.add(validate(row));
+                } catch (RuntimeException e) {
+                    job.rowFailed(row.line, e.getMessage());
+                }
+            }
+            if (users.isEmpty()) {
+                return;
+            }
+            hashPasswords(users);
+            try {
+                transactionTemplate.execute(status -> {
+                    insert(users);
+                    return null;
+                });
+                job.rowsImported(users.size());
+            } catch (RuntimeException e) {
+                logger.debug("Batch of " + users.size() + " imported users failed, importing them one by one", e);
+                for (ValidUser user : users) {
+                    try {
+                        transactionTemplate.execute(status -> {
+                            insert(Collections.singletonList(user));
+                            return null;
+                        });
+                        job.rowsImported(1);
+                    } catch (RuntimeException rowException) {
+                        job.rowFailed(user.line, rowException.getMessage());
+                    }
+                }
+            }
+        }
+
+        /**
+         * Applies the checks of user creation through the API, except that the identity
+         * providers and group names are only looked up once per import.
+         */
+        private ValidUser validate(UserImportReader.Row row) {
+            ScimUser user = row.user;
+            if (!hasText(user.getOrigin())) {
+                user.setOrigin(OriginKeys.UAA);
+            }
+            boolean uaaUser = OriginKeys.UAA.equals(user.getOrigin());
+            if (uaaUser && internalUserManagementDisabled) {
+                throw new InternalUserManagementDisabledException(DisableUserManagementSecurityFilter.INTERNAL_USER_CREATION_IS_CURRENTLY_DISABLED);
+            }
+            ScimUtils.validate(user);
+            if (!uaaUser) {
+                user.setPassword(null);
+            } else {
+                List<IdentityProvider> providers = DomainFilter.getIdpsForEmailDomain(externalProviders, user.getEmails().get(0).getValue());
+                if (!providers.isEmpty()) {
+                    List<String> origins = providers.stream().map(IdentityProvider::getOriginKey).collect(Collectors.toList());
+                    throw new ScimException(String.format("The user account is set up for single sign-on. Please use one of these origin(s) : %s", origins), HttpStatus.BAD_REQUEST);
+                }
+                String password = user.getPassword() == null ? "" : user.getPassword();
+                if (passwordsHashed) {
+                    if (!BCRYPT_HASH.matcher(password).matches()) {
+                        throw new InvalidPasswordException("Password must be a bcrypt hash");
+                    }
+                } else {
+                    passwordValidator.validate(password);
+                }
+                user.setPassword(password);
+            }
+
+            List<String> groupIds = new ArrayList<>();
+            if (user.getGroups() != null) {
+                for (ScimUser.Group group : user.getGroups()) {
+                    groupIds.add(hasText(group.getValue()) ? group.getValue() : getGroupId(group.getDisplay()));
+                }
+                user.setGroups(Collections.emptyList());
+            }
+            return new ValidUser(row.line, user, groupIds);
+        }
+
+        private String getGroupId(String name) {
+            if (!groupIdsByName.containsKey(name)) {
+                String id = null;
+                try {
+                    id = scimGroupProvisioning.getByName(name, zoneId).getId();
+                } catch (IncorrectResultSizeDataAccessException e) {
+                    // remembered as unknown
+                }
+                groupIdsByName.put(name, id);
+            }
+            String id = groupIdsByName.get(name);
+            if (id == null) {
+                throw new InvalidScimResourceException("Unknown group: " + name);
+            }
+            return id;
+        }
+
+        /**
+         * Hashes the passwords of a batch in parallel. Users of other origins cannot log in
+         * with a password, so they share one hash of the empty password, like users created
+         * through the API get a hash of the empty password.
+         */
+        private void hashPasswords(List<ValidUser> users) throws InterruptedException, ExecutionException {
+            if (emptyPasswordHash == null) {
+                emptyPasswordHash = passwordEncoder.encode("");
+            }
+            List<ScimUser> toHash = new ArrayList<>();
+            for (ValidUser valid : users) {
+                if (valid.user.getPassword() == null) {
+                    valid.user.setPassword(emptyPasswordHash);
+                } else if (!passwordsHashed) {
+                    toHash.add(valid.user);
+                }
+            }
+            List<Callable<String>> tasks = new ArrayList<>(toHash.size());
+            for (ScimUser user : toHash) {
+                String password = user.getPassword();
+                tasks.add(() -> passwordEncoder.encode(password));
+            }
+            List<Future<String>> hashes = hashExecutor.invokeAll(tasks);
+            for (int i = 0; i < toHash.size(); i++) {
+                toHash.get(i).setPassword(hashes.get(i).get());
+            }
+        }
+
+        private void insert(List<ValidUser> users) {
+            List<ScimUser> created = scimUserProvisioning.importUsers(
+                    users.stream().map(valid -> valid.user).collect(Collectors.toList()), zoneId);
+            Map<String, List<ScimGroupMember>> membersByGroup = new LinkedHashMap<>();
+            for (int i = 0; i < users.size(); i++) {
+                for (String groupId : users.get(i).groupIds) {
+                    membersByGroup.computeIfAbsent(groupId, id -> new ArrayList<>())
+                            .add(new ScimGroupMember(created.get(i).getId(), ScimGroupMember.Type.USER));
+                }
+            }
+            membersByGroup.forEach((groupId, members) -> membershipManager.addMembers(groupId, members, zoneId));
+        }
+    }
+}
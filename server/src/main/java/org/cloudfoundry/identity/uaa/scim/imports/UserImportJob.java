@@ -0,0 +1,142 @@
+package org.cloudfoundry.identity.uaa.scim.imports;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The progress of a user import. It is updated by the thread that runs the import and read
+ * by the requests that poll it.
+ *
+ * The errors of at most {@code maxErrors} rows are kept; further failed rows are only
+ * counted.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserImportJob {
+
+    public enum Status {
+        PENDING, RUNNING, COMPLETED, FAILED
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static final class RowError {
+        private final long line;
+        private final String message;
+
+        RowError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private final String id;
+    private final String zoneId;
+    private final Date created = new Date();
+    private final int maxErrors;
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final List<RowError> errors = new ArrayList<>();
+    private volatile Status status = Status.PENDING;
+    private volatile Date finished;
+    private volatile String message;
+
+    UserImportJob(String id, String zoneId, int maxErrors) {
+        this.id = id;
+        this.zoneId = zoneId;
+        this.maxErrors = maxErrors;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @JsonIgnore
+    public String getZoneId() {
+        return zoneId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    public Date getFinished() {
+        return finished;
+    }
+
+    /**
+     * @return why the import failed as a whole, e.g. because the input could not be read
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    public long getImported() {
+        return imported.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public List<RowError> getErrors() {
+        synchronized (errors) {
+            return new ArrayList<>(errors);
+        }
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    void start() {
+        status = Status.RUNNING;
+    }
+
+    void rowsImported(int count) {
+        processed.addAndGet(count);
+        imported.addAndGet(count);
+    }
+
+    void rowFailed(long line, String message) {
+        processed.incrementAndGet();
+        failed.incrementAndGet();
+        synchronized (errors) {
+            if (errors.size() < maxErrors) {
+                errors.add(new RowError(line, message));
+            }
+        }
+    }
+
+    void complete() {
+        finished = new Date();
+        status = Status.COMPLETED;
+    }
+
+    void fail(String message) {
+        this.message = message;
+        finished = new Date();
+        status = Status.FAILED;
+    }
+}
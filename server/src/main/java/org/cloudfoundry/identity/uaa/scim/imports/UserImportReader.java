@@ -0,0 +1,254 @@
+package org.cloudfoundry.identity.uaa.scim.imports;
+
+import org.cloudfoundry.identity.uaa.scim.ScimUser;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * Reads the rows of a user import, one at a time: either newline delimited JSON with one
+ * SCIM user per line, or CSV with a header row that names the columns. The CSV columns are
+ * {@link #CSV_COLUMNS}, in any order and case; the groups column holds group names
+ * separated by semicolons.
+ *
+ * Rows that cannot be read are returned with an error instead of a user, so that the
+ * import can report them and go on. Error messages never contain the row content, which
+ * may hold a password.
+ */
+final class UserImportReader implements Closeable {
+
+    static final List<String> CSV_COLUMNS = Arrays.asList(
+            "userName", "email", "givenName", "familyName", "password", "origin",
+            "externalId", "phoneNumber", "active", "verified", "groups");
+
+    /**
+     * The maximum number of characters of a CSV record, so that an unterminated quote does not
+     * buffer the rest of the input.
+     */
+    static final int MAX_RECORD_LENGTH = 64 * 1024;
+
+    private static final Map<String, String> COLUMNS_BY_LOWER_CASE = new HashMap<>();
+
+    static {
+        CSV_COLUMNS.forEach(column -> COLUMNS_BY_LOWER_CASE.put(column.toLowerCase(Locale.ROOT), column));
+    }
+
+    static final class Row {
+        final long line;
+        final ScimUser user;
+        final String error;
+
+        private Row(long line, ScimUser user, String error) {
+            this.line = line;
+            this.user = user;
+            this.error = error;
+        }
+    }
+
+    private final BufferedReader reader;
+    private final ScimUserImporter.Format format;
+    private final List<String> header;
+    private long line;
+
+    /**
+     * @throws IllegalArgumentException if the CSV header is missing or names an unknown column
+     */
+    UserImportReader(Reader reader, ScimUserImporter.Format format) throws IOException {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        this.format = format;
+        this.header = format == ScimUserImporter.Format.CSV ? readHeader() : null;
+    }
+
+    /**
+     * @return the next row, or null at the end of the input
+     */
+    Row next() throws IOException {
+        return format == ScimUserImporter.Format.CSV ? nextCsv() : nextJson();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private Row nextJson() throws IOException {
+        String text;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            if (hasText(text)) {
+                try {
+                    return new Row(line, JsonUtils.readValue(text, ScimUser.class), null);
+                } catch (JsonUtils.JsonUtilException e) {
+                    return new Row(line, null, "Invalid JSON user");
+                }
+            }
+        }
+        return null;
+    }
+
+    private List<String> readHeader() throws IOException {
+        List<String> names;
+        try {
+            names = readRecord();
+        } catch (RecordTooLongException e) {
+            throw new IllegalArgumentException("CSV header exceeds " + MAX_RECORD_LENGTH + " characters");
+        }
+        if (names == null) {
+            throw new IllegalArgumentException("Missing CSV header");
+        }
+        List<String> columns = new ArrayList<>(names.size());
+        Set<String> seen = new LinkedHashSet<>();
+        for (String name : names) {
+            String column = COLUMNS_BY_LOWER_CASE.get(name.trim().toLowerCase(Locale.ROOT));
+            if (column == null) {
+                throw new IllegalArgumentException("Unknown CSV column: " + name + ", expected some of " + CSV_COLUMNS);
+            }
+            if (!seen.add(column)) {
+                throw new IllegalArgumentException("Duplicate CSV column: " + name);
+            }
+            columns.add(column);
+        }
+        if (!seen.contains("userName")) {
+            throw new IllegalArgumentException("Missing CSV column: userName");
+        }
+        return columns;
+    }
+
+    private Row nextCsv() throws IOException {
+        long start;
+        List<String> values;
+        do {
+            start = line + 1;
+            try {
+                values = readRecord();
+            } catch (RecordTooLongException e) {
+                return new Row(start, null, "Record exceeds " + MAX_RECORD_LENGTH + " characters, is a quote missing?");
+            }
+            if (values == null) {
+                return null;
+            }
+        } while (values.size() == 1 && values.get(0).isEmpty());
+        if (values.size() != header.size()) {
+            return new Row(start, null, "Expected " + header.size() + " values but found " + values.size());
+        }
+        Map<String, String> record = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            record.put(header.get(i), hasText(values.get(i)) ? values.get(i).trim() : null);
+        }
+        try {
+            return new Row(start, toUser(record), null);
+        } catch (IllegalArgumentException e) {
+            return new Row(start, null, e.getMessage());
+        }
+    }
+
+    private static ScimUser toUser(Map<String, String> record) {
+        ScimUser user = new ScimUser(null, record.get("userName"), record.get("givenName"), record.get("familyName"));
+        if (record.get("email") != null) {
+            user.addEmail(record.get("email"));
+        }
+        user.setPassword(record.get("password"));
+        user.setOrigin(record.get("origin"));
+        user.setExternalId(record.get("externalId"));
+        user.addPhoneNumber(record.get("phoneNumber"));
+        user.setActive(toBoolean(record, "active", true));
+        user.setVerified(toBoolean(record, "verified", true));
+        if (record.get("groups") != null) {
+            List<ScimUser.Group> groups = new ArrayList<>();
+            for (String name : record.get("groups").split(";")) {
+                if (hasText(name)) {
+                    groups.add(new ScimUser.Group(null, name.trim()));
+                }
+            }
+            user.setGroups(groups);
+        }
+        return user;
+    }
+
+    private static boolean toBoolean(Map<String, String> record, String column, boolean defaultValue) {
+        String value = record.get(column);
+        if (value == null) {
+            return defaultValue;
+        }
+        if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+            return Boolean.parseBoolean(value);
+        }
+        throw new IllegalArgumentException("Invalid value for " + column + ", expected true or false");
+    }
+
+    /**
+     * Reads the values of one CSV record, which spans several lines if a quoted value
+     * contains line breaks.
+     *
+     * @return the values, or null at the end of the input
+     * @throws RecordTooLongException if the record exceeds {@link #MAX_RECORD_LENGTH}, after
+     * skipping the rest of the line at which it did
+     */
+    private List<String> readRecord() throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+        line++;
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        int length = 0;
+        while (c != -1) {
+            if (++length > MAX_RECORD_LENGTH) {
+                while (c != -1 && c != '\n') {
+                    c = reader.read();
+                }
+                throw new RecordTooLongException();
+            }
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        value.append('"');
+                    } else {
+                        quoted = false;
+                        if (next != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    value.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                value.append((char) c);
+            }
+            c = reader.read();
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    private static final class RecordTooLongException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -1,6 +1,8 @@
 package org.cloudfoundry.identity.uaa.scim.jdbc;
 
 import org.apache.commons.lang3.ArrayUtils;
+import org.cloudfoundry.identity.uaa.resources.Queryable;
+import org.cloudfoundry.identity.uaa.resources.jdbc.StreamingQuery;
 import org.cloudfoundry.identity.uaa.scim.*;
 import org.cloudfoundry.identity.uaa.scim.exception.*;
 import org.cloudfoundry.identity.uaa.util.beans.DbUtils;
@@ -23,6 +25,7 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 import static java.util.Collections.emptySet;
@@ -41,8 +44,12 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
 
     private static final String GET_MEMBERS_SQL = String.format("select %s from %s where group_id=? and identity_zone_id=?", MEMBERSHIP_FIELDS, MEMBERSHIP_TABLE);
 
+    private static final String GET_ZONE_MEMBERS_SQL = String.format("select %s from %s where identity_zone_id=?", MEMBERSHIP_FIELDS, MEMBERSHIP_TABLE);
+
     private static final String GET_MEMBER_SQL = String.format("select %s from %s where member_id=? and group_id=? and identity_zone_id=?", MEMBERSHIP_FIELDS, MEMBERSHIP_TABLE);
 
+    private static final String GET_EXISTING_MEMBER_IDS_SQL_BASE = String.format("select member_id from %s where group_id=? and identity_zone_id=? and member_id in (", MEMBERSHIP_TABLE);
+
     private static final String GET_MEMBER_COUNT_SQL = String.format("select count(*) from %s where member_id=? and group_id=? and identity_zone_id=?", MEMBERSHIP_TABLE);
 
     private static final String DELETE_MEMBER_WITH_ORIGIN_SQL = String.format("delete from %s where member_id=? and origin = ? and identity_zone_id=?", MEMBERSHIP_TABLE);
@@ -63,6 +70,9 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
                     " from %s m, %s g where m.group_id = g.id and g.identity_zone_id = ? and m.member_id = ? and m.origin = ?",
             MEMBERSHIP_TABLE, GROUP_TABLE);
 
+    // members whose entities are retrieved with one filter query
+    private static final int MAX_ENTITIES_PER_QUERY = 100;
+
     @Value("${database.maxParameters:-1}")
     private int maxSqlParameters;
 
@@ -72,6 +82,7 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
     private final ScimGroupMemberRowMapper rowMapper;
     private final TimeBasedExpiringValueMap<String, ScimGroup> defaultGroupCache;
     private final String dynamicGetGroupsByMemberSqlBase;
+    private final String dynamicGetGroupsAndMembersByMemberSqlBase;
     private final String getGroupsByExternalMemberSql;
 
     private ScimGroupProvisioning scimGroupProvisioning;
@@ -95,6 +106,13 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
                 quotedGroupsIdentifier,
                 MEMBERSHIP_TABLE
         );
+        dynamicGetGroupsAndMembersByMemberSqlBase = String.format(
+                "select %s, gm.member_id from %s g, %s gm where gm.group_id = g.id and gm.identity_zone_id = " +
+                        "g.identity_zone_id and gm.identity_zone_id = ? and gm.member_id in (",
+                "g." + JdbcScimGroupProvisioning.GROUP_FIELDS.replace(",", ",g."),
+                quotedGroupsIdentifier,
+                MEMBERSHIP_TABLE
+        );
         getGroupsByExternalMemberSql = String.format("select g.id, g.displayName, g.description, g.created, g.lastModified, g.version, g.identity_zone_id" +
                         " from %s m, %s g where m.group_id = g.id and g.identity_zone_id = ? and m.member_id = ? and m.origin = ?",
                 MEMBERSHIP_TABLE,
@@ -174,6 +192,72 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
         return getMemberById(groupId, member, ScimGroupMember.Type.valueOf(type));
     }
 
+    /**
+     * Validates the members like {@link #addMember(String, ScimGroupMember, String)}, but
+     * reads the group and the members with a few queries, and inserts all memberships with
+     * one JDBC batch.
+     */
+    @Override
+    public List<ScimGroupMember> addMembers(final String groupId, final List<ScimGroupMember> members, final String zoneId)
+            throws ScimResourceNotFoundException, MemberAlreadyExistsException {
+        if (members.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (isDefaultGroup(groupId, zoneId)) {
+            throw new MemberAlreadyExistsException("Trying to add member to default group");
+        }
+        List<ScimGroupMember> toAdd = new ArrayList<>(members.size());
+        for (ScimGroupMember member : members) {
+            if (!hasText(groupId) || !hasText(member.getMemberId()) || !hasText(member.getOrigin())) {
+                throw new InvalidScimResourceException("group-id, member-id, origin and member-type must be non-empty");
+            }
+            if (groupId.equals(member.getMemberId())) { // oops! cycle detected
+                throw new InvalidScimResourceException("trying to nest group within itself, aborting");
+            }
+            ScimGroupMember added = new ScimGroupMember(member.getMemberId(), member.getType() == null ? ScimGroupMember.Type.USER : member.getType());
+            added.setOrigin(member.getOrigin());
+            toAdd.add(added);
+        }
+
+        ScimGroup group = scimGroupProvisioning.retrieve(groupId, IdentityZoneHolder.get().getId()); // this will throw a ScimException
+        Map<String, ScimUser> users = retrieveMembers(toAdd, ScimGroupMember.Type.USER, userProvisioning);
+        Map<String, ScimGroup> groups = retrieveMembers(toAdd, ScimGroupMember.Type.GROUP, scimGroupProvisioning);
+        Set<String> memberIds = getExistingMemberIds(groupId, toAdd, zoneId);
+        for (ScimGroupMember member : toAdd) {
+            String memberZoneId;
+            // this will throw a ScimException if the group or user does not exist
+            if (member.getType() == ScimGroupMember.Type.GROUP) {
+                ScimGroup memberGroup = groups.get(member.getMemberId());
+                memberZoneId = (memberGroup == null ? scimGroupProvisioning.retrieve(member.getMemberId(), IdentityZoneHolder.get().getId()) : memberGroup).getZoneId();
+            } else {
+                ScimUser user = users.get(member.getMemberId());
+                memberZoneId = (user == null ? userProvisioning.retrieve(member.getMemberId(), IdentityZoneHolder.get().getId()) : user).getZoneId();
+            }
+            if (!memberZoneId.equals(group.getZoneId())) {
+                throw new ScimResourceConstraintFailedException("The zone of the group and the member must be the same.");
+            }
+            if (!memberZoneId.equals(zoneId)) {
+                throw new ScimResourceConstraintFailedException("Unable to make membership changes in a different zone");
+            }
+            if (!memberIds.add(member.getMemberId())) {
+                throw new MemberAlreadyExistsException(member.getMemberId() + " is already part of the group: " + groupId);
+            }
+        }
+
+        logger.debug("Associating group:{} with {} members", UaaStringUtils.getCleanedUserControlString(groupId), toAdd.size());
+        final Timestamp added = new Timestamp(new Date().getTime());
+        jdbcTemplate.batchUpdate(ADD_MEMBER_SQL, toAdd, toAdd.size(), (ps, member) -> {
+            ps.setString(1, groupId);
+            ps.setString(2, member.getMemberId());
+            ps.setString(3, member.getType().toString());
+            ps.setNull(4, Types.VARCHAR);
+            ps.setTimestamp(5, added);
+            ps.setString(6, member.getOrigin());
+            ps.setString(7, zoneId);
+        });
+        return toAdd;
+    }
+
     @Override
     public List<ScimGroupMember> getMembers(final String groupId, boolean includeEntities, String zoneId) throws ScimResourceNotFoundException {
         List<ScimGroupMember> result = jdbcTemplate.query(
@@ -184,12 +268,20 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
         );
 
         if (includeEntities) {
+            Map<String, ScimUser> users = retrieveMembers(result, ScimGroupMember.Type.USER, userProvisioning);
+            Map<String, ScimGroup> groups = retrieveMembers(result, ScimGroupMember.Type.GROUP, scimGroupProvisioning);
             for (ScimGroupMember member : result) {
                 if (member.getType().equals(ScimGroupMember.Type.USER)) {
-                    ScimUser user = userProvisioning.retrieve(member.getMemberId(), IdentityZoneHolder.get().getId());
+                    ScimUser user = users.get(member.getMemberId());
+                    if (user == null) {
+                        user = userProvisioning.retrieve(member.getMemberId(), IdentityZoneHolder.get().getId());
+                    }
                     member.setEntity(user);
                 } else if (member.getType().equals(ScimGroupMember.Type.GROUP)) {
-                    ScimGroup group = scimGroupProvisioning.retrieve(member.getMemberId(), IdentityZoneHolder.get().getId());
+                    ScimGroup group = groups.get(member.getMemberId());
+                    if (group == null) {
+                        group = scimGroupProvisioning.retrieve(member.getMemberId(), IdentityZoneHolder.get().getId());
+                    }
                     member.setEntity(group);
                 }
             }
@@ -198,6 +290,30 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
         return new ArrayList<>(result);
     }
 
+    /**
+     * Retrieves the entities of the members of the given type with filter queries
+     * on their ids, instead of one query per member. Members that are not found
+     * are left to be retrieved one by one.
+     */
+    private <T extends ScimCore<T>> Map<String, T> retrieveMembers(List<ScimGroupMember> members, ScimGroupMember.Type type, Queryable<T> provisioning) {
+        List<String> memberIds = members.stream()
+                .filter(member -> type.equals(member.getType()))
+                .map(ScimGroupMember::getMemberId)
+                .distinct()
+                .collect(Collectors.toList());
+        Map<String, T> entities = new HashMap<>();
+        for (int i = 0; i < memberIds.size(); i += MAX_ENTITIES_PER_QUERY) {
+            String filter = memberIds.subList(i, Math.min(i + MAX_ENTITIES_PER_QUERY, memberIds.size())).stream()
+                    .map(id -> "id eq \"" + id.replace("\\", "\\\\").replace("\"", "\\\"") + "\"")
+                    .collect(Collectors.joining(" or "));
+            for (T entity : provisioning.query(filter, IdentityZoneHolder.get().getId())) {
+                // ids of fixed length columns may come back padded
+                entities.put(entity.getId().trim(), entity);
+            }
+        }
+        return entities;
+    }
+
     @Override
     public Set<ScimGroup> getGroupsWithMember(final String memberId, boolean transitive, String zoneId)
             throws ScimResourceNotFoundException {
@@ -209,6 +325,85 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
         return new HashSet<>(results);
     }
 
+    @Override
+    public Map<String, Set<ScimGroup>> getGroupsWithMembers(final Collection<String> userIds, boolean transitive, String zoneId)
+            throws ScimResourceNotFoundException {
+        // the groups each member belongs to directly, one query per nesting level for all members
+        Map<String, Set<ScimGroup>> groupsByMember = new HashMap<>();
+        if (IdentityZoneHolder.get().getId().equals(zoneId)) {
+            Set<String> queried = new HashSet<>(userIds);
+            List<String> level = new ArrayList<>(queried);
+            while (!level.isEmpty()) {
+                List<String> nextLevel = new ArrayList<>();
+                getGroupsAndMembers(level, zoneId).forEach((memberId, groups) -> {
+                    groupsByMember.computeIfAbsent(memberId, k -> new HashSet<>()).addAll(groups);
+                    for (ScimGroup group : groups) {
+                        if (transitive && queried.add(group.getId())) {
+                            nextLevel.add(group.getId());
+                        }
+                    }
+                });
+                level = nextLevel;
+            }
+        }
+
+        Set<ScimGroup> defaultGroups = getDefaultUserGroups(zoneId);
+        Map<String, Set<ScimGroup>> results = new HashMap<>();
+        for (String userId : userIds) {
+            Set<ScimGroup> groups = new HashSet<>();
+            Deque<ScimGroup> pending = new ArrayDeque<>(groupsByMember.getOrDefault(userId, emptySet()));
+            while (!pending.isEmpty()) {
+                ScimGroup group = pending.pop();
+                if (groups.add(group) && transitive) {
+                    pending.addAll(groupsByMember.getOrDefault(group.getId(), emptySet()));
+                }
+            }
+            groups.addAll(defaultGroups);
+            results.put(userId, groups);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the ids of those of the given members that already are members of the group,
+     * without reading the other members of the group.
+     */
+    private Set<String> getExistingMemberIds(final String groupId, final List<ScimGroupMember> members, final String zoneId) {
+        Set<String> existing = new HashSet<>();
+        List<String> memberList = members.stream().map(ScimGroupMember::getMemberId).distinct().collect(Collectors.toList());
+        while (!memberList.isEmpty()) {
+            int size = maxSqlParameters > 2 ? Math.min(maxSqlParameters - 2, memberList.size()) : memberList.size();
+            String sql = GET_EXISTING_MEMBER_IDS_SQL_BASE +
+                    memberList.subList(0, size).stream().map(s -> "?").collect(Collectors.joining(", ")) + ")";
+            Object[] parameterList = ArrayUtils.addAll(new Object[] { groupId, zoneId }, memberList.subList(0, size).toArray());
+            // ids of fixed length columns may come back padded
+            jdbcTemplate.query(sql, rs -> {
+                existing.add(rs.getString(1).trim());
+            }, parameterList);
+            memberList = memberList.subList(size, memberList.size());
+        }
+        return existing;
+    }
+
+    private Map<String, List<ScimGroup>> getGroupsAndMembers(final List<String> memberIds, final String zoneId) {
+        Map<String, List<ScimGroup>> groupsByMember = new HashMap<>();
+        ScimGroupRowMapper groupRowMapper = new ScimGroupRowMapper();
+        int memberIdColumn = JdbcScimGroupProvisioning.GROUP_FIELDS.split(",").length + 1;
+        List<String> memberList = memberIds;
+        while (!memberList.isEmpty()) {
+            int size = maxSqlParameters > 1 ? Math.min(maxSqlParameters - 1, memberList.size()) : memberList.size();
+            String sql = dynamicGetGroupsAndMembersByMemberSqlBase +
+                    memberList.subList(0, size).stream().map(s -> "?").collect(Collectors.joining(", ")) + ")";
+            Object[] parameterList = ArrayUtils.addAll(new Object[] { zoneId }, memberList.subList(0, size).toArray());
+            jdbcTemplate.query(sql, rs -> {
+                groupsByMember.computeIfAbsent(rs.getString(memberIdColumn), k -> new ArrayList<>())
+                        .add(groupRowMapper.mapRow(rs, 0));
+            }, parameterList);
+            memberList = memberList.subList(size, memberList.size());
+        }
+        return groupsByMember;
+    }
+
     private void getGroupsWithMember(List<ScimGroup> results, final List<String> memberId, boolean transitive, final String zoneId) {
         if (results == null) {
             return;
@@ -435,6 +630,14 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
 
     }
 
+    @Override
+    public void streamAll(String zoneId, int fetchSize, BiConsumer<String, ScimGroupMember> consumer) {
+        StreamingQuery.forEach(jdbcTemplate, GET_ZONE_MEMBERS_SQL, fetchSize,
+                (rs, rowNum) -> new AbstractMap.SimpleImmutableEntry<>(rs.getString(1), rowMapper.mapRow(rs, rowNum)),
+                membership -> consumer.accept(membership.getKey(), membership.getValue()),
+                zoneId);
+    }
+
     @Override
     public void deleteMembersByOrigin(String origin, String zoneId) throws ScimResourceNotFoundException {
         jdbcTemplate.update(DELETE_MEMBERS_WITH_ORIGIN_GROUP_SQL, origin, zoneId);
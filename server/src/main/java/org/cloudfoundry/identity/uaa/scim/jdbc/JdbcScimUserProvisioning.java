@@ -12,6 +12,7 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.scim.jdbc;
 
+import org.apache.commons.lang3.ArrayUtils;
 import org.cloudfoundry.identity.uaa.util.UaaStringUtils;
 import org.cloudfoundry.identity.uaa.zone.IdentityZone;
 import org.cloudfoundry.identity.uaa.zone.JdbcIdentityZoneProvisioning;
@@ -43,22 +44,28 @@ import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.util.Assert;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.regex.Pattern;
 
@@ -193,7 +200,7 @@ public class JdbcScimUserProvisioning extends AbstractQueryable<ScimUser>
     @Override
     public ScimUser create(final ScimUser user, String zoneId) {
         UserConfig userConfig = getUserConfig(zoneId);
-        validateUserLimit(zoneId, userConfig);
+        validateUserLimit(zoneId, userConfig, 1);
         if (!hasText(user.getOrigin())) {
             user.setOrigin(OriginKeys.UAA);
         }
@@ -203,40 +210,9 @@ public class JdbcScimUserProvisioning extends AbstractQueryable<ScimUser>
         logger.debug("Creating new user: {}", UaaStringUtils.getCleanedUserControlString(user.getUserName()));
 
         final String id = UUID.randomUUID().toString();
-        final String identityZoneId = zoneId;
-        final String origin = user.getOrigin();
 
         try {
-            jdbcTemplate.update(CREATE_USER_SQL, ps -> {
-                Timestamp t = new Timestamp(new Date().getTime());
-                ps.setString(1, id);
-                ps.setInt(2, user.getVersion());
-                ps.setTimestamp(3, t);
-                ps.setTimestamp(4, t);
-                ps.setString(5, user.getUserName());
-                ps.setString(6, user.getPrimaryEmail());
-                if (user.getName() == null) {
-                    ps.setString(7, null);
-                    ps.setString(8, null);
-                }
-                else {
-                    ps.setString(7, user.getName().getGivenName());
-                    ps.setString(8, user.getName().getFamilyName());
-                }
-                ps.setBoolean(9, user.isActive());
-                String phoneNumber = extractPhoneNumber(user);
-                ps.setString(10, phoneNumber);
-                ps.setBoolean(11, user.isVerified());
-                ps.setString(12, origin);
-                ps.setString(13, hasText(user.getExternalId())?user.getExternalId():null);
-                ps.setString(14, identityZoneId);
-                ps.setString(15, user.getSalt());
-
-                ps.setTimestamp(16, getPasswordLastModifiedTimestamp(t));
-                ps.setNull(17, Types.BIGINT);
-                ps.setNull(18, Types.BIGINT);
-                ps.setString(19, user.getPassword());
-            });
+            jdbcTemplate.update(CREATE_USER_SQL, ps -> setCreateUserValues(ps, user, id, zoneId, new Timestamp(new Date().getTime())));
         } catch (DuplicateKeyException e) {
             String userOrigin = hasText(user.getOrigin()) ? user.getOrigin() : OriginKeys.UAA;
             ScimUser existingUser = retrieveByUsernameAndOriginAndZone(user.getUserName(), userOrigin, zoneId).get(0);
@@ -249,6 +225,113 @@ public class JdbcScimUserProvisioning extends AbstractQueryable<ScimUser>
         return retrieve(id, zoneId);
     }
 
+    /**
+     * Inserts all users with one JDBC batch, and reads them back with one query. Either all
+     * users are created or, if the caller's transaction is rolled back, none of them.
+     */
+    @Override
+    public List<ScimUser> createUsers(final List<ScimUser> users, final String zoneId) {
+        if (users.isEmpty()) {
+            return Collections.emptyList();
+        }
+        for (ScimUser user : users) {
+            user.setPassword(passwordEncoder.encode(user.getPassword()));
+        }
+        List<String> ids = insertUsers(users, zoneId);
+
+        String sql = ALL_USERS + " where identity_zone_id = ? and id in (" + String.join(",", Collections.nCopies(ids.size(), "?")) + ")";
+        Map<String, ScimUser> created = new HashMap<>();
+        for (ScimUser user : jdbcTemplate.query(sql, mapper, ArrayUtils.addAll(new Object[]{zoneId}, ids.toArray()))) {
+            created.put(user.getId().trim(), user);
+        }
+        List<ScimUser> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            result.add(created.get(id));
+        }
+        return result;
+    }
+
+    /**
+     * Inserts all users with one JDBC batch, like {@link #createUsers(List, String)}, but
+     * stores the passwords as given and does not read the users back.
+     */
+    @Override
+    public List<ScimUser> importUsers(final List<ScimUser> users, final String zoneId) {
+        if (users.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> ids = insertUsers(users, zoneId);
+        for (int i = 0; i < users.size(); i++) {
+            users.get(i).setId(ids.get(i));
+        }
+        return users;
+    }
+
+    private List<String> insertUsers(final List<ScimUser> users, final String zoneId) {
+        UserConfig userConfig = getUserConfig(zoneId);
+        validateUserLimit(zoneId, userConfig, users.size());
+        Set<String> checkedOrigins = new HashSet<>();
+        List<String> ids = new ArrayList<>(users.size());
+        for (ScimUser user : users) {
+            if (!hasText(user.getOrigin())) {
+                user.setOrigin(OriginKeys.UAA);
+            }
+            if (isCheckOriginEnabled(userConfig) && checkedOrigins.add(user.getOrigin())) {
+                checkOrigin(user.getOrigin(), zoneId);
+            }
+            ids.add(UUID.randomUUID().toString());
+        }
+        logger.debug("Creating {} new users", users.size());
+
+        final Timestamp t = new Timestamp(new Date().getTime());
+        try {
+            jdbcTemplate.batchUpdate(CREATE_USER_SQL, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    setCreateUserValues(ps, users.get(i), ids.get(i), zoneId, t);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return users.size();
+                }
+            });
+        } catch (DuplicateKeyException e) {
+            throw new ScimResourceAlreadyExistsException("Username already in use");
+        }
+        return ids;
+    }
+
+    private void setCreateUserValues(PreparedStatement ps, ScimUser user, String id, String zoneId, Timestamp t) throws SQLException {
+        ps.setString(1, id);
+        ps.setInt(2, user.getVersion());
+        ps.setTimestamp(3, t);
+        ps.setTimestamp(4, t);
+        ps.setString(5, user.getUserName());
+        ps.setString(6, user.getPrimaryEmail());
+        if (user.getName() == null) {
+            ps.setString(7, null);
+            ps.setString(8, null);
+        }
+        else {
+            ps.setString(7, user.getName().getGivenName());
+            ps.setString(8, user.getName().getFamilyName());
+        }
+        ps.setBoolean(9, user.isActive());
+        String phoneNumber = extractPhoneNumber(user);
+        ps.setString(10, phoneNumber);
+        ps.setBoolean(11, user.isVerified());
+        ps.setString(12, user.getOrigin());
+        ps.setString(13, hasText(user.getExternalId())?user.getExternalId():null);
+        ps.setString(14, zoneId);
+        ps.setString(15, user.getSalt());
+
+        ps.setTimestamp(16, getPasswordLastModifiedTimestamp(t));
+        ps.setNull(17, Types.BIGINT);
+        ps.setNull(18, Types.BIGINT);
+        ps.setString(19, user.getPassword());
+    }
+
     protected Timestamp getPasswordLastModifiedTimestamp(Timestamp t) {
         Calendar cal = new GregorianCalendar();
         cal.set(Calendar.MILLISECOND, 0);
@@ -568,11 +651,11 @@ public class JdbcScimUserProvisioning extends AbstractQueryable<ScimUser>
         }
     }
 
-    private void validateUserLimit(String zoneId, UserConfig userConfig) {
+    private void validateUserLimit(String zoneId, UserConfig userConfig, int newUsers) {
         // get current limit of allowed users
         long maxAllowedUsers = (userConfig == null) ? -1 : userConfig.getMaxUsers();
-        // check, if there is a limit (>0), that the limit is not reached with one user more (getUsersCountForZone + 1)
-        if (maxAllowedUsers > 0 && maxAllowedUsers < (getUsersCountForZone(zoneId) + 1)) {
+        // check, if there is a limit (>0), that the limit is not reached with the new users (getUsersCountForZone + newUsers)
+        if (maxAllowedUsers > 0 && maxAllowedUsers < (getUsersCountForZone(zoneId) + newUsers)) {
             throw new InvalidScimResourceException("The maximum allowed numbers of users: " + maxAllowedUsers
                 + " is reached already in Identity Zone " + zoneId);
         }
@@ -34,6 +34,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -84,11 +86,13 @@ public class CorsFilter extends OncePerRequestFilter {
     static final Logger logger = LoggerFactory.getLogger(CorsFilter.class);
     public static final String X_REQUESTED_WITH = "X-Requested-With";
     public static final String WILDCARD = "*";
+    private static final int MAX_CACHED_MATCHERS = 1000;
 
     private CorsConfiguration xhrConfiguration = new CorsConfiguration();
     private CorsConfiguration defaultConfiguration = new CorsConfiguration();
     private final IdentityZoneManager identityZoneManager;
     private final boolean enforceSystemZoneSettings;
+    private final Map<List<Object>, CorsMatcher> matchers = new ConcurrentHashMap<>();
 
     public CorsFilter(final IdentityZoneManager identityZoneManager,
                       @Value("${cors.enforceSystemZonePolicyInAllZones:false}") final boolean enforceSystemZoneSettings) {
@@ -314,22 +318,16 @@ public class CorsFilter extends OncePerRequestFilter {
             return false;
         }
 
-        for (Pattern pattern : configuration.getAllowedUriPatterns()) {
-            // Making sure that the pattern matches
-            if (pattern.matcher(uri).find()) {
-                return true;
-            }
+        if (getMatcher(configuration, configuration.getAllowedUris(), configuration.getAllowedUriPatterns(), "allowed.uris").matches(uri)) {
+            return true;
         }
         logger.debug(String.format("The '%s' URI does not allow CORS requests.", uri));
         return false;
     }
 
     protected boolean isAllowedOrigin(final String origin, CorsConfiguration configuration) {
-        for (Pattern pattern : configuration.getAllowedOriginPatterns()) {
-            // Making sure that the pattern matches
-            if (pattern.matcher(origin).find()) {
-                return true;
-            }
+        if (getMatcher(configuration, configuration.getAllowedOrigins(), configuration.getAllowedOriginPatterns(), "allowed.origins").matches(origin)) {
+            return true;
         }
         logger.debug(String.format("The '%s' origin is not allowed to make CORS requests.",origin));
         return false;
@@ -342,7 +340,6 @@ public class CorsFilter extends OncePerRequestFilter {
             if (zoneCorsPolicy != null) {
                 CorsConfiguration zoneXhrCorsConfiguration = zoneCorsPolicy.getXhrConfiguration();
                 if (zoneXhrCorsConfiguration != null) {
-                    compileAllowedOriginsAndUris(zoneXhrCorsConfiguration, "xhr");
                     return zoneXhrCorsConfiguration;
                 }
             }
@@ -359,7 +356,6 @@ public class CorsFilter extends OncePerRequestFilter {
             if (zoneCorsPolicy != null) {
                 CorsConfiguration zoneDefaultCorsConfiguration = zoneCorsPolicy.getDefaultConfiguration();
                 if (zoneDefaultCorsConfiguration != null) {
-                    compileAllowedOriginsAndUris(zoneDefaultCorsConfiguration, "default");
                     return zoneDefaultCorsConfiguration;
                 }
             }
@@ -369,6 +365,28 @@ public class CorsFilter extends OncePerRequestFilter {
         return getDefaultConfiguration();
     }
 
+    /**
+     * Returns the compiled allowed origins or URIs of a configuration. The expressions of the
+     * default zone are compiled into its configuration on initialization, those of other zones
+     * are compiled once per distinct set of expressions and kept here, so that a zone's
+     * expressions are compiled again only after they change.
+     */
+    private CorsMatcher getMatcher(CorsConfiguration configuration, List<String> regexes, List<Pattern> compiled, String property) {
+        boolean systemZone = configuration == xhrConfiguration || configuration == defaultConfiguration;
+        List<String> zoneRegexes = systemZone || regexes == null ? Collections.emptyList() : regexes;
+        List<Object> key = Arrays.asList(zoneRegexes, compiled);
+        CorsMatcher matcher = matchers.get(key);
+        if (matcher == null) {
+            String type = configuration == xhrConfiguration ? "xhr" : configuration == defaultConfiguration ? "default" : "zone";
+            matcher = new CorsMatcher(zoneRegexes, compiled, type + "." + property);
+            if (matchers.size() >= MAX_CACHED_MATCHERS) {
+                matchers.clear();
+            }
+            matchers.put(Arrays.asList(new ArrayList<>(zoneRegexes), new ArrayList<>(compiled)), matcher);
+        }
+        return matcher;
+    }
+
     private void compileAllowedOriginsAndUris(CorsConfiguration configuration, String type) {
         if (configuration.getAllowedUris() != null) {
             for (String allowedUri : configuration.getAllowedUris()) {
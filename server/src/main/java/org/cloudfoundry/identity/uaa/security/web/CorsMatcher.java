@@ -0,0 +1,115 @@
+package org.cloudfoundry.identity.uaa.security.web;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The allowed origins or URIs of a CORS configuration, compiled once. A value is allowed if
+ * any of the regular expressions is found in it.
+ *
+ * Expressions that allow everything, such as the default {@code .*}, and expressions that
+ * only allow one literal value, such as {@code ^https://example\.com$}, are answered without
+ * regular expressions. All other expressions are combined into one alternation, so that a
+ * value is checked with a single match instead of one per expression.
+ */
+final class CorsMatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(CorsMatcher.class);
+    private static final String META_CHARACTERS = "\\^$.|?*+()[]{}";
+    private static final Set<String> MATCH_ALL = Set.of(".*", "^.*", ".*$", "^.*$");
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\([1-9]|k<)");
+
+    private final boolean matchesAll;
+    private final Set<String> exactValues = new HashSet<>();
+    private final List<Pattern> patterns = new ArrayList<>();
+
+    /**
+     * @param regexes the configured expressions, invalid expressions are logged and ignored
+     * @param compiled patterns that were already compiled
+     * @param description what the expressions allow, for logging, such as {@code xhr.allowed.origins}
+     */
+    CorsMatcher(List<String> regexes, List<Pattern> compiled, String description) {
+        List<String> alternatives = new ArrayList<>();
+        boolean all = false;
+        for (String regex : regexes == null ? Collections.<String>emptyList() : regexes) {
+            try {
+                Pattern pattern = Pattern.compile(regex);
+                logger.debug(String.format("'%s' is allowed by cors.%s", regex, description));
+                String exact = exactValue(regex);
+                if (MATCH_ALL.contains(regex)) {
+                    all = true;
+                } else if (exact != null) {
+                    exactValues.add(exact);
+                } else if (BACK_REFERENCE.matcher(regex).find()) {
+                    patterns.add(pattern);
+                } else {
+                    alternatives.add(regex);
+                }
+            } catch (PatternSyntaxException patternSyntaxException) {
+                logger.error("Invalid regular expression pattern in cors." + description + ": " + regex, patternSyntaxException);
+            }
+        }
+        for (Pattern pattern : compiled) {
+            if (pattern.flags() == 0 && !BACK_REFERENCE.matcher(pattern.pattern()).find()) {
+                alternatives.add(pattern.pattern());
+            } else {
+                patterns.add(pattern);
+            }
+        }
+        if (alternatives.size() == 1) {
+            patterns.add(Pattern.compile(alternatives.get(0)));
+        } else if (!alternatives.isEmpty()) {
+            try {
+                patterns.add(Pattern.compile("(?:" + String.join(")|(?:", alternatives) + ")"));
+            } catch (PatternSyntaxException e) {
+                // e.g. the same named group in two expressions
+                alternatives.forEach(regex -> patterns.add(Pattern.compile(regex)));
+            }
+        }
+        this.matchesAll = all;
+    }
+
+    boolean matches(String value) {
+        if (matchesAll || exactValues.contains(value)) {
+            return true;
+        }
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(value).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the only value an anchored expression without any special constructs matches,
+     * or null.
+     */
+    private static String exactValue(String regex) {
+        if (regex.length() < 2 || regex.charAt(0) != '^' || regex.charAt(regex.length() - 1) != '$') {
+            return null;
+        }
+        StringBuilder value = new StringBuilder();
+        for (int i = 1; i < regex.length() - 1; i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= regex.length() - 1 || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    return null;
+                }
+                c = regex.charAt(++i);
+            } else if (META_CHARACTERS.indexOf(c) >= 0) {
+                return null;
+            }
+            value.append(c);
+        }
+        return value.toString();
+    }
+}
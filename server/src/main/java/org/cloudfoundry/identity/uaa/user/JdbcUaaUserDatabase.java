@@ -4,6 +4,7 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.cloudfoundry.identity.uaa.util.beans.DbUtils;
 import org.cloudfoundry.identity.uaa.db.DatabaseUrlModifier;
 import org.cloudfoundry.identity.uaa.db.Vendor;
+import org.cloudfoundry.identity.uaa.resources.jdbc.LimitSqlAdapter;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.cloudfoundry.identity.uaa.util.TimeService;
 import org.cloudfoundry.identity.uaa.zone.beans.IdentityZoneManager;
@@ -15,6 +16,8 @@ import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -24,6 +27,7 @@ import javax.annotation.PostConstruct;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -54,9 +58,11 @@ public class JdbcUaaUserDatabase implements UaaUserDatabase {
 
     private final TimeService timeService;
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
     private final boolean caseInsensitive;
     private final IdentityZoneManager identityZoneManager;
     private final DatabaseUrlModifier databaseUrlModifier;
+    private final String upsertUserInfoSql;
 
     @Value("${database.useSkipLocked:false}")
     private boolean useSkipLocked;
@@ -77,13 +83,16 @@ public class JdbcUaaUserDatabase implements UaaUserDatabase {
             @Qualifier("useCaseInsensitiveQueries") final boolean caseInsensitive,
             final IdentityZoneManager identityZoneManager,
             final DatabaseUrlModifier databaseUrlModifier,
-            final DbUtils dbUtils) throws SQLException {
+            final DbUtils dbUtils,
+            final LimitSqlAdapter limitSqlAdapter) throws SQLException {
         this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
         this.timeService = timeService;
         this.caseInsensitive = caseInsensitive;
         this.identityZoneManager = identityZoneManager;
         this.databaseUrlModifier = databaseUrlModifier;
         this.quotedGroupsIdentifier = dbUtils.getQuotedIdentifier("groups", jdbcTemplate);
+        this.upsertUserInfoSql = limitSqlAdapter.getUpsertQuery("user_info", "user_id", Arrays.asList("user_id", "info"), Collections.singletonList("info"));
     }
 
     @PostConstruct
@@ -186,16 +195,13 @@ public class JdbcUaaUserDatabase implements UaaUserDatabase {
         if (StringUtils.isEmpty(id)) {
             throw new NullPointerException("id is a required field");
         }
-        final String insertUserInfoSQL = "insert into user_info(user_id, info) values (?,?)";
-        final String updateUserInfoSQL = "update user_info set info = ? where user_id = ?";
         if (info == null) {
             info = new UserInfo();
         }
         String json = JsonUtils.writeValueAsString(info);
-        int count = jdbcTemplate.update(updateUserInfoSQL, json, id);
-        if (count == 0) {
-            jdbcTemplate.update(insertUserInfoSQL, id, json);
-        }
+        namedParameterJdbcTemplate.update(upsertUserInfoSql, new MapSqlParameterSource()
+                .addValue("user_id", id)
+                .addValue("info", json));
         return getUserInfo(id);
     }
 
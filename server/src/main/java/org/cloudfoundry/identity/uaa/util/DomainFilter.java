@@ -21,8 +21,6 @@ import org.springframework.util.StringUtils;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static java.util.Collections.EMPTY_LIST;
@@ -107,8 +105,7 @@ public class DomainFilter {
         if (wildcardList==null) {
             return false;
         } else {
-            Set<Pattern> patterns = UaaStringUtils.constructWildcards(wildcardList);
-            return UaaStringUtils.matches(patterns, domain);
+            return ScopeMatcher.of(wildcardList).matches(domain);
         }
     }
 
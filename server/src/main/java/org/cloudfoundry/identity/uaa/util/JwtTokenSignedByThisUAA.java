@@ -19,9 +19,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.function.Function;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import javax.validation.constraints.NotNull;
 
@@ -41,6 +39,7 @@ import org.springframework.security.oauth2.provider.NoSuchClientException;
 import com.google.common.collect.Lists;
 import org.cloudfoundry.identity.uaa.oauth.KeyInfo;
 import org.cloudfoundry.identity.uaa.oauth.KeyInfoService;
+import org.cloudfoundry.identity.uaa.oauth.TokenRequestLookupContext;
 import org.cloudfoundry.identity.uaa.oauth.TokenRevokedException;
 import org.cloudfoundry.identity.uaa.oauth.jwt.Jwt;
 import org.cloudfoundry.identity.uaa.oauth.jwt.JwtHelper;
@@ -223,11 +222,10 @@ public abstract class JwtTokenSignedByThisUAA {
 
     protected JwtTokenSignedByThisUAA checkRequestedScopesAreGranted(Collection<String> grantedScopes) {
         List<String> requestedScopes = requestedScopes();
-        Set<Pattern> grantedScopePatterns = UaaStringUtils.constructWildcards(grantedScopes);
+        ScopeMatcher grantedScopePatterns = ScopeMatcher.ofRequested(grantedScopes);
         List<String> missingScopes =
                 requestedScopes.stream().filter(
-                        requestedScope -> grantedScopePatterns.stream()
-                                .noneMatch(grantedScopePattern -> grantedScopePattern.matcher(requestedScope).matches())
+                        requestedScope -> !grantedScopePatterns.matches(requestedScope)
                 ).collect(toList());
         if (!missingScopes.isEmpty()) {
             String scopeClaimKey = scopeClaimKey().keyName();
@@ -379,13 +377,23 @@ public abstract class JwtTokenSignedByThisUAA {
     }
 
     public JwtTokenSignedByThisUAA checkRevocableTokenStore(RevocableTokenProvisioning revocableTokenProvisioning) {
+        return checkRevocableTokenStore(revocableTokenProvisioning, null);
+    }
+
+    /**
+     * @param resolvedToken the stored row this token was just resolved from, if any, so
+     *                      that it does not have to be read again
+     */
+    public JwtTokenSignedByThisUAA checkRevocableTokenStore(RevocableTokenProvisioning revocableTokenProvisioning, RevocableToken resolvedToken) {
         try {
             String tokenId;
             if (claims.containsKey(ClaimConstants.REVOCABLE) && (boolean) claims.get(ClaimConstants.REVOCABLE)) {
                 if ((tokenId = (String) claims.get(ClaimConstants.JTI)) == null) {
                     throw new InvalidTokenException("The token does not bear a token ID (JTI).", null);
                 }
-                checkRevocableToken(revocableTokenProvisioning, tokenId);
+                if (resolvedToken == null || !tokenId.equals(resolvedToken.getTokenId())) {
+                    checkRevocableToken(revocableTokenProvisioning, tokenId);
+                }
             }
         } catch (ClassCastException ex) {
             throw new InvalidTokenException("The token's revocability or JTI claim is invalid or unparseable.", ex);
@@ -395,9 +403,13 @@ public abstract class JwtTokenSignedByThisUAA {
     }
 
     private static void checkRevocableToken(RevocableTokenProvisioning revocableTokenProvisioning, String tokenId) {
+        String zoneId = IdentityZoneHolder.get().getId();
+        if (revocableTokenProvisioning.isKnownActive(tokenId, zoneId)) {
+            return;
+        }
         RevocableToken revocableToken = null;
         try {
-            revocableToken = revocableTokenProvisioning.retrieve(tokenId, IdentityZoneHolder.get().getId());
+            revocableToken = revocableTokenProvisioning.retrieve(tokenId, zoneId);
         } catch (EmptyResultDataAccessException ignored) {
             // ignore exception until null check below
         }
@@ -469,7 +481,7 @@ public abstract class JwtTokenSignedByThisUAA {
     public ClientDetails getClientDetails(MultitenantClientServices clientDetailsService) {
         String clientId = (String) claims.get(CID);
         try {
-            return clientDetailsService.loadClientByClientId(clientId, IdentityZoneHolder.get().getId());
+            return TokenRequestLookupContext.loadClientByClientId(clientDetailsService, clientId, IdentityZoneHolder.get().getId());
         } catch (NoSuchClientException x) {
             //happens if the client is deleted and token exist
             throw new InvalidTokenException("Invalid client ID " + clientId);
@@ -480,7 +492,7 @@ public abstract class JwtTokenSignedByThisUAA {
         String userId = (String) claims.get(USER_ID);
         if (UaaTokenUtils.isUserToken(claims)) {
             try {
-                return userDatabase.retrieveUserById(userId);
+                return TokenRequestLookupContext.retrieveUserById(userDatabase, userId);
             } catch (UsernameNotFoundException e) {
                 throw new InvalidTokenException("Token bears a non-existent user ID: " + userId);
             }
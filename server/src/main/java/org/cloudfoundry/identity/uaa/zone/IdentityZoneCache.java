@@ -0,0 +1,312 @@
+package org.cloudfoundry.identity.uaa.zone;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.cloudfoundry.identity.uaa.saml.SamlKey;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache of active identity zones by id and by subdomain, so that resolving the zone of
+ * a request does not have to read and deserialize the zone's configuration every time.
+ *
+ * An entry is served as is for {@code maxStaleness} milliseconds. After that its
+ * {@code version} and {@code lastmodified} columns are read again, which is far cheaper
+ * than reloading the zone, and the zone is only reloaded if either changed, so changes
+ * made on other nodes are picked up within {@code maxStaleness}. Changes made through
+ * {@link JdbcIdentityZoneProvisioning} evict the zone immediately. The cache is disabled
+ * unless explicitly enabled.
+ *
+ * Every lookup returns its own copy of the cached zone, so callers may modify what they get.
+ * Copying field by field is much cheaper than deserializing the configuration again.
+ */
+@ManagedResource(
+        objectName = "cloudfoundry.identity:name=IdentityZoneCache",
+        description = "Identity Zone Cache Metrics"
+)
+public class IdentityZoneCache {
+
+    private static final String VERSION_FIELDS = "select id,version,lastmodified from identity_zone ";
+    private static final String VERSION_BY_ID_QUERY = VERSION_FIELDS + "where id=? and active=?";
+    private static final String VERSION_BY_SUBDOMAIN_QUERY = VERSION_FIELDS + "where subdomain=? and active=?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TimeService timeService;
+    private final boolean enabled;
+    private final long maxStaleness;
+    private final Cache<String, Entry> zones;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public IdentityZoneCache(JdbcTemplate jdbcTemplate,
+                             TimeService timeService,
+                             boolean enabled,
+                             long maxStaleness,
+                             int maxEntries) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.timeService = timeService;
+        this.enabled = enabled && maxEntries > 0;
+        this.maxStaleness = Math.max(0, maxStaleness);
+        this.zones = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(maxEntries, 0))
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    IdentityZone retrieve(String id, Supplier<IdentityZone> loader) {
+        return get("id:" + id, VERSION_BY_ID_QUERY, id, loader);
+    }
+
+    IdentityZone retrieveBySubdomain(String subdomain, Supplier<IdentityZone> loader) {
+        return get("subdomain:" + subdomain, VERSION_BY_SUBDOMAIN_QUERY, subdomain, loader);
+    }
+
+    /**
+     * Evicts every entry of the zone, whichever subdomain it was cached under.
+     */
+    void evict(String zoneId) {
+        if (enabled) {
+            zones.asMap().values().removeIf(e -> Objects.equals(zoneId, e.zone.getId()));
+        }
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Zones Served From Cache")
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Zones Revalidated By Version")
+    public long getRevalidationCount() {
+        return revalidations.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Zones Loaded From Database")
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Cached Zones")
+    public long getSize() {
+        return zones.size();
+    }
+
+    private IdentityZone get(String key, String versionQuery, String arg, Supplier<IdentityZone> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        long now = timeService.getCurrentTimeMillis();
+        Entry entry = zones.getIfPresent(key);
+        if (entry != null) {
+            if (now - entry.validatedAt <= maxStaleness) {
+                hits.incrementAndGet();
+                return copy(entry.zone);
+            }
+            revalidations.incrementAndGet();
+            List<Entry> current = jdbcTemplate.query(versionQuery, (rs, rowNum) -> new Entry(rs.getString(1).trim(), rs.getInt(2), rs.getTimestamp(3)), arg, true);
+            if (current.size() == 1 && entry.isVersionOf(current.get(0))) {
+                entry.validatedAt = now;
+                return copy(entry.zone);
+            }
+            zones.invalidate(key);
+        }
+        misses.incrementAndGet();
+        IdentityZone zone = loader.get();
+        zones.put(key, new Entry(copy(zone), now));
+        return zone;
+    }
+
+    static IdentityZone copy(IdentityZone zone) {
+        IdentityZone copy = new IdentityZone();
+        copy.setId(zone.getId());
+        copy.setSubdomain(zone.getSubdomain());
+        copy.setName(zone.getName());
+        copy.setVersion(zone.getVersion());
+        copy.setDescription(zone.getDescription());
+        copy.setCreated(copy(zone.getCreated()));
+        copy.setLastModified(copy(zone.getLastModified()));
+        copy.setActive(zone.isActive());
+        copy.setConfig(zone.getConfig() == null ? null : copy(zone.getConfig()));
+        return copy;
+    }
+
+    private static IdentityZoneConfiguration copy(IdentityZoneConfiguration config) {
+        IdentityZoneConfiguration copy = new IdentityZoneConfiguration();
+        copy.setClientSecretPolicy(config.getClientSecretPolicy() == null ? null : copy(config.getClientSecretPolicy()));
+        copy.setTokenPolicy(config.getTokenPolicy() == null ? null : copy(config.getTokenPolicy()));
+        copy.setSamlConfig(config.getSamlConfig() == null ? null : copy(config.getSamlConfig()));
+        copy.setCorsPolicy(config.getCorsPolicy() == null ? null : new CorsPolicy()
+                .setXhrConfiguration(copy(config.getCorsPolicy().getXhrConfiguration()))
+                .setDefaultConfiguration(copy(config.getCorsPolicy().getDefaultConfiguration())));
+        copy.setLinks(config.getLinks() == null ? null : copy(config.getLinks()));
+        // prompts are immutable
+        copy.setPrompts(copy(config.getPrompts()));
+        copy.setIdpDiscoveryEnabled(config.isIdpDiscoveryEnabled());
+        copy.setBranding(config.getBranding() == null ? null : copy(config.getBranding()));
+        copy.setAccountChooserEnabled(config.isAccountChooserEnabled());
+        copy.setUserConfig(config.getUserConfig() == null ? null : copy(config.getUserConfig()));
+        if (config.getIssuer() != null) {
+            copy.setIssuer(config.getIssuer());
+        }
+        copy.setDefaultIdentityProvider(config.getDefaultIdentityProvider());
+        return copy;
+    }
+
+    private static ClientSecretPolicy copy(ClientSecretPolicy policy) {
+        return new ClientSecretPolicy(policy.getMinLength(), policy.getMaxLength(),
+                policy.getRequireUpperCaseCharacter(), policy.getRequireLowerCaseCharacter(),
+                policy.getRequireDigit(), policy.getRequireSpecialCharacter(), policy.getExpireSecretInMonths());
+    }
+
+    private static TokenPolicy copy(TokenPolicy policy) {
+        TokenPolicy copy = new TokenPolicy(policy.getAccessTokenValidity(), policy.getRefreshTokenValidity());
+        copy.setJwtRevocable(policy.isJwtRevocable());
+        copy.setRefreshTokenUnique(policy.isRefreshTokenUnique());
+        copy.setRefreshTokenRotate(policy.isRefreshTokenRotate());
+        copy.setRefreshTokenFormat(policy.getRefreshTokenFormat());
+        if (!policy.getKeys().isEmpty()) {
+            Map<String, TokenPolicy.KeyInformation> keys = new HashMap<>();
+            policy.getKeys().forEach((keyId, key) -> {
+                TokenPolicy.KeyInformation keyCopy = new TokenPolicy.KeyInformation();
+                keyCopy.setSigningKey(key.getSigningKey());
+                keyCopy.setSigningCert(key.getSigningCert());
+                keyCopy.setSigningAlg(key.getSigningAlg());
+                keys.put(keyId, keyCopy);
+            });
+            copy.setKeyInformation(keys);
+        }
+        copy.setActiveKeyId(policy.getActiveKeyId());
+        return copy;
+    }
+
+    private static SamlConfig copy(SamlConfig config) {
+        SamlConfig copy = new SamlConfig();
+        copy.setAssertionSigned(config.isAssertionSigned());
+        copy.setRequestSigned(config.isRequestSigned());
+        copy.setWantAssertionSigned(config.isWantAssertionSigned());
+        copy.setWantAuthnRequestSigned(config.isWantAuthnRequestSigned());
+        copy.setAssertionTimeToLiveSeconds(config.getAssertionTimeToLiveSeconds());
+        copy.setEntityID(config.getEntityID());
+        copy.setDisableInResponseToCheck(config.isDisableInResponseToCheck());
+        Map<String, SamlKey> keys = new HashMap<>();
+        config.getKeys().forEach((keyId, key) -> keys.put(keyId, new SamlKey(key.getKey(), key.getPassphrase(), key.getCertificate())));
+        copy.setKeys(keys);
+        copy.setActiveKeyId(config.getActiveKeyId());
+        return copy;
+    }
+
+    private static CorsConfiguration copy(CorsConfiguration configuration) {
+        if (configuration == null) {
+            return null;
+        }
+        CorsConfiguration copy = new CorsConfiguration();
+        copy.setAllowedOrigins(copy(configuration.getAllowedOrigins()));
+        copy.getAllowedOriginPatterns().addAll(configuration.getAllowedOriginPatterns());
+        copy.setAllowedUris(copy(configuration.getAllowedUris()));
+        copy.getAllowedUriPatterns().addAll(configuration.getAllowedUriPatterns());
+        copy.setAllowedHeaders(copy(configuration.getAllowedHeaders()));
+        copy.setAllowedMethods(copy(configuration.getAllowedMethods()));
+        copy.setAllowedCredentials(configuration.isAllowedCredentials());
+        copy.setMaxAge(configuration.getMaxAge());
+        return copy;
+    }
+
+    private static Links copy(Links links) {
+        Links copy = new Links().setHomeRedirect(links.getHomeRedirect());
+        Links.Logout logout = links.getLogout();
+        copy.setLogout(logout == null ? null : new Links.Logout()
+                .setRedirectUrl(logout.getRedirectUrl())
+                .setRedirectParameterName(logout.getRedirectParameterName())
+                .setDisableRedirectParameter(logout.isDisableRedirectParameter())
+                .setWhitelist(copy(logout.getWhitelist())));
+        Links.SelfService selfService = links.getSelfService();
+        copy.setSelfService(selfService == null ? null : new Links.SelfService()
+                .setSelfServiceLinksEnabled(selfService.isSelfServiceLinksEnabled())
+                .setSignup(selfService.getSignup())
+                .setPasswd(selfService.getPasswd()));
+        return copy;
+    }
+
+    private static BrandingInformation copy(BrandingInformation branding) {
+        BrandingInformation copy = new BrandingInformation();
+        copy.setCompanyName(branding.getCompanyName());
+        copy.setProductLogo(branding.getProductLogo());
+        copy.setSquareLogo(branding.getSquareLogo());
+        copy.setFooterLegalText(branding.getFooterLegalText());
+        copy.setFooterLinks(branding.getFooterLinks() == null ? null : new LinkedHashMap<>(branding.getFooterLinks()));
+        BrandingInformation.Banner banner = branding.getBanner();
+        if (banner != null) {
+            BrandingInformation.Banner bannerCopy = new BrandingInformation.Banner();
+            bannerCopy.setLogo(banner.getLogo());
+            bannerCopy.setText(banner.getText());
+            bannerCopy.setTextColor(banner.getTextColor());
+            bannerCopy.setBackgroundColor(banner.getBackgroundColor());
+            bannerCopy.setLink(banner.getLink());
+            copy.setBanner(bannerCopy);
+        }
+        Consent consent = branding.getConsent();
+        copy.setConsent(consent == null ? null : new Consent(consent.getText(), consent.getLink()));
+        return copy;
+    }
+
+    private static UserConfig copy(UserConfig config) {
+        UserConfig copy = new UserConfig();
+        copy.setDefaultGroups(copy(config.getDefaultGroups()));
+        copy.setAllowedGroups(copy(config.getAllowedGroups()));
+        copy.setMaxUsers(config.getMaxUsers());
+        copy.setCheckOriginEnabled(config.isCheckOriginEnabled());
+        return copy;
+    }
+
+    private static <T> List<T> copy(List<T> list) {
+        return list == null ? null : new ArrayList<>(list);
+    }
+
+    private static Date copy(Date date) {
+        return date == null ? null : (Date) date.clone();
+    }
+
+    private static final class Entry {
+        private final IdentityZone zone;
+        private final String id;
+        private final int version;
+        private final long lastModified;
+        private volatile long validatedAt;
+
+        private Entry(IdentityZone zone, long validatedAt) {
+            this.zone = zone;
+            this.id = zone.getId();
+            this.version = zone.getVersion();
+            this.lastModified = zone.getLastModified() == null ? 0 : zone.getLastModified().getTime();
+            this.validatedAt = validatedAt;
+        }
+
+        private Entry(String id, int version, Timestamp lastModified) {
+            this.zone = null;
+            this.id = id;
+            this.version = version;
+            this.lastModified = lastModified == null ? 0 : lastModified.getTime();
+        }
+
+        private boolean isVersionOf(Entry current) {
+            return id.equals(current.id) && version == current.version && lastModified == current.lastModified;
+        }
+    }
+}
@@ -86,9 +86,10 @@ public class IdentityZoneResolvingFilter extends OncePerRequestFilter implements
         if (defaultZoneHostnames.contains(lowerHostName)) {
             return "";
         }
-        for (String internalHostname : defaultZoneHostnames) {
-            if (lowerHostName.endsWith("." + internalHostname)) {
-                return lowerHostName.substring(0, lowerHostName.length() - internalHostname.length() - 1);
+        // look up each dot separated suffix, longest first, instead of scanning all hostnames
+        for (int dot = lowerHostName.indexOf('.'); dot >= 0; dot = lowerHostName.indexOf('.', dot + 1)) {
+            if (defaultZoneHostnames.contains(lowerHostName.substring(dot + 1))) {
+                return lowerHostName.substring(0, dot);
             }
         }
         //UAA is catch all if we haven't configured anything
@@ -4,6 +4,7 @@ import org.cloudfoundry.identity.uaa.audit.event.SystemDeletable;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -44,8 +45,16 @@ public class JdbcIdentityZoneProvisioning implements IdentityZoneProvisioning, S
 
     private final RowMapper<IdentityZone> mapper = new IdentityZoneRowMapper();
 
+    private IdentityZoneCache cache;
+
     public JdbcIdentityZoneProvisioning(final JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        this.cache = new IdentityZoneCache(jdbcTemplate, null, false, 0, 0);
+    }
+
+    @Autowired(required = false)
+    public void setCache(IdentityZoneCache cache) {
+        this.cache = cache;
     }
 
     @Override
@@ -53,11 +62,13 @@ public class JdbcIdentityZoneProvisioning implements IdentityZoneProvisioning, S
         if (id == null) {
             throw new ZoneDoesNotExistsException("Zone id cannot be null");
         }
-        try {
-            return jdbcTemplate.queryForObject(IDENTITY_ZONE_BY_ID_QUERY_ACTIVE, mapper, id, true);
-        } catch (EmptyResultDataAccessException x) {
-            throw new ZoneDoesNotExistsException("Zone[" + id + "] not found.", x);
-        }
+        return cache.retrieve(id, () -> {
+            try {
+                return jdbcTemplate.queryForObject(IDENTITY_ZONE_BY_ID_QUERY_ACTIVE, mapper, id, true);
+            } catch (EmptyResultDataAccessException x) {
+                throw new ZoneDoesNotExistsException("Zone[" + id + "] not found.", x);
+            }
+        });
     }
 
     @Override
@@ -82,7 +93,9 @@ public class JdbcIdentityZoneProvisioning implements IdentityZoneProvisioning, S
         if (subdomain == null) {
             throw new EmptyResultDataAccessException("Subdomain cannot be null", 1);
         }
-        return jdbcTemplate.queryForObject(IDENTITY_ZONE_BY_SUBDOMAIN_QUERY, mapper, subdomain.toLowerCase(), true);
+        String lowerCaseSubdomain = subdomain.toLowerCase();
+        return cache.retrieveBySubdomain(lowerCaseSubdomain,
+                () -> jdbcTemplate.queryForObject(IDENTITY_ZONE_BY_SUBDOMAIN_QUERY, mapper, lowerCaseSubdomain, true));
     }
 
     @Override
@@ -103,6 +116,7 @@ public class JdbcIdentityZoneProvisioning implements IdentityZoneProvisioning, S
         } catch (DuplicateKeyException e) {
             throw new ZoneAlreadyExistsException(e.getMostSpecificCause().getMessage(), e);
         }
+        cache.evict(identityZone.getId().trim());
 
         return retrieveIgnoreActiveFlag(identityZone.getId());
     }
@@ -125,12 +139,15 @@ public class JdbcIdentityZoneProvisioning implements IdentityZoneProvisioning, S
             //duplicate subdomain
             throw new ZoneAlreadyExistsException(e.getMostSpecificCause().getMessage(), e);
         }
+        cache.evict(identityZone.getId().trim());
         return retrieveIgnoreActiveFlag(identityZone.getId());
     }
 
     @Override
     public int deleteByIdentityZone(String zoneId) {
-        return jdbcTemplate.update(DELETE_IDENTITY_ZONE_SQL, zoneId);
+        int deleted = jdbcTemplate.update(DELETE_IDENTITY_ZONE_SQL, zoneId);
+        cache.evict(zoneId);
+        return deleted;
     }
 
     @Override
@@ -2,6 +2,7 @@ package org.cloudfoundry.identity.uaa.zone;
 
 import org.cloudfoundry.identity.uaa.audit.event.SystemDeletable;
 import org.cloudfoundry.identity.uaa.authentication.UaaPrincipal;
+import org.cloudfoundry.identity.uaa.client.ClientDetailsCache;
 import org.cloudfoundry.identity.uaa.client.InvalidClientDetailsException;
 import org.cloudfoundry.identity.uaa.client.UaaClientDetails;
 import org.cloudfoundry.identity.uaa.client.ClientJwtConfiguration;
@@ -13,6 +14,7 @@ import org.cloudfoundry.identity.uaa.util.UaaUrlUtils;
 import org.cloudfoundry.identity.uaa.zone.beans.IdentityZoneManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.EmptyResultDataAccessException;
@@ -93,10 +95,10 @@ public class MultitenantJdbcClientDetailsService extends MultitenantClientServic
                     + "=? where client_id = ? and identity_zone_id = ?";
 
     private static final String DEFAULT_UPDATE_SECRET_STATEMENT =
-            BASE_UPDATE_STATEMENT + "client_secret = ? where client_id = ? and identity_zone_id = ?";
+            BASE_UPDATE_STATEMENT + "client_secret = ?, lastmodified = ? where client_id = ? and identity_zone_id = ?";
 
     private static final String DEFAULT_UPDATE_CLIENT_JWT_CONFIG_STATEMENT =
-            BASE_UPDATE_STATEMENT + "client_jwt_config = ? where client_id = ? and identity_zone_id = ?";
+            BASE_UPDATE_STATEMENT + "client_jwt_config = ?, lastmodified = ? where client_id = ? and identity_zone_id = ?";
 
     static final String DEFAULT_DELETE_STATEMENT =
             "delete from oauth_client_details where client_id = ? and identity_zone_id = ?";
@@ -115,6 +117,8 @@ public class MultitenantJdbcClientDetailsService extends MultitenantClientServic
 
     private JdbcListFactory listFactory;
 
+    private ClientDetailsCache cache;
+
     public MultitenantJdbcClientDetailsService(
             final JdbcTemplate jdbcTemplate,
             final IdentityZoneManager identityZoneManager,
@@ -124,18 +128,23 @@ public class MultitenantJdbcClientDetailsService extends MultitenantClientServic
         this.jdbcTemplate = jdbcTemplate;
         this.listFactory = new DefaultJdbcListFactory(new NamedParameterJdbcTemplate(jdbcTemplate));
         this.passwordEncoder = passwordEncoder;
+        this.cache = new ClientDetailsCache(jdbcTemplate, null, false, 0, 0);
+    }
+
+    @Autowired(required = false)
+    public void setCache(ClientDetailsCache cache) {
+        this.cache = cache;
     }
 
     @Override
     public ClientDetails loadClientByClientId(String clientId, String zoneId) throws InvalidClientException {
-        ClientDetails details;
-        try {
-            details = jdbcTemplate.queryForObject(selectClientDetailsSql, new ClientDetailsRowMapper(), clientId, zoneId);
-        } catch (EmptyResultDataAccessException | DataIntegrityViolationException e) {
-            throw new NoSuchClientException("No client with requested id: " + clientId);
-        }
-
-        return details;
+        return cache.get(clientId, zoneId, () -> {
+            try {
+                return jdbcTemplate.queryForObject(selectClientDetailsSql, new ClientDetailsRowMapper(), clientId, zoneId);
+            } catch (EmptyResultDataAccessException | DataIntegrityViolationException e) {
+                throw new NoSuchClientException("No client with requested id: " + clientId);
+            }
+        });
     }
 
     @Override
@@ -144,6 +153,7 @@ public class MultitenantJdbcClientDetailsService extends MultitenantClientServic
             throw new ClientAlreadyExistsException("Client already exists: " + clientDetails.getClientId());
         }
         jdbcTemplate.update(DEFAULT_INSERT_STATEMENT, getInsertClientDetailsFields(clientDetails, zoneId));
+        cache.evict(clientDetails.getClientId(), zoneId);
     }
 
     private boolean exists(String clientId, String zoneId) {
@@ -154,6 +164,7 @@ public class MultitenantJdbcClientDetailsService extends MultitenantClientServic
     @Override
     public void updateClientDetails(ClientDetails clientDetails, String zoneId) throws NoSuchClientException {
         int count = jdbcTemplate.update(DEFAULT_UPDATE_STATEMENT, getFieldsForUpdate(clientDetails, zoneId));
+        cache.evict(clientDetails.getClientId(), zoneId);
         if (count != 1) {
             throw new NoSuchClientException(NO_CLIENT_FOUND_WITH_ID + clientDetails.getClientId() + " in identity zone id=" + zoneId);
         }
@@ -161,7 +172,8 @@ public class MultitenantJdbcClientDetailsService extends MultitenantClientServic
 
     @Override
     public void updateClientSecret(String clientId, String secret, String zoneId) throws NoSuchClientException {
-        int count = jdbcTemplate.update(DEFAULT_UPDATE_SECRET_STATEMENT, secret != null ? passwordEncoder.encode(secret) : null, clientId, zoneId);
+        int count = jdbcTemplate.update(DEFAULT_UPDATE_SECRET_STATEMENT, secret != null ? passwordEncoder.encode(secret) : null, new Timestamp(System.currentTimeMillis()), clientId, zoneId);
+        cache.evict(clientId, zoneId);
         if (count != 1) {
             throw new NoSuchClientException(NO_CLIENT_FOUND_WITH_ID + clientId);
         }
@@ -169,7 +181,8 @@ public class MultitenantJdbcClientDetailsService extends MultitenantClientServic
 
     @Override
     public void updateClientJwtConfig(String clientId, String keyConfig, String zoneId) throws NoSuchClientException {
-        int count = jdbcTemplate.update(DEFAULT_UPDATE_CLIENT_JWT_CONFIG_STATEMENT, keyConfig, clientId, zoneId);
+        int count = jdbcTemplate.update(DEFAULT_UPDATE_CLIENT_JWT_CONFIG_STATEMENT, keyConfig, new Timestamp(System.currentTimeMillis()), clientId, zoneId);
+        cache.evict(clientId, zoneId);
         if (count != 1) {
             throw new NoSuchClientException(NO_CLIENT_FOUND_WITH_ID + clientId);
         }
@@ -251,12 +264,15 @@ public class MultitenantJdbcClientDetailsService extends MultitenantClientServic
 
     @Override
     public int deleteByIdentityZone(String zoneId) {
-        return jdbcTemplate.update(DELETE_CLIENTS_BY_ZONE, zoneId);
+        int deleted = jdbcTemplate.update(DELETE_CLIENTS_BY_ZONE, zoneId);
+        cache.evictZone(zoneId);
+        return deleted;
     }
 
     @Override
     public int deleteByClient(String clientId, String zoneId) {
         int count = jdbcTemplate.update(DEFAULT_DELETE_STATEMENT, clientId, zoneId);
+        cache.evict(clientId, zoneId);
         if (count == 0) {
             throw new NoSuchClientException(NO_CLIENT_FOUND_WITH_ID + clientId);
         }
@@ -275,7 +291,8 @@ public class MultitenantJdbcClientDetailsService extends MultitenantClientServic
         StringBuilder newSecretBuilder = new StringBuilder()
                 .append(clientDetails.getClientSecret() == null ? "" : clientDetails.getClientSecret() + " ")
                 .append(encodedNewSecret);
-        int count = jdbcTemplate.update(DEFAULT_UPDATE_SECRET_STATEMENT, newSecretBuilder.toString(), clientId, zoneId);
+        int count = jdbcTemplate.update(DEFAULT_UPDATE_SECRET_STATEMENT, newSecretBuilder.toString(), new Timestamp(System.currentTimeMillis()), clientId, zoneId);
+        cache.evict(clientId, zoneId);
         if (count != 1) {
             throw new NoSuchClientException(NO_CLIENT_FOUND_WITH_ID + clientId);
         }
@@ -285,7 +302,8 @@ public class MultitenantJdbcClientDetailsService extends MultitenantClientServic
     public void deleteClientSecret(String clientId, String zoneId) throws NoSuchClientException {
         ClientDetails clientDetails = loadClientByClientId(clientId, zoneId);
         String clientSecret = clientDetails.getClientSecret().split(" ")[1];
-        int count = jdbcTemplate.update(DEFAULT_UPDATE_SECRET_STATEMENT, clientSecret, clientId, zoneId);
+        int count = jdbcTemplate.update(DEFAULT_UPDATE_SECRET_STATEMENT, clientSecret, new Timestamp(System.currentTimeMillis()), clientId, zoneId);
+        cache.evict(clientId, zoneId);
         if (count != 1) {
             throw new NoSuchClientException("Unable to update client with " + clientId);
         }
@@ -0,0 +1,11 @@
+-- revocations of revocable tokens, polled by each node to keep its revocation index in sync
+CREATE TABLE revocable_token_revocations (
+  id BIGSERIAL PRIMARY KEY,
+  token_id VARCHAR(36),
+  user_id VARCHAR(36),
+  client_id VARCHAR(255),
+  identity_zone_id VARCHAR(36) NOT NULL,
+  revoked_at BIGINT NOT NULL
+);
+
+CREATE INDEX revocable_token_revocations_revoked_at ON revocable_token_revocations(revoked_at);
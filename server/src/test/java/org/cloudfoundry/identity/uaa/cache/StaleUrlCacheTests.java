@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.same;
@@ -17,20 +18,31 @@ import static org.mockito.Mockito.when;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.type.TypeReference;
 
 import com.google.common.testing.FakeTicker;
 
 import org.cloudfoundry.identity.uaa.impl.config.RestTemplateConfig;
 import org.cloudfoundry.identity.uaa.provider.SlowHttpServer;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.cloudfoundry.identity.uaa.util.TimeService;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -41,6 +53,7 @@ import org.springframework.web.client.RestTemplate;
 class StaleUrlCacheTests {
 
   private static final Duration CACHE_EXPIRATION = Duration.ofMinutes(10);
+  private static final Duration MAX_STALENESS = Duration.ofHours(1);
   private static final String uri = "http://localhost:8080/uaa/.well-known/openid-configuration";
   private static final byte[] content;
 
@@ -62,13 +75,14 @@ class StaleUrlCacheTests {
     cache = new StaleUrlCache(CACHE_EXPIRATION, mockTimeService, 2, ticker);
     mockRestTemplate = mock(RestTemplate.class);
     reset(mockRestTemplate);
-    when(mockRestTemplate.getForObject(any(URI.class), any())).thenReturn(content, new byte[1024]);
+    when(mockRestTemplate.exchange(any(URI.class), any(HttpMethod.class), any(HttpEntity.class), same(byte[].class)))
+        .thenReturn(ResponseEntity.ok(content), ResponseEntity.ok(new byte[1024]));
   }
 
   @Test
   void correct_method_invoked_on_rest_template() throws URISyntaxException {
     cache.getUrlContent(uri, mockRestTemplate);
-    verify(mockRestTemplate, times(1)).getForObject(eq(new URI(uri)), same(byte[].class));
+    verifyFetches(1, uri);
   }
 
   @Test
@@ -78,7 +92,8 @@ class StaleUrlCacheTests {
 
   @Test
   void rest_client_exception_is_propagated() {
-    when(mockRestTemplate.getForObject(any(URI.class), any())).thenThrow(new RestClientException("mock"));
+    when(mockRestTemplate.exchange(any(URI.class), any(HttpMethod.class), any(HttpEntity.class), same(byte[].class)))
+        .thenThrow(new RestClientException("mock"));
     assertThrows(RestClientException.class, () -> cache.getUrlContent(uri, mockRestTemplate));
   }
 
@@ -86,7 +101,7 @@ class StaleUrlCacheTests {
   void calling_twice_uses_cache() throws Exception {
     byte[] c1 = cache.getUrlContent(uri, mockRestTemplate);
     byte[] c2 = cache.getUrlContent(uri, mockRestTemplate);
-    verify(mockRestTemplate, times(1)).getForObject(eq(new URI(uri)), same(byte[].class));
+    verifyFetches(1, uri);
     assertSame(c1, c2);
     assertEquals(1, cache.size());
   }
@@ -98,7 +113,7 @@ class StaleUrlCacheTests {
     ticker.advance(Duration.ofMillis(CACHE_EXPIRATION.toMillis() + 1));
     System.err.println("eeot: " + ticker.read());
     byte[] c2 = cache.getUrlContent(uri, mockRestTemplate);
-    verify(mockRestTemplate, times(2)).getForObject(eq(new URI(uri)), same(byte[].class));
+    verifyFetches(2, uri);
     assertNotSame(c1, c2);
   }
 
@@ -116,14 +131,17 @@ class StaleUrlCacheTests {
     byte[] c2 = new byte[1024];
     byte[] c3 = new byte[1024];
     mockRestTemplate = mock(RestTemplate.class);
-    when(mockRestTemplate.getForObject(eq(new URI(uri1)), any())).thenReturn(c1);
-    when(mockRestTemplate.getForObject(eq(new URI(uri2)), any())).thenReturn(c2);
-    when(mockRestTemplate.getForObject(eq(new URI(uri3)), any())).thenReturn(c3);
+    when(mockRestTemplate.exchange(eq(new URI(uri1)), any(HttpMethod.class), any(HttpEntity.class), same(byte[].class)))
+        .thenReturn(ResponseEntity.ok(c1));
+    when(mockRestTemplate.exchange(eq(new URI(uri2)), any(HttpMethod.class), any(HttpEntity.class), same(byte[].class)))
+        .thenReturn(ResponseEntity.ok(c2));
+    when(mockRestTemplate.exchange(eq(new URI(uri3)), any(HttpMethod.class), any(HttpEntity.class), same(byte[].class)))
+        .thenReturn(ResponseEntity.ok(c3));
     for (String uri : Arrays.asList(uri1, uri1, uri2, uri2, uri3, uri3)) {
       cache.getUrlContent(uri, mockRestTemplate);
     }
     for (String uri : Arrays.asList(uri1, uri2, uri3)) {
-      verify(mockRestTemplate, times(1)).getForObject(eq(new URI(uri)), same(byte[].class));
+      verifyFetches(1, uri);
     }
     assertEquals(2, cache.size());
   }
@@ -134,9 +152,10 @@ class StaleUrlCacheTests {
     byte[] c1 = cache.getUrlContent(uri, mockRestTemplate);
     ticker.advance(Duration.ofMillis(CACHE_EXPIRATION.toMillis() + 1));
     System.err.println("serof: " + ticker.read());
-    when(mockRestTemplate.getForObject(any(URI.class), any())).thenThrow(new RestClientException("mock"));
+    when(mockRestTemplate.exchange(any(URI.class), any(HttpMethod.class), any(HttpEntity.class), same(byte[].class)))
+        .thenThrow(new RestClientException("mock"));
     byte[] c2 = cache.getUrlContent(uri, mockRestTemplate);
-    verify(mockRestTemplate, times(2)).getForObject(eq(new URI(uri)), same(byte[].class));
+    verifyFetches(2, uri);
     assertSame(c1, c2);
   }
 
@@ -168,6 +187,88 @@ class StaleUrlCacheTests {
     assertEquals(0, urlCache.size());
   }
 
+  @Test
+  void stale_content_is_served_while_a_single_reload_runs_in_the_background() throws Exception {
+    List<Runnable> reloads = new ArrayList<>();
+    cache = new StaleUrlCache(CACHE_EXPIRATION, MAX_STALENESS, mockTimeService, 2, ticker, reloads::add);
+    byte[] c1 = cache.getUrlContent(uri, mockRestTemplate);
+    ticker.advance(Duration.ofMillis(CACHE_EXPIRATION.toMillis() + 1));
+
+    assertSame(c1, cache.getUrlContent(uri, mockRestTemplate));
+    assertSame(c1, cache.getUrlContent(uri, mockRestTemplate));
+    assertEquals(1, reloads.size());
+    verifyFetches(1, uri);
+
+    reloads.get(0).run();
+    assertNotSame(c1, cache.getUrlContent(uri, mockRestTemplate));
+    verifyFetches(2, uri);
+  }
+
+  @Test
+  void stale_content_is_not_served_after_max_staleness() {
+    cache = new StaleUrlCache(CACHE_EXPIRATION, MAX_STALENESS, mockTimeService, 2, ticker, Runnable::run);
+    cache.getUrlContent(uri, mockRestTemplate);
+    when(mockRestTemplate.exchange(any(URI.class), any(HttpMethod.class), any(HttpEntity.class), same(byte[].class)))
+        .thenThrow(new RestClientException("mock"));
+
+    ticker.advance(Duration.ofMillis(CACHE_EXPIRATION.toMillis() + 1));
+    cache.getUrlContent(uri, mockRestTemplate);
+
+    ticker.advance(MAX_STALENESS);
+    assertThrows(RestClientException.class, () -> cache.getUrlContent(uri, mockRestTemplate));
+  }
+
+  @Test
+  void reload_is_conditional_and_keeps_unmodified_content() throws Exception {
+    when(mockRestTemplate.exchange(any(URI.class), any(HttpMethod.class), any(HttpEntity.class), same(byte[].class)))
+        .thenReturn(ResponseEntity.ok().eTag("\"v1\"").header(HttpHeaders.LAST_MODIFIED, "Wed, 21 Oct 2015 07:28:00 GMT").body(content),
+            ResponseEntity.status(HttpStatus.NOT_MODIFIED).<byte[]>build());
+    byte[] c1 = cache.getUrlContent(uri, mockRestTemplate);
+    ticker.advance(Duration.ofMillis(CACHE_EXPIRATION.toMillis() + 1));
+
+    assertSame(c1, cache.getUrlContent(uri, mockRestTemplate));
+
+    ArgumentCaptor<HttpEntity> request = ArgumentCaptor.forClass(HttpEntity.class);
+    verify(mockRestTemplate, times(2)).exchange(eq(new URI(uri)), eq(HttpMethod.GET), request.capture(), same(byte[].class));
+    assertEquals(Collections.singletonList("\"v1\""), request.getValue().getHeaders().getIfNoneMatch());
+    assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", request.getValue().getHeaders().getFirst(HttpHeaders.IF_MODIFIED_SINCE));
+    assertTrue(cache.getFetchSummary().get(uri).contains("\"notModified\":1"));
+  }
+
+  @Test
+  void cache_control_max_age_extends_freshness() throws Exception {
+    when(mockRestTemplate.exchange(any(URI.class), any(HttpMethod.class), any(HttpEntity.class), same(byte[].class)))
+        .thenReturn(ResponseEntity.ok().cacheControl(CacheControl.maxAge(1, TimeUnit.HOURS)).body(content));
+    cache.getUrlContent(uri, mockRestTemplate);
+
+    ticker.advance(Duration.ofMillis(CACHE_EXPIRATION.toMillis() + 1));
+    cache.getUrlContent(uri, mockRestTemplate);
+    verifyFetches(1, uri);
+
+    ticker.advance(Duration.ofHours(1));
+    cache.getUrlContent(uri, mockRestTemplate);
+    verifyFetches(2, uri);
+  }
+
+  @Test
+  void fetches_and_failures_are_counted_per_uri() {
+    cache.getUrlContent(uri, mockRestTemplate);
+    when(mockRestTemplate.exchange(any(URI.class), any(HttpMethod.class), any(HttpEntity.class), same(byte[].class)))
+        .thenThrow(new RestClientException("mock"));
+    ticker.advance(Duration.ofMillis(CACHE_EXPIRATION.toMillis() + 1));
+    cache.getUrlContent(uri, mockRestTemplate);
+
+    Map<String, Object> summary = JsonUtils.readValue(cache.getFetchSummary().get(uri), new TypeReference<Map<String, Object>>() {
+    });
+    assertEquals(2, summary.get("fetches"));
+    assertEquals(1, summary.get("failures"));
+  }
+
+  private void verifyFetches(int count, String uri) throws URISyntaxException {
+    verify(mockRestTemplate, times(count)).exchange(eq(new URI(uri)), eq(HttpMethod.GET), any(HttpEntity.class),
+        same(byte[].class));
+  }
+
   @Nested
   @DisplayName("When a http server never returns a http response")
   class DeadHttpServer {
@@ -12,10 +12,12 @@ import org.cloudfoundry.identity.uaa.oauth.client.ClientDetailsModification;
 import org.cloudfoundry.identity.uaa.oauth.client.ClientJwtChangeRequest;
 import org.cloudfoundry.identity.uaa.oauth.client.SecretChangeRequest;
 import org.cloudfoundry.identity.uaa.resources.ActionResult;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.QueryableResourceManager;
 import org.cloudfoundry.identity.uaa.resources.ResourceMonitor;
 import org.cloudfoundry.identity.uaa.resources.SearchResults;
 import org.cloudfoundry.identity.uaa.security.beans.SecurityContextAccessor;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.cloudfoundry.identity.uaa.zone.ClientSecretPolicy;
 import org.cloudfoundry.identity.uaa.zone.IdentityZone;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
@@ -529,6 +531,36 @@ class ClientAdminEndpointsTests {
         assertThrows(UaaException.class, () -> endpoints.listClientDetails("client_id", "filter", "sortBy", "ascending", 1, 100));
     }
 
+    @Test
+    void testFindClientDetailsByCursor() {
+        String zoneId = IdentityZoneHolder.get().getId();
+        when(clientDetailsService.queryPage("filter", "client_id", true, "", 5, zoneId)).thenReturn(
+                new KeysetPage<>(Collections.singletonList(detail), "next"));
+        SearchResults<?> result = endpoints.listClientDetailsByCursor(null, "filter", "client_id", "ascending", "", 100, false);
+        assertEquals(1, result.getResources().size());
+        assertNull(((ClientDetails) result.getResources().get(0)).getClientSecret());
+        assertEquals("next", result.getNextCursor());
+        assertEquals(SearchResults.UNKNOWN_TOTAL, result.getTotalResults());
+        String json = JsonUtils.writeValueAsString(result);
+        assertTrue(json.contains("\"nextCursor\":\"next\""));
+        assertFalse(json.contains("totalResults"));
+        verify(clientDetailsService, never()).query(anyString(), anyString());
+
+        when(clientDetailsService.query("filter", zoneId)).thenReturn(Arrays.asList(inputs));
+        result = endpoints.listClientDetailsByCursor("client_id", "filter", "client_id", "ascending", "", 100, true);
+        assertEquals(1, result.getResources().size());
+        assertEquals("next", result.getNextCursor());
+        assertEquals(inputs.length, result.getTotalResults());
+        assertTrue(JsonUtils.writeValueAsString(result).contains("\"totalResults\":" + inputs.length));
+    }
+
+    @Test
+    void testFindClientDetailsByInvalidCursor() {
+        when(clientDetailsService.queryPage("filter", "client_id", true, "invalid", 5, IdentityZoneHolder.get().getId()))
+                .thenThrow(new IllegalArgumentException("Invalid cursor: invalid"));
+        assertThrows(UaaException.class, () -> endpoints.listClientDetailsByCursor(null, "filter", "client_id", "ascending", "invalid", 100, false));
+    }
+
     @Test
     void testFindClientDetails_Test_Attribute_Filter() throws Exception {
         when(clientDetailsService.query(anyString(), anyString(), anyBoolean(), eq(IdentityZoneHolder.get().getId()))).thenReturn(Arrays.asList(inputs));
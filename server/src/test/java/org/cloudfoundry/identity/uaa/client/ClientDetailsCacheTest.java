@@ -0,0 +1,226 @@
+package org.cloudfoundry.identity.uaa.client;
+
+import org.cloudfoundry.identity.uaa.annotations.WithDatabaseContext;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.cloudfoundry.identity.uaa.zone.MultitenantJdbcClientDetailsService;
+import org.cloudfoundry.identity.uaa.zone.beans.IdentityZoneManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.NoSuchClientException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@WithDatabaseContext
+class ClientDetailsCacheTest {
+
+    private static final long MAX_STALENESS = 2000;
+    private static final String ZONE_ID = "client-cache-zone";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    private long now;
+    private TimeService timeService;
+    private ClientDetailsCache cache;
+    private MultitenantJdbcClientDetailsService service;
+
+    @BeforeEach
+    void setUp() {
+        now = System.currentTimeMillis();
+        timeService = mock(TimeService.class);
+        when(timeService.getCurrentTimeMillis()).thenAnswer(invocation -> now);
+        cache = new ClientDetailsCache(jdbcTemplate, timeService, true, MAX_STALENESS, 100);
+        service = new MultitenantJdbcClientDetailsService(jdbcTemplate, mock(IdentityZoneManager.class), passwordEncoder);
+        service.setCache(cache);
+
+        UaaClientDetails client = new UaaClientDetails("cached-client", null, "openid,uaa.user", "client_credentials", "uaa.resource", "http://localhost/**");
+        client.setClientSecret("secret");
+        client.setAutoApproveScopes(Collections.singleton("openid"));
+        client.addAdditionalInformation("name", "Cached Client");
+        client.addAdditionalInformation("allowedproviders", Collections.singletonList("uaa"));
+        service.addClientDetails(client, ZONE_ID);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("delete from oauth_client_details where identity_zone_id = ?", ZONE_ID);
+    }
+
+    @Test
+    void callersGetTheirOwnCopy() {
+        UaaClientDetails loaded = (UaaClientDetails) service.loadClientByClientId("cached-client", ZONE_ID);
+        loaded.setScope(Collections.singleton("modified"));
+        loaded.addAdditionalInformation("name", "modified");
+
+        UaaClientDetails cached = (UaaClientDetails) service.loadClientByClientId("cached-client", ZONE_ID);
+        UaaClientDetails again = (UaaClientDetails) service.loadClientByClientId("cached-client", ZONE_ID);
+
+        assertNotSame(cached, again);
+        assertEquals(cached, again);
+        assertTrue(cached.getScope().contains("uaa.user"));
+        assertEquals("Cached Client", cached.getAdditionalInformation().get("name"));
+        assertTrue(cached.isAutoApprove("openid"));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void callersCannotModifyTheCachedAdditionalInformation() {
+        UaaClientDetails loaded = (UaaClientDetails) service.loadClientByClientId("cached-client", ZONE_ID);
+        ((List<String>) loaded.getAdditionalInformation().get("allowedproviders")).add("ldap");
+        ((Timestamp) loaded.getAdditionalInformation().get("lastModified")).setTime(0);
+
+        UaaClientDetails cached = (UaaClientDetails) service.loadClientByClientId("cached-client", ZONE_ID);
+
+        assertEquals(Collections.singletonList("uaa"), cached.getAdditionalInformation().get("allowedproviders"));
+        assertNotEquals(0, ((Timestamp) cached.getAdditionalInformation().get("lastModified")).getTime());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void changesFromOtherNodesWithinTheSameSecondArePickedUp() {
+        service.loadClientByClientId("cached-client", ZONE_ID);
+        jdbcTemplate.update("update oauth_client_details set scope = ? where client_id = ? and identity_zone_id = ?",
+                "openid,uaa.admin", "cached-client", ZONE_ID);
+
+        now += MAX_STALENESS + 1;
+
+        assertTrue(service.loadClientByClientId("cached-client", ZONE_ID).getScope().contains("uaa.admin"));
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void changesFromOtherNodesArePickedUpByLastModified() {
+        settle();
+        service.loadClientByClientId("cached-client", ZONE_ID);
+        MultitenantJdbcClientDetailsService otherNode = new MultitenantJdbcClientDetailsService(jdbcTemplate, mock(IdentityZoneManager.class), passwordEncoder);
+        otherNode.updateClientSecret("cached-client", "rotated", ZONE_ID);
+
+        now += MAX_STALENESS + 1;
+
+        assertTrue(passwordEncoder.matches("rotated", service.loadClientByClientId("cached-client", ZONE_ID).getClientSecret()));
+        assertEquals(1, cache.getRevalidationCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void unchangedClientsAreRevalidated() {
+        settle();
+        service.loadClientByClientId("cached-client", ZONE_ID);
+
+        now += MAX_STALENESS + 1;
+        service.loadClientByClientId("cached-client", ZONE_ID);
+        service.loadClientByClientId("cached-client", ZONE_ID);
+
+        assertEquals(1, cache.getRevalidationCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2.0 / 3.0, cache.getHitRatio(), 0.001);
+    }
+
+    @Test
+    void localChangesEvictImmediately() {
+        service.loadClientByClientId("cached-client", ZONE_ID);
+
+        service.addClientSecret("cached-client", "another-secret", ZONE_ID);
+        assertEquals(2, service.loadClientByClientId("cached-client", ZONE_ID).getClientSecret().split(" ").length);
+
+        service.updateClientSecret("cached-client", "secret", ZONE_ID);
+        assertFalse(service.loadClientByClientId("cached-client", ZONE_ID).getClientSecret().contains(" "));
+
+        service.updateClientJwtConfig("cached-client", "{\"jwks_uri\":\"http://localhost/keys\"}", ZONE_ID);
+        assertEquals("{\"jwks_uri\":\"http://localhost/keys\"}", ((UaaClientDetails) service.loadClientByClientId("cached-client", ZONE_ID)).getClientJwtConfig());
+
+        UaaClientDetails update = (UaaClientDetails) service.loadClientByClientId("cached-client", ZONE_ID);
+        update.setAccessTokenValiditySeconds(42);
+        service.updateClientDetails(update, ZONE_ID);
+        assertEquals(42, (int) service.loadClientByClientId("cached-client", ZONE_ID).getAccessTokenValiditySeconds());
+
+        service.removeClientDetails("cached-client", ZONE_ID);
+        assertThrows(NoSuchClientException.class, () -> service.loadClientByClientId("cached-client", ZONE_ID));
+        assertEquals(0, cache.getRevalidationCount());
+    }
+
+    @Test
+    void secretChangesFromOtherNodesArePickedUpAfterMaxStaleness() {
+        settle();
+        String secret = service.loadClientByClientId("cached-client", ZONE_ID).getClientSecret();
+        jdbcTemplate.update("update oauth_client_details set client_secret = ?, lastmodified = ? where client_id = ? and identity_zone_id = ?",
+                "rotated", new Timestamp(now), "cached-client", ZONE_ID);
+
+        assertEquals(secret, service.loadClientByClientId("cached-client", ZONE_ID).getClientSecret());
+
+        now += MAX_STALENESS + 1;
+        assertEquals("rotated", service.loadClientByClientId("cached-client", ZONE_ID).getClientSecret());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void clientsReadInsideARolledBackTransactionAreNotKept() {
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        transaction.execute(status -> {
+            ClientDetails client = service.loadClientByClientId("cached-client", ZONE_ID);
+            ((UaaClientDetails) client).setAccessTokenValiditySeconds(42);
+            service.updateClientDetails(client, ZONE_ID);
+            assertEquals(42, (int) service.loadClientByClientId("cached-client", ZONE_ID).getAccessTokenValiditySeconds());
+            status.setRollbackOnly();
+            return null;
+        });
+
+        assertNull(service.loadClientByClientId("cached-client", ZONE_ID).getAccessTokenValiditySeconds());
+    }
+
+    @Test
+    void deletingTheZoneEvictsItsClients() {
+        service.loadClientByClientId("cached-client", ZONE_ID);
+
+        service.deleteByIdentityZone(ZONE_ID);
+
+        assertEquals(0, cache.getSize());
+        assertThrows(NoSuchClientException.class, () -> service.loadClientByClientId("cached-client", ZONE_ID));
+    }
+
+    @Test
+    void disabledCacheAlwaysLoads() {
+        cache = new ClientDetailsCache(jdbcTemplate, null, false, MAX_STALENESS, 100);
+        service.setCache(cache);
+
+        service.loadClientByClientId("cached-client", ZONE_ID);
+        service.loadClientByClientId("cached-client", ZONE_ID);
+
+        assertFalse(cache.isEnabled());
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    /**
+     * Moves the client's lastmodified into the past, as if it had been modified well before
+     * it is first loaded.
+     */
+    private void settle() {
+        jdbcTemplate.update("update oauth_client_details set lastmodified = ? where client_id = ? and identity_zone_id = ?",
+                new Timestamp(now - ClientDetailsCache.SETTLE_TIME - 1000), "cached-client", ZONE_ID);
+    }
+}
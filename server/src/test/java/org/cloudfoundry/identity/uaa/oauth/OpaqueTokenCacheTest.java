@@ -0,0 +1,75 @@
+package org.cloudfoundry.identity.uaa.oauth;
+
+import org.cloudfoundry.identity.uaa.oauth.event.TokenRevocationEvent;
+import org.cloudfoundry.identity.uaa.oauth.token.RevocableToken;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.Authentication;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OpaqueTokenCacheTest {
+
+    private long now;
+    private OpaqueTokenCache cache;
+
+    @BeforeEach
+    void setUp() {
+        now = System.currentTimeMillis();
+        TimeService timeService = mock(TimeService.class);
+        when(timeService.getCurrentTimeMillis()).thenAnswer(invocation -> now);
+        cache = new OpaqueTokenCache(true, 60, 100, timeService);
+    }
+
+    @Test
+    void entriesLiveUntilTheTokenExpiresOrTheTimeToLivePasses() {
+        RevocableToken shortLived = token("user", "client", now + 1000);
+        RevocableToken longLived = token("user", "client", now + TimeUnit.DAYS.toMillis(1));
+        cache.put("short", "uaa", shortLived);
+        cache.put("long", "uaa", longLived);
+
+        assertSame(shortLived, cache.get("short", "uaa"));
+        assertNull(cache.get("short", "other-zone"));
+        now += 1000;
+        assertNull(cache.get("short", "uaa"));
+        assertSame(longLived, cache.get("long", "uaa"));
+        now += TimeUnit.SECONDS.toMillis(60);
+        assertNull(cache.get("long", "uaa"));
+    }
+
+    @Test
+    void revocationsEvictMatchingEntries() {
+        cache.put("token-1", "uaa", token("user-1", "client", now + 10000));
+        cache.put("token-2", "uaa", token("user-2", "client", now + 10000));
+        cache.put("token-3", "other-zone", token("user-1", "client", now + 10000));
+
+        cache.onApplicationEvent(new TokenRevocationEvent("user-1", null, "uaa", mock(Authentication.class)));
+
+        assertNull(cache.get("token-1", "uaa"));
+        assertNotNull(cache.get("token-2", "uaa"));
+        assertNotNull(cache.get("token-3", "other-zone"));
+        cache.evictZone("uaa");
+        assertNull(cache.get("token-2", "uaa"));
+    }
+
+    @Test
+    void disabledCacheKeepsNothing() {
+        OpaqueTokenCache disabled = new OpaqueTokenCache();
+        disabled.put("token", "uaa", token("user", "client", now + 10000));
+
+        assertFalse(disabled.isEnabled());
+        assertNull(disabled.get("token", "uaa"));
+    }
+
+    private static RevocableToken token(String userId, String clientId, long expiresAt) {
+        return new RevocableToken().setUserId(userId).setClientId(clientId).setExpiresAt(expiresAt);
+    }
+}
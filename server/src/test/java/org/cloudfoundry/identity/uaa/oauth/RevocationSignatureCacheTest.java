@@ -0,0 +1,104 @@
+package org.cloudfoundry.identity.uaa.oauth;
+
+import org.cloudfoundry.identity.uaa.client.UaaClientDetails;
+import org.cloudfoundry.identity.uaa.oauth.client.ClientConstants;
+import org.cloudfoundry.identity.uaa.user.UaaUser;
+import org.cloudfoundry.identity.uaa.user.UaaUserPrototype;
+import org.cloudfoundry.identity.uaa.util.UaaTokenUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class RevocationSignatureCacheTest {
+
+    private RevocationSignatureCache cache;
+    private UaaClientDetails client;
+    private UaaUser user;
+
+    @BeforeEach
+    void setUp() {
+        cache = new RevocationSignatureCache(true, 600, 100);
+        client = new UaaClientDetails("client", null, "openid", "password", null, null);
+        client.setClientSecret("secret-1 secret-2");
+        client.addAdditionalInformation(ClientConstants.TOKEN_SALT, "salt");
+        client.addAdditionalInformation(ClientConstants.LAST_MODIFIED, new Timestamp(1000));
+        user = user("marissa@test.org", "password-hash", 1000, 1000);
+    }
+
+    @Test
+    void signaturesMatchUaaTokenUtilsForEachSecret() {
+        assertEquals(Arrays.asList(
+                UaaTokenUtils.getRevocableTokenSignature(client, "secret-1", user),
+                UaaTokenUtils.getRevocableTokenSignature(client, "secret-2", user)
+        ), cache.getRevocationSignatures(client, user));
+
+        client.setClientSecret(null);
+        client.addAdditionalInformation(ClientConstants.LAST_MODIFIED, new Timestamp(2000));
+        assertEquals(Collections.singletonList(UaaTokenUtils.getRevocableTokenSignature(client, null, user)), cache.getRevocationSignatures(client, user));
+    }
+
+    @Test
+    void unchangedClientAndUserReuseTheSignatures() {
+        List<String> signatures = cache.getRevocationSignatures(client, user);
+
+        assertSame(signatures, cache.getRevocationSignatures(client, user("marissa@test.org", "password-hash", 1000, 1000)));
+        assertEquals(1, cache.getCacheSize());
+    }
+
+    @Test
+    void modifiedClientsAndUsersAreNotServedFromTheCache() {
+        List<String> signatures = cache.getRevocationSignatures(client, user);
+
+        assertNotEquals(signatures, cache.getRevocationSignatures(client, user("marissa@test.org", "new-password-hash", 1000, 2000)));
+        assertNotEquals(signatures, cache.getRevocationSignatures(client, user("new@test.org", "password-hash", 2000, 1000)));
+
+        client.setClientSecret("secret-2");
+        client.addAdditionalInformation(ClientConstants.LAST_MODIFIED, new Timestamp(2000));
+        assertNotEquals(signatures, cache.getRevocationSignatures(client, user));
+
+        client.setClientSecret("secret-1 secret-2");
+        client.addAdditionalInformation(ClientConstants.TOKEN_SALT, "new-salt");
+        client.addAdditionalInformation(ClientConstants.LAST_MODIFIED, new Timestamp(3000));
+        assertNotEquals(signatures, cache.getRevocationSignatures(client, user));
+    }
+
+    @Test
+    void clientsWithoutModificationTimeAreNotCached() {
+        client.setAdditionalInformation(Collections.singletonMap(ClientConstants.TOKEN_SALT, "salt"));
+
+        assertNotSame(cache.getRevocationSignatures(client, user), cache.getRevocationSignatures(client, user));
+        assertEquals(0, cache.getCacheSize());
+    }
+
+    @Test
+    void disabledCacheKeepsNothing() {
+        RevocationSignatureCache disabled = new RevocationSignatureCache();
+
+        assertFalse(disabled.isEnabled());
+        assertEquals(cache.getRevocationSignatures(client, user), disabled.getRevocationSignatures(client, user));
+        assertEquals(0, disabled.getCacheSize());
+    }
+
+    private static UaaUser user(String email, String password, long modified, long passwordModified) {
+        return new UaaUser(new UaaUserPrototype()
+                .withId("user-id")
+                .withModified(new Date(modified))
+                .withPasswordLastModified(new Date(passwordModified))
+                .withUsername("marissa")
+                .withEmail(email)
+                .withPassword(password)
+                .withSalt("user-salt")
+                .withOrigin("uaa"));
+    }
+}
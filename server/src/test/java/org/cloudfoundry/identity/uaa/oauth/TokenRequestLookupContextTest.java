@@ -0,0 +1,107 @@
+package org.cloudfoundry.identity.uaa.oauth;
+
+import org.cloudfoundry.identity.uaa.extensions.PollutionPreventionExtension;
+import org.cloudfoundry.identity.uaa.user.UaaUser;
+import org.cloudfoundry.identity.uaa.user.UaaUserDatabase;
+import org.cloudfoundry.identity.uaa.zone.MultitenantClientServices;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.NoSuchClientException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(PollutionPreventionExtension.class)
+@ExtendWith(MockitoExtension.class)
+class TokenRequestLookupContextTest {
+
+    @Mock
+    private MultitenantClientServices mockClientServices;
+
+    @Mock
+    private UaaUserDatabase mockUserDatabase;
+
+    @AfterEach
+    void closeContext() {
+        TokenRequestLookupContext.close();
+    }
+
+    @Test
+    void lookupsPassThrough_whenNoContextIsOpen() {
+        ClientDetails client = mock(ClientDetails.class);
+        when(mockClientServices.loadClientByClientId("client", "zone")).thenReturn(client);
+
+        assertSame(client, TokenRequestLookupContext.loadClientByClientId(mockClientServices, "client", "zone"));
+        assertSame(client, TokenRequestLookupContext.loadClientByClientId(mockClientServices, "client", "zone"));
+
+        verify(mockClientServices, times(2)).loadClientByClientId("client", "zone");
+    }
+
+    @Test
+    void clientLookups_areMemoizedPerZone_whileContextIsOpen() {
+        ClientDetails client = mock(ClientDetails.class);
+        ClientDetails otherZoneClient = mock(ClientDetails.class);
+        when(mockClientServices.loadClientByClientId("client", "zone")).thenReturn(client);
+        when(mockClientServices.loadClientByClientId("client", "other-zone")).thenReturn(otherZoneClient);
+
+        assertTrue(TokenRequestLookupContext.open());
+        assertSame(client, TokenRequestLookupContext.loadClientByClientId(mockClientServices, "client", "zone"));
+        assertSame(client, TokenRequestLookupContext.loadClientByClientId(mockClientServices, "client", "zone"));
+        assertSame(otherZoneClient, TokenRequestLookupContext.loadClientByClientId(mockClientServices, "client", "other-zone"));
+
+        verify(mockClientServices, times(1)).loadClientByClientId("client", "zone");
+        verify(mockClientServices, times(1)).loadClientByClientId("client", "other-zone");
+    }
+
+    @Test
+    void userLookups_areMemoized_includingMissingUserInfo() {
+        UaaUser user = mock(UaaUser.class);
+        when(mockUserDatabase.retrieveUserById("user-id")).thenReturn(user);
+
+        TokenRequestLookupContext.open();
+        assertSame(user, TokenRequestLookupContext.retrieveUserById(mockUserDatabase, "user-id"));
+        assertSame(user, TokenRequestLookupContext.retrieveUserById(mockUserDatabase, "user-id"));
+        assertNull(TokenRequestLookupContext.getUserInfo(mockUserDatabase, "user-id"));
+        assertNull(TokenRequestLookupContext.getUserInfo(mockUserDatabase, "user-id"));
+
+        verify(mockUserDatabase, times(1)).retrieveUserById("user-id");
+        verify(mockUserDatabase, times(1)).getUserInfo("user-id");
+    }
+
+    @Test
+    void failedLookups_areNotMemoized() {
+        when(mockClientServices.loadClientByClientId("missing", "zone")).thenThrow(new NoSuchClientException("missing"));
+        when(mockUserDatabase.retrieveUserById("missing")).thenThrow(new UsernameNotFoundException("missing"));
+
+        TokenRequestLookupContext.open();
+        assertThrows(NoSuchClientException.class, () -> TokenRequestLookupContext.loadClientByClientId(mockClientServices, "missing", "zone"));
+        assertThrows(NoSuchClientException.class, () -> TokenRequestLookupContext.loadClientByClientId(mockClientServices, "missing", "zone"));
+        assertThrows(UsernameNotFoundException.class, () -> TokenRequestLookupContext.retrieveUserById(mockUserDatabase, "missing"));
+        assertThrows(UsernameNotFoundException.class, () -> TokenRequestLookupContext.retrieveUserById(mockUserDatabase, "missing"));
+
+        verify(mockClientServices, times(2)).loadClientByClientId("missing", "zone");
+        verify(mockUserDatabase, times(2)).retrieveUserById("missing");
+    }
+
+    @Test
+    void nestedOpen_doesNotReplaceTheCurrentContext() {
+        assertTrue(TokenRequestLookupContext.open());
+        assertFalse(TokenRequestLookupContext.open());
+        assertTrue(TokenRequestLookupContext.isOpen());
+
+        TokenRequestLookupContext.close();
+        assertFalse(TokenRequestLookupContext.isOpen());
+    }
+}
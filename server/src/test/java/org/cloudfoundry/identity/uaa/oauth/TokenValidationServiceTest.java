@@ -3,10 +3,14 @@ package org.cloudfoundry.identity.uaa.oauth;
 import com.google.common.collect.Lists;
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSSigner;
+import org.cloudfoundry.identity.uaa.oauth.event.TokenRevocationEvent;
+import org.cloudfoundry.identity.uaa.oauth.token.RevocableToken;
 import org.cloudfoundry.identity.uaa.oauth.token.RevocableTokenProvisioning;
 import org.cloudfoundry.identity.uaa.user.UaaAuthority;
 import org.cloudfoundry.identity.uaa.user.UaaUser;
 import org.cloudfoundry.identity.uaa.user.UaaUserDatabase;
+import org.cloudfoundry.identity.uaa.util.JwtTokenSignedByThisUAA;
+import org.cloudfoundry.identity.uaa.util.TimeServiceImpl;
 import org.cloudfoundry.identity.uaa.util.UaaTokenUtils;
 import org.cloudfoundry.identity.uaa.zone.MultitenantClientServices;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
@@ -15,6 +19,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
@@ -29,7 +34,12 @@ import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.*;
 import static org.cloudfoundry.identity.uaa.util.UaaMapUtils.entry;
 import static org.cloudfoundry.identity.uaa.util.UaaMapUtils.map;
 import static org.cloudfoundry.identity.uaa.util.UaaStringUtils.DEFAULT_UAA_URL;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class TokenValidationServiceTest {
@@ -153,6 +163,104 @@ public class TokenValidationServiceTest {
         tokenValidationService.validateToken(refreshToken, false);
     }
 
+    @Test
+    public void verifiedAccessTokens_areServedFromCache_untilRevoked() {
+        content.put(EXPIRY_IN_SECONDS, System.currentTimeMillis() / 1000 + 300);
+        String accessToken = UaaTokenUtils.constructToken(header, content, signer);
+        VerifiedTokenCache verifiedTokenCache = new VerifiedTokenCache(true, 60, 100, new TimeServiceImpl());
+        tokenValidationService = new TokenValidationService(
+                revocableTokenProvisioning,
+                tokenEndpointBuilder,
+                userDatabase,
+                mockMultitenantClientServices,
+                new KeyInfoService(DEFAULT_UAA_URL),
+                verifiedTokenCache
+        );
+
+        JwtTokenSignedByThisUAA first = tokenValidationService.validateToken(accessToken, true);
+        JwtTokenSignedByThisUAA second = tokenValidationService.validateToken(accessToken, true);
+
+        assertSame(first, second);
+        verify(mockMultitenantClientServices, times(1)).loadClientByClientId(clientId, IdentityZoneHolder.get().getId());
+        verify(userDatabase, times(1)).retrieveUserById(userId);
+
+        verifiedTokenCache.onApplicationEvent(new TokenRevocationEvent(userId, null, IdentityZoneHolder.get().getId(), mock(Authentication.class)));
+
+        assertNotSame(first, tokenValidationService.validateToken(accessToken, true));
+        verify(mockMultitenantClientServices, times(2)).loadClientByClientId(clientId, IdentityZoneHolder.get().getId());
+    }
+
+    @Test
+    public void refreshTokens_areNeverCached() {
+        content.put(EXPIRY_IN_SECONDS, System.currentTimeMillis() / 1000 + 300);
+        String refreshToken = UaaTokenUtils.constructToken(header, content, signer);
+        tokenValidationService = new TokenValidationService(
+                revocableTokenProvisioning,
+                tokenEndpointBuilder,
+                userDatabase,
+                mockMultitenantClientServices,
+                new KeyInfoService(DEFAULT_UAA_URL),
+                new VerifiedTokenCache(true, 60, 100, new TimeServiceImpl())
+        );
+
+        tokenValidationService.validateToken(refreshToken, false);
+        tokenValidationService.validateToken(refreshToken, false);
+
+        verify(mockMultitenantClientServices, times(2)).loadClientByClientId(clientId, IdentityZoneHolder.get().getId());
+    }
+
+    @Test
+    public void opaqueTokens_areCheckedAgainstTheRowTheyResolvedTo() {
+        content.put(EXPIRY_IN_SECONDS, System.currentTimeMillis() / 1000 + 300);
+        content.put(REVOCABLE, true);
+        String zoneId = IdentityZoneHolder.get().getId();
+        when(revocableTokenProvisioning.retrieve("abcdefg", zoneId)).thenReturn(opaqueToken());
+
+        tokenValidationService.validateToken("abcdefg", true);
+
+        verify(revocableTokenProvisioning, times(1)).retrieve("abcdefg", zoneId);
+    }
+
+    @Test
+    public void opaqueAccessTokens_areResolvedFromCache_untilRevoked() {
+        content.put(EXPIRY_IN_SECONDS, System.currentTimeMillis() / 1000 + 300);
+        content.put(REVOCABLE, true);
+        String zoneId = IdentityZoneHolder.get().getId();
+        when(revocableTokenProvisioning.retrieve("abcdefg", zoneId)).thenReturn(opaqueToken());
+        OpaqueTokenCache opaqueTokenCache = new OpaqueTokenCache(true, 60, 100, new TimeServiceImpl());
+        tokenValidationService.setOpaqueTokenCache(opaqueTokenCache);
+
+        tokenValidationService.validateToken("abcdefg", true);
+        tokenValidationService.validateToken("abcdefg", true);
+        verify(revocableTokenProvisioning, times(1)).retrieve("abcdefg", zoneId);
+
+        opaqueTokenCache.onApplicationEvent(new TokenRevocationEvent(userId, clientId, zoneId, mock(Authentication.class)));
+
+        tokenValidationService.validateToken("abcdefg", true);
+        verify(revocableTokenProvisioning, times(2)).retrieve("abcdefg", zoneId);
+    }
+
+    @Test
+    public void opaqueTokens_areNotCachedPastTheirExpiry() {
+        content.put(REVOCABLE, true);
+        String zoneId = IdentityZoneHolder.get().getId();
+        RevocableToken expired = opaqueToken().setExpiresAt(System.currentTimeMillis() - 1);
+        OpaqueTokenCache opaqueTokenCache = new OpaqueTokenCache(true, 60, 100, new TimeServiceImpl());
+
+        opaqueTokenCache.put("abcdefg", zoneId, expired);
+
+        assertNull(opaqueTokenCache.get("abcdefg", zoneId));
+    }
+
+    private RevocableToken opaqueToken() {
+        return new RevocableToken()
+                .setTokenId("abcdefg")
+                .setUserId(userId)
+                .setClientId(clientId)
+                .setExpiresAt(System.currentTimeMillis() + 300000)
+                .setValue(UaaTokenUtils.constructToken(header, content, signer));
+    }
+
     private ArrayList<GrantedAuthority> buildGrantedAuthorities(String authority) {
         ArrayList<GrantedAuthority> grantedAuthorities = new ArrayList<>();
         grantedAuthorities.add(UaaAuthority.authority(authority));
@@ -11,6 +11,7 @@ import org.cloudfoundry.identity.uaa.approval.JdbcApprovalStore;
 import org.cloudfoundry.identity.uaa.db.DatabaseUrlModifier;
 import org.cloudfoundry.identity.uaa.db.Vendor;
 import org.cloudfoundry.identity.uaa.error.UaaException;
+import org.cloudfoundry.identity.uaa.resources.jdbc.LimitSqlAdapter;
 import org.cloudfoundry.identity.uaa.security.beans.SecurityContextAccessor;
 import org.cloudfoundry.identity.uaa.test.UaaTestAccounts;
 import org.cloudfoundry.identity.uaa.user.JdbcUaaUserDatabase;
@@ -59,6 +60,9 @@ class ApprovalsAdminEndpointsTests {
     @Autowired
     PasswordEncoder passwordEncoder;
 
+    @Autowired
+    LimitSqlAdapter limitSqlAdapter;
+
     @BeforeEach
     void initApprovalsAdminEndpointsTests() throws SQLException {
         UaaTestAccounts testAccounts = UaaTestAccounts.standard(null);
@@ -74,7 +78,7 @@ class ApprovalsAdminEndpointsTests {
         when(databaseUrlModifier.getDatabaseType()).thenReturn(Vendor.unknown);
 
         UaaUserDatabase userDao = new JdbcUaaUserDatabase(jdbcTemplate, new TimeServiceImpl(), false, mockIdentityZoneManager,
-                databaseUrlModifier, new DbUtils());
+                databaseUrlModifier, new DbUtils(), limitSqlAdapter);
 
         marissa = userDao.retrieveUserById(userId);
         assertNotNull(marissa);
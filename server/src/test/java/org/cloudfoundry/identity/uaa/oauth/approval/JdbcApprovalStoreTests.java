@@ -18,8 +18,10 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
 
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
 import static org.cloudfoundry.identity.uaa.approval.Approval.ApprovalStatus.APPROVED;
@@ -179,6 +181,19 @@ class JdbcApprovalStoreTests {
         assertEquals(1, jdbcApprovalStore.getApprovals("u1", "c1", defaultZoneId).size());
     }
 
+    @Test
+    void canGetApprovalsForUsers() {
+        Map<String, List<Approval>> approvals = jdbcApprovalStore.getApprovalsForUsers(Arrays.asList("u1", "u2", "u3"), defaultZoneId);
+        assertEquals(2, approvals.size());
+        assertEquals(2, approvals.get("u1").size());
+        assertEquals(1, approvals.get("u2").size());
+        assertEquals("openid", approvals.get("u2").get(0).getScope());
+
+        jdbcApprovalStore.setMaxSqlParameters(2);
+        assertEquals(approvals.keySet(), jdbcApprovalStore.getApprovalsForUsers(Arrays.asList("u1", "u2", "u3"), defaultZoneId).keySet());
+        assertTrue(jdbcApprovalStore.getApprovalsForUsers(Arrays.asList("u1", "u2"), otherZoneId).isEmpty());
+    }
+
     @Test
     void canAddApproval() {
         assertTrue(jdbcApprovalStore.addApproval(new Approval()
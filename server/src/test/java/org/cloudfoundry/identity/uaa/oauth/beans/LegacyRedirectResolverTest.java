@@ -739,6 +739,40 @@ class LegacyRedirectResolverTest {
             assertThat(exception.getMessage(), containsString(invalidRedirectUri));
         }
 
+        @Test
+        void updatedRedirectUrisAreUsed() {
+            when(mockClientDetails.getRegisteredRedirectUri()).thenReturn(new HashSet<>(Arrays.asList("http://one.com/**", "http://two.com")));
+            assertThat(resolver.resolveRedirect("http://two.com", mockClientDetails), is("http://two.com"));
+
+            when(mockClientDetails.getRegisteredRedirectUri()).thenReturn(new HashSet<>(Arrays.asList("http://one.com/**", "http://three.com")));
+            assertThrows(RedirectMismatchException.class, () -> resolver.resolveRedirect("http://two.com", mockClientDetails));
+            assertThat(resolver.resolveRedirect("http://THREE.com", mockClientDetails), is("http://THREE.com"));
+        }
+
+        @Test
+        void matchesLikeEachRegisteredRedirectUri() {
+            List<String> registered = Arrays.asList(
+                    "http://*.domain.com/**", "https://exact.com/path", "http://localhost:*/callback",
+                    "http://domain.io/one/*", "ftp://files.com");
+            when(mockClientDetails.getRegisteredRedirectUri()).thenReturn(new HashSet<>(registered));
+
+            List<String> requested = Arrays.asList(
+                    "http://sub.domain.com/x", "http://domain.com", "https://exact.com/path", "https://EXACT.com/path/more",
+                    "https://exact.com", "http://localhost:8080/callback", "http://localhost/callback",
+                    "http://domain.io/one/two", "http://domain.io/one/two/three", "ftp://files.com", "not a uri");
+            for (String uri : requested) {
+                boolean expected = registered.stream().anyMatch(r -> resolver.redirectMatches(uri, r));
+                boolean matched;
+                try {
+                    resolver.resolveRedirect(uri, mockClientDetails);
+                    matched = true;
+                } catch (RedirectMismatchException e) {
+                    matched = false;
+                }
+                assertThat(uri, matched, is(expected));
+            }
+        }
+
         private void mockRegisteredRedirectUri(String allowedRedirectUri) {
             when(mockClientDetails.getRegisteredRedirectUri()).thenReturn(Collections.singleton(allowedRedirectUri));
         }
@@ -5,6 +5,7 @@ import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.JWSHeader;
 import com.nimbusds.jose.JWSSigner;
 import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
 import com.nimbusds.jose.util.Base64URL;
 import com.nimbusds.jose.util.X509CertUtils;
 import com.nimbusds.jwt.JWT;
@@ -40,6 +41,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -235,7 +237,7 @@ class JwtClientAuthenticationTest {
     // Given
     jwtClientAuthentication = new JwtClientAuthentication(keyInfoService, oidcMetadataFetcher);
     ClientJwtConfiguration clientJwtConfiguration = getMockedClientJwtConfiguration(null);
-    when(oidcMetadataFetcher.fetchWebKeySet(clientJwtConfiguration)).thenReturn(clientJwtConfiguration.getJwkSet());
+    when(oidcMetadataFetcher.fetchJWKSet(eq(clientJwtConfiguration), any())).thenReturn(JWKSet.parse(clientJwtConfiguration.getJwkSet().getKeySetMap()));
     // Then
     Exception exception = assertThrows(BadCredentialsException.class, () ->
         jwtClientAuthentication.validateClientJwt(getMockedRequestParameter(null, INVALID_CLIENT_ALG),
@@ -248,7 +250,7 @@ class JwtClientAuthenticationTest {
     // Given
     jwtClientAuthentication = new JwtClientAuthentication(keyInfoService, oidcMetadataFetcher);
     ClientJwtConfiguration clientJwtConfiguration = getMockedClientJwtConfiguration(null);
-    when(oidcMetadataFetcher.fetchWebKeySet(clientJwtConfiguration)).thenThrow(new OidcMetadataFetchingException(""));
+    when(oidcMetadataFetcher.fetchJWKSet(eq(clientJwtConfiguration), any())).thenThrow(new OidcMetadataFetchingException(""));
     // Then
     Exception exception = assertThrows(BadCredentialsException.class, () ->
         jwtClientAuthentication.validateClientJwt(getMockedRequestParameter(null, jwtClientAuthentication.getClientAssertion(config)),
@@ -262,7 +264,7 @@ class JwtClientAuthenticationTest {
     jwtClientAuthentication = new JwtClientAuthentication(keyInfoService, oidcMetadataFetcher);
     // create client assertion with key ids which wont map to provide JWT, lead to failing validateClientJWToken check
     ClientJwtConfiguration clientJwtConfiguration = getMockedClientJwtConfiguration("extId");
-    when(oidcMetadataFetcher.fetchWebKeySet(clientJwtConfiguration)).thenReturn(clientJwtConfiguration.getJwkSet());
+    when(oidcMetadataFetcher.fetchJWKSet(eq(clientJwtConfiguration), any())).thenReturn(JWKSet.parse(clientJwtConfiguration.getJwkSet().getKeySetMap()));
     String clientAssertion = jwtClientAuthentication.getClientAssertion(config);
     // When
     Exception exception = assertThrows(BadCredentialsException.class, () ->
@@ -276,7 +278,7 @@ class JwtClientAuthenticationTest {
     // Given
     jwtClientAuthentication = new JwtClientAuthentication(keyInfoService, oidcMetadataFetcher);
     ClientJwtConfiguration clientJwtConfiguration = getMockedClientJwtConfiguration(null);
-    when(oidcMetadataFetcher.fetchWebKeySet(clientJwtConfiguration)).thenReturn(clientJwtConfiguration.getJwkSet());
+    when(oidcMetadataFetcher.fetchJWKSet(eq(clientJwtConfiguration), any())).thenReturn(JWKSet.parse(clientJwtConfiguration.getJwkSet().getKeySetMap()));
     String clientAssertion = jwtClientAuthentication.getClientAssertion(config);
     // When
     Exception exception = assertThrows(BadCredentialsException.class, () ->
@@ -344,6 +344,37 @@ class JdbcRevocableTokenProvisioningTest {
         assertNotNull(jdbcRevocableTokenProvisioning.retrieve(revocableToken.getTokenId(), "uaa"));
     }
 
+    @Test
+    void upsertOverwritesExistingToken() {
+        jdbcRevocableTokenProvisioning.create(revocableToken, "uaa");
+        revocableToken.setValue("updated-value").setScope("test3").setExpiresAt(Long.MAX_VALUE - 1);
+        jdbcRevocableTokenProvisioning.upsert(revocableToken.getTokenId(), revocableToken, "uaa");
+        RevocableToken token = jdbcRevocableTokenProvisioning.retrieve(revocableToken.getTokenId(), "uaa");
+        assertEquals("updated-value", token.getValue());
+        assertEquals("test3", token.getScope());
+        assertEquals(Long.MAX_VALUE - 1, token.getExpiresAt());
+    }
+
+    @Test
+    void upsertDoesNotOverwriteTokenOfAnotherZone() {
+        jdbcRevocableTokenProvisioning.create(revocableToken, "uaa");
+        String value = revocableToken.getValue();
+        revocableToken.setValue("other-zone-value");
+        jdbcRevocableTokenProvisioning.upsert(revocableToken.getTokenId(), revocableToken, "other-zone");
+        assertEquals(value, jdbcRevocableTokenProvisioning.retrieve(revocableToken.getTokenId(), "uaa").getValue());
+        assertThrows(EmptyResultDataAccessException.class,
+                () -> jdbcRevocableTokenProvisioning.retrieve(revocableToken.getTokenId(), "other-zone"));
+    }
+
+    @Test
+    void createIfNotExistsKeepsExistingToken() {
+        jdbcRevocableTokenProvisioning.create(revocableToken, "uaa");
+        String value = revocableToken.getValue();
+        revocableToken.setValue("other-value");
+        jdbcRevocableTokenProvisioning.createIfNotExists(revocableToken, "uaa");
+        assertEquals(value, jdbcRevocableTokenProvisioning.retrieve(revocableToken.getTokenId(), "uaa").getValue());
+    }
+
     private static String buildRandomTokenValue(Random random) {
         final int size = 100 + random.nextInt(100);
         final char c = (char) (65 + random.nextInt(26));
@@ -1,5 +1,6 @@
 package org.cloudfoundry.identity.uaa.oauth.token;
 
+import org.cloudfoundry.identity.uaa.audit.AuditEventType;
 import org.cloudfoundry.identity.uaa.impl.config.LegacyTokenKey;
 import org.cloudfoundry.identity.uaa.oauth.KeyInfo;
 import org.cloudfoundry.identity.uaa.oauth.KeyInfoService;
@@ -9,6 +10,7 @@ import org.cloudfoundry.identity.uaa.zone.IdentityZoneConfiguration;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneProvisioning;
 import org.cloudfoundry.identity.uaa.zone.TokenPolicy;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityZoneModifiedEvent;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -23,6 +25,8 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -135,6 +139,59 @@ class KeyInfoServiceTests {
         assertEquals(keyInfoService.getActiveKey().verifierKey(), "testLegacyKey");
     }
 
+    @Test
+    void testKeysAreCachedWhileKeyMaterialIsUnchanged() {
+        String keyId = generator.generate();
+        configureDefaultZoneKeys(Collections.singletonMap(keyId, SIGNING_KEY));
+
+        KeyInfo first = keyInfoService.getKey(keyId);
+        KeyInfo second = keyInfoService.getKey(keyId);
+
+        assertSame(first, second);
+        assertEquals(1, keyInfoService.getCacheMisses());
+        assertEquals(1, keyInfoService.getCacheHits());
+    }
+
+    @Test
+    void testKeysAreRebuiltWhenKeyMaterialChanges() {
+        String keyId = generator.generate();
+        configureDefaultZoneKeys(Collections.singletonMap(keyId, SIGNING_KEY));
+        KeyInfo rsaKey = keyInfoService.getKey(keyId);
+
+        configureDefaultZoneKeys(Collections.singletonMap(keyId, "symmetric-key"));
+        KeyInfo macKey = keyInfoService.getKey(keyId);
+
+        assertNotSame(rsaKey, macKey);
+        assertEquals("MAC", macKey.type());
+        assertEquals(2, keyInfoService.getCacheMisses());
+    }
+
+    @Test
+    void testKeysAreCachedPerSigningAlgorithm() {
+        String keyId = generator.generate();
+        configureDefaultZoneKeys(Collections.singletonMap(keyId, SIGNING_KEY));
+
+        KeyInfo rs256 = keyInfoService.getKey(keyId);
+        KeyInfo rs512 = keyInfoService.getKey(keyId, "RS512");
+
+        assertEquals("RS256", rs256.algorithm());
+        assertEquals("RS512", rs512.algorithm());
+        assertSame(rs512, keyInfoService.getKey(keyId, "RS512"));
+    }
+
+    @Test
+    void testZoneModifiedEventEvictsCachedKeys() {
+        String keyId = generator.generate();
+        configureDefaultZoneKeys(Collections.singletonMap(keyId, SIGNING_KEY));
+        KeyInfo first = keyInfoService.getKey(keyId);
+        assertEquals(1, keyInfoService.getCacheSize());
+
+        keyInfoService.onApplicationEvent(new IdentityZoneModifiedEvent(IdentityZone.getUaa(), null, AuditEventType.IdentityZoneModifiedEvent, IdentityZone.getUaaZoneId()));
+
+        assertEquals(0, keyInfoService.getCacheSize());
+        assertNotSame(first, keyInfoService.getKey(keyId));
+    }
+
     @Test
     void testTokenEndpointUrl() throws URISyntaxException {
         configureDefaultZoneKeys(Collections.emptyMap());
@@ -0,0 +1,322 @@
+package org.cloudfoundry.identity.uaa.oauth.token;
+
+import org.cloudfoundry.identity.uaa.account.event.PasswordChangeEvent;
+import org.cloudfoundry.identity.uaa.annotations.WithDatabaseContext;
+import org.cloudfoundry.identity.uaa.oauth.OpaqueTokenCache;
+import org.cloudfoundry.identity.uaa.oauth.VerifiedTokenCache;
+import org.cloudfoundry.identity.uaa.resources.jdbc.LimitSqlAdapter;
+import org.cloudfoundry.identity.uaa.user.UaaUser;
+import org.cloudfoundry.identity.uaa.user.UaaUserPrototype;
+import org.cloudfoundry.identity.uaa.util.JwtTokenSignedByThisUAA;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.Authentication;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.CID;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.EXPIRY_IN_SECONDS;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.JTI;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.USER_ID;
+import static org.cloudfoundry.identity.uaa.oauth.token.RevocableToken.TokenType.ACCESS_TOKEN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@WithDatabaseContext
+class RevocableTokenIndexTest {
+
+    private static final long POLL_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private LimitSqlAdapter limitSqlAdapter;
+
+    private TimeService timeService;
+    private long now;
+    private final List<RevocableTokenIndex> indexes = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        now = System.currentTimeMillis();
+        timeService = mock(TimeService.class);
+        when(timeService.getCurrentTimeMillis()).thenAnswer(invocation -> now);
+    }
+
+    @AfterEach
+    void tearDown() {
+        indexes.forEach(RevocableTokenIndex::destroy);
+        jdbcTemplate.update("DELETE FROM revocable_tokens");
+        jdbcTemplate.update("DELETE FROM revocable_token_revocations");
+    }
+
+    @Test
+    void disabledIndexKnowsNothing() {
+        RevocableTokenIndex index = new RevocableTokenIndex(jdbcTemplate, limitSqlAdapter, timeService, false, 100, POLL_INTERVAL);
+        JdbcRevocableTokenProvisioning provisioning = provisioning(index);
+        provisioning.create(token("token", "user", "client"), "uaa");
+        provisioning.retrieve("token", "uaa");
+
+        assertFalse(provisioning.isKnownActive("token", "uaa"));
+        assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM revocable_token_revocations", Integer.class));
+    }
+
+    @Test
+    void liveTokensArePreloaded() throws Exception {
+        JdbcRevocableTokenProvisioning provisioning = provisioning(null);
+        provisioning.create(token("live", "user", "client"), "uaa");
+        provisioning.create(token("expired", "user", "client").setExpiresAt(now - 1), "uaa");
+
+        RevocableTokenIndex index = synchronizedIndex(100);
+
+        assertEquals(1, index.getSize());
+        assertTrue(index.isKnownLive("live", "uaa"));
+        assertFalse(index.isKnownLive("live", "other-zone"));
+        assertFalse(index.isKnownLive("expired", "uaa"));
+    }
+
+    @Test
+    void tokensFoundInTheDatabaseAreIndexed() throws Exception {
+        RevocableTokenIndex index = synchronizedIndex(100);
+        JdbcRevocableTokenProvisioning provisioning = provisioning(index);
+        provisioning.create(token("token", "user", "client"), "uaa");
+
+        assertFalse(provisioning.isKnownActive("token", "uaa"));
+        provisioning.retrieve("token", "uaa");
+        assertTrue(provisioning.isKnownActive("token", "uaa"));
+
+        provisioning.delete("token", -1, "uaa");
+        assertFalse(provisioning.isKnownActive("token", "uaa"));
+    }
+
+    @Test
+    void revocationsReachOtherNodes() throws Exception {
+        JdbcRevocableTokenProvisioning setup = provisioning(null);
+        setup.create(token("token-1", "user-1", "client-1"), "uaa");
+        setup.create(token("token-2", "user-2", "client-1"), "uaa");
+        setup.create(token("token-3", "user-2", "client-2"), "uaa");
+        setup.create(token("token-4", "user-3", "client-3"), "uaa");
+
+        RevocableTokenIndex nodeA = synchronizedIndex(100);
+        RevocableTokenIndex nodeB = synchronizedIndex(100);
+        JdbcRevocableTokenProvisioning provisioningA = provisioning(nodeA);
+
+        provisioningA.delete("token-1", -1, "uaa");
+        provisioningA.deleteByUser("user-2", "uaa");
+        assertFalse(nodeA.isKnownLive("token-1", "uaa"));
+        assertFalse(nodeA.isKnownLive("token-2", "uaa"));
+        assertFalse(nodeA.isKnownLive("token-3", "uaa"));
+        assertTrue(nodeB.isKnownLive("token-1", "uaa"));
+
+        now += 1000;
+        nodeB.poll();
+        assertFalse(nodeB.isKnownLive("token-1", "uaa"));
+        assertFalse(nodeB.isKnownLive("token-2", "uaa"));
+        assertFalse(nodeB.isKnownLive("token-3", "uaa"));
+        assertTrue(nodeB.isKnownLive("token-4", "uaa"));
+    }
+
+    @Test
+    void revocationsReachNodesWhoseClocksAreAhead() throws Exception {
+        provisioning(null).create(token("token", "user", "client"), "uaa");
+        TimeService laggingTimeService = mock(TimeService.class);
+        when(laggingTimeService.getCurrentTimeMillis()).thenAnswer(invocation -> now - TimeUnit.MINUTES.toMillis(10));
+        RevocableTokenIndex nodeA = synchronizedIndex(laggingTimeService, 100);
+        RevocableTokenIndex nodeB = synchronizedIndex(100);
+        nodeB.poll();
+
+        nodeA.revoked("uaa", "token", null, null);
+        nodeB.poll();
+
+        assertFalse(nodeB.isKnownLive("token", "uaa"));
+    }
+
+    @Test
+    void revocationsCommittedAfterAPollAreReadByTheNextOne() throws Exception {
+        provisioning(null).create(token("token", "user", "client"), "uaa");
+        RevocableTokenIndex index = synchronizedIndex(100);
+        long databaseNow = jdbcTemplate.queryForObject(limitSqlAdapter.getCurrentTimeMillisQuery(), Long.class);
+        index.poll();
+
+        // stamped before the poll, but only committed after it
+        jdbcTemplate.update("INSERT INTO revocable_token_revocations (token_id,identity_zone_id,revoked_at) VALUES (?,?,?)",
+                "token", "uaa", databaseNow - RevocableTokenIndex.LOOK_BACK / 2);
+        assertTrue(index.isKnownLive("token", "uaa"));
+        index.poll();
+
+        assertFalse(index.isKnownLive("token", "uaa"));
+    }
+
+    @Test
+    void staleIndexIsNotTrusted() throws Exception {
+        provisioning(null).create(token("token", "user", "client").setExpiresAt(now + TimeUnit.DAYS.toMillis(1)), "uaa");
+        RevocableTokenIndex index = synchronizedIndex(100);
+        assertTrue(index.isKnownLive("token", "uaa"));
+
+        now += 3 * POLL_INTERVAL;
+        assertFalse(index.isKnownLive("token", "uaa"));
+
+        index.poll();
+        assertTrue(index.isKnownLive("token", "uaa"));
+    }
+
+    @Test
+    void revocationsEvictTokenCachesOnOtherNodes() throws Exception {
+        JdbcRevocableTokenProvisioning setup = provisioning(null);
+        setup.create(token("token-1", "user-1", "client-1"), "uaa");
+        RevocableTokenIndex nodeA = synchronizedIndex(100);
+        RevocableTokenIndex nodeB = synchronizedIndex(100);
+        VerifiedTokenCache cacheA = verifiedTokenCache(nodeA);
+        VerifiedTokenCache cacheB = verifiedTokenCache(nodeB);
+        for (VerifiedTokenCache cache : new VerifiedTokenCache[]{cacheA, cacheB}) {
+            cache.put("jwt-1", "uaa", verifiedToken("token-1", "user-1", "client-1"));
+            cache.put("jwt-2", "uaa", verifiedToken("token-2", "user-2", "client-1"));
+            cache.put("jwt-3", "uaa", verifiedToken("token-3", "user-3", "client-2"));
+        }
+
+        provisioning(nodeA).delete("token-1", -1, "uaa");
+        UaaUser user = new UaaUser(new UaaUserPrototype().withId("user-2").withUsername("user-2").withEmail("user-2@example.com").withZoneId("uaa"));
+        cacheA.onApplicationEvent(new PasswordChangeEvent("changed", user, mock(Authentication.class), "uaa"));
+        assertNull(cacheA.get("jwt-1", "uaa"));
+        assertNull(cacheA.get("jwt-2", "uaa"));
+        assertNotNull(cacheB.get("jwt-1", "uaa"));
+        assertNotNull(cacheB.get("jwt-2", "uaa"));
+
+        now += 1000;
+        nodeB.poll();
+        assertNull(cacheB.get("jwt-1", "uaa"));
+        assertNull(cacheB.get("jwt-2", "uaa"));
+        assertNotNull(cacheB.get("jwt-3", "uaa"));
+    }
+
+    @Test
+    void opaqueTokensRevokedOnOneNodeAreNotServedByAnother() throws Exception {
+        JdbcRevocableTokenProvisioning setup = provisioning(null);
+        RevocableToken token1 = token("token-1", "user-1", "client-1");
+        RevocableToken token2 = token("token-2", "user-2", "client-1");
+        setup.create(token1, "uaa");
+        setup.create(token2, "uaa");
+        RevocableTokenIndex nodeA = synchronizedIndex(100);
+        RevocableTokenIndex nodeB = synchronizedIndex(100);
+        OpaqueTokenCache cacheA = opaqueTokenCache(nodeA);
+        OpaqueTokenCache cacheB = opaqueTokenCache(nodeB);
+        for (OpaqueTokenCache cache : new OpaqueTokenCache[]{cacheA, cacheB}) {
+            cache.put("token-1", "uaa", token1);
+            cache.put("token-2", "uaa", token2);
+        }
+
+        JdbcRevocableTokenProvisioning provisioningA = provisioning(nodeA);
+        provisioningA.delete("token-1", -1, "uaa");
+        provisioningA.deleteByClient("client-1", "uaa");
+        assertNull(cacheA.get("token-1", "uaa"));
+        assertNull(cacheA.get("token-2", "uaa"));
+        assertNotNull(cacheB.get("token-1", "uaa"));
+
+        now += 1000;
+        nodeB.poll();
+        assertNull(cacheB.get("token-1", "uaa"));
+        assertNull(cacheB.get("token-2", "uaa"));
+    }
+
+    @Test
+    void tokenCachesServeNothingWhileTheIndexIsStale() throws Exception {
+        RevocableTokenIndex index = synchronizedIndex(100);
+        VerifiedTokenCache cache = verifiedTokenCache(index);
+        cache.put("jwt", "uaa", verifiedToken("token", "user", "client"));
+        assertNotNull(cache.get("jwt", "uaa"));
+
+        now += 3 * POLL_INTERVAL;
+        assertNull(cache.get("jwt", "uaa"));
+
+        index.poll();
+        assertNotNull(cache.get("jwt", "uaa"));
+
+        VerifiedTokenCache withoutIndex = verifiedTokenCache(
+                new RevocableTokenIndex(jdbcTemplate, limitSqlAdapter, timeService, false, 100, POLL_INTERVAL));
+        withoutIndex.put("jwt", "uaa", verifiedToken("token", "user", "client"));
+        assertNull(withoutIndex.get("jwt", "uaa"));
+    }
+
+    @Test
+    void indexStaysWithinItsBudget() throws Exception {
+        JdbcRevocableTokenProvisioning provisioning = provisioning(null);
+        for (int i = 0; i < 10; i++) {
+            provisioning.create(token("token-" + i, "user", "client"), "uaa");
+        }
+
+        RevocableTokenIndex index = synchronizedIndex(5);
+
+        assertTrue(index.getSize() <= 5);
+    }
+
+    private RevocableTokenIndex synchronizedIndex(int maxEntries) throws InterruptedException {
+        return synchronizedIndex(timeService, maxEntries);
+    }
+
+    private RevocableTokenIndex synchronizedIndex(TimeService timeService, int maxEntries) throws InterruptedException {
+        RevocableTokenIndex index = new RevocableTokenIndex(jdbcTemplate, limitSqlAdapter, timeService, true, maxEntries, POLL_INTERVAL);
+        indexes.add(index);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!index.isSynchronized() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(index.isSynchronized());
+        return index;
+    }
+
+    private OpaqueTokenCache opaqueTokenCache(RevocableTokenIndex index) {
+        OpaqueTokenCache cache = new OpaqueTokenCache(true, (int) TimeUnit.DAYS.toSeconds(1), 100, timeService);
+        cache.setRevocationIndex(index);
+        return cache;
+    }
+
+    private VerifiedTokenCache verifiedTokenCache(RevocableTokenIndex index) {
+        VerifiedTokenCache cache = new VerifiedTokenCache(true, (int) TimeUnit.DAYS.toSeconds(1), 100, timeService);
+        cache.setRevocationIndex(index);
+        return cache;
+    }
+
+    private JwtTokenSignedByThisUAA verifiedToken(String tokenId, String userId, String clientId) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(JTI, tokenId);
+        claims.put(USER_ID, userId);
+        claims.put(CID, clientId);
+        claims.put(EXPIRY_IN_SECONDS, TimeUnit.MILLISECONDS.toSeconds(now) + TimeUnit.DAYS.toSeconds(1));
+        JwtTokenSignedByThisUAA token = mock(JwtTokenSignedByThisUAA.class);
+        when(token.getClaims()).thenReturn(claims);
+        return token;
+    }
+
+    private JdbcRevocableTokenProvisioning provisioning(RevocableTokenIndex index) {
+        JdbcRevocableTokenProvisioning provisioning = new JdbcRevocableTokenProvisioning(jdbcTemplate, limitSqlAdapter, timeService);
+        provisioning.setRevocationIndex(index);
+        return provisioning;
+    }
+
+    private RevocableToken token(String tokenId, String userId, String clientId) {
+        return new RevocableToken()
+                .setTokenId(tokenId)
+                .setClientId(clientId)
+                .setUserId(userId)
+                .setResponseType(ACCESS_TOKEN)
+                .setIssuedAt(now)
+                .setExpiresAt(now + TimeUnit.HOURS.toMillis(1))
+                .setValue("value-" + tokenId)
+                .setScope("openid")
+                .setFormat("jwt");
+    }
+}
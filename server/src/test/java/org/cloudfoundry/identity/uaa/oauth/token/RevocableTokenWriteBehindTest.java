@@ -0,0 +1,144 @@
+package org.cloudfoundry.identity.uaa.oauth.token;
+
+import org.cloudfoundry.identity.uaa.annotations.WithDatabaseContext;
+import org.cloudfoundry.identity.uaa.resources.jdbc.LimitSqlAdapter;
+import org.cloudfoundry.identity.uaa.util.TimeServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.cloudfoundry.identity.uaa.oauth.token.RevocableToken.TokenType.ACCESS_TOKEN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithDatabaseContext
+class RevocableTokenWriteBehindTest {
+
+    private static final int THREADS = 16;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private LimitSqlAdapter limitSqlAdapter;
+
+    private RevocableTokenWriteBehind writeBehind;
+    private JdbcRevocableTokenProvisioning provisioning;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        writeBehind = new RevocableTokenWriteBehind(jdbcTemplate, new DataSourceTransactionManager(jdbcTemplate.getDataSource()), true, 100, 20);
+        provisioning = new JdbcRevocableTokenProvisioning(jdbcTemplate, limitSqlAdapter, new TimeServiceImpl());
+        provisioning.setWriteBehind(writeBehind);
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        executor.shutdownNow();
+        writeBehind.destroy();
+        jdbcTemplate.update("DELETE FROM revocable_tokens");
+    }
+
+    @Test
+    void concurrentWritesAreDurableWhenCallersReturn() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<RevocableToken>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            String tokenId = "token-" + i;
+            results.add(executor.submit(() -> {
+                start.await();
+                provisioning.upsert(tokenId, token(tokenId, "client"), "uaa");
+                return provisioning.retrieve(tokenId, "uaa");
+            }));
+        }
+        start.countDown();
+
+        for (Future<RevocableToken> result : results) {
+            assertNotNull(result.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(THREADS, writeBehind.getWriteCount());
+        assertTrue(writeBehind.getBatchCount() < THREADS);
+    }
+
+    @Test
+    void failedStatementOnlyFailsItsCaller() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?> good = executor.submit(() -> {
+            start.await();
+            provisioning.createIfNotExists(token("good", "client"), "uaa");
+            return null;
+        });
+        Future<?> bad = executor.submit(() -> {
+            start.await();
+            provisioning.createIfNotExists(token("bad", null), "uaa");
+            return null;
+        });
+        start.countDown();
+
+        good.get(10, TimeUnit.SECONDS);
+        Exception e = assertThrows(Exception.class, () -> bad.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof DataIntegrityViolationException);
+        assertNotNull(provisioning.retrieve("good", "uaa"));
+    }
+
+    @Test
+    void deletesGoThroughTheQueue() {
+        provisioning.upsert("deleted", token("deleted", "client"), "uaa");
+        provisioning.delete("deleted", -1, "uaa");
+
+        assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM revocable_tokens WHERE token_id = 'deleted'", Integer.class));
+        assertEquals(2, writeBehind.getWriteCount());
+    }
+
+    @Test
+    void writesAfterShutdownAreExecutedDirectly() throws Exception {
+        writeBehind.destroy();
+        provisioning.upsert("late", token("late", "client"), "uaa");
+
+        assertNotNull(provisioning.retrieve("late", "uaa"));
+        assertEquals(0, writeBehind.getWriteCount());
+    }
+
+    @Test
+    void disabledWriteBehindIsBypassed() throws Exception {
+        writeBehind.destroy();
+        writeBehind = new RevocableTokenWriteBehind(jdbcTemplate, new DataSourceTransactionManager(jdbcTemplate.getDataSource()), false, 100, 20);
+        provisioning.setWriteBehind(writeBehind);
+
+        provisioning.upsert("direct", token("direct", "client"), "uaa");
+
+        assertFalse(writeBehind.isEnabled());
+        assertNotNull(provisioning.retrieve("direct", "uaa"));
+        assertEquals(0, writeBehind.getWriteCount());
+    }
+
+    private static RevocableToken token(String tokenId, String clientId) {
+        return new RevocableToken()
+                .setTokenId(tokenId)
+                .setClientId(clientId)
+                .setUserId("user")
+                .setResponseType(ACCESS_TOKEN)
+                .setIssuedAt(0)
+                .setExpiresAt(Long.MAX_VALUE)
+                .setValue("value-" + tokenId)
+                .setScope("openid")
+                .setFormat("opaque");
+    }
+}
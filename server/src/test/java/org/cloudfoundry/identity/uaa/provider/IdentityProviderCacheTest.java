@@ -0,0 +1,212 @@
+package org.cloudfoundry.identity.uaa.provider;
+
+import org.cloudfoundry.identity.uaa.annotations.WithDatabaseContext;
+import org.cloudfoundry.identity.uaa.constants.OriginKeys;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.URL;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@WithDatabaseContext
+class IdentityProviderCacheTest {
+
+    private static final long MAX_STALENESS = 2000;
+    private static final String ZONE_ID = "idp-cache-zone";
+    private static final String OTHER_ZONE_ID = "idp-cache-other-zone";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private long now;
+    private long misses;
+    private IdentityProviderCache cache;
+    private JdbcIdentityProviderProvisioning provisioning;
+    private IdentityProvider<OIDCIdentityProviderDefinition> oidc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        now = System.currentTimeMillis();
+        TimeService timeService = mock(TimeService.class);
+        when(timeService.getCurrentTimeMillis()).thenAnswer(invocation -> now);
+        cache = new IdentityProviderCache(jdbcTemplate, timeService, true, MAX_STALENESS, 10);
+        provisioning = new JdbcIdentityProviderProvisioning(jdbcTemplate);
+        provisioning.setCache(cache);
+
+        OIDCIdentityProviderDefinition definition = new OIDCIdentityProviderDefinition();
+        definition.setAuthUrl(new URL("https://oidc.example.com/authorize"));
+        definition.setRelyingPartyId("relying-party");
+        definition.setRelyingPartySecret("secret");
+        IdentityProvider<OIDCIdentityProviderDefinition> provider = new IdentityProvider<>();
+        provider.setName("OIDC").setOriginKey("oidc").setIdentityZoneId(ZONE_ID).setConfig(definition);
+        oidc = provisioning.create(provider, ZONE_ID);
+
+        IdentityProvider<AbstractIdentityProviderDefinition> inactive = new IdentityProvider<>();
+        inactive.setName("LDAP").setOriginKey(OriginKeys.LDAP).setType(OriginKeys.LDAP).setIdentityZoneId(ZONE_ID).setActive(false);
+        provisioning.create(inactive, ZONE_ID);
+        misses = cache.getMissCount();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("delete from identity_provider where identity_zone_id in (?,?)", ZONE_ID, OTHER_ZONE_ID);
+    }
+
+    @Test
+    void lookupsAreServedFromOneLoadOfTheZone() {
+        assertEquals(oidc.getId(), provisioning.retrieveByOrigin("oidc", ZONE_ID).getId());
+        assertEquals("oidc", provisioning.retrieve(oidc.getId(), ZONE_ID).getOriginKey());
+        assertEquals(1, provisioning.retrieveActive(ZONE_ID).size());
+        assertEquals(2, provisioning.retrieveAll(false, ZONE_ID).size());
+
+        assertEquals(misses, cache.getMissCount());
+    }
+
+    @Test
+    void callersGetTheirOwnCopy() {
+        IdentityProvider<OIDCIdentityProviderDefinition> loaded = provisioning.retrieveByOrigin("oidc", ZONE_ID);
+        loaded.getConfig().setRelyingPartySecret(null);
+        loaded.setName("modified");
+
+        IdentityProvider<OIDCIdentityProviderDefinition> cached = provisioning.retrieveByOrigin("oidc", ZONE_ID);
+        assertNotSame(loaded.getConfig(), cached.getConfig());
+        assertEquals("secret", cached.getConfig().getRelyingPartySecret());
+        assertEquals("OIDC", cached.getName());
+        assertEquals(OriginKeys.OIDC10, cached.getType());
+        assertEquals(oidc.getConfig().getAuthUrl(), cached.getConfig().getAuthUrl());
+    }
+
+    @Test
+    void copiesMatchTheStoredDefinitionAndShareNoCollections() {
+        OIDCIdentityProviderDefinition definition = oidc.getConfig();
+        definition.setScopes(new ArrayList<>(Arrays.asList("openid", "email")));
+        definition.setExternalGroupsWhitelist(Collections.singletonList("admins"));
+        definition.setAttributeMappings(Collections.singletonMap("email", "mail"));
+        definition.setAdditionalAuthzParameters(Collections.singletonMap("token_format", "jwt"));
+        provisioning.update(oidc, ZONE_ID);
+        IdentityProvider<UaaIdentityProviderDefinition> uaa = new IdentityProvider<>();
+        uaa.setName("UAA").setOriginKey(OriginKeys.UAA).setType(OriginKeys.UAA).setIdentityZoneId(ZONE_ID)
+                .setConfig(new UaaIdentityProviderDefinition(new PasswordPolicy(8, 128, 1, 1, 1, 0, 6), new LockoutPolicy(300, 5, 600)));
+        provisioning.create(uaa, ZONE_ID);
+
+        IdentityProvider<OIDCIdentityProviderDefinition> loadedOidc = provisioning.retrieveByOrigin("oidc", ZONE_ID);
+        IdentityProvider<UaaIdentityProviderDefinition> loadedUaa = provisioning.retrieveByOrigin(OriginKeys.UAA, ZONE_ID);
+        assertEquals(JsonUtils.writeValueAsString(definition), JsonUtils.writeValueAsString(loadedOidc.getConfig()));
+        assertEquals(JsonUtils.writeValueAsString(uaa.getConfig()), JsonUtils.writeValueAsString(loadedUaa.getConfig()));
+
+        loadedOidc.getConfig().getScopes().add("profile");
+        loadedOidc.getConfig().addWhiteListedGroup("users");
+        loadedOidc.getConfig().addAttributeMapping("given_name", "first");
+        loadedUaa.getConfig().getPasswordPolicy().setMinLength(1);
+        loadedUaa.getConfig().getLockoutPolicy().setLockoutAfterFailures(100);
+
+        IdentityProvider<OIDCIdentityProviderDefinition> cachedOidc = provisioning.retrieveByOrigin("oidc", ZONE_ID);
+        IdentityProvider<UaaIdentityProviderDefinition> cachedUaa = provisioning.retrieveByOrigin(OriginKeys.UAA, ZONE_ID);
+        assertEquals(JsonUtils.writeValueAsString(definition), JsonUtils.writeValueAsString(cachedOidc.getConfig()));
+        assertEquals(JsonUtils.writeValueAsString(uaa.getConfig()), JsonUtils.writeValueAsString(cachedUaa.getConfig()));
+    }
+
+    @Test
+    void inactiveAndUnknownProviders() {
+        assertThrows(EmptyResultDataAccessException.class, () -> provisioning.retrieveByOrigin(OriginKeys.LDAP, ZONE_ID));
+        assertFalse(provisioning.retrieveByOriginIgnoreActiveFlag(OriginKeys.LDAP, ZONE_ID).isActive());
+        assertThrows(EmptyResultDataAccessException.class, () -> provisioning.retrieveByOrigin("unknown", ZONE_ID));
+        assertThrows(EmptyResultDataAccessException.class, () -> provisioning.retrieve(oidc.getId(), OTHER_ZONE_ID));
+    }
+
+    @Test
+    void localChangesEvictImmediately() {
+        IdentityProvider<OIDCIdentityProviderDefinition> provider = provisioning.retrieveByOrigin("oidc", ZONE_ID);
+        provider.setActive(false);
+        provisioning.update(provider, ZONE_ID);
+
+        assertThrows(EmptyResultDataAccessException.class, () -> provisioning.retrieveByOrigin("oidc", ZONE_ID));
+        assertEquals(0, provisioning.retrieveActive(ZONE_ID).size());
+
+        provisioning.deleteByOrigin("oidc", ZONE_ID);
+        assertEquals(1, provisioning.retrieveAll(false, ZONE_ID).size());
+    }
+
+    @Test
+    void changesFromOtherNodesArePickedUpAfterMaxStaleness() {
+        provisioning.retrieveActive(ZONE_ID);
+        jdbcTemplate.update("update identity_provider set name = ?, version = version + 1, lastmodified = ? where id = ?",
+                "changed elsewhere", new Timestamp(now), oidc.getId());
+
+        assertEquals("OIDC", provisioning.retrieveByOrigin("oidc", ZONE_ID).getName());
+
+        now += MAX_STALENESS + 1;
+        assertEquals("changed elsewhere", provisioning.retrieveByOrigin("oidc", ZONE_ID).getName());
+        assertEquals(misses + 1, cache.getMissCount());
+    }
+
+    @Test
+    void unchangedZonesAreRevalidated() {
+        provisioning.retrieveActive(ZONE_ID);
+
+        now += MAX_STALENESS + 1;
+        provisioning.retrieveActive(ZONE_ID);
+        provisioning.retrieveActive(ZONE_ID);
+
+        assertEquals(1, cache.getRevalidationCount());
+        assertEquals(misses, cache.getMissCount());
+    }
+
+    @Test
+    void providersAddedOnOtherNodesArePickedUpAfterMaxStaleness() {
+        assertEquals(2, provisioning.retrieveAll(false, ZONE_ID).size());
+        JdbcIdentityProviderProvisioning otherNode = new JdbcIdentityProviderProvisioning(jdbcTemplate);
+        IdentityProvider<AbstractIdentityProviderDefinition> added = new IdentityProvider<>();
+        added.setName("added").setOriginKey("added").setType(OriginKeys.UNKNOWN).setIdentityZoneId(ZONE_ID);
+        otherNode.create(added, ZONE_ID);
+
+        assertEquals(2, provisioning.retrieveAll(false, ZONE_ID).size());
+
+        now += MAX_STALENESS + 1;
+        assertEquals(3, provisioning.retrieveAll(false, ZONE_ID).size());
+    }
+
+    @Test
+    void deletingAZoneEvictsTheAliasesInOtherZones() {
+        IdentityProvider<AbstractIdentityProviderDefinition> alias = new IdentityProvider<>();
+        alias.setName("alias").setOriginKey("oidc").setType(OriginKeys.UNKNOWN).setIdentityZoneId(OTHER_ZONE_ID);
+        alias.setAliasId(oidc.getId());
+        alias.setAliasZid(ZONE_ID);
+        provisioning.create(alias, OTHER_ZONE_ID);
+        assertEquals(1, provisioning.retrieveAll(false, OTHER_ZONE_ID).size());
+
+        provisioning.deleteByIdentityZone(ZONE_ID);
+
+        assertEquals(0, provisioning.retrieveAll(false, OTHER_ZONE_ID).size());
+        assertEquals(0, provisioning.retrieveAll(false, ZONE_ID).size());
+    }
+
+    @Test
+    void disabledCacheAlwaysLoads() {
+        cache = new IdentityProviderCache(jdbcTemplate, null, false, MAX_STALENESS, 10);
+        provisioning.setCache(cache);
+
+        provisioning.retrieveActive(ZONE_ID);
+        provisioning.retrieveByOrigin("oidc", ZONE_ID);
+
+        assertFalse(cache.isEnabled());
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getMissCount());
+    }
+}
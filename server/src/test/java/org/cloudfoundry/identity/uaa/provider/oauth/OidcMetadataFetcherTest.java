@@ -1,11 +1,15 @@
 package org.cloudfoundry.identity.uaa.provider.oauth;
 
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
 import org.cloudfoundry.identity.uaa.cache.UrlContentCache;
 import org.cloudfoundry.identity.uaa.client.ClientJwtConfiguration;
 import org.cloudfoundry.identity.uaa.oauth.jwk.JsonWebKey;
 import org.cloudfoundry.identity.uaa.oauth.jwk.JsonWebKeySet;
+import org.cloudfoundry.identity.uaa.oauth.jwt.ChainedSignatureVerifier;
 import org.cloudfoundry.identity.uaa.provider.OIDCIdentityProviderDefinition;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.cloudfoundry.identity.uaa.util.TimeService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -21,6 +25,9 @@ import java.net.URL;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
@@ -190,6 +197,104 @@ class OidcMetadataFetcherTest {
         }
     }
 
+    @Nested
+    class WithCachedKeys {
+        private long now;
+        private String keys;
+        private String served;
+
+        @BeforeEach
+        void setup() throws Exception {
+            now = System.currentTimeMillis();
+            TimeService timeService = mock(TimeService.class);
+            when(timeService.getCurrentTimeMillis()).thenAnswer(invocation -> now);
+            metadataDiscoverer.setTimeService(timeService);
+
+            definition.setTokenKeyUrl(new URL("http://token_keys"));
+            keys = publicKeys("key-1");
+            when(urlContentCache.getUrlContent(anyString(), any(RestTemplate.class), any(HttpMethod.class), any(HttpEntity.class)))
+                .thenAnswer(invocation -> {
+                    served = served == null ? keys : served;
+                    return served.getBytes();
+                });
+            doAnswer(invocation -> served = null).when(urlContentCache).evict(anyString());
+        }
+
+        @Test
+        void keysAreParsedOncePerKeySet() throws Exception {
+            ChainedSignatureVerifier verifier = metadataDiscoverer.fetchSignatureVerifier(definition);
+
+            assertSame(verifier, metadataDiscoverer.fetchSignatureVerifier(definition));
+            assertSame(metadataDiscoverer.fetchWebKeySet(definition), metadataDiscoverer.fetchWebKeySet(definition));
+            assertNotNull(verifier.getDelegate("key-1"));
+            verify(urlContentCache, never()).evict(anyString());
+        }
+
+        @Test
+        void changedKeysAreParsedAgain() throws Exception {
+            ChainedSignatureVerifier verifier = metadataDiscoverer.fetchSignatureVerifier(definition);
+
+            served = publicKeys("key-2");
+
+            ChainedSignatureVerifier changed = metadataDiscoverer.fetchSignatureVerifier(definition);
+            assertNotSame(verifier, changed);
+            assertNotNull(changed.getDelegate("key-2"));
+        }
+
+        @Test
+        void knownKeyIdsAreNotRefetched() throws Exception {
+            metadataDiscoverer.fetchSignatureVerifier(definition);
+
+            assertNull(metadataDiscoverer.refetchSignatureVerifier(definition, "key-1"));
+            verify(urlContentCache, never()).evict(anyString());
+        }
+
+        @Test
+        void unknownKeyIdsRefetchTheKeysAtMostOncePerInterval() throws Exception {
+            metadataDiscoverer.fetchSignatureVerifier(definition);
+            keys = publicKeys("key-2");
+
+            assertNull(metadataDiscoverer.refetchSignatureVerifier(definition, "key-2"));
+            verify(urlContentCache, never()).evict(anyString());
+
+            now += OidcMetadataFetcher.MIN_REFETCH_INTERVAL;
+
+            assertNotNull(metadataDiscoverer.refetchSignatureVerifier(definition, "key-2").getDelegate("key-2"));
+            assertNull(metadataDiscoverer.refetchSignatureVerifier(definition, "key-3"));
+            verify(urlContentCache, times(1)).evict("http://token_keys");
+
+            now += OidcMetadataFetcher.MIN_REFETCH_INTERVAL;
+            assertNull(metadataDiscoverer.refetchSignatureVerifier(definition, "key-3"));
+            verify(urlContentCache, times(2)).evict("http://token_keys");
+        }
+
+        @Test
+        void configuredTokenKeysAreParsedOnce() throws Exception {
+            definition.setTokenKey(publicKeys("configured"));
+
+            ChainedSignatureVerifier verifier = metadataDiscoverer.fetchSignatureVerifier(definition);
+
+            assertSame(verifier, metadataDiscoverer.fetchSignatureVerifier(definition));
+            assertNotNull(verifier.getDelegate("configured"));
+            assertNull(metadataDiscoverer.refetchSignatureVerifier(definition, "unknown"));
+            verifyNoInteractions(urlContentCache);
+        }
+
+        @Test
+        void clientKeysAreParsedOnce() throws Exception {
+            ClientJwtConfiguration clientJwtConfiguration = new ClientJwtConfiguration("http://token_keys", null);
+
+            JWKSet jwkSet = metadataDiscoverer.fetchJWKSet(clientJwtConfiguration, "key-1");
+
+            assertSame(jwkSet, metadataDiscoverer.fetchJWKSet(clientJwtConfiguration, "key-1"));
+            assertNotNull(jwkSet.getKeyByKeyId("key-1"));
+        }
+
+        private String publicKeys(String keyId) throws Exception {
+            return new JWKSet(new RSAKeyGenerator(2048).keyID(keyId).generate().toPublicJWK()).toString();
+        }
+    }
+
     @Nested
     class WithJwtClientKey {
         @BeforeEach
@@ -212,7 +212,7 @@ class LoginSamlAuthenticationProviderTests {
         DatabaseUrlModifier databaseUrlModifier = mock(DatabaseUrlModifier.class);
         when(databaseUrlModifier.getDatabaseType()).thenReturn(Vendor.unknown);
         userDatabase = new JdbcUaaUserDatabase(jdbcTemplate, timeService, false, identityZoneManager,
-                databaseUrlModifier, new DbUtils());
+                databaseUrlModifier, new DbUtils(), limitSqlAdapter);
         providerProvisioning = new JdbcIdentityProviderProvisioning(jdbcTemplate);
         publisher = new CreateUserPublisher(bootstrap);
 
@@ -0,0 +1,185 @@
+package org.cloudfoundry.identity.uaa.provider.saml;
+
+import org.bouncycastle.jcajce.provider.BouncyCastleFipsProvider;
+import org.cloudfoundry.identity.uaa.constants.OriginKeys;
+import org.cloudfoundry.identity.uaa.extensions.PollutionPreventionExtension;
+import org.cloudfoundry.identity.uaa.provider.IdentityProvider;
+import org.cloudfoundry.identity.uaa.provider.IdentityProviderProvisioning;
+import org.cloudfoundry.identity.uaa.provider.SamlIdentityProviderDefinition;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneConfiguration;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityProviderModifiedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.opensaml.Configuration;
+import org.opensaml.DefaultBootstrap;
+import org.opensaml.common.xml.SAMLConstants;
+import org.opensaml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.xml.parse.BasicParserPool;
+import org.springframework.security.saml.metadata.ExtendedMetadata;
+
+import java.security.MessageDigest;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.cloudfoundry.identity.uaa.provider.saml.SamlIdentityProviderConfiguratorTests.xmlWithoutID;
+import static org.cloudfoundry.identity.uaa.provider.saml.ZoneAwareMetadataGeneratorTests.samlKey1;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(PollutionPreventionExtension.class)
+class NonSnarlMetadataManagerTest {
+
+    private static final String ZONE_ID = "metadata-zone";
+    private static final String IDP_ENTITY_ID = "http://idp.example.com/metadata";
+
+    private IdentityZone zone;
+    private IdentityProvider<SamlIdentityProviderDefinition> provider;
+    private IdentityProviderProvisioning provisioning;
+    private SamlIdentityProviderConfigurator configurator;
+    private NonSnarlMetadataManager manager;
+
+    @BeforeAll
+    static void bootstrap() throws Exception {
+        Security.addProvider(new BouncyCastleFipsProvider());
+        DefaultBootstrap.bootstrap();
+        Configuration.getGlobalSecurityConfiguration().getKeyInfoGeneratorManager()
+                .getManager(org.springframework.security.saml.SAMLConstants.SAML_METADATA_KEY_INFO_GENERATOR);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        zone = new IdentityZone();
+        zone.setId(ZONE_ID);
+        zone.setName(ZONE_ID);
+        zone.setSubdomain(ZONE_ID);
+        zone.setConfig(new IdentityZoneConfiguration());
+        zone.getConfig().getSamlConfig().addAndActivateKey("key-1", samlKey1);
+        IdentityZoneHolder.set(zone);
+
+        SamlIdentityProviderDefinition definition = new SamlIdentityProviderDefinition()
+                .setMetaDataLocation(String.format(xmlWithoutID, IDP_ENTITY_ID))
+                .setIdpEntityAlias("idp-alias")
+                .setZoneId(ZONE_ID);
+        provider = new IdentityProvider<>();
+        provider.setOriginKey("idp-alias").setType(OriginKeys.SAML).setIdentityZoneId(ZONE_ID).setConfig(definition);
+        provisioning = mock(IdentityProviderProvisioning.class);
+        when(provisioning.retrieveActive(ZONE_ID)).thenAnswer(invocation -> Collections.singletonList(provider));
+
+        configurator = spy(new SamlIdentityProviderConfigurator(new BasicParserPool(), provisioning, mock(FixedHttpMetaDataProvider.class)));
+
+        ZoneAwareMetadataGenerator generator = new ZoneAwareMetadataGenerator();
+        generator.setEntityBaseURL("http://localhost:8080/uaa");
+        generator.setEntityId("entityIdValue");
+        ExtendedMetadata extendedMetadata = new ExtendedMetadata();
+        extendedMetadata.setAlias("entityAlias");
+        generator.setExtendedMetadata(extendedMetadata);
+        generator.setKeyManager(new ZoneAwareKeyManager());
+
+        manager = new NonSnarlMetadataManager(configurator);
+        manager.setKeyManager(new ZoneAwareKeyManager());
+        manager.setMetadataGenerator(generator);
+    }
+
+    @AfterEach
+    void tearDown() {
+        IdentityZoneHolder.clear();
+    }
+
+    @Test
+    void lookupsAreServedFromOneIndex() throws Exception {
+        String localEntityId = ZONE_ID + ".entityIdValue";
+
+        assertEquals(Collections.singleton(IDP_ENTITY_ID), manager.getIDPEntityNames());
+        assertTrue(manager.isIDPValid(IDP_ENTITY_ID));
+        assertEquals(localEntityId, manager.getHostedSPName());
+        assertEquals(localEntityId, manager.getEntityIdForAlias(ZONE_ID + ".entityAlias"));
+        assertEquals(IDP_ENTITY_ID, manager.getEntityDescriptor(IDP_ENTITY_ID).getEntityID());
+        assertEquals(IDP_ENTITY_ID, manager.getEntityDescriptor(sha1(IDP_ENTITY_ID)).getEntityID());
+        assertEquals(localEntityId, manager.getEntityDescriptor(sha1(localEntityId)).getEntityID());
+        assertNotNull(manager.getRole(IDP_ENTITY_ID, IDPSSODescriptor.DEFAULT_ELEMENT_NAME, SAMLConstants.SAML20P_NS));
+        assertEquals("idp-alias", manager.getExtendedMetadata(IDP_ENTITY_ID).getAlias());
+        assertFalse(manager.getExtendedMetadata(IDP_ENTITY_ID).isLocal());
+
+        assertNull(manager.getEntityDescriptor("unknown"));
+        assertNull(manager.getEntityDescriptor(sha1("unknown")));
+        assertNull(manager.getEntityIdForAlias("unknown"));
+
+        verify(configurator, times(1)).getExtendedMetadataDelegate(any());
+    }
+
+    @Test
+    void changedMetadataRebuildsTheIndex() throws Exception {
+        assertNotNull(manager.getEntityDescriptor(IDP_ENTITY_ID));
+
+        provider.getConfig().setMetaDataLocation(String.format(xmlWithoutID, "http://other.example.com/metadata"));
+        provider.setVersion(1);
+
+        assertNull(manager.getEntityDescriptor(IDP_ENTITY_ID));
+        assertNotNull(manager.getEntityDescriptor("http://other.example.com/metadata"));
+        assertEquals(Collections.singleton("http://other.example.com/metadata"), manager.getIDPEntityNames());
+        verify(configurator, times(2)).getExtendedMetadataDelegate(any());
+    }
+
+    @Test
+    void changedServiceProviderSettingsRebuildTheIndex() {
+        String localEntityId = manager.getHostedSPName();
+
+        zone.getConfig().getSamlConfig().setEntityID("http://sp.example.com");
+
+        assertEquals("http://sp.example.com", manager.getHostedSPName());
+        assertNull(manager.getEntityDescriptor(localEntityId));
+    }
+
+    @Test
+    void identityProvidersAreOnlyReadAgainAfterTheRefreshInterval() throws Exception {
+        manager.setRefreshCheckInterval(TimeUnit.HOURS.toMillis(1));
+        assertNotNull(manager.getEntityDescriptor(IDP_ENTITY_ID));
+
+        provider.getConfig().setMetaDataLocation(String.format(xmlWithoutID, "http://other.example.com/metadata"));
+        provider.setVersion(1);
+        assertNotNull(manager.getEntityDescriptor(IDP_ENTITY_ID));
+        verify(provisioning, times(1)).retrieveActive(ZONE_ID);
+
+        manager.onApplicationEvent(IdentityProviderModifiedEvent.identityProviderModified(provider, ZONE_ID));
+
+        assertNull(manager.getEntityDescriptor(IDP_ENTITY_ID));
+        assertNotNull(manager.getEntityDescriptor("http://other.example.com/metadata"));
+        verify(provisioning, times(2)).retrieveActive(ZONE_ID);
+    }
+
+    @Test
+    void entityIdHashesMustBeSha1Hashes() throws Exception {
+        byte[] hash = sha1(IDP_ENTITY_ID);
+
+        assertNull(manager.getEntityDescriptor(Arrays.copyOf(hash, 32)));
+        assertNull(manager.getEntityDescriptor(Arrays.copyOf(hash, 19)));
+        assertNotNull(manager.getEntityDescriptor(hash));
+    }
+
+    @Test
+    void availableProvidersCannotBeModified() {
+        assertThrows(UnsupportedOperationException.class, () -> manager.getAvailableProviders().clear());
+        assertEquals(2, manager.getAvailableProviders().size());
+    }
+
+    private static byte[] sha1(String entityId) throws Exception {
+        return MessageDigest.getInstance("SHA-1").digest(entityId.getBytes());
+    }
+}
@@ -254,6 +254,33 @@ public class SamlKeyManagerFactoryTests {
         assertEquals(ks1.getCertificate(alias), ks1.getCertificate(alias));
     }
 
+    @Test
+    void unchangedKeysReuseTheKeyManager() {
+        JKSKeyManager manager = (JKSKeyManager) samlKeyManagerFactory.getKeyManager(config);
+
+        SamlConfig sameKeys = new SamlConfig();
+        sameKeys.setKeys(config.getKeys());
+        sameKeys.setActiveKeyId(config.getActiveKeyId());
+
+        assertSame(manager, samlKeyManagerFactory.getKeyManager(config));
+        assertSame(manager, samlKeyManagerFactory.getKeyManager(sameKeys));
+    }
+
+    @Test
+    void rotatedKeysBuildANewKeyManager() {
+        JKSKeyManager manager = (JKSKeyManager) samlKeyManagerFactory.getKeyManager(config);
+
+        config.setActiveKeyId("key-1");
+        JKSKeyManager activated = (JKSKeyManager) samlKeyManagerFactory.getKeyManager(config);
+        assertNotSame(manager, activated);
+        assertEquals("key-1", activated.getDefaultCredentialName());
+
+        config.addKey("key-2", new SamlKey(key1, passphrase1, certificate1));
+        JKSKeyManager replaced = (JKSKeyManager) samlKeyManagerFactory.getKeyManager(config);
+        assertNotSame(activated, replaced);
+        assertEquals(replaced.getCertificate("key-1"), replaced.getCertificate("key-2"));
+    }
+
     @Test
     void testAddCertsKeysOnly() {
         config.setKeys(new HashMap<>());
@@ -6,6 +6,12 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -58,4 +64,59 @@ class LimitSqlAdapterTests {
         assertEquals(1, (int) jdbcTemplate.queryForObject("select count(*) from delete_top_rows_test where id = 'A'", Integer.class));
         assertEquals(3, (int) jdbcTemplate.queryForObject("select count(*) from delete_top_rows_test", Integer.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void upsertInsertsAndUpdates() {
+        jdbcTemplate.update("create table upsert_test (id varchar(10) primary key, expires integer, payload varchar(20))");
+        NamedParameterJdbcTemplate namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        try {
+            List<String> columns = Arrays.asList("id", "expires", "payload");
+            String upsert = limitSqlAdapter.getUpsertQuery("upsert_test", "id", columns, Arrays.asList("expires", "payload"));
+            String insertIfAbsent = limitSqlAdapter.getUpsertQuery("upsert_test", "id", columns, Collections.emptyList());
+
+            namedParameterJdbcTemplate.update(upsert, row("X", 1, "inserted"));
+            assertEquals("inserted", jdbcTemplate.queryForObject("select payload from upsert_test where id = 'X'", String.class));
+
+            namedParameterJdbcTemplate.update(upsert, row("X", 2, "updated"));
+            assertEquals("updated", jdbcTemplate.queryForObject("select payload from upsert_test where id = 'X'", String.class));
+            assertEquals(2, (int) jdbcTemplate.queryForObject("select expires from upsert_test where id = 'X'", Integer.class));
+
+            namedParameterJdbcTemplate.update(insertIfAbsent, row("X", 3, "ignored"));
+            namedParameterJdbcTemplate.update(insertIfAbsent, row("Y", 4, "inserted"));
+            assertEquals("updated", jdbcTemplate.queryForObject("select payload from upsert_test where id = 'X'", String.class));
+            assertEquals("inserted", jdbcTemplate.queryForObject("select payload from upsert_test where id = 'Y'", String.class));
+            assertEquals(2, (int) jdbcTemplate.queryForObject("select count(*) from upsert_test", Integer.class));
+        } finally {
+            jdbcTemplate.update("drop table upsert_test");
+        }
+    }
+
+    @Test
+    void upsertOnlyUpdatesRowsWithTheSameMatchColumn() {
+        jdbcTemplate.update("create table upsert_test (id varchar(10) primary key, expires integer, payload varchar(20), zone varchar(10))");
+        NamedParameterJdbcTemplate namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        try {
+            String upsert = limitSqlAdapter.getUpsertQuery("upsert_test", "id", Arrays.asList("id", "expires", "payload", "zone"),
+                    Arrays.asList("expires", "payload"), "zone");
+
+            namedParameterJdbcTemplate.update(upsert, row("X", 1, "inserted").addValue("zone", "z1"));
+            namedParameterJdbcTemplate.update(upsert, row("X", 2, "other zone").addValue("zone", "z2"));
+            assertEquals("inserted", jdbcTemplate.queryForObject("select payload from upsert_test where id = 'X'", String.class));
+            assertEquals(1, (int) jdbcTemplate.queryForObject("select expires from upsert_test where id = 'X'", Integer.class));
+            assertEquals("z1", jdbcTemplate.queryForObject("select zone from upsert_test where id = 'X'", String.class));
+
+            namedParameterJdbcTemplate.update(upsert, row("X", 3, "updated").addValue("zone", "z1"));
+            assertEquals("updated", jdbcTemplate.queryForObject("select payload from upsert_test where id = 'X'", String.class));
+            assertEquals(3, (int) jdbcTemplate.queryForObject("select expires from upsert_test where id = 'X'", Integer.class));
+        } finally {
+            jdbcTemplate.update("drop table upsert_test");
+        }
+    }
+
+    private static MapSqlParameterSource row(String id, int expires, String payload) {
+        return new MapSqlParameterSource()
+                .addValue("id", id)
+                .addValue("expires", expires)
+                .addValue("payload", payload);
+    }
+}
@@ -0,0 +1,216 @@
+package org.cloudfoundry.identity.uaa.scim.endpoints;
+
+import org.cloudfoundry.identity.uaa.scim.ScimBulkOperation;
+import org.cloudfoundry.identity.uaa.scim.ScimBulkResponse;
+import org.cloudfoundry.identity.uaa.scim.ScimGroup;
+import org.cloudfoundry.identity.uaa.scim.ScimGroupMember;
+import org.cloudfoundry.identity.uaa.scim.ScimGroupMembershipManager;
+import org.cloudfoundry.identity.uaa.scim.ScimUser;
+import org.cloudfoundry.identity.uaa.scim.exception.ScimException;
+import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceAlreadyExistsException;
+import org.cloudfoundry.identity.uaa.zone.beans.IdentityZoneManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionSystemException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ScimBulkEndpointsTests {
+
+    private ScimUserEndpoints scimUserEndpoints;
+    private ScimGroupEndpoints scimGroupEndpoints;
+    private ScimGroupMembershipManager membershipManager;
+    private PlatformTransactionManager transactionManager;
+    private ScimBulkEndpoints endpoints;
+
+    @BeforeEach
+    void setUp() {
+        scimUserEndpoints = mock(ScimUserEndpoints.class);
+        scimGroupEndpoints = mock(ScimGroupEndpoints.class);
+        membershipManager = mock(ScimGroupMembershipManager.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        IdentityZoneManager identityZoneManager = mock(IdentityZoneManager.class);
+        when(identityZoneManager.getCurrentIdentityZoneId()).thenReturn("zone");
+        endpoints = new ScimBulkEndpoints(scimUserEndpoints, scimGroupEndpoints, membershipManager, identityZoneManager,
+                transactionManager, Collections.emptyMap(), 5, 4096, 100);
+    }
+
+    @Test
+    void createsUsersAndMembersInBatchesAndResolvesBulkIds() throws Exception {
+        when(scimUserEndpoints.createValidatedUsers(anyList())).thenAnswer(invocation -> {
+            List<ScimUser> users = invocation.getArgument(0);
+            return users.stream().map(user -> user(user.getUserName() + "-id", user.getUserName())).collect(Collectors.toList());
+        });
+        ScimGroup group = new ScimGroup("group-id", "readers", "zone");
+        group.setVersion(0);
+        when(scimGroupEndpoints.createGroup(any(), any())).thenReturn(group);
+        when(membershipManager.addMembers(eq("group-id"), anyList(), eq("zone"))).thenAnswer(invocation -> invocation.getArgument(1));
+
+        ScimBulkResponse response = bulk("{\"Operations\":[" +
+                "{\"method\":\"POST\",\"path\":\"/Users\",\"bulkId\":\"u1\",\"data\":" + userJson("joe") + "}," +
+                "{\"method\":\"POST\",\"path\":\"/Users\",\"bulkId\":\"u2\",\"data\":" + userJson("mabel") + "}," +
+                "{\"method\":\"POST\",\"path\":\"/Groups\",\"bulkId\":\"g1\",\"data\":{\"displayName\":\"readers\"}}," +
+                "{\"method\":\"POST\",\"path\":\"/Groups/bulkId:g1/members\",\"bulkId\":\"m1\",\"data\":{\"value\":\"bulkId:u1\"}}," +
+                "{\"method\":\"POST\",\"path\":\"/Groups/bulkId:g1/members\",\"bulkId\":\"m2\",\"data\":{\"value\":\"bulkId:u2\"}}" +
+                "]}");
+
+        assertEquals(Arrays.asList("201", "201", "201", "201", "201"), statuses(response));
+        assertEquals("http://localhost/uaa/Users/joe-id", response.getOperations().get(0).getLocation());
+        assertEquals("\"0\"", response.getOperations().get(0).getVersion());
+        assertEquals("http://localhost/uaa/Groups/group-id/members/mabel-id", response.getOperations().get(4).getLocation());
+        verify(scimUserEndpoints, times(2)).validateNewUser(any(), any());
+        verify(scimUserEndpoints, times(1)).createValidatedUsers(anyList());
+        verify(scimUserEndpoints, never()).createUser(any(), any(), any());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ScimGroupMember>> members = ArgumentCaptor.forClass(List.class);
+        verify(membershipManager, times(1)).addMembers(eq("group-id"), members.capture(), eq("zone"));
+        assertEquals(Arrays.asList("joe-id", "mabel-id"),
+                members.getValue().stream().map(ScimGroupMember::getMemberId).collect(Collectors.toList()));
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    void executesOperationsOneByOneWhenTheBatchFails() throws Exception {
+        when(scimUserEndpoints.createValidatedUsers(anyList())).thenThrow(new ScimResourceAlreadyExistsException("Username already in use"));
+        when(scimUserEndpoints.createUser(any(), any(), any()))
+                .thenReturn(user("joe-id", "joe"))
+                .thenThrow(new ScimResourceAlreadyExistsException("Username already in use: mabel"));
+
+        ScimBulkResponse response = bulk("{\"Operations\":[" +
+                "{\"method\":\"POST\",\"path\":\"/Users\",\"bulkId\":\"u1\",\"data\":" + userJson("joe") + "}," +
+                "{\"method\":\"POST\",\"path\":\"/Users\",\"bulkId\":\"u2\",\"data\":" + userJson("mabel") + "}" +
+                "]}");
+
+        assertEquals(Arrays.asList("201", "409"), statuses(response));
+        ScimBulkOperation failed = response.getOperations().get(1);
+        assertNull(failed.getLocation());
+        assertEquals("Username already in use: mabel", ((Map<?, ?>) failed.getResponse()).get("detail"));
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    void bulkIdsOfARolledBackBatchAreNotResolved() throws Exception {
+        when(scimUserEndpoints.createValidatedUsers(anyList())).thenAnswer(invocation -> {
+            List<ScimUser> users = invocation.getArgument(0);
+            return users.stream().map(user -> user(user.getUserName() + "-id", user.getUserName())).collect(Collectors.toList());
+        });
+        doThrow(new TransactionSystemException("Commit failed")).when(transactionManager).commit(any());
+        when(scimUserEndpoints.createUser(any(), any(), any()))
+                .thenThrow(new ScimResourceAlreadyExistsException("Username already in use: joe"));
+
+        ScimBulkResponse response = bulk("{\"Operations\":[" +
+                "{\"method\":\"POST\",\"path\":\"/Users\",\"bulkId\":\"u1\",\"data\":" + userJson("joe") + "}," +
+                "{\"method\":\"DELETE\",\"path\":\"/Users/bulkId:u1\"}" +
+                "]}");
+
+        assertEquals(Arrays.asList("409", "409"), statuses(response));
+        assertEquals("Unresolved bulkId reference: u1", ((Map<?, ?>) response.getOperations().get(1).getResponse()).get("detail"));
+        verify(scimUserEndpoints, never()).deleteUser(any(), any(), any(), any());
+    }
+
+    @Test
+    void stopsAfterFailOnErrors() throws Exception {
+        ScimBulkResponse response = bulk("{\"failOnErrors\":1,\"Operations\":[" +
+                "{\"method\":\"GET\",\"path\":\"/Users/joe-id\"}," +
+                "{\"method\":\"DELETE\",\"path\":\"/Users/joe-id\"}" +
+                "]}");
+
+        assertEquals(Collections.singletonList("400"), statuses(response));
+        verify(scimUserEndpoints, never()).deleteUser(any(), any(), any(), any());
+    }
+
+    @Test
+    void queuedOperationsAreExecutedBeforeAFailureStopsTheRequest() throws Exception {
+        when(scimUserEndpoints.createValidatedUsers(anyList())).thenThrow(new ScimResourceAlreadyExistsException("Username already in use"));
+        when(scimUserEndpoints.createUser(any(), any(), any()))
+                .thenReturn(user("joe-id", "joe"))
+                .thenThrow(new ScimResourceAlreadyExistsException("Username already in use: mabel"));
+
+        ScimBulkResponse response = bulk("{\"failOnErrors\":1,\"Operations\":[" +
+                "{\"method\":\"POST\",\"path\":\"/Users\",\"bulkId\":\"u1\",\"data\":" + userJson("joe") + "}," +
+                "{\"method\":\"POST\",\"path\":\"/Users\",\"bulkId\":\"u2\",\"data\":" + userJson("mabel") + "}," +
+                "{\"method\":\"POST\",\"bulkId\":\"u3\"}," +
+                "{\"method\":\"DELETE\",\"path\":\"/Users/joe-id\"}" +
+                "]}");
+
+        assertEquals(Arrays.asList("201", "409"), statuses(response));
+        assertEquals("http://localhost/uaa/Users/joe-id", response.getOperations().get(0).getLocation());
+        verify(scimUserEndpoints, times(2)).createUser(any(), any(), any());
+        verify(scimUserEndpoints, never()).deleteUser(any(), any(), any(), any());
+    }
+
+    @Test
+    void failsOperationsWithUnresolvedBulkIds() throws Exception {
+        ScimBulkResponse response = bulk("{\"Operations\":[" +
+                "{\"method\":\"DELETE\",\"path\":\"/Users/bulkId:unknown\"}," +
+                "{\"method\":\"DELETE\",\"path\":\"/Groups/group-id\",\"version\":\"3\"}" +
+                "]}");
+
+        assertEquals(Arrays.asList("409", "200"), statuses(response));
+        verify(scimGroupEndpoints).deleteGroup(eq("group-id"), eq("3"), any());
+    }
+
+    @Test
+    void rejectsRequestsOverTheLimits() {
+        StringBuilder operations = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            operations.append(i == 0 ? "" : ",").append("{\"method\":\"DELETE\",\"path\":\"/Users/id").append(i).append("\"}");
+        }
+        ScimException tooManyOperations = assertThrows(ScimException.class, () -> bulk("{\"Operations\":[" + operations + "]}"));
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, tooManyOperations.getStatus());
+
+        char[] padding = new char[4096];
+        Arrays.fill(padding, ' ');
+        ScimException tooLarge = assertThrows(ScimException.class, () -> bulk("{\"Operations\":[]}" + new String(padding)));
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, tooLarge.getStatus());
+
+        ScimException invalid = assertThrows(ScimException.class, () -> bulk("{\"Operations\":"));
+        assertEquals(HttpStatus.BAD_REQUEST, invalid.getStatus());
+    }
+
+    private ScimBulkResponse bulk(String body) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/uaa/Bulk");
+        request.setContextPath("/uaa");
+        request.setServletPath("/Bulk");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return endpoints.bulk(request, new MockHttpServletResponse(), null);
+    }
+
+    private static List<String> statuses(ScimBulkResponse response) {
+        return response.getOperations().stream().map(ScimBulkOperation::getStatus).collect(Collectors.toList());
+    }
+
+    private static String userJson(String userName) {
+        return "{\"userName\":\"" + userName + "\",\"password\":\"secret\",\"emails\":[{\"value\":\"" + userName + "@test.org\"}]}";
+    }
+
+    private static ScimUser user(String id, String userName) {
+        ScimUser user = new ScimUser(id, userName, "Given", "Family");
+        user.setVersion(0);
+        return user;
+    }
+}
@@ -0,0 +1,96 @@
+package org.cloudfoundry.identity.uaa.scim.endpoints;
+
+import org.cloudfoundry.identity.uaa.scim.ScimGroup;
+import org.cloudfoundry.identity.uaa.scim.ScimGroupMember;
+import org.cloudfoundry.identity.uaa.scim.ScimGroupMembershipManager;
+import org.cloudfoundry.identity.uaa.scim.ScimGroupProvisioning;
+import org.cloudfoundry.identity.uaa.scim.ScimUser;
+import org.cloudfoundry.identity.uaa.scim.ScimUserProvisioning;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.cloudfoundry.identity.uaa.zone.beans.IdentityZoneManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ScimExportEndpointsTests {
+
+    private ScimUserProvisioning scimUserProvisioning;
+    private ScimGroupProvisioning scimGroupProvisioning;
+    private ScimGroupMembershipManager membershipManager;
+    private PlatformTransactionManager transactionManager;
+    private ScimExportEndpoints endpoints;
+
+    @BeforeEach
+    void setUp() {
+        scimUserProvisioning = mock(ScimUserProvisioning.class);
+        scimGroupProvisioning = mock(ScimGroupProvisioning.class);
+        membershipManager = mock(ScimGroupMembershipManager.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        IdentityZoneManager identityZoneManager = mock(IdentityZoneManager.class);
+        when(identityZoneManager.getCurrentIdentityZoneId()).thenReturn("zone");
+        endpoints = new ScimExportEndpoints(scimUserProvisioning, scimGroupProvisioning, membershipManager,
+                identityZoneManager, transactionManager, 100);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void writesOneLinePerResource() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<ScimUser> consumer = invocation.getArgument(2);
+            consumer.accept(new ScimUser("user-1", "joe", "Joe", "User"));
+            consumer.accept(new ScimUser("user-2", "mabel", "Mabel", "User"));
+            return null;
+        }).when(scimUserProvisioning).streamAll(eq("zone"), eq(100), any());
+        doAnswer(invocation -> {
+            ((Consumer<ScimGroup>) invocation.getArgument(2)).accept(new ScimGroup("group-1", "readers", "zone"));
+            return null;
+        }).when(scimGroupProvisioning).streamAll(eq("zone"), eq(100), any());
+        doAnswer(invocation -> {
+            ((BiConsumer<String, ScimGroupMember>) invocation.getArgument(2)).accept("group-1", new ScimGroupMember("user-1"));
+            return null;
+        }).when(membershipManager).streamAll(eq("zone"), eq(100), any());
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        endpoints.export(response);
+
+        assertEquals(ScimExportEndpoints.NDJSON_MEDIA_TYPE + ";charset=UTF-8", response.getContentType());
+        String[] lines = response.getContentAsString().split("\n", -1);
+        assertEquals(5, lines.length);
+        assertEquals("", lines[4]);
+
+        Map<String, Object> user = JsonUtils.readValueAsMap(lines[0]);
+        assertEquals("User", user.get("type"));
+        assertEquals("joe", ((Map<?, ?>) user.get("resource")).get("userName"));
+        assertEquals("mabel", ((Map<?, ?>) JsonUtils.readValueAsMap(lines[1]).get("resource")).get("userName"));
+        Map<String, Object> group = JsonUtils.readValueAsMap(lines[2]);
+        assertEquals("Group", group.get("type"));
+        assertEquals("readers", ((Map<?, ?>) group.get("resource")).get("displayName"));
+        Map<String, Object> member = JsonUtils.readValueAsMap(lines[3]);
+        assertEquals("GroupMember", member.get("type"));
+        assertEquals("group-1", member.get("groupId"));
+        assertEquals("user-1", ((Map<?, ?>) member.get("resource")).get("value"));
+        assertNull(((Map<?, ?>) user.get("resource")).get("password"));
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void rejectsInvalidFetchSize() {
+        assertThrows(IllegalArgumentException.class, () -> new ScimExportEndpoints(scimUserProvisioning,
+                scimGroupProvisioning, membershipManager, mock(IdentityZoneManager.class), transactionManager, 0));
+    }
+}
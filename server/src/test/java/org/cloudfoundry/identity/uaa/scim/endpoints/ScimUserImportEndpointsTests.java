@@ -0,0 +1,93 @@
+package org.cloudfoundry.identity.uaa.scim.endpoints;
+
+import org.cloudfoundry.identity.uaa.scim.DisableInternalUserManagementFilter;
+import org.cloudfoundry.identity.uaa.scim.exception.ScimException;
+import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceNotFoundException;
+import org.cloudfoundry.identity.uaa.scim.imports.ScimUserImporter;
+import org.cloudfoundry.identity.uaa.scim.imports.UserImportJob;
+import org.cloudfoundry.identity.uaa.zone.beans.IdentityZoneManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ScimUserImportEndpointsTests {
+
+    private ScimUserImporter importer;
+    private ScimUserImportEndpoints endpoints;
+
+    @BeforeEach
+    void setUp() {
+        importer = mock(ScimUserImporter.class);
+        IdentityZoneManager identityZoneManager = mock(IdentityZoneManager.class);
+        when(identityZoneManager.getCurrentIdentityZoneId()).thenReturn("zone");
+        endpoints = new ScimUserImportEndpoints(importer, identityZoneManager, Collections.emptyMap(), 16);
+    }
+
+    @Test
+    void spoolsTheRequestAndSubmitsTheImport() throws Exception {
+        UserImportJob job = mock(UserImportJob.class);
+        when(job.getId()).thenReturn("job-1");
+        ArgumentCaptor<Path> file = ArgumentCaptor.forClass(Path.class);
+        when(importer.submit(file.capture(), eq(ScimUserImporter.Format.CSV), eq(true), eq(true))).thenAnswer(invocation -> {
+            assertEquals("userName\njoe\n", new String(Files.readAllBytes(invocation.getArgument(0)), StandardCharsets.UTF_8));
+            return job;
+        });
+        MockHttpServletRequest request = request("text/csv; charset=UTF-8", "userName\njoe\n");
+        request.setAttribute(DisableInternalUserManagementFilter.DISABLE_INTERNAL_USER_MANAGEMENT, true);
+
+        ResponseEntity<UserImportJob> response = endpoints.importUsers(true, request);
+
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertSame(job, response.getBody());
+        assertEquals("http://localhost/UserImports/job-1", response.getHeaders().getFirst("Location"));
+        Files.deleteIfExists(file.getValue());
+    }
+
+    @Test
+    void rejectsUnsupportedAndOversizedImports() {
+        ScimException unsupported = assertThrows(ScimException.class,
+                () -> endpoints.importUsers(false, request("application/xml", "<users/>")));
+        assertEquals(HttpStatus.UNSUPPORTED_MEDIA_TYPE, unsupported.getStatus());
+
+        MockHttpServletRequest oversized = request(ScimExportEndpoints.NDJSON_MEDIA_TYPE, "{\"userName\":\"joe\"}\n");
+        ScimException tooLarge = assertThrows(ScimException.class, () -> endpoints.importUsers(false, oversized));
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, tooLarge.getStatus());
+        verify(importer, never()).submit(any(), any(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void returnsJobsOfTheCurrentZone() {
+        UserImportJob job = mock(UserImportJob.class);
+        when(importer.getJob("job-1", "zone")).thenReturn(job);
+
+        assertSame(job, endpoints.getImport("job-1"));
+        assertThrows(ScimResourceNotFoundException.class, () -> endpoints.getImport("job-2"));
+    }
+
+    private static MockHttpServletRequest request(String contentType, String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/UserImports");
+        request.setServletPath("/UserImports");
+        request.setContentType(contentType);
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+}
@@ -0,0 +1,80 @@
+package org.cloudfoundry.identity.uaa.scim.event;
+
+import org.cloudfoundry.identity.uaa.scim.ScimUser;
+import org.cloudfoundry.identity.uaa.zone.beans.IdentityZoneManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ScimEventPublisherTests {
+
+    private ApplicationEventPublisher applicationEventPublisher;
+    private ScimEventPublisher scimEventPublisher;
+    private final List<ScimUser> users = Arrays.asList(
+            new ScimUser("joe-id", "joe", "Joe", "User"),
+            new ScimUser("mabel-id", "mabel", "Mabel", "User"));
+
+    @BeforeEach
+    void setUp() {
+        IdentityZoneManager identityZoneManager = mock(IdentityZoneManager.class);
+        when(identityZoneManager.getCurrentIdentityZoneId()).thenReturn("zone");
+        applicationEventPublisher = mock(ApplicationEventPublisher.class);
+        scimEventPublisher = new ScimEventPublisher(identityZoneManager);
+        scimEventPublisher.setApplicationEventPublisher(applicationEventPublisher);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void usersCreatedOutsideATransactionArePublishedRightAway() {
+        scimEventPublisher.usersCreated(users);
+
+        ArgumentCaptor<UserModifiedEvent> events = ArgumentCaptor.forClass(UserModifiedEvent.class);
+        verify(applicationEventPublisher, times(2)).publishEvent(events.capture());
+        assertEquals("joe-id", events.getAllValues().get(0).getUserId());
+        assertEquals("zone", events.getAllValues().get(1).getIdentityZoneId());
+    }
+
+    @Test
+    void usersCreatedInATransactionArePublishedWhenItCommits() {
+        TransactionSynchronizationManager.initSynchronization();
+        scimEventPublisher.usersCreated(users);
+        verify(applicationEventPublisher, never()).publishEvent(any());
+
+        TransactionSynchronizationUtils.triggerAfterCommit();
+
+        verify(applicationEventPublisher, times(2)).publishEvent(any(UserModifiedEvent.class));
+    }
+
+    @Test
+    void usersCreatedInARolledBackTransactionAreNotPublished() {
+        TransactionSynchronizationManager.initSynchronization();
+        scimEventPublisher.usersCreated(users);
+
+        TransactionSynchronizationUtils.invokeAfterCompletion(
+                TransactionSynchronizationManager.getSynchronizations(), TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verify(applicationEventPublisher, never()).publishEvent(any());
+    }
+}
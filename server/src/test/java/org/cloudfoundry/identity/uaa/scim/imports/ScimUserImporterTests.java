@@ -0,0 +1,277 @@
+package org.cloudfoundry.identity.uaa.scim.imports;
+
+import org.cloudfoundry.identity.uaa.annotations.WithDatabaseContext;
+import org.cloudfoundry.identity.uaa.constants.OriginKeys;
+import org.cloudfoundry.identity.uaa.provider.IdentityProviderProvisioning;
+import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
+import org.cloudfoundry.identity.uaa.resources.jdbc.LimitSqlAdapterFactory;
+import org.cloudfoundry.identity.uaa.scim.ScimGroup;
+import org.cloudfoundry.identity.uaa.scim.ScimGroupMember;
+import org.cloudfoundry.identity.uaa.scim.ScimUser;
+import org.cloudfoundry.identity.uaa.scim.event.ScimEventPublisher;
+import org.cloudfoundry.identity.uaa.scim.event.UserModifiedEvent;
+import org.cloudfoundry.identity.uaa.scim.exception.InvalidPasswordException;
+import org.cloudfoundry.identity.uaa.scim.jdbc.JdbcScimGroupMembershipManager;
+import org.cloudfoundry.identity.uaa.scim.jdbc.JdbcScimGroupProvisioning;
+import org.cloudfoundry.identity.uaa.scim.jdbc.JdbcScimUserProvisioning;
+import org.cloudfoundry.identity.uaa.scim.validate.PasswordValidator;
+import org.cloudfoundry.identity.uaa.test.TestUtils;
+import org.cloudfoundry.identity.uaa.util.TimeServiceImpl;
+import org.cloudfoundry.identity.uaa.util.beans.DbUtils;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.cloudfoundry.identity.uaa.zone.beans.IdentityZoneManagerImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@WithDatabaseContext
+class ScimUserImporterTests {
+
+    private JdbcScimUserProvisioning jdbcScimUserProvisioning;
+    private JdbcScimGroupProvisioning jdbcScimGroupProvisioning;
+    private JdbcScimGroupMembershipManager jdbcScimGroupMembershipManager;
+    private ScimUserImporter importer;
+    private String zoneId;
+    private String groupId;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        zoneId = IdentityZone.getUaaZoneId();
+        JdbcPagingListFactory pagingListFactory = new JdbcPagingListFactory(jdbcTemplate, LimitSqlAdapterFactory.getLimitSqlAdapter());
+        jdbcScimUserProvisioning = new JdbcScimUserProvisioning(jdbcTemplate, pagingListFactory, passwordEncoder, new IdentityZoneManagerImpl());
+        DbUtils dbUtils = new DbUtils();
+        jdbcScimGroupProvisioning = new JdbcScimGroupProvisioning(jdbcTemplate, pagingListFactory, dbUtils);
+        jdbcScimGroupMembershipManager = new JdbcScimGroupMembershipManager(
+                jdbcTemplate, new TimeServiceImpl(), jdbcScimUserProvisioning, null, dbUtils);
+        jdbcScimGroupMembershipManager.setScimGroupProvisioning(jdbcScimGroupProvisioning);
+        groupId = jdbcScimGroupProvisioning.create(new ScimGroup(null, "importers", zoneId), zoneId).getId();
+
+        PasswordValidator passwordValidator = mock(PasswordValidator.class);
+        doThrow(new InvalidPasswordException("Password must be at least 8 characters in length."))
+                .when(passwordValidator).validate("weak");
+        importer = new ScimUserImporter(jdbcScimUserProvisioning, jdbcScimGroupProvisioning, jdbcScimGroupMembershipManager,
+                mock(IdentityProviderProvisioning.class), passwordValidator, passwordEncoder,
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource()), 3, 2, 1, 100, 100);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        importer.destroy();
+        TestUtils.cleanAndSeedDb(jdbcTemplate);
+    }
+
+    @Test
+    void importsCsvAndReportsFailedRows() throws Exception {
+        Path file = write("userName,email,password,groups\n" +
+                "imp-joe,joe@imp.org,j7hyqpassX,importers\n" +
+                "imp-mabel,mabel@imp.org,weak,\n" +
+                "imp-joe,joe2@imp.org,j7hyqpassX,\n" +
+                "imp-ann,ann@imp.org,j7hyqpassX,unknown\n" +
+                "imp-bob,bob@imp.org,j7hyqpassX,importers\n");
+
+        UserImportJob job = await(importer.submit(file, ScimUserImporter.Format.CSV, false, false));
+
+        assertEquals(UserImportJob.Status.COMPLETED, job.getStatus());
+        assertEquals(5, job.getProcessed());
+        assertEquals(2, job.getImported());
+        assertEquals(3, job.getFailed());
+        List<UserImportJob.RowError> errors = job.getErrors();
+        assertEquals(3, errors.get(0).getLine());
+        assertEquals("Password must be at least 8 characters in length.", errors.get(0).getMessage());
+        assertEquals(4, errors.get(1).getLine());
+        assertEquals("Username already in use", errors.get(1).getMessage());
+        assertEquals(5, errors.get(2).getLine());
+        assertEquals("Unknown group: unknown", errors.get(2).getMessage());
+        // the file is deleted right after the job is finished
+        for (int i = 0; i < 100 && Files.exists(file); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(Files.exists(file));
+
+        ScimUser joe = jdbcScimUserProvisioning.retrieveByUsernameAndOriginAndZone("imp-joe", OriginKeys.UAA, zoneId).get(0);
+        assertEquals("joe@imp.org", joe.getPrimaryEmail());
+        assertTrue(passwordEncoder.matches("j7hyqpassX",
+                jdbcTemplate.queryForObject("select password from users where username=?", String.class, "imp-bob")));
+        List<String> memberIds = jdbcScimGroupMembershipManager.getMembers(groupId, false, zoneId).stream()
+                .map(ScimGroupMember::getMemberId).collect(Collectors.toList());
+        assertEquals(2, memberIds.size());
+        assertTrue(memberIds.contains(joe.getId()));
+    }
+
+    @Test
+    void importsHashedPasswordsAsTheyAre() throws Exception {
+        String hash = new BCryptPasswordEncoder().encode("j7hyqpassX");
+        Path file = write("{\"userName\":\"imp-joe\",\"emails\":[{\"value\":\"joe@imp.org\"}],\"password\":\"" + hash + "\"}\n" +
+                "{\"userName\":\"imp-mabel\",\"emails\":[{\"value\":\"mabel@imp.org\"}],\"password\":\"j7hyqpassX\"}\n" +
+                "{\"userName\":\"imp-ann\",\"emails\":[{\"value\":\"ann@imp.org\"}],\"origin\":\"ldap\",\"groups\":[{\"value\":\"" + groupId + "\"}]}\n");
+
+        UserImportJob job = await(importer.submit(file, ScimUserImporter.Format.NDJSON, true, false));
+
+        assertEquals(2, job.getImported());
+        assertEquals(1, job.getFailed());
+        assertEquals(2, job.getErrors().get(0).getLine());
+        assertEquals("Password must be a bcrypt hash", job.getErrors().get(0).getMessage());
+        assertEquals(hash, jdbcTemplate.queryForObject("select password from users where username=?", String.class, "imp-joe"));
+        ScimUser ann = jdbcScimUserProvisioning.retrieveByUsernameAndOriginAndZone("imp-ann", OriginKeys.LDAP, zoneId).get(0);
+        assertEquals(ann.getId(), jdbcScimGroupMembershipManager.getMembers(groupId, false, zoneId).get(0).getMemberId());
+    }
+
+    @Test
+    void publishesUserCreatedEventsOnlyForCommittedUsers() throws Exception {
+        JdbcScimUserProvisioning userProvisioning = spy(jdbcScimUserProvisioning);
+        JdbcScimGroupMembershipManager membershipManager = spy(jdbcScimGroupMembershipManager);
+        ApplicationEventPublisher applicationEventPublisher = mock(ApplicationEventPublisher.class);
+        ScimEventPublisher scimEventPublisher = new ScimEventPublisher(new IdentityZoneManagerImpl());
+        scimEventPublisher.setApplicationEventPublisher(applicationEventPublisher);
+        doAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            List<ScimUser> users = (List<ScimUser>) invocation.callRealMethod();
+            scimEventPublisher.usersCreated(users);
+            return users;
+        }).when(userProvisioning).importUsers(anyList(), anyString());
+        doThrow(new IllegalStateException("Lost connection")).doCallRealMethod()
+                .when(membershipManager).addMembers(anyString(), anyList(), anyString());
+        importer.destroy();
+        importer = new ScimUserImporter(userProvisioning, jdbcScimGroupProvisioning, membershipManager,
+                mock(IdentityProviderProvisioning.class), mock(PasswordValidator.class), passwordEncoder,
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource()), 3, 2, 1, 100, 100);
+        Path file = write("userName,email,password,groups\n" +
+                "imp-joe,joe@imp.org,j7hyqpassX,importers\n" +
+                "imp-bob,bob@imp.org,j7hyqpassX,importers\n");
+
+        UserImportJob job = await(importer.submit(file, ScimUserImporter.Format.CSV, false, false));
+
+        assertEquals(2, job.getImported());
+        ArgumentCaptor<UserModifiedEvent> events = ArgumentCaptor.forClass(UserModifiedEvent.class);
+        verify(applicationEventPublisher, times(2)).publishEvent(events.capture());
+        assertEquals(Arrays.asList("imp-joe", "imp-bob"),
+                events.getAllValues().stream().map(UserModifiedEvent::getUsername).collect(Collectors.toList()));
+    }
+
+    @Test
+    void addsMembershipsWithoutReadingTheExistingMembers() throws Exception {
+        jdbcTemplate.update("insert into group_membership (group_id, member_id, member_type, added, origin, identity_zone_id) values (?,?,?,?,?,?)",
+                groupId, "existing-member", "USER", new Timestamp(System.currentTimeMillis()), OriginKeys.UAA, zoneId);
+        JdbcScimGroupMembershipManager membershipManager = spy(jdbcScimGroupMembershipManager);
+        importer.destroy();
+        importer = new ScimUserImporter(jdbcScimUserProvisioning, jdbcScimGroupProvisioning, membershipManager,
+                mock(IdentityProviderProvisioning.class), mock(PasswordValidator.class), passwordEncoder,
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource()), 3, 2, 1, 100, 100);
+        Path file = write("userName,email,password,groups\n" +
+                "imp-joe,joe@imp.org,j7hyqpassX,importers\n" +
+                "imp-bob,bob@imp.org,j7hyqpassX,importers\n");
+
+        UserImportJob job = await(importer.submit(file, ScimUserImporter.Format.CSV, false, false));
+
+        assertEquals(2, job.getImported());
+        verify(membershipManager, never()).getMembers(anyString(), anyBoolean(), anyString());
+        assertEquals(3, jdbcScimGroupMembershipManager.getMembers(groupId, false, zoneId).size());
+    }
+
+    @Test
+    void rejectsBcryptHashesThatCannotBeVerified() throws Exception {
+        String hash2y = new BCryptPasswordEncoder(BCryptPasswordEncoder.BCryptVersion.$2Y).encode("j7hyqpassX");
+        String hash2x = new BCryptPasswordEncoder().encode("j7hyqpassX").replaceFirst("^\\$2a\\$", "\\$2x\\$");
+        Path file = write("{\"userName\":\"imp-joe\",\"emails\":[{\"value\":\"joe@imp.org\"}],\"password\":\"" + hash2y + "\"}\n" +
+                "{\"userName\":\"imp-mabel\",\"emails\":[{\"value\":\"mabel@imp.org\"}],\"password\":\"" + hash2x + "\"}\n");
+
+        UserImportJob job = await(importer.submit(file, ScimUserImporter.Format.NDJSON, true, false));
+
+        assertEquals(1, job.getImported());
+        assertEquals(2, job.getErrors().get(0).getLine());
+        assertEquals("Password must be a bcrypt hash", job.getErrors().get(0).getMessage());
+        assertTrue(jdbcScimUserProvisioning.retrieveByUsernameAndZone("imp-mabel", zoneId).isEmpty());
+    }
+
+    @Test
+    void rejectsUaaUsersWhenInternalUserManagementIsDisabled() throws Exception {
+        Path file = write("userName,email,origin\n" +
+                "imp-joe,joe@imp.org,\n" +
+                "imp-ann,ann@imp.org,ldap\n");
+
+        UserImportJob job = await(importer.submit(file, ScimUserImporter.Format.CSV, false, true));
+
+        assertEquals(1, job.getImported());
+        assertEquals(2, job.getErrors().get(0).getLine());
+        assertTrue(jdbcScimUserProvisioning.retrieveByUsernameAndZone("imp-joe", zoneId).isEmpty());
+    }
+
+    @Test
+    void failsTheJobIfTheInputCannotBeRead() throws Exception {
+        Path file = write("userName,shoeSize\n");
+
+        UserImportJob job = await(importer.submit(file, ScimUserImporter.Format.CSV, false, false));
+
+        assertEquals(UserImportJob.Status.FAILED, job.getStatus());
+        assertTrue(job.getMessage().startsWith("Unknown CSV column: shoeSize"));
+        assertEquals(0, job.getProcessed());
+    }
+
+    @Test
+    void findsJobsOnlyInTheirZone() throws Exception {
+        UserImportJob job = await(importer.submit(write(""), ScimUserImporter.Format.NDJSON, false, false));
+
+        assertSame(job, importer.getJob(job.getId(), zoneId));
+        assertNull(importer.getJob(job.getId(), "other-zone"));
+        assertNull(importer.getJob("unknown", zoneId));
+    }
+
+    @Test
+    void rejectsInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new ScimUserImporter(null, null, null, null, null, null,
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource()), 0, 0, 1, 100, 100));
+    }
+
+    private static Path write(String content) throws Exception {
+        Path file = Files.createTempFile("user-import-test-", ".tmp");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static UserImportJob await(UserImportJob job) throws InterruptedException {
+        for (int i = 0; i < 1000 && !job.isFinished(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(job.isFinished());
+        return job;
+    }
+}
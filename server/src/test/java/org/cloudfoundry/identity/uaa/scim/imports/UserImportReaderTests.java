@@ -0,0 +1,120 @@
+package org.cloudfoundry.identity.uaa.scim.imports;
+
+import org.cloudfoundry.identity.uaa.scim.ScimUser;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserImportReaderTests {
+
+    @Test
+    void readsCsvWithColumnsInAnyOrder() throws IOException {
+        String csv = "email,USERNAME,password,groups,active\r\n" +
+                "joe@test.org,joe,\"pass,\"\"word\"\"\",readers; writers,false\r\n" +
+                "\r\n" +
+                "mabel@test.org,mabel,\"multi\nline\",,\n";
+        UserImportReader reader = new UserImportReader(new StringReader(csv), ScimUserImporter.Format.CSV);
+
+        UserImportReader.Row joe = reader.next();
+        assertEquals(2, joe.line);
+        assertNull(joe.error);
+        assertEquals("joe", joe.user.getUserName());
+        assertEquals("joe@test.org", joe.user.getPrimaryEmail());
+        assertEquals("pass,\"word\"", joe.user.getPassword());
+        assertFalse(joe.user.isActive());
+        assertTrue(joe.user.isVerified());
+        assertEquals(2, joe.user.getGroups().size());
+        assertTrue(joe.user.getGroups().contains(new ScimUser.Group(null, "readers")));
+        assertTrue(joe.user.getGroups().contains(new ScimUser.Group(null, "writers")));
+
+        UserImportReader.Row mabel = reader.next();
+        assertEquals(4, mabel.line);
+        assertEquals("multi\nline", mabel.user.getPassword());
+        assertNull(mabel.user.getGroups());
+        assertTrue(mabel.user.isActive());
+
+        assertNull(reader.next());
+    }
+
+    @Test
+    void reportsInvalidCsvRowsWithoutTheirContent() throws IOException {
+        String csv = "userName,password,verified\n" +
+                "joe,secret\n" +
+                "mabel,secret,maybe\n";
+        UserImportReader reader = new UserImportReader(new StringReader(csv), ScimUserImporter.Format.CSV);
+
+        UserImportReader.Row missing = reader.next();
+        assertEquals(2, missing.line);
+        assertNull(missing.user);
+        assertEquals("Expected 3 values but found 2", missing.error);
+
+        UserImportReader.Row invalid = reader.next();
+        assertEquals(3, invalid.line);
+        assertEquals("Invalid value for verified, expected true or false", invalid.error);
+        assertNull(reader.next());
+    }
+
+    @Test
+    void reportsRecordsWithAnUnterminatedQuote() throws IOException {
+        char[] padding = new char[UserImportReader.MAX_RECORD_LENGTH];
+        Arrays.fill(padding, 'x');
+        String csv = "userName,password\n" +
+                "joe,\"secret\n" +
+                new String(padding) + "\n" +
+                "mabel,secret\n";
+        UserImportReader reader = new UserImportReader(new StringReader(csv), ScimUserImporter.Format.CSV);
+
+        UserImportReader.Row unterminated = reader.next();
+        assertEquals(2, unterminated.line);
+        assertNull(unterminated.user);
+        assertEquals("Record exceeds " + UserImportReader.MAX_RECORD_LENGTH + " characters, is a quote missing?", unterminated.error);
+
+        UserImportReader.Row mabel = reader.next();
+        assertEquals(4, mabel.line);
+        assertEquals("mabel", mabel.user.getUserName());
+        assertNull(reader.next());
+    }
+
+    @Test
+    void rejectsInvalidCsvHeader() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new UserImportReader(new StringReader(""), ScimUserImporter.Format.CSV));
+        assertThrows(IllegalArgumentException.class,
+                () -> new UserImportReader(new StringReader("userName,shoeSize\n"), ScimUserImporter.Format.CSV));
+        assertThrows(IllegalArgumentException.class,
+                () -> new UserImportReader(new StringReader("userName,username\n"), ScimUserImporter.Format.CSV));
+        assertThrows(IllegalArgumentException.class,
+                () -> new UserImportReader(new StringReader("email,password\n"), ScimUserImporter.Format.CSV));
+    }
+
+    @Test
+    void readsOneJsonUserPerLine() throws IOException {
+        String ndjson = "{\"userName\":\"joe\",\"emails\":[{\"value\":\"joe@test.org\"}],\"password\":\"secret\"}\n" +
+                "\n" +
+                "{\"userName\":\"mabel\",\"password\":\"secret\"\n" +
+                "{\"userName\":\"marissa\",\"groups\":[{\"display\":\"readers\"}]}";
+        UserImportReader reader = new UserImportReader(new StringReader(ndjson), ScimUserImporter.Format.NDJSON);
+
+        UserImportReader.Row joe = reader.next();
+        assertEquals(1, joe.line);
+        assertEquals("joe", joe.user.getUserName());
+        assertEquals("secret", joe.user.getPassword());
+
+        UserImportReader.Row invalid = reader.next();
+        assertEquals(3, invalid.line);
+        assertEquals("Invalid JSON user", invalid.error);
+
+        UserImportReader.Row marissa = reader.next();
+        assertEquals(4, marissa.line);
+        assertEquals("readers", marissa.user.getGroups().iterator().next().getDisplay());
+        assertNull(reader.next());
+    }
+}
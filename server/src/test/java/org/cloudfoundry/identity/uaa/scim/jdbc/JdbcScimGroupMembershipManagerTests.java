@@ -34,10 +34,12 @@ import org.springframework.security.oauth2.common.util.RandomValueStringGenerato
 
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -46,6 +48,7 @@ import static org.cloudfoundry.identity.uaa.constants.OriginKeys.LDAP;
 import static org.cloudfoundry.identity.uaa.constants.OriginKeys.LOGIN_SERVER;
 import static org.cloudfoundry.identity.uaa.constants.OriginKeys.UAA;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsCollectionContaining.hasItem;
 import static org.hamcrest.core.IsEqual.equalTo;
@@ -418,6 +421,43 @@ class JdbcScimGroupMembershipManagerTests {
         assertEquals(4, groups.size());
     }
 
+    @Test
+    void canGetGroupsForMembers() {
+        addMember("g1", "m3", "USER", "READER", jdbcTemplate, uaaIdentityZone.getId());
+        addMember("g1", "g2", "GROUP", "READER", jdbcTemplate, uaaIdentityZone.getId());
+        addMember("g2", "g3", "GROUP", "READER", jdbcTemplate, uaaIdentityZone.getId());
+        addMember("g3", "g1", "GROUP", "READER", jdbcTemplate, uaaIdentityZone.getId());
+        addMember("g3", "m1", "USER", "READER", jdbcTemplate, uaaIdentityZone.getId());
+        List<String> members = Arrays.asList("m1", "m2", "m3");
+
+        for (boolean transitive : new boolean[]{false, true}) {
+            Map<String, Set<ScimGroup>> groups = jdbcScimGroupMembershipManager.getGroupsWithMembers(members, transitive, uaaIdentityZone.getId());
+            for (String member : members) {
+                assertEquals(jdbcScimGroupMembershipManager.getGroupsWithMember(member, transitive, uaaIdentityZone.getId()), groups.get(member));
+            }
+        }
+        assertEquals(4, jdbcScimGroupMembershipManager.getGroupsWithMembers(members, true, uaaIdentityZone.getId()).get("m3").size());
+        assertEquals(1, jdbcScimGroupMembershipManager.getGroupsWithMembers(members, true, uaaIdentityZone.getId()).get("m2").size());
+    }
+
+    @Test
+    void canGetMembersWithEntities() {
+        addMember("g1", "m1", "USER", "READER", jdbcTemplate, uaaIdentityZone.getId());
+        addMember("g1", "m2", "USER", "READER", jdbcTemplate, uaaIdentityZone.getId());
+        addMember("g1", "g2", "GROUP", "READER", jdbcTemplate, uaaIdentityZone.getId());
+
+        List<ScimGroupMember> members = jdbcScimGroupMembershipManager.getMembers("g1", true, uaaIdentityZone.getId());
+        assertEquals(3, members.size());
+        for (ScimGroupMember member : members) {
+            assertNotNull(member.getEntity());
+            assertEquals(member.getMemberId(), member.getEntity().getId().trim());
+        }
+
+        addMember("g3", "missing", "USER", "READER", jdbcTemplate, uaaIdentityZone.getId());
+        assertThrows(ScimResourceNotFoundException.class,
+                () -> jdbcScimGroupMembershipManager.getMembers("g3", true, uaaIdentityZone.getId()));
+    }
+
     @Test
     void canAddMember() throws SQLException {
         validateCount(0, jdbcTemplate, uaaIdentityZone.getId());
@@ -429,6 +469,65 @@ class JdbcScimGroupMembershipManagerTests {
         validateUserGroups("m1", jdbcScimGroupMembershipManager, uaaIdentityZone.getId(), "test2");
     }
 
+    @Test
+    void canAddMembersInOneBatch() throws SQLException {
+        validateCount(0, jdbcTemplate, uaaIdentityZone.getId());
+        List<ScimGroupMember> added = jdbcScimGroupMembershipManager.addMembers("g1", Arrays.asList(
+                new ScimGroupMember("m1"),
+                new ScimGroupMember("m2", ScimGroupMember.Type.USER),
+                new ScimGroupMember("g2", ScimGroupMember.Type.GROUP)), uaaIdentityZone.getId());
+        validateCount(3, jdbcTemplate, uaaIdentityZone.getId());
+        assertEquals(Arrays.asList("m1", "m2", "g2"), added.stream().map(ScimGroupMember::getMemberId).collect(Collectors.toList()));
+        assertEquals(ScimGroupMember.Type.USER, added.get(0).getType());
+        assertEquals(ScimGroupMember.Type.GROUP, added.get(2).getType());
+        validateUserGroups("m2", jdbcScimGroupMembershipManager, uaaIdentityZone.getId(), "test1");
+    }
+
+    @Test
+    void cannotAddDuplicateOrUnknownMembersInOneBatch() throws SQLException {
+        addMember("g1", "m1", "USER", "READER", jdbcTemplate, uaaIdentityZone.getId());
+        assertThrows(MemberAlreadyExistsException.class, () -> jdbcScimGroupMembershipManager.addMembers("g1",
+                Arrays.asList(new ScimGroupMember("m2"), new ScimGroupMember("m1")), uaaIdentityZone.getId()));
+        assertThrows(MemberAlreadyExistsException.class, () -> jdbcScimGroupMembershipManager.addMembers("g1",
+                Arrays.asList(new ScimGroupMember("m2"), new ScimGroupMember("m2")), uaaIdentityZone.getId()));
+        assertThrows(ScimResourceNotFoundException.class, () -> jdbcScimGroupMembershipManager.addMembers("g1",
+                Arrays.asList(new ScimGroupMember("m2"), new ScimGroupMember("unknown")), uaaIdentityZone.getId()));
+        assertThrows(InvalidScimResourceException.class, () -> jdbcScimGroupMembershipManager.addMembers("g1",
+                Collections.singletonList(new ScimGroupMember("g1", ScimGroupMember.Type.GROUP)), uaaIdentityZone.getId()));
+        validateCount(1, jdbcTemplate, uaaIdentityZone.getId());
+    }
+
+    @Test
+    void existingMembersAreFoundWhenCheckedInSeveralQueries() throws SQLException {
+        int oldValue = jdbcScimGroupMembershipManager.getMaxSqlParameters();
+        addMember("g1", "m2", "USER", "READER", jdbcTemplate, uaaIdentityZone.getId());
+        addMember("g2", "m1", "USER", "READER", jdbcTemplate, uaaIdentityZone.getId());
+        jdbcScimGroupMembershipManager.setMaxSqlParameters(3);
+        try {
+            assertThrows(MemberAlreadyExistsException.class, () -> jdbcScimGroupMembershipManager.addMembers("g1",
+                    Arrays.asList(new ScimGroupMember("m1"), new ScimGroupMember("m2")), uaaIdentityZone.getId()));
+            jdbcScimGroupMembershipManager.addMembers("g2",
+                    Arrays.asList(new ScimGroupMember("m2"), new ScimGroupMember("m3")), uaaIdentityZone.getId());
+            validateCount(4, jdbcTemplate, uaaIdentityZone.getId());
+        } finally {
+            jdbcScimGroupMembershipManager.setMaxSqlParameters(oldValue);
+        }
+    }
+
+    @Test
+    void canStreamAllMembershipsOfAZone() {
+        addMember("g1", "m1", "USER", "READER", jdbcTemplate, uaaIdentityZone.getId());
+        addMember("g1", "g2", "GROUP", "READER", jdbcTemplate, uaaIdentityZone.getId());
+        addMember("g3", "m2", "USER", "READER", jdbcTemplate, uaaIdentityZone.getId());
+        addMember("g1", "m1", "USER", "READER", jdbcTemplate, otherIdentityZone.getId());
+
+        List<String> streamed = new ArrayList<>();
+        jdbcScimGroupMembershipManager.streamAll(uaaIdentityZone.getId(), 2,
+                (groupId, member) -> streamed.add(groupId.trim() + ":" + member.getMemberId() + ":" + member.getType()));
+
+        assertThat(streamed, containsInAnyOrder("g1:m1:USER", "g1:g2:GROUP", "g3:m2:USER"));
+    }
+
     @Test
     void addMemberInDifferentZoneCausesIssues() {
         otherIdentityZone.getConfig().getUserConfig().setDefaultGroups(emptyList());
@@ -4,6 +4,7 @@ import org.cloudfoundry.identity.uaa.annotations.WithDatabaseContext;
 import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
 import org.cloudfoundry.identity.uaa.provider.IdentityProvider;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.SimpleAttributeNameMapper;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
 import org.cloudfoundry.identity.uaa.resources.jdbc.LimitSqlAdapter;
@@ -34,11 +35,15 @@ import org.springframework.security.oauth2.common.util.RandomValueStringGenerato
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.cloudfoundry.identity.uaa.constants.OriginKeys.LOGIN_SERVER;
 import static org.cloudfoundry.identity.uaa.constants.OriginKeys.UAA;
@@ -53,6 +58,7 @@ import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
@@ -925,6 +931,125 @@ class JdbcScimUserProvisioningTests {
         assertEquals(1, jdbcScimUserProvisioning.query("username sw \"joe\"", currentIdentityZoneId).size());
     }
 
+    @Test
+    void canPageThroughUsersWithCursor() {
+        for (int i = 0; i < 7; i++) {
+            addUser(jdbcTemplate, UUID.randomUUID().toString(), "keyset" + i, "password", "keyset" + i + "@test.org", "Key", "Set", "", currentIdentityZoneId);
+        }
+        jdbcTemplate.update("update users set external_id = 'b' where username = 'keyset1'");
+        jdbcTemplate.update("update users set external_id = 'a' where username in ('keyset4', 'keyset5')");
+        String filter = "familyName eq \"Set\"";
+        Set<String> expected = jdbcScimUserProvisioning.query(filter, currentIdentityZoneId).stream()
+                .map(ScimUser::getId).collect(Collectors.toSet());
+        assertEquals(7, expected.size());
+
+        for (String sortBy : Arrays.asList("created", "external_id", "id", "userName")) {
+            for (boolean ascending : Arrays.asList(true, false)) {
+                List<String> ids = new ArrayList<>();
+                String cursor = "";
+                do {
+                    KeysetPage<ScimUser> page = jdbcScimUserProvisioning.queryPage(filter, sortBy, ascending, cursor, 2, currentIdentityZoneId);
+                    assertTrue(page.getResources().size() <= 2);
+                    page.getResources().forEach(user -> ids.add(user.getId()));
+                    cursor = page.getNextCursor();
+                } while (cursor != null);
+                assertEquals(7, ids.size(), sortBy + " " + ascending);
+                assertEquals(expected, new HashSet<>(ids), sortBy + " " + ascending);
+            }
+        }
+
+        List<String> usernames = jdbcScimUserProvisioning.queryPage(filter, "userName", false, "", 3, currentIdentityZoneId)
+                .getResources().stream().map(ScimUser::getUserName).collect(Collectors.toList());
+        assertEquals(Arrays.asList("keyset6", "keyset5", "keyset4"), usernames);
+        List<String> externalIds = jdbcScimUserProvisioning.queryPage(filter, "external_id", true, "", 4, currentIdentityZoneId)
+                .getResources().stream().map(ScimUser::getExternalId).collect(Collectors.toList());
+        assertEquals(Arrays.asList("a", "a", "b", null), externalIds);
+    }
+
+    @Test
+    void cannotPageWithInvalidCursor() {
+        String cursor = jdbcScimUserProvisioning.queryPage("id pr", "created", true, "", 1, currentIdentityZoneId).getNextCursor();
+        assertNotNull(cursor);
+
+        assertThrows(IllegalArgumentException.class, () -> jdbcScimUserProvisioning.queryPage("id pr", "created", true, "not a cursor", 1, currentIdentityZoneId));
+        assertThrows(IllegalArgumentException.class, () -> jdbcScimUserProvisioning.queryPage("id pr", "created", false, cursor, 1, currentIdentityZoneId));
+        assertThrows(IllegalArgumentException.class, () -> jdbcScimUserProvisioning.queryPage("id pr", "username", true, cursor, 1, currentIdentityZoneId));
+        assertThrows(IllegalArgumentException.class, () -> jdbcScimUserProvisioning.queryPage("id pr", "created,id", true, "", 1, currentIdentityZoneId));
+        assertThrows(IllegalArgumentException.class, () -> jdbcScimUserProvisioning.queryPage("id pr", "salt", true, "", 1, currentIdentityZoneId));
+    }
+
+    @Test
+    void canCreateUsersInOneBatch() {
+        List<ScimUser> users = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ScimUser user = new ScimUser(null, "batch" + i + "@foo.com", "Batch", "User" + i);
+            user.addEmail("batch" + i + "@foo.com");
+            user.setPassword("j7hyqpassX");
+            users.add(user);
+        }
+
+        List<ScimUser> created = jdbcScimUserProvisioning.createUsers(users, currentIdentityZoneId);
+
+        assertEquals(3, created.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("batch" + i + "@foo.com", created.get(i).getUserName());
+            assertEquals(UAA, created.get(i).getOrigin());
+            assertNotNull(created.get(i).getPasswordLastModified());
+            ScimUser retrieved = jdbcScimUserProvisioning.retrieve(created.get(i).getId(), currentIdentityZoneId);
+            assertEquals("User" + i, retrieved.getFamilyName());
+            assertTrue(passwordEncoder.matches("j7hyqpassX", jdbcTemplate.queryForObject("select password from users where id=?", String.class, created.get(i).getId())));
+        }
+    }
+
+    @Test
+    void cannotCreateUsersWithDuplicateUsername() {
+        ScimUser first = new ScimUser(null, "duplicate@foo.com", "Dup", "User");
+        first.addEmail("duplicate@foo.com");
+        first.setPassword("j7hyqpassX");
+        ScimUser second = new ScimUser(null, "duplicate@foo.com", "Dup", "User");
+        second.addEmail("duplicate@foo.com");
+        second.setPassword("j7hyqpassX");
+
+        assertThrows(ScimResourceAlreadyExistsException.class,
+                () -> jdbcScimUserProvisioning.createUsers(Arrays.asList(first, second), currentIdentityZoneId));
+        assertTrue(jdbcScimUserProvisioning.createUsers(Collections.emptyList(), currentIdentityZoneId).isEmpty());
+    }
+
+    @Test
+    void canImportUsersWithEncodedPasswords() {
+        String hash = passwordEncoder.encode("j7hyqpassX");
+        List<ScimUser> users = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            ScimUser user = new ScimUser(null, "import" + i + "@foo.com", "Import", "User" + i);
+            user.addEmail("import" + i + "@foo.com");
+            user.setPassword(hash);
+            users.add(user);
+        }
+
+        List<ScimUser> imported = jdbcScimUserProvisioning.importUsers(users, currentIdentityZoneId);
+
+        assertSame(users, imported);
+        for (ScimUser user : imported) {
+            assertNotNull(user.getId());
+            assertEquals(UAA, user.getOrigin());
+            assertEquals(user.getUserName(), jdbcScimUserProvisioning.retrieve(user.getId(), currentIdentityZoneId).getUserName());
+            assertEquals(hash, jdbcTemplate.queryForObject("select password from users where id=?", String.class, user.getId()));
+        }
+    }
+
+    @Test
+    void canStreamAllUsersOfAZone() {
+        addUser(jdbcTemplate, UUID.randomUUID().toString(), "other-zone-user", "password", "other@test.org", "Other", "Zone", "", "other-zone-" + randomString());
+        Set<String> expected = jdbcScimUserProvisioning.retrieveAll(currentIdentityZoneId).stream()
+                .map(ScimUser::getId).collect(Collectors.toSet());
+
+        List<String> streamed = new ArrayList<>();
+        jdbcScimUserProvisioning.streamAll(currentIdentityZoneId, 1, user -> streamed.add(user.getId()));
+
+        assertEquals(2, streamed.size());
+        assertEquals(expected, new HashSet<>(streamed));
+    }
+
     @Test
     void canRetrieveUsersWithFilterGreater() {
         assertEquals(1, jdbcScimUserProvisioning.query("username gt \"joe\"", currentIdentityZoneId).size());
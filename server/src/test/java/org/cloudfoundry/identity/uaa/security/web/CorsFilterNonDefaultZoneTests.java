@@ -419,6 +419,28 @@ class CorsFilterNonDefaultZoneTests {
         assertEquals(OK.value(), response.getStatus());
     }
 
+    @Test
+    void testZonePolicyIsCompiledWithoutChangingTheZoneAndFollowsChanges() throws ServletException, IOException {
+        for (int i = 0; i < 2; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/uaa/userinfo");
+            request.addHeader("Origin", "example.com");
+            request.addHeader("X-Requested-With", "XMLHttpRequest");
+            corsFilter.doFilter(request, new MockHttpServletResponse(), filterChain);
+        }
+        assertTrue(identityZone.getConfig().getCorsPolicy().getXhrConfiguration().getAllowedOriginPatterns().isEmpty());
+        assertTrue(identityZone.getConfig().getCorsPolicy().getXhrConfiguration().getAllowedUriPatterns().isEmpty());
+
+        identityZone.getConfig().getCorsPolicy().getXhrConfiguration().setAllowedOrigins(Collections.singletonList("^other\\.com$"));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/uaa/userinfo");
+        request.addHeader("Origin", "example.com");
+        request.addHeader("X-Requested-With", "XMLHttpRequest");
+        corsFilter.doFilter(request, response, filterChain);
+
+        assertEquals(FORBIDDEN.value(), response.getStatus());
+        assertEquals("Illegal origin", response.getErrorMessage());
+    }
+
     private void setupBaselineCorsPolicyXhrConfiguration() {
         List<String> allowedMethods = List.of(GET.toString(), POST.toString(),
                 PUT.toString(), DELETE.toString());
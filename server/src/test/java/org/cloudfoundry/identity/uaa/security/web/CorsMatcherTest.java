@@ -0,0 +1,61 @@
+package org.cloudfoundry.identity.uaa.security.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CorsMatcherTest {
+
+    private static final List<String> REGEXES = Arrays.asList(
+            "^https://example\\.com$",
+            "^http://localhost:8080$",
+            "\\.example\\.org$",
+            "^https://(app|admin)\\.example\\.net$",
+            "^(?i)https://UPPER\\.example\\.io$",
+            "^(a)\\1$",
+            "^https://a\\$"
+    );
+
+    private static final List<String> VALUES = Arrays.asList(
+            "https://example.com", "https://example.com.evil.com", "https://exampleXcom", "http://example.com",
+            "http://localhost:8080", "http://localhost:80800", "https://sub.example.org", "https://example.org",
+            "https://app.example.net", "https://other.example.net", "https://upper.example.io", "aa", "ab",
+            "https://a$", "https://a"
+    );
+
+    @Test
+    void matchesWhatAnyOfTheRegularExpressionsFinds() {
+        CorsMatcher matcher = new CorsMatcher(REGEXES, Collections.emptyList(), "test");
+        for (String value : VALUES) {
+            boolean expected = REGEXES.stream().anyMatch(regex -> Pattern.compile(regex).matcher(value).find());
+            assertEquals(expected, matcher.matches(value), value);
+        }
+    }
+
+    @Test
+    void matchesCompiledPatterns() {
+        CorsMatcher matcher = new CorsMatcher(null,
+                Arrays.asList(Pattern.compile("example\\.com$"), Pattern.compile("^HTTPS://OTHER", Pattern.CASE_INSENSITIVE)), "test");
+
+        assertTrue(matcher.matches("https://example.com"));
+        assertTrue(matcher.matches("https://other.com"));
+        assertFalse(matcher.matches("https://example.org"));
+    }
+
+    @Test
+    void matchAllAndInvalidExpressions() {
+        assertTrue(new CorsMatcher(Collections.singletonList(".*"), Collections.emptyList(), "test").matches("anything"));
+
+        CorsMatcher matcher = new CorsMatcher(Arrays.asList("[invalid", "^valid$"), Collections.emptyList(), "test");
+        assertTrue(matcher.matches("valid"));
+        assertFalse(matcher.matches("[invalid"));
+        assertFalse(new CorsMatcher(Collections.emptyList(), Collections.emptyList(), "test").matches("anything"));
+    }
+}
@@ -4,6 +4,7 @@ import org.cloudfoundry.identity.uaa.annotations.WithDatabaseContext;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
 import org.cloudfoundry.identity.uaa.db.DatabaseUrlModifier;
 import org.cloudfoundry.identity.uaa.db.Vendor;
+import org.cloudfoundry.identity.uaa.resources.jdbc.LimitSqlAdapter;
 import org.cloudfoundry.identity.uaa.test.TestUtils;
 import org.cloudfoundry.identity.uaa.util.beans.DbUtils;
 import org.cloudfoundry.identity.uaa.util.TimeService;
@@ -66,6 +67,9 @@ class JdbcUaaUserDatabaseTests {
     @Autowired
     private Environment environment;
 
+    @Autowired
+    private LimitSqlAdapter limitSqlAdapter;
+
     @BeforeEach
     void setUp() throws SQLException {
         defaultAuthorities = UserConfig.DEFAULT_ZONE_GROUPS
@@ -87,7 +91,8 @@ class JdbcUaaUserDatabaseTests {
                 false,
                 mockIdentityZoneManager,
                 databaseUrlModifier,
-                dbUtils);
+                dbUtils,
+                limitSqlAdapter);
 
         // TODO: Don't need these checks
         TestUtils.assertNoSuchUser(jdbcTemplate, "id", JOE_ID);
@@ -197,7 +202,7 @@ class JdbcUaaUserDatabaseTests {
     void is_the_right_query_used() throws SQLException {
         JdbcTemplate mockJdbcTemplate = mock(JdbcTemplate.class);
         jdbcUaaUserDatabase = new JdbcUaaUserDatabase(mockJdbcTemplate, timeService, false, mockIdentityZoneManager,
-                databaseUrlModifier, dbUtils);
+                databaseUrlModifier, dbUtils, limitSqlAdapter);
 
         String username = new RandomValueStringGenerator().generate() + "@test.org";
 
@@ -207,7 +212,7 @@ class JdbcUaaUserDatabaseTests {
         verify(mockJdbcTemplate).query(eq(DEFAULT_CASE_SENSITIVE_USER_BY_EMAIL_AND_ORIGIN_QUERY), eq(jdbcUaaUserDatabase.getMapper()), eq(username.toLowerCase()), eq(true), eq(OriginKeys.UAA), eq("zone-the-first"));
 
         jdbcUaaUserDatabase = new JdbcUaaUserDatabase(mockJdbcTemplate, timeService, true, mockIdentityZoneManager,
-                databaseUrlModifier, dbUtils)
+                databaseUrlModifier, dbUtils, limitSqlAdapter)
         ;
         jdbcUaaUserDatabase.retrieveUserByName(username, OriginKeys.UAA);
         verify(mockJdbcTemplate).queryForObject(eq(DEFAULT_CASE_INSENSITIVE_USER_BY_USERNAME_QUERY), eq(jdbcUaaUserDatabase.getMapper()), eq(username.toLowerCase()), eq(true), eq(OriginKeys.UAA), eq("zone-the-first"));
@@ -221,7 +226,7 @@ class JdbcUaaUserDatabaseTests {
         for (boolean caseInsensitive : Arrays.asList(true, false)) {
             try {
                 jdbcUaaUserDatabase = new JdbcUaaUserDatabase(jdbcTemplate, timeService, caseInsensitive, mockIdentityZoneManager,
-                        databaseUrlModifier, dbUtils);
+                        databaseUrlModifier, dbUtils, limitSqlAdapter);
                 UaaUser joe = jdbcUaaUserDatabase.retrieveUserByName("JOE", OriginKeys.UAA);
                 validateJoe(joe);
                 joe = jdbcUaaUserDatabase.retrieveUserByName("joe", OriginKeys.UAA);
@@ -277,7 +282,7 @@ class JdbcUaaUserDatabaseTests {
         addAuthority("anotherOne", jdbcTemplate, "zone-the-first", JOE_ID);
         JdbcTemplate spiedJdbcTemplate = Mockito.spy(jdbcTemplate);
         jdbcUaaUserDatabase = new JdbcUaaUserDatabase(spiedJdbcTemplate, timeService, false, mockIdentityZoneManager,
-                databaseUrlModifier, dbUtils);
+                databaseUrlModifier, dbUtils, limitSqlAdapter);
         UaaUser joe = jdbcUaaUserDatabase.retrieveUserByName("joe", OriginKeys.UAA);
         verify(spiedJdbcTemplate, times(2)).queryForList(anyString(), ArgumentMatchers.<String>any());
         assertTrue(joe.getAuthorities().contains(new SimpleGrantedAuthority("uaa.user")),
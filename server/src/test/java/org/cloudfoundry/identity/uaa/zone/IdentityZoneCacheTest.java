@@ -0,0 +1,170 @@
+package org.cloudfoundry.identity.uaa.zone;
+
+import org.cloudfoundry.identity.uaa.annotations.WithDatabaseContext;
+import org.cloudfoundry.identity.uaa.saml.SamlKey;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@WithDatabaseContext
+class IdentityZoneCacheTest {
+
+    private static final long MAX_STALENESS = 2000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private long now;
+    private IdentityZoneCache cache;
+    private JdbcIdentityZoneProvisioning provisioning;
+    private IdentityZone zone;
+
+    @BeforeEach
+    void setUp() {
+        now = System.currentTimeMillis();
+        TimeService timeService = mock(TimeService.class);
+        when(timeService.getCurrentTimeMillis()).thenAnswer(invocation -> now);
+        cache = new IdentityZoneCache(jdbcTemplate, timeService, true, MAX_STALENESS, 100);
+        provisioning = new JdbcIdentityZoneProvisioning(jdbcTemplate);
+        provisioning.setCache(cache);
+
+        zone = MultitenancyFixture.identityZone("cached-zone-id", "cached-zone");
+        zone = provisioning.create(zone);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("delete from identity_zone where id = ?", zone.getId());
+    }
+
+    @Test
+    void zonesAreServedFromTheCache() {
+        IdentityZone bySubdomain = provisioning.retrieveBySubdomain("CACHED-ZONE");
+        IdentityZone byId = provisioning.retrieve(zone.getId());
+
+        assertEquals(bySubdomain.getName(), provisioning.retrieveBySubdomain("cached-zone").getName());
+        assertEquals(byId.getName(), provisioning.retrieve(zone.getId()).getName());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void unchangedZonesAreRevalidatedByVersion() {
+        IdentityZone cached = provisioning.retrieveBySubdomain("cached-zone");
+
+        now += MAX_STALENESS + 1;
+        assertEquals(cached.getName(), provisioning.retrieveBySubdomain("cached-zone").getName());
+        assertEquals(cached.getName(), provisioning.retrieveBySubdomain("cached-zone").getName());
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getRevalidationCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void changesFromOtherNodesArePickedUpAfterMaxStaleness() {
+        IdentityZone cached = provisioning.retrieveBySubdomain("cached-zone");
+        jdbcTemplate.update("update identity_zone set name = ?, version = version + 1, lastmodified = ? where id = ?",
+                "changed elsewhere", new Timestamp(now), zone.getId());
+
+        assertEquals(cached.getName(), provisioning.retrieveBySubdomain("cached-zone").getName());
+
+        now += MAX_STALENESS + 1;
+        IdentityZone reloaded = provisioning.retrieveBySubdomain("cached-zone");
+        assertEquals("changed elsewhere", reloaded.getName());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void localChangesEvictImmediately() {
+        IdentityZone cachedById = provisioning.retrieve(zone.getId());
+        provisioning.retrieveBySubdomain("cached-zone");
+
+        IdentityZone update = provisioning.retrieveIgnoreActiveFlag(zone.getId());
+        update.setSubdomain("renamed-zone");
+        update.setName("renamed");
+        provisioning.update(update);
+
+        assertEquals("cached-zone", cachedById.getSubdomain());
+        assertEquals("renamed", provisioning.retrieve(zone.getId()).getName());
+        assertEquals("renamed", provisioning.retrieveBySubdomain("renamed-zone").getName());
+        assertThrows(EmptyResultDataAccessException.class, () -> provisioning.retrieveBySubdomain("cached-zone"));
+    }
+
+    @Test
+    void everyLookupGetsItsOwnCopy() {
+        IdentityZone configured = provisioning.retrieveIgnoreActiveFlag(zone.getId());
+        IdentityZoneConfiguration config = configured.getConfig();
+        config.getTokenPolicy().setKeys(Collections.singletonMap("key-1", "signing-key"));
+        config.getTokenPolicy().setActiveKeyId("key-1");
+        config.getSamlConfig().addAndActivateKey("saml-key", new SamlKey("key", "passphrase", "certificate"));
+        config.getCorsPolicy().getDefaultConfiguration().setAllowedOrigins(new ArrayList<>(Collections.singletonList("^example.com$")));
+        config.getLinks().getLogout().setWhitelist(new ArrayList<>(Collections.singletonList("http://example.com/*")));
+        BrandingInformation branding = new BrandingInformation();
+        branding.setCompanyName("company");
+        branding.setFooterLinks(new HashMap<>(Collections.singletonMap("terms", "http://example.com/terms")));
+        branding.setBanner(new BrandingInformation.Banner());
+        branding.getBanner().setText("banner");
+        branding.setConsent(new Consent("consent", "http://example.com/consent"));
+        config.setBranding(branding);
+        config.getUserConfig().setAllowedGroups(new ArrayList<>(Collections.singletonList("openid")));
+        config.setIssuer("http://issuer.example.com");
+        provisioning.update(configured);
+        String stored = JsonUtils.writeValueAsString(provisioning.retrieveIgnoreActiveFlag(zone.getId()));
+
+        IdentityZone first = provisioning.retrieve(zone.getId());
+        IdentityZone second = provisioning.retrieve(zone.getId());
+        assertNotSame(first, second);
+        assertEquals(stored, JsonUtils.writeValueAsString(second));
+
+        first.setName("changed");
+        first.getConfig().getTokenPolicy().setKeys(Collections.singletonMap("key-2", "other-key"));
+        first.getConfig().getSamlConfig().removeKey("saml-key");
+        first.getConfig().getSamlConfig().getKeys().values().forEach(key -> key.setKey("changed"));
+        first.getConfig().getCorsPolicy().getDefaultConfiguration().getAllowedOrigins().add(".*");
+        first.getConfig().getLinks().getLogout().getWhitelist().clear();
+        first.getConfig().getBranding().getFooterLinks().clear();
+        first.getConfig().getBranding().getBanner().setText("changed");
+        first.getConfig().getUserConfig().getAllowedGroups().clear();
+
+        assertEquals(stored, JsonUtils.writeValueAsString(provisioning.retrieve(zone.getId())));
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    void deactivatedZonesAreNotServedAfterMaxStaleness() {
+        provisioning.retrieveBySubdomain("cached-zone");
+        jdbcTemplate.update("update identity_zone set active = ? where id = ?", false, zone.getId());
+
+        now += MAX_STALENESS + 1;
+        assertThrows(EmptyResultDataAccessException.class, () -> provisioning.retrieveBySubdomain("cached-zone"));
+        assertThrows(ZoneDoesNotExistsException.class, () -> provisioning.retrieve(zone.getId()));
+    }
+
+    @Test
+    void disabledCacheAlwaysLoads() {
+        cache = new IdentityZoneCache(jdbcTemplate, null, false, MAX_STALENESS, 100);
+        provisioning.setCache(cache);
+
+        assertNotSame(provisioning.retrieveBySubdomain("cached-zone"), provisioning.retrieveBySubdomain("cached-zone"));
+        assertFalse(cache.isEnabled());
+        assertEquals(0, cache.getSize());
+    }
+}
@@ -507,6 +507,20 @@ class MultitenantJdbcClientDetailsServiceTests {
         assertTrue(passwordEncoder.matches(newClientSecret, (String) map.get("client_secret")));
     }
 
+    @Test
+    void updateClientSecretMovesLastModified() {
+        BaseClientDetails clientDetails = new BaseClientDetails();
+        clientDetails.setClientId("newClientIdWithNoDetails");
+        service.addClientDetails(clientDetails);
+        Timestamp earlier = new Timestamp(System.currentTimeMillis() - 60000);
+        jdbcTemplate.update("update oauth_client_details set lastmodified=? where client_id=?", earlier, "newClientIdWithNoDetails");
+
+        service.updateClientSecret(clientDetails.getClientId(), "newClientSecret");
+
+        Map<String, Object> map = jdbcTemplate.queryForMap(SELECT_SQL, "newClientIdWithNoDetails");
+        assertTrue(((Timestamp) map.get("lastmodified")).after(earlier));
+    }
+
     @Test
     void deleteClientSecret() {
         String clientId = "client_id_test_delete";
@@ -85,7 +85,9 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
@@ -563,13 +565,13 @@ class ScimUserEndpointsTests {
 
         SearchResults<?> results = scimUserEndpoints.findUsers("id,groups,approvals", isJoelOrDaleFilter, null, "ascending", 1, 100);
         assertEquals(2, results.getTotalResults());
-        verify(spiedScimGroupMembershipManager).getGroupsWithMember(joel.getId(), false, identityZone.getId());
-        verify(spiedScimGroupMembershipManager).getGroupsWithMember(joel.getId(), true, identityZone.getId());
-        verify(spiedScimGroupMembershipManager).getGroupsWithMember(dale.getId(), false, identityZone.getId());
-        verify(spiedScimGroupMembershipManager).getGroupsWithMember(dale.getId(), true, identityZone.getId());
+        List<String> joelAndDale = asList(joel.getId(), dale.getId());
+        verify(spiedScimGroupMembershipManager).getGroupsWithMembers(argThat(ids -> ids.size() == 2 && ids.containsAll(joelAndDale)), eq(false), eq(identityZone.getId()));
+        verify(spiedScimGroupMembershipManager).getGroupsWithMembers(argThat(ids -> ids.size() == 2 && ids.containsAll(joelAndDale)), eq(true), eq(identityZone.getId()));
+        verify(spiedScimGroupMembershipManager, never()).getGroupsWithMember(anyString(), anyBoolean(), anyString());
 
-        verify(mockApprovalStore).getApprovalsForUser(joel.getId(), identityZone.getId());
-        verify(mockApprovalStore).getApprovalsForUser(dale.getId(), identityZone.getId());
+        verify(mockApprovalStore).getApprovalsForUsers(argThat(ids -> ids.size() == 2 && ids.containsAll(joelAndDale)), eq(identityZone.getId()));
+        verify(mockApprovalStore, never()).getApprovalsForUser(anyString(), anyString());
     }
 
     @Test
@@ -661,13 +663,13 @@ class ScimUserEndpointsTests {
     @Test
     void findUsersGroupsSyncedByDefault() {
         scimUserEndpoints.findUsers("", "id pr", null, "ascending", 1, 100);
-        verify(spiedScimGroupMembershipManager, atLeastOnce()).getGroupsWithMember(anyString(), anyBoolean(), eq(identityZone.getId()));
+        verify(spiedScimGroupMembershipManager, atLeastOnce()).getGroupsWithMembers(anyCollection(), anyBoolean(), eq(identityZone.getId()));
     }
 
     @Test
     void findUsersGroupsSyncedIfIncluded() {
         scimUserEndpoints.findUsers("groups", "id pr", null, "ascending", 1, 100);
-        verify(spiedScimGroupMembershipManager, atLeastOnce()).getGroupsWithMember(anyString(), anyBoolean(), eq(identityZone.getId()));
+        verify(spiedScimGroupMembershipManager, atLeastOnce()).getGroupsWithMembers(anyCollection(), anyBoolean(), eq(identityZone.getId()));
     }
 
     @Test
@@ -679,13 +681,13 @@ class ScimUserEndpointsTests {
     @Test
     void findUsersApprovalsSyncedByDefault() {
         scimUserEndpoints.findUsers("", "id pr", null, "ascending", 1, 100);
-        verify(mockApprovalStore, atLeastOnce()).getApprovalsForUser(anyString(), eq(identityZone.getId()));
+        verify(mockApprovalStore, atLeastOnce()).getApprovalsForUsers(anyCollection(), eq(identityZone.getId()));
     }
 
     @Test
     void findUsersApprovalsSyncedIfIncluded() {
         scimUserEndpoints.findUsers("approvals", "id pr", null, "ascending", 1, 100);
-        verify(mockApprovalStore, atLeastOnce()).getApprovalsForUser(anyString(), eq(identityZone.getId()));
+        verify(mockApprovalStore, atLeastOnce()).getApprovalsForUsers(anyCollection(), eq(identityZone.getId()));
     }
 
     @Test